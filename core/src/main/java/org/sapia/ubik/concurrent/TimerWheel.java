@@ -0,0 +1,267 @@
+package org.sapia.ubik.concurrent;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+
+/**
+ * A hashed timer wheel, meant for scheduling large numbers of timeouts that are
+ * mostly cancelled before they expire (such as the timeouts of pending
+ * requests).
+ * <p>
+ * The wheel is made of a fixed number of buckets, one of which is visited at
+ * every tick by a single worker thread. A timeout is put in the bucket
+ * corresponding to its deadline, with the number of full rotations of the
+ * wheel that must elapse before it expires. Scheduling and cancelling a timeout
+ * are thus constant-time operations that do not lock: new timeouts are handed
+ * to the worker thread through a concurrent queue, and cancelled ones are
+ * discarded by the worker thread when it visits their bucket.
+ * <p>
+ * Timeouts expire with a precision of one tick. Their tasks are run by the
+ * worker thread: they should be short, and should not block.
+ *
+ * @author yduchesne
+ *
+ */
+public class TimerWheel {
+
+  /**
+   * Specifies the behavior of a scheduled timeout.
+   */
+  public interface Timeout {
+
+    /**
+     * Cancels this timeout, if it has not expired yet.
+     *
+     * @return <code>true</code> if this timeout was cancelled,
+     *         <code>false</code> if it had already expired, or was already
+     *         cancelled.
+     */
+    public boolean cancel();
+
+    /**
+     * @return <code>true</code> if this timeout has been cancelled.
+     */
+    public boolean isCancelled();
+
+    /**
+     * @return <code>true</code> if this timeout has expired.
+     */
+    public boolean isExpired();
+  }
+
+  // --------------------------------------------------------------------------
+
+  public static final long DEFAULT_TICK_MILLIS = 10;
+  public static final int  DEFAULT_WHEEL_SIZE  = 512;
+
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private Category                     log      = Log.createCategory(getClass());
+  private String                       name;
+  private long                         tickNanos;
+  private Queue<TimeoutEntry>[]        wheel;
+  private int                          mask;
+  private Queue<TimeoutEntry>          incoming = new ConcurrentLinkedQueue<TimeoutEntry>();
+  private AtomicInteger                pending  = new AtomicInteger();
+  private volatile long                startTime;
+  private volatile Thread              worker;
+  private volatile boolean             stopped;
+
+  /**
+   * Creates an instance with a tick of {@link #DEFAULT_TICK_MILLIS} and
+   * {@link #DEFAULT_WHEEL_SIZE} buckets.
+   *
+   * @param name
+   *          the name of this instance's worker thread.
+   */
+  public TimerWheel(String name) {
+    this(name, DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+  }
+
+  /**
+   * @param name
+   *          the name of this instance's worker thread.
+   * @param tickMillis
+   *          the duration of a tick, in millis.
+   * @param wheelSize
+   *          the number of buckets of the wheel (rounded up to the next power
+   *          of 2).
+   */
+  @SuppressWarnings("unchecked")
+  public TimerWheel(String name, long tickMillis, int wheelSize) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("Tick must be greater than 0, got: " + tickMillis);
+    }
+    if (wheelSize <= 0) {
+      throw new IllegalArgumentException("Wheel size must be greater than 0, got: " + wheelSize);
+    }
+    this.name = name;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    int size = Integer.highestOneBit(wheelSize);
+    if (size < wheelSize) {
+      size <<= 1;
+    }
+    this.wheel = (Queue<TimeoutEntry>[]) new Queue<?>[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new ArrayDeque<TimeoutEntry>();
+    }
+    this.mask = size - 1;
+  }
+
+  /**
+   * Schedules the given task. The worker thread of this instance is started
+   * upon the first call to this method.
+   *
+   * @param task
+   *          the {@link Runnable} to run when the timeout expires.
+   * @param delayMillis
+   *          the delay (in millis) after which the timeout expires.
+   * @return the {@link Timeout} corresponding to the scheduled task.
+   */
+  public Timeout schedule(Runnable task, long delayMillis) {
+    if (stopped) {
+      throw new IllegalStateException("Timer wheel stopped: " + name);
+    }
+    if (worker == null) {
+      doStart();
+    }
+    TimeoutEntry entry = new TimeoutEntry(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+    pending.incrementAndGet();
+    incoming.add(entry);
+    return entry;
+  }
+
+  /**
+   * @return the number of timeouts that have neither expired, nor been
+   *         cancelled.
+   */
+  public int getPendingCount() {
+    return pending.get();
+  }
+
+  /**
+   * Stops this instance's worker thread: the pending timeouts are discarded.
+   */
+  public synchronized void stop() {
+    stopped = true;
+    if (worker != null) {
+      worker.interrupt();
+      worker = null;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  private synchronized void doStart() {
+    if (worker == null && !stopped) {
+      startTime = System.nanoTime();
+      worker = NamedThreadFactory.createWith(name).setDaemon(true).newThread(new Runnable() {
+        @Override
+        public void run() {
+          doRun();
+        }
+      });
+      worker.start();
+    }
+  }
+
+  private void doRun() {
+    long tick = 0;
+    while (!stopped) {
+      long deadline = startTime + (tick + 1) * tickNanos;
+      long sleepNanos = deadline - System.nanoTime();
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+      doTransfer(tick);
+      doExpire(wheel[(int) (tick & mask)]);
+      tick++;
+    }
+  }
+
+  private void doTransfer(long currentTick) {
+    for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+      TimeoutEntry entry = incoming.poll();
+      if (entry == null) {
+        break;
+      }
+      if (entry.state.get() != TimeoutEntry.STATE_PENDING) {
+        continue;
+      }
+      long ticks = Math.max(currentTick, (entry.deadline - startTime) / tickNanos);
+      entry.rounds = (ticks - currentTick) / wheel.length;
+      wheel[(int) (ticks & mask)].add(entry);
+    }
+  }
+
+  private void doExpire(Queue<TimeoutEntry> bucket) {
+    Iterator<TimeoutEntry> entries = bucket.iterator();
+    while (entries.hasNext()) {
+      TimeoutEntry entry = entries.next();
+      if (entry.state.get() != TimeoutEntry.STATE_PENDING) {
+        entries.remove();
+      } else if (entry.rounds <= 0) {
+        entries.remove();
+        if (entry.state.compareAndSet(TimeoutEntry.STATE_PENDING, TimeoutEntry.STATE_EXPIRED)) {
+          pending.decrementAndGet();
+          try {
+            entry.task.run();
+          } catch (RuntimeException e) {
+            log.error("Error caught running timeout task", e);
+          }
+        }
+      } else {
+        entry.rounds--;
+      }
+    }
+  }
+
+  // ==========================================================================
+
+  private class TimeoutEntry implements Timeout {
+
+    static final int STATE_PENDING   = 0;
+    static final int STATE_CANCELLED = 1;
+    static final int STATE_EXPIRED   = 2;
+
+    private Runnable      task;
+    private long          deadline;
+    private long          rounds;
+    private AtomicInteger state = new AtomicInteger(STATE_PENDING);
+
+    private TimeoutEntry(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    @Override
+    public boolean cancel() {
+      if (state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+        pending.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return state.get() == STATE_CANCELLED;
+    }
+
+    @Override
+    public boolean isExpired() {
+      return state.get() == STATE_EXPIRED;
+    }
+  }
+}
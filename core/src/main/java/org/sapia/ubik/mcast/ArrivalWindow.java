@@ -0,0 +1,81 @@
+package org.sapia.ubik.mcast;
+
+/**
+ * Keeps the most recent inter-arrival times of a node's heartbeats, and
+ * computes their mean and standard deviation. This class is not thread-safe:
+ * it is meant to be accessed under the lock of the {@link NodeInfo} to which
+ * it belongs.
+ * 
+ * @author yduchesne
+ *
+ */
+public class ArrivalWindow {
+
+  /**
+   * The default number of inter-arrival times kept by an instance of this
+   * class.
+   */
+  public static final int DEFAULT_SIZE = 100;
+
+  private long[] intervals;
+  private int    index;
+  private int    count;
+  private double sum;
+  private double sumOfSquares;
+
+  public ArrivalWindow() {
+    this(DEFAULT_SIZE);
+  }
+
+  /**
+   * @param size
+   *          the maximum number of inter-arrival times to keep.
+   */
+  public ArrivalWindow(int size) {
+    intervals = new long[size];
+  }
+
+  /**
+   * @param intervalMillis
+   *          the time elapsed since the previous heartbeat, in millis.
+   */
+  public void add(long intervalMillis) {
+    if (count == intervals.length) {
+      long evicted = intervals[index];
+      sum -= evicted;
+      sumOfSquares -= (double) evicted * evicted;
+    } else {
+      count++;
+    }
+    intervals[index] = intervalMillis;
+    index = (index + 1) % intervals.length;
+    sum += intervalMillis;
+    sumOfSquares += (double) intervalMillis * intervalMillis;
+  }
+
+  /**
+   * @return the number of inter-arrival times currently kept.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return the mean of the inter-arrival times currently kept, in millis.
+   */
+  public double getMean() {
+    return count == 0 ? 0 : sum / count;
+  }
+
+  /**
+   * @return the standard deviation of the inter-arrival times currently kept,
+   *         in millis.
+   */
+  public double getStdDeviation() {
+    if (count == 0) {
+      return 0;
+    }
+    double mean = getMean();
+    return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+  }
+}
@@ -0,0 +1,154 @@
+package org.sapia.ubik.mcast;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sapia.ubik.rmi.server.transport.MarshalHelper;
+
+/**
+ * Holds events that are sent together, as the payload of a single
+ * {@link RemoteEvent} (the envelope) of type {@link #EVENT_TYPE}. Since the
+ * events of a batch are sent by the same node to the same domain, only their
+ * type and data are kept: the other attributes are those of the envelope.
+ * 
+ * @see EventBatcher
+ * 
+ * @author yduchesne
+ *
+ */
+public class EventBatch implements Externalizable {
+
+  /**
+   * The type of the {@link RemoteEvent}s whose payload is a batch.
+   */
+  public static final String EVENT_TYPE = "ubik/mcast/event-batch";
+
+  static final long serialVersionUID = 1L;
+
+  private List<String>  types;
+  private List<byte[]>  data;
+  private List<Boolean> wasBytes;
+  private transient int byteCount;
+
+  /**
+   * Meant for externalization only.
+   */
+  public EventBatch() {
+    this(10);
+  }
+
+  EventBatch(int capacity) {
+    types = new ArrayList<String>(capacity);
+    data = new ArrayList<byte[]>(capacity);
+    wasBytes = new ArrayList<Boolean>(capacity);
+  }
+
+  /**
+   * @param type
+   *          the type of the event to add.
+   * @param payload
+   *          the event's data.
+   * @throws IOException
+   *           if the given data could not be serialized.
+   */
+  public void add(String type, Object payload) throws IOException {
+    byte[] bytes;
+    if (payload instanceof byte[]) {
+      bytes = (byte[]) payload;
+      wasBytes.add(Boolean.TRUE);
+    } else {
+      bytes = MarshalHelper.serialize(payload);
+      wasBytes.add(Boolean.FALSE);
+    }
+    types.add(type);
+    data.add(bytes);
+    byteCount += bytes == null ? 0 : bytes.length;
+  }
+
+  /**
+   * @param other
+   *          another {@link EventBatch}, whose events should be added to this
+   *          instance.
+   */
+  void addAll(EventBatch other) {
+    types.addAll(other.types);
+    data.addAll(other.data);
+    wasBytes.addAll(other.wasBytes);
+    byteCount += other.byteCount;
+  }
+
+  /**
+   * @return the number of events in this instance.
+   */
+  public int size() {
+    return types.size();
+  }
+
+  /**
+   * @return the number of bytes of event data held by this instance.
+   */
+  public int getByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * @param envelope
+   *          the {@link RemoteEvent} that held this instance.
+   * @return the {@link RemoteEvent}s held by this instance, with the domain,
+   *         node and unicast address of the given envelope.
+   */
+  public List<RemoteEvent> unpack(RemoteEvent envelope) {
+    List<RemoteEvent> events = new ArrayList<RemoteEvent>(types.size());
+    for (int i = 0; i < types.size(); i++) {
+      events.add(
+          new RemoteEvent(envelope.getDomainName(), types.get(i), data.get(i), wasBytes.get(i))
+            .setNode(envelope.getNode())
+            .setUnicastAddress(envelope.getUnicastAddress())
+      );
+    }
+    return events;
+  }
+
+  // --------------------------------------------------------------------------
+  // Externalizable
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    int size = in.readInt();
+    types = new ArrayList<String>(size);
+    data = new ArrayList<byte[]>(size);
+    wasBytes = new ArrayList<Boolean>(size);
+    for (int i = 0; i < size; i++) {
+      types.add(in.readUTF());
+      wasBytes.add(in.readBoolean());
+      int length = in.readInt();
+      if (length < 0) {
+        data.add(null);
+      } else {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        data.add(bytes);
+      }
+    }
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeInt(types.size());
+    for (int i = 0; i < types.size(); i++) {
+      out.writeUTF(types.get(i));
+      out.writeBoolean(wasBytes.get(i));
+      byte[] bytes = data.get(i);
+      if (bytes == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+}
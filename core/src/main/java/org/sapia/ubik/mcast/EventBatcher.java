@@ -0,0 +1,331 @@
+package org.sapia.ubik.mcast;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.SysClock;
+import org.sapia.ubik.util.UbikMetrics;
+
+/**
+ * Queues events and packs them into {@link EventBatch}es, which are sent by a
+ * dedicated thread, in the order in which the events were added. A batch is
+ * sent once it holds the maximum number of events or bytes, or once its
+ * oldest event has been queued for the linger time.
+ * <p>
+ * Publishers are blocked when the maximum number of queued events is reached,
+ * until enough events have been sent - or until the enqueue timeout expires,
+ * in which case the event is rejected.
+ * <p>
+ * The following counters are kept in the given {@link UbikMetrics}:
+ * <ul>
+ * <li><code>eventChannel.batch.count</code>: the number of batches sent.
+ * <li><code>eventChannel.batch.events</code>: the number of events sent as
+ * part of batches (the average batch size is obtained by dividing this
+ * counter by the number of batches).
+ * <li><code>eventChannel.batch.latencyMillis</code>: the sum of the time that
+ * the first event of each batch has been queued for, until the batch was sent.
+ * <li><code>eventChannel.batch.blocked</code>: the number of times publishers
+ * were blocked, due to the maximum number of queued events being reached.
+ * <li><code>eventChannel.batch.rejected</code>: the number of events that were
+ * rejected because the enqueue timeout expired.
+ * <li><code>eventChannel.batch.failed</code>: the number of batches that
+ * could not be sent.
+ * </ul>
+ * 
+ * @author yduchesne
+ *
+ */
+public class EventBatcher {
+
+  /**
+   * Sends batches.
+   */
+  public interface Sender {
+
+    /**
+     * @param batch
+     *          an {@link EventBatch} to send.
+     * @throws IOException
+     *           if an I/O error occurs while sending.
+     */
+    public void send(EventBatch batch) throws IOException;
+  }
+
+  // ==========================================================================
+
+  private Category log = Log.createCategory(getClass());
+
+  private Settings        settings;
+  private Sender          sender;
+  private UbikMetrics     metrics;
+  private SysClock        clock;
+  private Deque<Pending>  queue   = new ArrayDeque<Pending>();
+  private int             pendingCount;
+  private boolean         closed;
+  private Thread          flusher;
+
+  /**
+   * @param settings
+   *          the {@link Settings} to use.
+   * @param sender
+   *          the {@link Sender} to which batches are passed.
+   * @param metrics
+   *          the {@link UbikMetrics} in which to keep batching counters.
+   * @param clock
+   *          the {@link SysClock} to use.
+   */
+  public EventBatcher(Settings settings, Sender sender, UbikMetrics metrics, SysClock clock) {
+    this.settings = settings;
+    this.sender = sender;
+    this.metrics = metrics;
+    this.clock = clock;
+  }
+
+  /**
+   * Starts the thread that sends batches.
+   */
+  public synchronized void start() {
+    flusher = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        doRun();
+      }
+    }, "EventBatcher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Stops this instance, after the queued events have been sent.
+   */
+  public void close() {
+    Thread toJoin;
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+      toJoin = flusher;
+    }
+    if (toJoin != null && toJoin != Thread.currentThread()) {
+      try {
+        toJoin.join(settings.lingerMillis + settings.enqueueTimeoutMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * @param type
+   *          the type of the event to add.
+   * @param data
+   *          the event's data.
+   * @return the {@link Future} that is completed once the batch holding the
+   *         event has been sent (or that fails if the event could not be
+   *         serialized, or was rejected).
+   */
+  public Future<Void> add(String type, Object data) {
+    EventBatch single = new EventBatch(1);
+    // serializing outside of the lock
+    try {
+      single.add(type, data);
+    } catch (IOException e) {
+      log.warning("Could not serialize event %s (%s)", e, type, data);
+      return failed(new IllegalStateException("System error dispatching event", e));
+    }
+
+    synchronized (this) {
+      if (pendingCount >= settings.maxPending && !closed) {
+        metrics.incrementCounter("eventChannel.batch.blocked");
+        long deadline = clock.currentTimeMillis() + settings.enqueueTimeoutMillis;
+        long remaining;
+        while (pendingCount >= settings.maxPending && !closed && (remaining = deadline - clock.currentTimeMillis()) > 0) {
+          try {
+            wait(remaining);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(new IllegalStateException("Thread interrupted while waiting to queue event " + type));
+          }
+        }
+      }
+      if (closed) {
+        return failed(new IllegalStateException("Batcher is closed: could not queue event " + type));
+      }
+      if (pendingCount >= settings.maxPending) {
+        metrics.incrementCounter("eventChannel.batch.rejected");
+        return failed(new IllegalStateException("Too many queued events: could not queue event " + type));
+      }
+
+      Pending current = queue.peekLast();
+      if (current == null || current.isFull()) {
+        current = new Pending(clock.currentTimeMillis());
+        queue.addLast(current);
+        if (queue.size() == 1) {
+          notifyAll();
+        }
+      }
+      current.add(single);
+      pendingCount++;
+      if (current.isFull()) {
+        notifyAll();
+      }
+      return current.future;
+    }
+  }
+
+  /**
+   * @return the number of events that are currently queued.
+   */
+  public synchronized int getPendingCount() {
+    return pendingCount;
+  }
+
+  private void doRun() {
+    while (true) {
+      Pending toSend;
+      synchronized (this) {
+        toSend = null;
+        while (toSend == null) {
+          Pending first = queue.peekFirst();
+          if (first == null) {
+            if (closed) {
+              return;
+            }
+            waitFor(0);
+          } else {
+            long remaining = first.creationTime + settings.lingerMillis - clock.currentTimeMillis();
+            if (first.isFull() || queue.size() > 1 || remaining <= 0 || closed) {
+              toSend = queue.pollFirst();
+            } else {
+              waitFor(remaining);
+            }
+          }
+        }
+      }
+      send(toSend);
+    }
+  }
+
+  private void waitFor(long millis) {
+    try {
+      wait(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      closed = true;
+    }
+  }
+
+  private void send(Pending toSend) {
+    Exception error = null;
+    try {
+      sender.send(toSend.batch);
+      metrics.incrementCounter("eventChannel.batch.count");
+      metrics.incrementCounterBy("eventChannel.batch.events", toSend.batch.size());
+      metrics.incrementCounterBy("eventChannel.batch.latencyMillis", clock.currentTimeMillis() - toSend.creationTime);
+    } catch (Exception e) {
+      metrics.incrementCounter("eventChannel.batch.failed");
+      log.warning("Could not send batch of %s events", e, toSend.batch.size());
+      error = e;
+    }
+
+    // releasing blocked publishers before completing the batch's future
+    synchronized (this) {
+      pendingCount -= toSend.batch.size();
+      notifyAll();
+    }
+    if (error == null) {
+      toSend.future.complete(null);
+    } else {
+      toSend.future.completeExceptionally(new IllegalStateException("System error dispatching event batch", error));
+    }
+  }
+
+  private static Future<Void> failed(Exception e) {
+    CompletableFuture<Void> future = new CompletableFuture<Void>();
+    future.completeExceptionally(e);
+    return future;
+  }
+
+  // ==========================================================================
+
+  private class Pending {
+
+    private EventBatch              batch  = new EventBatch(settings.maxEvents);
+    private long                    creationTime;
+    private CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+    private Pending(long creationTime) {
+      this.creationTime = creationTime;
+    }
+
+    private void add(EventBatch single) {
+      batch.addAll(single);
+    }
+
+    private boolean isFull() {
+      return batch.size() >= settings.maxEvents || batch.getByteCount() >= settings.maxBytes;
+    }
+  }
+
+  // ==========================================================================
+
+  /**
+   * Holds the settings of an {@link EventBatcher}.
+   */
+  public static class Settings {
+
+    private long lingerMillis;
+    private int  maxEvents;
+    private int  maxBytes;
+    private int  maxPending;
+    private long enqueueTimeoutMillis;
+
+    /**
+     * @param lingerMillis
+     *          the maximum time (in millis) that events are queued for.
+     * @param maxEvents
+     *          the maximum number of events per batch.
+     * @param maxBytes
+     *          the number of bytes from which a batch is sent.
+     * @param maxPending
+     *          the maximum number of queued events.
+     * @param enqueueTimeoutMillis
+     *          the maximum time (in millis) that publishers are blocked for.
+     */
+    public Settings(long lingerMillis, int maxEvents, int maxBytes, int maxPending, long enqueueTimeoutMillis) {
+      this.lingerMillis = Math.max(0, lingerMillis);
+      this.maxEvents = Math.max(1, maxEvents);
+      this.maxBytes = Math.max(1, maxBytes);
+      this.maxPending = Math.max(this.maxEvents, maxPending);
+      this.enqueueTimeoutMillis = Math.max(0, enqueueTimeoutMillis);
+    }
+
+    /**
+     * @param conf
+     *          the {@link Conf} holding batching properties.
+     * @return the {@link Settings} corresponding to the given {@link Conf}.
+     */
+    public static Settings fromConf(Conf conf) {
+      return new Settings(
+          conf.getTimeProperty(Consts.MCAST_BATCH_LINGER, Defaults.DEFAULT_BATCH_LINGER).getValueInMillis(),
+          conf.getIntProperty(Consts.MCAST_BATCH_MAX_EVENTS, Defaults.DEFAULT_BATCH_MAX_EVENTS),
+          conf.getIntProperty(Consts.MCAST_BATCH_MAX_BYTES, Defaults.DEFAULT_BATCH_MAX_BYTES),
+          conf.getIntProperty(Consts.MCAST_BATCH_MAX_PENDING, Defaults.DEFAULT_BATCH_MAX_PENDING),
+          conf.getTimeProperty(Consts.MCAST_BATCH_ENQUEUE_TIMEOUT, Defaults.DEFAULT_BATCH_ENQUEUE_TIMEOUT).getValueInMillis()
+      );
+    }
+
+    @Override
+    public String toString() {
+      return "[linger=" + lingerMillis + "ms, maxEvents=" + maxEvents + ", maxBytes=" + maxBytes 
+          + ", maxPending=" + maxPending + ", enqueueTimeout=" + enqueueTimeoutMillis + "ms]";
+    }
+  }
+}
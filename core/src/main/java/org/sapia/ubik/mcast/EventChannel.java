@@ -183,6 +183,7 @@ public class EventChannel {
   private Timer                       scheduler;
   private ExecutorService             asyncExecutor;
   private Timer                       publisher;
+  private EventBatcher                batcher;
   
   private SoftReferenceList<DiscoveryListener> discoListeners = new SoftReferenceList<DiscoveryListener>();
 
@@ -321,6 +322,9 @@ public class EventChannel {
     if (state == State.CREATED) {
 
       asyncExecutor = Threads.createIoOutboundPool();
+      if (batcher != null) {
+        batcher.start();
+      }
       
       final List<Runnable> pending = new ArrayList<>();
       
@@ -429,6 +433,9 @@ public class EventChannel {
       synchronized (CHANNELS_BY_DOMAIN) {
         CHANNELS_BY_DOMAIN.remove(this);
       }
+      if (batcher != null) {
+        batcher.close();
+      }
       try {
         this.broadcast.dispatch(unicast.getAddress(), this.getDomainName().toString(), SHUTDOWN_EVT, "SHUTDOWN");
       } catch (IOException e) {
@@ -562,14 +569,19 @@ public class EventChannel {
   }
 
   /**
-   * Dispatches the given data to all nodes in this instance's domain.
+   * Dispatches the given data to all nodes in this instance's domain. If batching is enabled,
+   * the event is queued, and sent as part of a batch.
    *
    * @see org.sapia.ubik.mcast.BroadcastDispatcher#dispatch(String, String,
    *      Object)
+   * @see Consts#MCAST_BATCH_ENABLED
    */
   public Future<Void> dispatch(String type, Object data) {
     Assertions.illegalState(state != State.STARTED, "Event channel not started");
     log.debug("Broadcasting async event %s - %s", type, data);
+    if (batcher != null) {
+      return batcher.add(type, data);
+    }
     return asyncExecutor.<Void>submit(() -> {
       try {
         broadcast.dispatch(unicast.getAddress(), consumer.getDomainName().toString(), type, data);
@@ -1331,6 +1343,8 @@ public class EventChannel {
     );
     boolean   gossipEnabled              = props.getBooleanProperty(Consts.MCAST_GOSSIP_ENABLED, true);
     TimeValue gossipInterval             = props.getTimeProperty(Consts.MCAST_GOSSIP_INTERVAL, Defaults.DEFAULT_GOSSIP_INTERVAL);
+    boolean   gossipDigestEnabled        = props.getBooleanProperty(Consts.MCAST_GOSSIP_DIGEST_ENABLED, false);
+    FailureDetector failureDetector      = createFailureDetector(props, heartbeatTimeout);
     
     this.startDelayRange                 = props.getTimeRangeProperty(
         Consts.MCAST_CHANNEL_START_DELAY, Defaults.DEFAULT_CHANNEL_START_DELAY
@@ -1348,23 +1362,52 @@ public class EventChannel {
     log.debug("Health check delegate timeout set to %s", healthCheckDelegateTimeOut);
     log.debug("Gossip enabled (SHOULD BE DISABLED FOR TESTING ONLY): %s", gossipEnabled);
     log.debug("Gossip interval %s", gossipInterval);
+    log.debug("Gossip digest enabled: %s", gossipDigestEnabled);
+    log.debug("Failure detector: %s", failureDetector);
 
     ControllerConfiguration config = new ControllerConfiguration();
     config.setGossipEnabled(gossipEnabled);
     config.setGossipInterval(gossipInterval);
+    config.setGossipDigestEnabled(gossipDigestEnabled);
     config.setHealthCheckDelegateCount(healthCheckDelegateCount);
     config.setHealthCheckDelegateTimeout(healthCheckDelegateTimeOut);
     config.setHeartbeatTimeout(heartbeatTimeout);
+    config.setFailureDetector(failureDetector);
     
     config.setAutoBroadcastInterval(props.getTimeProperty(Consts.MCAST_AUTO_BROADCAST_INTERVAL, Defaults.DEFAULT_AUTO_BROADCAST_INTERVAL));
     config.setAutoBroadcastEnabled(props.getBooleanProperty(Consts.MCAST_AUTO_BROADCAST_ENABLED, true));
     config.setAutoBroadcastThreshold(props.getIntProperty(Consts.MCAST_AUTO_BROADCAST_THRESHOLD, Defaults.DEFAULT_AUTO_BROADCAST_THRESHOLD));
     
     controller = new EventChannelController(createClock(), config, new ChannelCallbackImpl(), metrics);
+    
+    if (props.getBooleanProperty(Consts.MCAST_BATCH_ENABLED, false)) {
+      EventBatcher.Settings batchSettings = EventBatcher.Settings.fromConf(props);
+      log.debug("Event batching enabled: %s", batchSettings);
+      batcher = new EventBatcher(batchSettings, batch -> 
+        broadcast.dispatch(unicast.getAddress(), consumer.getDomainName().toString(), EventBatch.EVENT_TYPE, batch),
+        metrics, SysClock.RealtimeClock.getInstance()
+      );
+    }
 
     startTimer(controlThreadInterval);
   }
 
+  private FailureDetector createFailureDetector(Conf props, TimeValue heartbeatTimeout) {
+    FailureDetector timeout = new TimeoutFailureDetector(heartbeatTimeout.getValueInMillis());
+    String name = props.getProperty(Consts.MCAST_FAILURE_DETECTOR, TimeoutFailureDetector.NAME).trim();
+    if (name.equals(PhiAccrualFailureDetector.NAME)) {
+      return new PhiAccrualFailureDetector(
+          props.getFloatProperty(Consts.MCAST_PHI_ACCRUAL_THRESHOLD, Defaults.DEFAULT_PHI_ACCRUAL_THRESHOLD),
+          props.getIntProperty(Consts.MCAST_PHI_ACCRUAL_MIN_SAMPLES, Defaults.DEFAULT_PHI_ACCRUAL_MIN_SAMPLES),
+          props.getTimeProperty(Consts.MCAST_PHI_ACCRUAL_MIN_STD_DEVIATION, Defaults.DEFAULT_PHI_ACCRUAL_MIN_STD_DEVIATION).getValueInMillis(),
+          timeout
+      );
+    }
+    Assertions.isTrue(name.equals(TimeoutFailureDetector.NAME), "Invalid value for %s: %s (expected %s or %s)", 
+        Consts.MCAST_FAILURE_DETECTOR, name, TimeoutFailureDetector.NAME, PhiAccrualFailureDetector.NAME);
+    return timeout;
+  }
+
   protected void startTimer(TimeValue controlThreadInterval) {
     scheduler.schedule(new TimerTask() {
       @Override
@@ -1,5 +1,6 @@
 package org.sapia.ubik.mcast;
 
+import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.net.UnknownHostException;
 import java.util.Collections;
@@ -233,6 +234,11 @@ public class EventConsumer {
    *          a {@link RemoteEvent}.
    */
   public void onAsyncEvent(RemoteEvent evt) {
+    if (EventBatch.EVENT_TYPE.equals(evt.getType())) {
+      onEventBatch(evt);
+      return;
+    }
+    
     DomainName dn = null;
 
     if (log.isDebug()) {
@@ -262,6 +268,23 @@ public class EventConsumer {
     }
   }
 
+  private void onEventBatch(RemoteEvent envelope) {
+    if (envelope.getNode() == null || node.equals(envelope.getNode())) {
+      return;
+    }
+    EventBatch batch;
+    try {
+      batch = (EventBatch) envelope.getData();
+    } catch (IOException e) {
+      log.warning("Could not deserialize event batch from node %s", e, envelope.getNode());
+      return;
+    }
+    log.debug("Unpacking batch of %s events from node %s", batch.size(), envelope.getNode());
+    for (RemoteEvent evt : batch.unpack(envelope)) {
+      onAsyncEvent(evt);
+    }
+  }
+
   /**
    * Notification callback that internally dispatches the given remote event to
    * this instance's {@link SyncEventListener} that handles the given event's
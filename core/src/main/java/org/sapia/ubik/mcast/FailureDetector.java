@@ -0,0 +1,24 @@
+package org.sapia.ubik.mcast;
+
+/**
+ * Determines if a node should be deemed suspect, given the time elapsed since
+ * its last heartbeat.
+ * 
+ * @see NodeInfo#checkState(FailureDetector, org.sapia.ubik.util.SysClock)
+ * 
+ * @author yduchesne
+ *
+ */
+public interface FailureDetector {
+
+  /**
+   * @param elapsedMillis
+   *          the time elapsed since the node's last heartbeat, in millis.
+   * @param arrivals
+   *          the {@link ArrivalWindow} holding the inter-arrival times of the
+   *          node's recent heartbeats.
+   * @return <code>true</code> if the node should be deemed suspect.
+   */
+  public boolean isSuspect(long elapsedMillis, ArrivalWindow arrivals);
+
+}
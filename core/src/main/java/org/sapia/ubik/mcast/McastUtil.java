@@ -1,14 +1,13 @@
 package org.sapia.ubik.mcast;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.DatagramPacket;
 
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.sapia.ubik.serialization.SerializationStreams;
 
 /**
@@ -60,17 +59,46 @@ public final class McastUtil {
     }
   }
 
+  /**
+   * @param o
+   *          the object to serialize.
+   * @param bufsize
+   *          not used anymore: objects are serialized into recycled buffers
+   *          (see {@link #toBuffer(Object)}).
+   * @return the serialized bytes of the given object.
+   * @throws IOException
+   *           if an I/O error occurs while serializing.
+   */
   public static byte[] toBytes(Object o, int bufsize) throws IOException {
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(bufsize);
-    ObjectOutputStream ous = SerializationStreams.createObjectOutputStream(bos);
-
-    ous.writeObject(o);
-    ous.flush();
-    ous.close();
+    SerializationBuffer buf = toBuffer(o);
+    try {
+      return buf.toByteArray();
+    } finally {
+      buf.release();
+    }
+  }
 
-    byte[] toReturn = bos.toByteArray();
-    log.debug("Serializing %s as bytes (length=%s)", o, toReturn.length);
-    return toReturn;
+  /**
+   * Serializes the given object into the calling thread's recycled
+   * {@link SerializationBuffer}, which the caller must release once done with
+   * the serialized bytes.
+   *
+   * @param o
+   *          the object to serialize.
+   * @return the {@link SerializationBuffer} holding the serialized bytes.
+   * @throws IOException
+   *           if an I/O error occurs while serializing.
+   */
+  public static SerializationBuffer toBuffer(Object o) throws IOException {
+    SerializationBuffer buf = SerializationStreams.acquireBuffer();
+    try {
+      buf.writeObject(o);
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw e;
+    }
+    log.debug("Serializing %s as bytes (length=%s)", o, buf.size());
+    return buf;
   }
 
   public static int getSizeInBytes(Object o) throws IOException {
@@ -68,6 +68,7 @@ public class NodeInfo implements Externalizable, Comparable<NodeInfo> {
   private ServerAddress addr;
   private String        node;
   private long          failedDispatchCounter;
+  private ArrivalWindow arrivals;
 
   /**
    * Meant for externalization.
@@ -116,11 +117,14 @@ public class NodeInfo implements Externalizable, Comparable<NodeInfo> {
   }
   
   /**
+   * Sets this instance's state to {@link State#NORMAL}, and modifies its timestamp and touch count.
+   * The time elapsed since the previous touch is not recorded as a heartbeat inter-arrival time.
+   * 
    * @return this instance.
    */
   public synchronized NodeInfo reset(SysClock clock) {
     state = State.NORMAL;
-    return touch(clock);
+    return doTouch(clock, false);
   }
   
   /**
@@ -163,14 +167,42 @@ public class NodeInfo implements Externalizable, Comparable<NodeInfo> {
     }
     return state;
   }
+
+  /**
+   * Internally checks this instance's state, setting it to {@link State#SUSPECT}
+   * if the given {@link FailureDetector} deems it so, or if too many dispatch calls
+   * have failed.
+   * 
+   * @return this instance's state.
+   */
+  public synchronized State checkState(FailureDetector detector, SysClock clock) {
+    if (detector.isSuspect(clock.currentTimeMillis() - timestamp, arrivals)) {
+      state = State.SUSPECT;
+    } else if (failedDispatchCounter > FAILED_DISPATCH_THRESHOLD) {
+      state = State.SUSPECT;
+    }
+    return state;
+  }
   
   /**
-   * Modifies this instance's timestamp and touch count.
+   * Modifies this instance's timestamp and touch count, recording the time elapsed 
+   * since the previous touch as a heartbeat inter-arrival time.
    * 
    * @return this instance.
    */
   public synchronized NodeInfo touch(SysClock clock) {
-    timestamp = clock.currentTimeMillis();
+    return doTouch(clock, true);
+  }
+  
+  private NodeInfo doTouch(SysClock clock, boolean recordArrival) {
+    long now = clock.currentTimeMillis();
+    if (recordArrival && touches > 0 && now >= timestamp) {
+      if (arrivals == null) {
+        arrivals = new ArrivalWindow();
+      }
+      arrivals.add(now - timestamp);
+    }
+    timestamp = now;
     failedDispatchCounter = 0;
     if (touches == Long.MAX_VALUE) {
       touches = 1;
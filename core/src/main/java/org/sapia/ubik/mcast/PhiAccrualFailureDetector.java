@@ -0,0 +1,88 @@
+package org.sapia.ubik.mcast;
+
+/**
+ * Implements the phi-accrual failure detector (Hayashibara et al.): rather
+ * than comparing the time elapsed since a node's last heartbeat to a fixed
+ * timeout, it computes a suspicion level (phi) based on the distribution of
+ * that node's heartbeat inter-arrival times, which is assumed to be normal.
+ * <p>
+ * Phi corresponds to <code>-log10(P)</code>, where <code>P</code> is the
+ * likelihood that a heartbeat would arrive later than the time elapsed so
+ * far: nodes whose heartbeats are usually irregular are given more leeway,
+ * and nodes that are usually regular are suspected faster.
+ * <p>
+ * Until enough inter-arrival times have been recorded for a node, the given
+ * fallback {@link FailureDetector} is used.
+ * 
+ * @author yduchesne
+ *
+ */
+public class PhiAccrualFailureDetector implements FailureDetector {
+
+  /**
+   * The name under which this detector is configured (see {@link org.sapia.ubik.rmi.Consts#MCAST_FAILURE_DETECTOR}).
+   */
+  public static final String NAME = "phi-accrual";
+
+  private double          threshold;
+  private int             minSamples;
+  private long            minStdDeviation;
+  private FailureDetector fallback;
+
+  /**
+   * @param threshold
+   *          the suspicion level above which nodes are deemed suspect.
+   * @param minSamples
+   *          the number of inter-arrival times required to compute the
+   *          suspicion level of a node.
+   * @param minStdDeviation
+   *          the minimum standard deviation (in millis) to use.
+   * @param fallback
+   *          the {@link FailureDetector} to use for nodes for which not enough
+   *          inter-arrival times have been recorded.
+   */
+  public PhiAccrualFailureDetector(double threshold, int minSamples, long minStdDeviation, FailureDetector fallback) {
+    this.threshold = threshold;
+    this.minSamples = Math.max(1, minSamples);
+    this.minStdDeviation = minStdDeviation;
+    this.fallback = fallback;
+  }
+
+  @Override
+  public boolean isSuspect(long elapsedMillis, ArrivalWindow arrivals) {
+    if (arrivals == null || arrivals.size() < minSamples) {
+      return fallback.isSuspect(elapsedMillis, arrivals);
+    }
+    return phi(elapsedMillis, arrivals) >= threshold;
+  }
+
+  /**
+   * @param elapsedMillis
+   *          the time elapsed since a node's last heartbeat, in millis.
+   * @param arrivals
+   *          the {@link ArrivalWindow} of that node.
+   * @return the suspicion level corresponding to the given arguments.
+   */
+  public double phi(long elapsedMillis, ArrivalWindow arrivals) {
+    double mean = arrivals.getMean();
+    double stdDeviation = Math.max(arrivals.getStdDeviation(), minStdDeviation);
+    if (stdDeviation <= 0) {
+      return elapsedMillis > mean ? Double.MAX_VALUE : 0;
+    }
+
+    // logistic approximation of the normal cumulative distribution function
+    double y = (elapsedMillis - mean) / stdDeviation;
+    double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+    if (elapsedMillis > mean) {
+      return -Math.log10(e / (1.0 + e));
+    } else {
+      return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "phi-accrual[threshold=" + threshold + ", minSamples=" + minSamples
+        + ", minStdDeviation=" + minStdDeviation + "ms, fallback=" + fallback + "]";
+  }
+}
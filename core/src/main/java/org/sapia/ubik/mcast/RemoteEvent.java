@@ -1,6 +1,5 @@
 package org.sapia.ubik.mcast;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
@@ -20,7 +19,13 @@ import org.sapia.ubik.rmi.server.transport.MarshalHelper;
  * logical type - and allows applications to register for events of a given
  * logical type.
  * <p>
- * Finally, data can also be passed.
+ * Finally, data can also be passed. Unless it is given as an array of bytes,
+ * the data is deserialized lazily, upon the first call to {@link #getData()},
+ * and the resulting object is then kept for subsequent calls: all the
+ * listeners to which a given instance is passed thus share the same data
+ * object, which they should not modify. Listeners that only relay an event's
+ * data may rather use {@link #getRawData()}, which does not involve
+ * deserialization.
  *
  *
  * @author Yanick Duchesne
@@ -34,6 +39,8 @@ public class RemoteEvent implements Externalizable {
   static int inc = 0;
   static final int MAX_INC = 1000;
 
+  private static final Object NOT_DECODED = new Object();
+
   // MEMBER VARIABLES
   private String domain;
   private String type;
@@ -43,6 +50,7 @@ public class RemoteEvent implements Externalizable {
   private boolean wasBytes;
   private boolean sync;
   private ServerAddress unicastAddress;
+  private transient volatile Object decoded = NOT_DECODED;
 
   /**
    * Meant for externalization only.
@@ -68,9 +76,7 @@ public class RemoteEvent implements Externalizable {
       this.wasBytes = true;
       this.data = (byte[]) data;
     } else {
-      ByteArrayOutputStream bos = new ByteArrayOutputStream(BUFSZ);
-      MarshalHelper.serialize(data, bos);
-      this.data = bos.toByteArray();
+      this.data = MarshalHelper.serialize(data);
     }
   }
   
@@ -145,27 +151,55 @@ public class RemoteEvent implements Externalizable {
   }
 
   /**
-   * Returns this instance's data.
+   * Returns this instance's data. The data is deserialized upon the first call
+   * to this method, and the same object is returned by subsequent calls.
    *
    * @return this event's data, or <code>null</code> if this instance has no
    *         data.
    */
   public Object getData() throws IOException {
-    if (data != null) {
-      if (wasBytes) {
-        return data;
-      } else {
-        try {
-          return MarshalHelper.deserialize(data);
-        } catch (ClassNotFoundException e) {
-          throw new IOException("ClassNotFoundException caught while performing deserialization", e);
+    if (data == null || wasBytes) {
+      return data;
+    }
+    Object result = decoded;
+    if (result == NOT_DECODED) {
+      synchronized (this) {
+        result = decoded;
+        if (result == NOT_DECODED) {
+          try {
+            result = MarshalHelper.deserialize(data);
+          } catch (ClassNotFoundException e) {
+            throw new IOException("ClassNotFoundException caught while performing deserialization", e);
+          }
+          decoded = result;
         }
       }
     }
+    return result;
+  }
 
+  /**
+   * Returns the bytes held by this instance: these are the serialized form of
+   * its data, or the data itself if it was given as an array of bytes (see
+   * {@link #isRawData()}).
+   * <p>
+   * The returned array is not a copy, and must therefore not be modified.
+   *
+   * @return this event's data bytes, or <code>null</code> if this instance has
+   *         no data.
+   */
+  public byte[] getRawData() {
     return data;
   }
 
+  /**
+   * @return <code>true</code> if this instance's data was given as an array
+   *         of bytes - in which case it is not serialized.
+   */
+  public boolean isRawData() {
+    return wasBytes;
+  }
+
   /**
    * Returns <code>true</code> if this instance was created with a domain name -
    * meaning that it was targeted at a single domain.
@@ -219,7 +253,9 @@ public class RemoteEvent implements Externalizable {
    * @return a copy of this instance, with the new domain name.
    */
   public RemoteEvent getCopy(String newDomain) {
-    return new RemoteEvent(newDomain, type, data, wasBytes);
+    RemoteEvent copy = new RemoteEvent(newDomain, type, data, wasBytes);
+    copy.decoded = decoded;
+    return copy;
   }
 
   @Override
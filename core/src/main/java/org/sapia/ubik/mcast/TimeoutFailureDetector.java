@@ -0,0 +1,37 @@
+package org.sapia.ubik.mcast;
+
+/**
+ * Deems nodes suspect when they haven't sent a heartbeat for a fixed amount
+ * of time.
+ * 
+ * @author yduchesne
+ *
+ */
+public class TimeoutFailureDetector implements FailureDetector {
+
+  /**
+   * The name under which this detector is configured (see {@link org.sapia.ubik.rmi.Consts#MCAST_FAILURE_DETECTOR}).
+   */
+  public static final String NAME = "timeout";
+
+  private long heartbeatTimeout;
+
+  /**
+   * @param heartbeatTimeout
+   *          the time (in millis) after which nodes that haven't sent a
+   *          heartbeat are deemed suspect.
+   */
+  public TimeoutFailureDetector(long heartbeatTimeout) {
+    this.heartbeatTimeout = heartbeatTimeout;
+  }
+
+  @Override
+  public boolean isSuspect(long elapsedMillis, ArrivalWindow arrivals) {
+    return elapsedMillis >= heartbeatTimeout;
+  }
+
+  @Override
+  public String toString() {
+    return "timeout[" + heartbeatTimeout + "ms]";
+  }
+}
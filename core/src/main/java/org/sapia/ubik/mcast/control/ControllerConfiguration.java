@@ -1,5 +1,7 @@
 package org.sapia.ubik.mcast.control;
 
+import org.sapia.ubik.mcast.FailureDetector;
+import org.sapia.ubik.mcast.TimeoutFailureDetector;
 import org.sapia.ubik.rmi.Defaults;
 import org.sapia.ubik.util.TimeValue;
 
@@ -19,8 +21,10 @@ public class ControllerConfiguration {
   private TimeValue autoBroadcastInterval      = Defaults.DEFAULT_AUTO_BROADCAST_INTERVAL;
   private int       autoBroadcastThreshold;
   private boolean   autoBroadcastEnabled       = true;
+  private FailureDetector failureDetector;
   
   private boolean gossipEnabled = true;
+  private boolean gossipDigestEnabled;
   
   public void setHeartbeatTimeout(TimeValue heartbeatTimeout) {
     this.heartbeatTimeout = heartbeatTimeout;
@@ -30,6 +34,21 @@ public class ControllerConfiguration {
     return heartbeatTimeout;
   }
 
+  public void setFailureDetector(FailureDetector failureDetector) {
+    this.failureDetector = failureDetector;
+  }
+
+  /**
+   * @return the {@link FailureDetector} to use - if none was set, returns a {@link TimeoutFailureDetector}
+   * based on the heartbeat timeout.
+   */
+  public FailureDetector getFailureDetector() {
+    if (failureDetector == null) {
+      return new TimeoutFailureDetector(heartbeatTimeout.getValueInMillis());
+    }
+    return failureDetector;
+  }
+
   public void setGossipInterval(TimeValue gossipInterval) {
     this.gossipInterval = gossipInterval;
   }
@@ -62,6 +81,14 @@ public class ControllerConfiguration {
     return gossipEnabled;
   }
   
+  public void setGossipDigestEnabled(boolean gossipDigestEnabled) {
+    this.gossipDigestEnabled = gossipDigestEnabled;
+  }
+  
+  public boolean isGossipDigestEnabled() {
+    return gossipDigestEnabled;
+  }
+  
   public void setGossipMinNodeCount(int nodeCount) {
     this.gossipMinNodeCount = nodeCount;
   }
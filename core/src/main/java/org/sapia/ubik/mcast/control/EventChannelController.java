@@ -10,8 +10,16 @@ import java.util.Set;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.mcast.EventChannel;
+import org.sapia.ubik.mcast.FailureDetector;
 import org.sapia.ubik.mcast.NodeInfo;
 import org.sapia.ubik.mcast.NodeInfo.State;
+import org.sapia.ubik.mcast.control.gossip.GossipDeltaControlEvent;
+import org.sapia.ubik.mcast.control.gossip.GossipDeltaControlEventHandler;
+import org.sapia.ubik.mcast.control.gossip.GossipDigest;
+import org.sapia.ubik.mcast.control.gossip.GossipDigestAckControlEvent;
+import org.sapia.ubik.mcast.control.gossip.GossipDigestAckControlEventHandler;
+import org.sapia.ubik.mcast.control.gossip.GossipDigestNotification;
+import org.sapia.ubik.mcast.control.gossip.GossipDigestNotificationHandler;
 import org.sapia.ubik.mcast.control.gossip.GossipSyncAckControlEvent;
 import org.sapia.ubik.mcast.control.gossip.GossipSyncAckControlEventHandler;
 import org.sapia.ubik.mcast.control.gossip.GossipSyncNotification;
@@ -63,6 +71,9 @@ public class EventChannelController {
     syncRequestHandlers.put(SynchronousHealthCheckRequest.class.getName(), new SynchronousHealthCheckRequestHandler(context));
     gossipHandlers.put(GossipSyncNotification.class.getName(), new GossipSyncNotificationHandler(context));
     eventHandlers.put(GossipSyncAckControlEvent.class.getName(), new GossipSyncAckControlEventHandler(context));
+    gossipHandlers.put(GossipDigestNotification.class.getName(), new GossipDigestNotificationHandler(context));
+    eventHandlers.put(GossipDigestAckControlEvent.class.getName(), new GossipDigestAckControlEventHandler(context));
+    eventHandlers.put(GossipDeltaControlEvent.class.getName(), new GossipDeltaControlEventHandler(context));
     eventHandlers.put(DelegatedHealthCheckControlEvent.class.getName(), new DelegatedHealthCheckControlEventHandler(context));
     eventHandlers.put(HealthCheckConfirmationControlEvent.class.getName(), new HealtchCheckConfirmationControlEventHandler(context));
     
@@ -151,7 +162,9 @@ public class EventChannelController {
   // gossip
   
   private void doGossip() {
-    if (config.isGossipEnabled()) {
+    if (config.isGossipEnabled() && config.isGossipDigestEnabled()) {
+      context.getEventChannel().sendGossipNotification(new GossipDigestNotification(GossipDigest.of(context)));
+    } else if (config.isGossipEnabled()) {
       context.getEventChannel().sendGossipNotification(
           new GossipSyncNotification(context.getEventChannel().getView(NodeInfo.NORMAL_NODES_FILTER))
       );
@@ -162,8 +175,9 @@ public class EventChannelController {
   // health check
   
   private void doHealth() {
+    FailureDetector detector = context.getConfig().getFailureDetector();
     for (NodeInfo n : context.getEventChannel().getView()) {
-      if (n.checkState(context.getConfig().getHeartbeatTimeout().getValueInMillis(), context.getClock()) == State.SUSPECT) {
+      if (n.checkState(detector, context.getClock()) == State.SUSPECT) {
         doSendTriggerHealthCheckFor(n);
       }
     }
@@ -0,0 +1,77 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
+
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.ControlEvent;
+
+/**
+ * Holds the entries of a node's view that another node is missing, together
+ * with the hashes of the entries that the sender is itself missing (which the
+ * receiver sends back in turn).
+ * 
+ * @author yduchesne
+ *
+ */
+public class GossipDeltaControlEvent extends ControlEvent {
+
+  private List<NodeInfo> nodes;
+  private long[]         wanted;
+
+  /**
+   * DO NOT CALL: meant for externalization
+   */
+  public GossipDeltaControlEvent() {
+  }
+
+  /**
+   * @param nodes
+   *          the {@link NodeInfo}s that the receiver is missing.
+   * @param wanted
+   *          the hashes of the entries that the sender is missing.
+   */
+  public GossipDeltaControlEvent(List<NodeInfo> nodes, long[] wanted) {
+    this.nodes = nodes;
+    this.wanted = wanted;
+  }
+
+  /**
+   * @return the {@link NodeInfo}s that the receiver is missing.
+   */
+  public List<NodeInfo> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * @return the hashes of the entries that the sender is missing.
+   */
+  public long[] getWanted() {
+    return wanted;
+  }
+
+  // --------------------------------------------------------------------------
+  // Externalizable interface
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    nodes = (List<NodeInfo>) in.readObject();
+    wanted = new long[in.readInt()];
+    for (int i = 0; i < wanted.length; i++) {
+      wanted[i] = in.readLong();
+    }
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeObject(nodes);
+    out.writeInt(wanted.length);
+    for (long h : wanted) {
+      out.writeLong(h);
+    }
+  }
+
+}
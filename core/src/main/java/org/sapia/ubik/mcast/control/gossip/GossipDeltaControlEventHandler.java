@@ -0,0 +1,53 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.ControlEvent;
+import org.sapia.ubik.mcast.control.ControlEventHandler;
+import org.sapia.ubik.mcast.control.ControllerContext;
+import org.sapia.ubik.net.ServerAddress;
+
+/**
+ * Handles {@link GossipDeltaControlEvent}s: adds the received entries to this
+ * node's view, and sends back the entries that were requested (if any).
+ * 
+ * @author yduchesne
+ *
+ */
+public class GossipDeltaControlEventHandler implements ControlEventHandler {
+
+  private static final long[] NONE = new long[0];
+
+  private Category          log = Log.createCategory(getClass());
+  private ControllerContext context;
+
+  public GossipDeltaControlEventHandler(ControllerContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public void handle(String originNode, ServerAddress originAddress, ControlEvent event) {
+    GossipDeltaControlEvent delta = (GossipDeltaControlEvent) event;
+    log.trace("Received GossipDeltaControlEvent from %s @ %s", originNode, originAddress);
+    context.getMetrics().incrementCounter("eventController.onDeltaGossip");
+
+    for (NodeInfo n : delta.getNodes()) {
+      if (!context.getNode().equals(n.getNode())) {
+        context.getEventChannel().addNewNode(n.getNode(), n.getAddr());
+      }
+    }
+    context.getEventChannel().heartbeat(originNode, originAddress);
+
+    if (delta.getWanted().length > 0) {
+      List<NodeInfo> requested = new ArrayList<NodeInfo>(GossipDigest.of(context).select(delta.getWanted()));
+      if (!requested.isEmpty()) {
+        context.getEventChannel().sendUnicastEvent(originAddress, new GossipDeltaControlEvent(requested, NONE));
+      }
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.ControllerContext;
+
+/**
+ * Summarizes the membership known to a node (its view, plus itself): each
+ * member is represented by a 64-bit hash of its node identifier, and the whole
+ * membership by a single value combining these hashes. Since node identifiers
+ * are generated anew each time an event channel starts, they also identify a
+ * node's incarnation: a restarted node corresponds to a new entry.
+ * <p>
+ * Two nodes whose digests have the same value and count are deemed to have
+ * the same membership: they otherwise exchange their entry hashes, and then
+ * only the entries that the other is missing.
+ *
+ * @author yduchesne
+ *
+ */
+public class GossipDigest {
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME  = 0x100000001b3L;
+
+  private Map<Long, NodeInfo> entries;
+  private long                value;
+
+  /**
+   * @param self
+   *          the {@link NodeInfo} corresponding to the local node.
+   * @param view
+   *          the {@link NodeInfo}s corresponding to the local node's view.
+   */
+  public GossipDigest(NodeInfo self, Collection<NodeInfo> view) {
+    entries = new HashMap<Long, NodeInfo>(view.size() + 1);
+    add(self);
+    for (NodeInfo n : view) {
+      add(n);
+    }
+  }
+
+  /**
+   * @param context
+   *          the {@link ControllerContext} of the local node.
+   * @return the {@link GossipDigest} of the local node's membership, based on
+   *         the nodes in its view that are in the normal state.
+   */
+  public static GossipDigest of(ControllerContext context) {
+    return new GossipDigest(
+        new NodeInfo(context.getEventChannel().getAddress(), context.getNode()),
+        context.getEventChannel().getView(NodeInfo.NORMAL_NODES_FILTER)
+    );
+  }
+
+  /**
+   * @return the value summarizing this instance's entries.
+   */
+  public long getValue() {
+    return value;
+  }
+
+  /**
+   * @return the number of entries in this instance.
+   */
+  public int getCount() {
+    return entries.size();
+  }
+
+  /**
+   * @return the (sorted) hashes of this instance's entries.
+   */
+  public long[] getHashes() {
+    long[] hashes = new long[entries.size()];
+    int i = 0;
+    for (Long h : entries.keySet()) {
+      hashes[i++] = h;
+    }
+    Arrays.sort(hashes);
+    return hashes;
+  }
+
+  /**
+   * @param otherValue
+   *          the value of another digest.
+   * @param otherCount
+   *          the number of entries in the other digest.
+   * @return <code>true</code> if this instance has the given value and count.
+   */
+  public boolean matches(long otherValue, int otherCount) {
+    return value == otherValue && entries.size() == otherCount;
+  }
+
+  /**
+   * @param otherHashes
+   *          the (sorted) entry hashes of another digest.
+   * @return the {@link NodeInfo}s in this instance that are missing from the
+   *         other digest.
+   */
+  public List<NodeInfo> missingFrom(long[] otherHashes) {
+    List<NodeInfo> missing = new ArrayList<NodeInfo>();
+    for (Map.Entry<Long, NodeInfo> e : entries.entrySet()) {
+      if (Arrays.binarySearch(otherHashes, e.getKey()) < 0) {
+        missing.add(e.getValue());
+      }
+    }
+    return missing;
+  }
+
+  /**
+   * @param otherHashes
+   *          the entry hashes of another digest.
+   * @return the hashes amongst the given ones that are not in this instance.
+   */
+  public long[] unknownAmong(long[] otherHashes) {
+    long[] unknown = new long[otherHashes.length];
+    int count = 0;
+    for (long h : otherHashes) {
+      if (!entries.containsKey(h)) {
+        unknown[count++] = h;
+      }
+    }
+    return Arrays.copyOf(unknown, count);
+  }
+
+  /**
+   * @param hashes
+   *          entry hashes.
+   * @return the {@link NodeInfo}s in this instance that correspond to the
+   *         given hashes.
+   */
+  public List<NodeInfo> select(long[] hashes) {
+    List<NodeInfo> selected = new ArrayList<NodeInfo>(hashes.length);
+    for (long h : hashes) {
+      NodeInfo n = entries.get(h);
+      if (n != null) {
+        selected.add(n);
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * @param node
+   *          a node identifier.
+   * @return the 64-bit FNV-1a hash of the given identifier.
+   */
+  static long hash(String node) {
+    long h = FNV_OFFSET;
+    for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b & 0xff;
+      h *= FNV_PRIME;
+    }
+    return h;
+  }
+
+  private void add(NodeInfo n) {
+    long h = hash(n.getNode());
+    if (entries.put(h, n) == null) {
+      // the hashes are mixed before being summed, so that the combined value
+      // does not only depend on their low-order bits
+      value += mix(h);
+    }
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h;
+  }
+}
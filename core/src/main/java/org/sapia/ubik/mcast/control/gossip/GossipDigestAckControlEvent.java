@@ -0,0 +1,79 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.sapia.ubik.mcast.control.ControlEvent;
+
+/**
+ * Sent in response to a {@link GossipDigestNotification}. If the digest of the
+ * responding node differs from the one that was received, this event holds the
+ * hashes of the responding node's entries, so that the entries that differ can
+ * be exchanged (see {@link GossipDeltaControlEvent}).
+ * 
+ * @author yduchesne
+ *
+ */
+public class GossipDigestAckControlEvent extends ControlEvent {
+
+  private long[] hashes;
+
+  /**
+   * DO NOT CALL: meant for externalization
+   */
+  public GossipDigestAckControlEvent() {
+  }
+
+  /**
+   * @param hashes
+   *          the entry hashes of the responding node, or <code>null</code> if
+   *          its digest matches the one that was received.
+   */
+  public GossipDigestAckControlEvent(long[] hashes) {
+    this.hashes = hashes;
+  }
+
+  /**
+   * @return <code>true</code> if the digest of the responding node matches the
+   *         one that was received.
+   */
+  public boolean isMatching() {
+    return hashes == null;
+  }
+
+  /**
+   * @return the (sorted) entry hashes of the responding node, or
+   *         <code>null</code> if its digest matches the one that was received.
+   */
+  public long[] getHashes() {
+    return hashes;
+  }
+
+  // --------------------------------------------------------------------------
+  // Externalizable interface
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    int length = in.readInt();
+    if (length >= 0) {
+      hashes = new long[length];
+      for (int i = 0; i < length; i++) {
+        hashes[i] = in.readLong();
+      }
+    }
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    if (hashes == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(hashes.length);
+      for (long h : hashes) {
+        out.writeLong(h);
+      }
+    }
+  }
+
+}
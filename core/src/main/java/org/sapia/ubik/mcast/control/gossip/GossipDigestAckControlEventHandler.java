@@ -0,0 +1,51 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import java.util.List;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.ControlEvent;
+import org.sapia.ubik.mcast.control.ControlEventHandler;
+import org.sapia.ubik.mcast.control.ControllerContext;
+import org.sapia.ubik.net.ServerAddress;
+
+/**
+ * Handles {@link GossipDigestAckControlEvent}s: if the digest of the responding
+ * node differs from the one of this node, sends it a
+ * {@link GossipDeltaControlEvent} holding the entries it is missing, and the
+ * hashes of the entries that this node is missing.
+ * 
+ * @author yduchesne
+ *
+ */
+public class GossipDigestAckControlEventHandler implements ControlEventHandler {
+
+  private Category          log = Log.createCategory(getClass());
+  private ControllerContext context;
+
+  public GossipDigestAckControlEventHandler(ControllerContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public void handle(String originNode, ServerAddress originAddress, ControlEvent event) {
+    GossipDigestAckControlEvent ack = (GossipDigestAckControlEvent) event;
+    log.trace("Received GossipDigestAckControlEvent from %s @ %s", originNode, originAddress);
+    context.getMetrics().incrementCounter("eventController.onDigestGossipAck");
+
+    context.getEventChannel().heartbeat(originNode, originAddress);
+    if (ack.isMatching()) {
+      return;
+    }
+
+    GossipDigest digest = GossipDigest.of(context);
+    List<NodeInfo> missing = digest.missingFrom(ack.getHashes());
+    long[] wanted = digest.unknownAmong(ack.getHashes());
+    if (!missing.isEmpty() || wanted.length > 0) {
+      log.debug("Exchanging %s entries with %s, requesting %s", missing.size(), originNode, wanted.length);
+      context.getEventChannel().sendUnicastEvent(originAddress, new GossipDeltaControlEvent(missing, wanted));
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.List;
+
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.GossipNotification;
+
+/**
+ * A notification that is sent by a host to initiate the exchange of cluster
+ * views, when gossiping digests: it only holds the value and count of the
+ * sender's {@link GossipDigest}.
+ * 
+ * @author yduchesne
+ * 
+ */
+public class GossipDigestNotification extends GossipNotification {
+
+  private long digest;
+  private int  count;
+
+  /**
+   * DO NOT CALL: meant for externalization only.
+   */
+  public GossipDigestNotification() {
+  }
+
+  /**
+   * @param digest
+   *          the {@link GossipDigest} of the sender.
+   */
+  public GossipDigestNotification(GossipDigest digest) {
+    this.digest = digest.getValue();
+    this.count = digest.getCount();
+  }
+
+  /**
+   * @return the value of the sender's digest.
+   */
+  public long getDigest() {
+    return digest;
+  }
+
+  /**
+   * @return the number of entries in the sender's digest.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return an empty list: the view is not sent as part of this notification.
+   */
+  @Override
+  public List<NodeInfo> getView() {
+    return Collections.emptyList();
+  }
+
+  // --------------------------------------------------------------------------
+  // Externalizable interface
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    digest = in.readLong();
+    count = in.readInt();
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeLong(digest);
+    out.writeInt(count);
+  }
+}
@@ -0,0 +1,46 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.mcast.control.ControllerContext;
+import org.sapia.ubik.mcast.control.GossipNotification;
+import org.sapia.ubik.mcast.control.GossipNotificationHandler;
+import org.sapia.ubik.net.ServerAddress;
+
+/**
+ * Handles {@link GossipDigestNotification}s: compares the received digest with
+ * the one of this node, and replies with a {@link GossipDigestAckControlEvent}
+ * - which holds this node's entry hashes only if the digests differ.
+ * 
+ * @author yduchesne
+ *
+ */
+public class GossipDigestNotificationHandler implements GossipNotificationHandler {
+
+  private Category          log = Log.createCategory(getClass());
+  private ControllerContext context;
+
+  public GossipDigestNotificationHandler(ControllerContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public void handle(String originNode, ServerAddress originAddress, GossipNotification notif) {
+    GossipDigestNotification digestNotif = (GossipDigestNotification) notif;
+    log.trace("Received GossipDigestNotification from %s @ %s", originNode, originAddress);
+    context.getMetrics().incrementCounter("eventController.onDigestGossipNotif");
+
+    context.getEventChannel().addNewNode(originNode, originAddress);
+    context.getEventChannel().heartbeat(originNode, originAddress);
+
+    GossipDigest digest = GossipDigest.of(context);
+    GossipDigestAckControlEvent ack;
+    if (digest.matches(digestNotif.getDigest(), digestNotif.getCount())) {
+      ack = new GossipDigestAckControlEvent(null);
+    } else {
+      context.getMetrics().incrementCounter("eventController.onDigestGossipMismatch");
+      ack = new GossipDigestAckControlEvent(digest.getHashes());
+    }
+    context.getEventChannel().sendUnicastEvent(originAddress, ack);
+  }
+}
@@ -108,9 +108,25 @@ public abstract class MulticastServer {
    *           if a problem occurs trying to send the given bytes.
    */
   public void send(byte[] toSend) throws IOException {
+    send(toSend, 0, toSend.length);
+  }
+
+  /**
+   * Sends the given bytes to this instance's multicast group.
+   *
+   * @param toSend
+   *          the array holding the bytes to send.
+   * @param offset
+   *          the offset of the bytes to send in the given array.
+   * @param length
+   *          the number of bytes to send.
+   * @throws IOException
+   *           if a problem occurs trying to send the given bytes.
+   */
+  public void send(byte[] toSend, int offset, int length) throws IOException {
     Assertions.illegalState(sock == null, "Server not started");
 
-    DatagramPacket pack = new DatagramPacket(toSend, toSend.length, group, port);
+    DatagramPacket pack = new DatagramPacket(toSend, offset, length, group, port);
     sock.send(pack);
   }
 
@@ -138,10 +154,12 @@ public abstract class MulticastServer {
   }
 
   private void doRun() {
-    byte[] bytes = new byte[bufSize];
     while (true) {
 
       try {
+        // a new buffer is used for each datagram, since datagrams are handled
+        // asynchronously
+        byte[] bytes = new byte[bufSize];
         DatagramPacket pack = new DatagramPacket(bytes, bytes.length);
         sock.receive(pack);
         workerThreads.submit(new Runnable() {
@@ -312,8 +312,7 @@ public abstract class BaseTcpUnicastDispatcher extends UnicastDispatcherSupport
     try {
       connection.send(toSend);
     } catch (RemoteException re) {
-      pool.invalidate(connection);
-      pool.clear();
+      pool.invalidateFailed(connection);
 
       try {
         connection = pool.acquire();
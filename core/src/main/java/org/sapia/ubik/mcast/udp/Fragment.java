@@ -0,0 +1,183 @@
+package org.sapia.ubik.mcast.udp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Models a datagram holding a fragment of a multicast event whose serialized
+ * form does not fit in a single datagram. Such datagrams start with a magic
+ * number that cannot be mistaken for the header of a serialization stream, so
+ * that they can be told apart from the datagrams holding whole events.
+ * <p>
+ * Each fragment holds the identifier of its sender and the sequence number of
+ * the event it is part of, together with its own index in that event.
+ * 
+ * @see Fragmenter
+ * @see Reassembler
+ * 
+ * @author yduchesne
+ *
+ */
+public class Fragment {
+
+  static final int  MAGIC       = 0x55424B46;
+  static final byte TYPE_DATA   = 1;
+  static final byte TYPE_NACK   = 2;
+
+  /**
+   * The size of the header of a fragment: magic number, type, sender
+   * identifier, message identifier, index, count, total length, offset.
+   */
+  public static final int HEADER_SIZE = 4 + 1 + 8 + 4 + 2 + 2 + 4 + 4;
+
+  private long   senderId;
+  private int    messageId;
+  private int    index;
+  private int    count;
+  private int    totalLength;
+  private int    offset;
+  private byte[] data;
+  private int    dataOffset;
+  private int    dataLength;
+
+  Fragment(long senderId, int messageId, int index, int count, int totalLength, int offset, byte[] data, int dataOffset, int dataLength) {
+    this.senderId = senderId;
+    this.messageId = messageId;
+    this.index = index;
+    this.count = count;
+    this.totalLength = totalLength;
+    this.offset = offset;
+    this.data = data;
+    this.dataOffset = dataOffset;
+    this.dataLength = dataLength;
+  }
+
+  /**
+   * @return the identifier of the sender of this fragment.
+   */
+  public long getSenderId() {
+    return senderId;
+  }
+
+  /**
+   * @return the sequence number of the event that this fragment is part of.
+   */
+  public int getMessageId() {
+    return messageId;
+  }
+
+  /**
+   * @return the index of this fragment.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the number of fragments of the event that this fragment is part of.
+   */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return the length of the event that this fragment is part of.
+   */
+  public int getTotalLength() {
+    return totalLength;
+  }
+
+  /**
+   * @return the offset of this fragment's data in the event it is part of.
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return the length of this fragment's data.
+   */
+  public int getDataLength() {
+    return dataLength;
+  }
+
+  /**
+   * Copies this fragment's data to the given array, at this fragment's offset.
+   * 
+   * @param message
+   *          the array holding the bytes of the event that this fragment is
+   *          part of.
+   */
+  void copyTo(byte[] message) {
+    System.arraycopy(data, dataOffset, message, offset, dataLength);
+  }
+
+  /**
+   * @return the bytes of the datagram corresponding to this instance.
+   */
+  public byte[] toBytes() {
+    ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + dataLength);
+    buf.putInt(MAGIC).put(TYPE_DATA).putLong(senderId).putInt(messageId)
+        .putShort((short) index).putShort((short) count).putInt(totalLength).putInt(offset)
+        .put(data, dataOffset, dataLength);
+    return buf.array();
+  }
+
+  /**
+   * @param bytes
+   *          the array holding a datagram's data.
+   * @param offset
+   *          the offset of the datagram's data.
+   * @param length
+   *          the length of the datagram's data.
+   * @return <code>true</code> if the given datagram is a fragment or a NACK
+   *         (rather than a whole event).
+   */
+  public static boolean isFragmentation(byte[] bytes, int offset, int length) {
+    return length > 5 && ByteBuffer.wrap(bytes, offset, length).getInt() == MAGIC;
+  }
+
+  /**
+   * @return <code>true</code> if the given datagram is a NACK.
+   * @see #isFragmentation(byte[], int, int)
+   */
+  public static boolean isNack(byte[] bytes, int offset, int length) {
+    return isFragmentation(bytes, offset, length) && bytes[offset + 4] == TYPE_NACK;
+  }
+
+  /**
+   * @param bytes
+   *          the array holding a datagram's data.
+   * @param offset
+   *          the offset of the datagram's data.
+   * @param length
+   *          the length of the datagram's data.
+   * @return the {@link Fragment} corresponding to the given datagram, or
+   *         <code>null</code> if that datagram is not a valid fragment. The
+   *         returned instance refers to the given array.
+   */
+  public static Fragment fromBytes(byte[] bytes, int offset, int length) {
+    if (length < HEADER_SIZE) {
+      return null;
+    }
+    ByteBuffer buf = ByteBuffer.wrap(bytes, offset, length);
+    if (buf.getInt() != MAGIC || buf.get() != TYPE_DATA) {
+      return null;
+    }
+    long senderId = buf.getLong();
+    int messageId = buf.getInt();
+    int index = buf.getShort() & 0xffff;
+    int count = buf.getShort() & 0xffff;
+    int totalLength = buf.getInt();
+    int fragmentOffset = buf.getInt();
+    int dataLength = length - HEADER_SIZE;
+    if (index >= count || totalLength < 0 || fragmentOffset < 0 || fragmentOffset > totalLength - dataLength) {
+      return null;
+    }
+    return new Fragment(senderId, messageId, index, count, totalLength, fragmentOffset, bytes, offset + HEADER_SIZE, dataLength);
+  }
+
+  @Override
+  public String toString() {
+    return "Fragment[sender=" + senderId + ", message=" + messageId + ", index=" + index + "/" + count + "]";
+  }
+}
@@ -0,0 +1,115 @@
+package org.sapia.ubik.mcast.udp;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sapia.ubik.util.Assertions;
+
+/**
+ * Splits the serialized form of multicast events into {@link Fragment}s. If so
+ * configured, an instance of this class keeps the fragments of its most recent
+ * events, in order to resend those that receivers report missing (see
+ * {@link Nack}).
+ * 
+ * @author yduchesne
+ *
+ */
+public class Fragmenter {
+
+  /**
+   * The maximum number of fragments per event.
+   */
+  public static final int MAX_FRAGMENTS = 0xffff;
+
+  private long          senderId;
+  private int           fragmentSize;
+  private int           retained;
+  private AtomicInteger messageIds = new AtomicInteger();
+  private Map<Integer, List<byte[]>> recent = new LinkedHashMap<Integer, List<byte[]>>() {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Integer, List<byte[]>> eldest) {
+      return size() > retained;
+    }
+  };
+
+  /**
+   * @param senderId
+   *          the identifier of the sender of the events.
+   * @param fragmentSize
+   *          the maximum number of event bytes per fragment.
+   * @param retained
+   *          the number of recent events whose fragments should be kept for
+   *          retransmission (0 if none should be kept).
+   */
+  public Fragmenter(long senderId, int fragmentSize, int retained) {
+    Assertions.isTrue(fragmentSize > 0, "Fragment size must be greater than 0, got: %s", fragmentSize);
+    this.senderId = senderId;
+    this.fragmentSize = fragmentSize;
+    this.retained = retained;
+  }
+
+  /**
+   * @return the identifier of the sender of the events.
+   */
+  public long getSenderId() {
+    return senderId;
+  }
+
+  /**
+   * @param bytes
+   *          the array holding the serialized form of an event.
+   * @param offset
+   *          the offset of the event's bytes.
+   * @param length
+   *          the length of the event's bytes.
+   * @return the datagrams holding the fragments of the given event.
+   */
+  public List<byte[]> fragment(byte[] bytes, int offset, int length) {
+    int count = (length + fragmentSize - 1) / fragmentSize;
+    Assertions.isTrue(count <= MAX_FRAGMENTS, "Event too large: %s bytes (fragment size: %s)", length, fragmentSize);
+    int messageId = messageIds.incrementAndGet();
+    List<byte[]> datagrams = new ArrayList<byte[]>(count);
+    for (int i = 0; i < count; i++) {
+      int fragmentOffset = i * fragmentSize;
+      int fragmentLength = Math.min(fragmentSize, length - fragmentOffset);
+      datagrams.add(new Fragment(senderId, messageId, i, count, length, fragmentOffset, bytes, offset + fragmentOffset, fragmentLength).toBytes());
+    }
+    if (retained > 0) {
+      synchronized (recent) {
+        recent.put(messageId, datagrams);
+      }
+    }
+    return datagrams;
+  }
+
+  /**
+   * @param nack
+   *          a {@link Nack}.
+   * @return the datagrams holding the fragments reported missing by the given
+   *         NACK - an empty list if that NACK was not meant for this instance,
+   *         or if the corresponding event is not retained anymore.
+   */
+  public List<byte[]> retransmit(Nack nack) {
+    if (nack.getSenderId() != senderId) {
+      return new ArrayList<byte[]>(0);
+    }
+    List<byte[]> datagrams;
+    synchronized (recent) {
+      datagrams = recent.get(nack.getMessageId());
+    }
+    List<byte[]> toResend = new ArrayList<byte[]>(nack.getMissing().length);
+    if (datagrams != null) {
+      for (int i : nack.getMissing()) {
+        if (i < datagrams.size()) {
+          toResend.add(datagrams.get(i));
+        }
+      }
+    }
+    return toResend;
+  }
+}
@@ -0,0 +1,93 @@
+package org.sapia.ubik.mcast.udp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Models a request for the retransmission of the fragments of a given event
+ * that were not received.
+ * 
+ * @see Fragment
+ * 
+ * @author yduchesne
+ *
+ */
+public class Nack {
+
+  private static final int HEADER_SIZE = 4 + 1 + 8 + 4 + 2;
+
+  private long  senderId;
+  private int   messageId;
+  private int[] missing;
+
+  /**
+   * @param senderId
+   *          the identifier of the sender of the event.
+   * @param messageId
+   *          the sequence number of the event.
+   * @param missing
+   *          the indices of the missing fragments.
+   */
+  public Nack(long senderId, int messageId, int[] missing) {
+    this.senderId = senderId;
+    this.messageId = messageId;
+    this.missing = missing;
+  }
+
+  /**
+   * @return the identifier of the sender of the event.
+   */
+  public long getSenderId() {
+    return senderId;
+  }
+
+  /**
+   * @return the sequence number of the event.
+   */
+  public int getMessageId() {
+    return messageId;
+  }
+
+  /**
+   * @return the indices of the missing fragments.
+   */
+  public int[] getMissing() {
+    return missing;
+  }
+
+  /**
+   * @return the bytes of the datagram corresponding to this instance.
+   */
+  public byte[] toBytes() {
+    ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + missing.length * 2);
+    buf.putInt(Fragment.MAGIC).put(Fragment.TYPE_NACK).putLong(senderId).putInt(messageId).putShort((short) missing.length);
+    for (int i : missing) {
+      buf.putShort((short) i);
+    }
+    return buf.array();
+  }
+
+  /**
+   * @return the {@link Nack} corresponding to the given datagram, or
+   *         <code>null</code> if that datagram is not a valid NACK.
+   */
+  public static Nack fromBytes(byte[] bytes, int offset, int length) {
+    if (length < HEADER_SIZE) {
+      return null;
+    }
+    ByteBuffer buf = ByteBuffer.wrap(bytes, offset, length);
+    if (buf.getInt() != Fragment.MAGIC || buf.get() != Fragment.TYPE_NACK) {
+      return null;
+    }
+    long senderId = buf.getLong();
+    int messageId = buf.getInt();
+    int[] missing = new int[buf.getShort() & 0xffff];
+    if (buf.remaining() < missing.length * 2) {
+      return null;
+    }
+    for (int i = 0; i < missing.length; i++) {
+      missing[i] = buf.getShort() & 0xffff;
+    }
+    return new Nack(senderId, messageId, missing);
+  }
+
+}
@@ -0,0 +1,232 @@
+package org.sapia.ubik.mcast.udp;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.util.SysClock;
+
+/**
+ * Reassembles fragmented multicast events. Incomplete events are discarded
+ * when they expire, and the oldest ones are also discarded when the number of
+ * bytes allocated for incomplete events would exceed a given maximum.
+ * <p>
+ * If NACKs are enabled, {@link #sweep()} returns a {@link Nack} for each
+ * incomplete event that has not been completed after the NACK delay - at most
+ * {@link #MAX_NACKS} times per event.
+ * 
+ * @author yduchesne
+ *
+ */
+public class Reassembler {
+
+  /**
+   * The maximum number of NACKs sent for a given event.
+   */
+  public static final int MAX_NACKS = 3;
+
+  private static final int COMPLETED_SIZE = 256;
+
+  private Category log = Log.createCategory(getClass());
+
+  private long     localSenderId;
+  private long     maxPendingBytes;
+  private long     timeout;
+  private long     nackDelay;
+  private SysClock clock;
+  private long     pendingBytes;
+
+  private Map<Key, Pending> pending   = new LinkedHashMap<Key, Pending>();
+  private Map<Key, Boolean> completed = new LinkedHashMap<Key, Boolean>() {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, Boolean> eldest) {
+      return size() > COMPLETED_SIZE;
+    }
+  };
+
+  /**
+   * @param localSenderId
+   *          the sender identifier of the local node (whose own fragments are
+   *          ignored).
+   * @param maxPendingBytes
+   *          the maximum number of bytes to allocate for incomplete events.
+   * @param timeout
+   *          the time (in millis) after which incomplete events are discarded.
+   * @param nackDelay
+   *          the time (in millis) after which the missing fragments of an
+   *          incomplete event are requested (0 or less to disable NACKs).
+   * @param clock
+   *          the {@link SysClock} to use.
+   */
+  public Reassembler(long localSenderId, long maxPendingBytes, long timeout, long nackDelay, SysClock clock) {
+    this.localSenderId = localSenderId;
+    this.maxPendingBytes = maxPendingBytes;
+    this.timeout = timeout;
+    this.nackDelay = nackDelay;
+    this.clock = clock;
+  }
+
+  /**
+   * @param fragment
+   *          a {@link Fragment}.
+   * @return the bytes of the event to which the fragment corresponds, if that
+   *         event is now complete - <code>null</code> otherwise.
+   */
+  public synchronized byte[] add(Fragment fragment) {
+    if (fragment.getSenderId() == localSenderId) {
+      return null;
+    }
+    Key key = new Key(fragment.getSenderId(), fragment.getMessageId());
+    if (completed.containsKey(key)) {
+      return null;
+    }
+
+    long now = clock.currentTimeMillis();
+    expire(now);
+
+    Pending p = pending.get(key);
+    if (p == null) {
+      if (fragment.getTotalLength() > maxPendingBytes) {
+        log.warning("Discarding fragmented event of %s bytes: exceeds the maximum of %s bytes", fragment.getTotalLength(), maxPendingBytes);
+        completed.put(key, Boolean.FALSE);
+        return null;
+      }
+      while (pendingBytes + fragment.getTotalLength() > maxPendingBytes && !pending.isEmpty()) {
+        Iterator<Pending> eldest = pending.values().iterator();
+        Pending evicted = eldest.next();
+        eldest.remove();
+        pendingBytes -= evicted.bytes.length;
+        log.warning("Discarding incomplete fragmented event: maximum of %s pending bytes reached", maxPendingBytes);
+      }
+      p = new Pending(fragment, now);
+      pending.put(key, p);
+      pendingBytes += p.bytes.length;
+    } else if (p.count != fragment.getCount() || p.bytes.length != fragment.getTotalLength()) {
+      log.debug("Ignoring inconsistent fragment %s", fragment);
+      return null;
+    }
+
+    if (!p.received.get(fragment.getIndex())) {
+      fragment.copyTo(p.bytes);
+      p.received.set(fragment.getIndex());
+      p.receivedCount++;
+      p.lastUpdate = now;
+    }
+    if (p.receivedCount == p.count) {
+      pending.remove(key);
+      pendingBytes -= p.bytes.length;
+      completed.put(key, Boolean.TRUE);
+      return p.bytes;
+    }
+    return null;
+  }
+
+  /**
+   * Discards expired events and, if NACKs are enabled, returns the
+   * {@link Nack}s corresponding to the events whose fragments are still
+   * missing after the NACK delay.
+   * 
+   * @return the {@link Nack}s to send.
+   */
+  public synchronized List<Nack> sweep() {
+    long now = clock.currentTimeMillis();
+    expire(now);
+    List<Nack> nacks = new ArrayList<Nack>();
+    if (nackDelay > 0) {
+      for (Map.Entry<Key, Pending> e : pending.entrySet()) {
+        Pending p = e.getValue();
+        if (p.nacks < MAX_NACKS && now - p.lastUpdate >= nackDelay) {
+          int[] missing = new int[p.count - p.receivedCount];
+          for (int i = p.received.nextClearBit(0), j = 0; i < p.count; i = p.received.nextClearBit(i + 1)) {
+            missing[j++] = i;
+          }
+          nacks.add(new Nack(e.getKey().senderId, e.getKey().messageId, missing));
+          p.nacks++;
+          p.lastUpdate = now;
+        }
+      }
+    }
+    return nacks;
+  }
+
+  /**
+   * @return the number of incomplete events.
+   */
+  public synchronized int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * @return the number of bytes allocated for incomplete events.
+   */
+  public synchronized long getPendingBytes() {
+    return pendingBytes;
+  }
+
+  private void expire(long now) {
+    for (Iterator<Pending> it = pending.values().iterator(); it.hasNext();) {
+      Pending p = it.next();
+      if (now - p.creationTime < timeout) {
+        break;
+      }
+      it.remove();
+      pendingBytes -= p.bytes.length;
+      log.debug("Discarding expired fragmented event (received %s fragments out of %s)", p.receivedCount, p.count);
+    }
+  }
+
+  // ==========================================================================
+
+  private static final class Key {
+
+    private long senderId;
+    private int  messageId;
+
+    private Key(long senderId, int messageId) {
+      this.senderId = senderId;
+      this.messageId = messageId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj instanceof Key) {
+        Key other = (Key) obj;
+        return other.senderId == senderId && other.messageId == messageId;
+      }
+      return false;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (senderId ^ (senderId >>> 32)) * 31 + messageId;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  private static final class Pending {
+
+    private byte[] bytes;
+    private int    count;
+    private BitSet received;
+    private int    receivedCount;
+    private long   creationTime;
+    private long   lastUpdate;
+    private int    nacks;
+
+    private Pending(Fragment first, long now) {
+      bytes = new byte[first.getTotalLength()];
+      count = first.getCount();
+      received = new BitSet(count);
+      creationTime = now;
+      lastUpdate = now;
+    }
+  }
+}
@@ -5,7 +5,11 @@ import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.MulticastSocket;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
@@ -21,22 +25,39 @@ import org.sapia.ubik.net.ConnectionStateListenerList;
 import org.sapia.ubik.net.ServerAddress;
 import org.sapia.ubik.rmi.Consts;
 import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.sapia.ubik.util.Assertions;
 import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.SysClock;
 
 /**
  * Dispatches objects using a multicast channel.
+ * <p>
+ * Events whose serialized form exceeds the buffer size are split into
+ * {@link Fragment}s, which receivers reassemble (see {@link Reassembler}).
+ * If NACKs are enabled, receivers request the retransmission of missing
+ * fragments, and the fragments of the most recent events are kept for that
+ * purpose.
+ *
+ * @see Consts#MCAST_FRAGMENT_SIZE
+ * @see Consts#MCAST_FRAGMENT_NACK_ENABLED
  *
  * @author yduchesne
  */
 public class UDPBroadcastDispatcher implements BroadcastDispatcher {
   
+  private static final int    RETAINED_EVENTS = 32;
+  
   private static Category     log       = Log.createCategory(UDPBroadcastDispatcher.class);
   private EventConsumer       consumer;
   private MulticastServer     server;
   private int                 bufsz     = Defaults.DEFAULT_UDP_PACKET_SIZE;
   private UDPMulticastAddress address;
   private ConnectionStateListenerList stateListeners = new ConnectionStateListenerList();
+  private Fragmenter          fragmenter;
+  private Reassembler         reassembler;
+  private long                nackDelay;
+  private Timer               sweeper;
 
   public UDPBroadcastDispatcher() {
   }
@@ -49,6 +70,8 @@ public class UDPBroadcastDispatcher implements BroadcastDispatcher {
     int    mcastTtl  = context.getConf().getIntProperty(Consts.MCAST_TTL, Defaults.DEFAULT_TTL);
     int    bufSize   = context.getConf().getIntProperty(Consts.MCAST_BUFSIZE_KEY, Defaults.DEFAULT_UDP_PACKET_SIZE);
     
+    initFragmentation(context.getConf(), bufSize);
+    
     try {
       
       server = new MulticastServer(mcastHost, mcastPort, mcastTtl, context.getSelectorThreads().getExecutor("multicast.server"), context.getWorkerThreads()) {
@@ -56,7 +79,11 @@ public class UDPBroadcastDispatcher implements BroadcastDispatcher {
         @Override
         protected void handle(DatagramPacket pack, MulticastSocket sock) {
           try {
-            consumer.onAsyncEvent((RemoteEvent) McastUtil.fromDatagram(pack));
+            if (Fragment.isFragmentation(pack.getData(), pack.getOffset(), pack.getLength())) {
+              handleFragmentation(pack);
+            } else {
+              consumer.onAsyncEvent((RemoteEvent) McastUtil.fromDatagram(pack));
+            }
           } catch (EOFException e) {
             log.warning("Could not deserialize remote event, packet size may be too short " + this.bufSize());
 
@@ -70,9 +97,52 @@ public class UDPBroadcastDispatcher implements BroadcastDispatcher {
       throw new IllegalStateException("Could not create UDP server", e);
     }
     server.setBufsize(bufSize);
+    bufsz   = bufSize;
     address = new UDPMulticastAddress(mcastHost, mcastPort);
   }
   
+  private void initFragmentation(Conf conf, int bufSize) {
+    long senderId     = new Random().nextLong();
+    int  fragmentSize = Math.min(
+        conf.getIntProperty(Consts.MCAST_FRAGMENT_SIZE, Defaults.DEFAULT_UDP_FRAGMENT_SIZE), 
+        bufSize - Fragment.HEADER_SIZE
+    );
+    boolean nackEnabled = conf.getBooleanProperty(Consts.MCAST_FRAGMENT_NACK_ENABLED, false);
+    nackDelay = nackEnabled ? 
+        conf.getTimeProperty(Consts.MCAST_FRAGMENT_NACK_DELAY, Defaults.DEFAULT_UDP_FRAGMENT_NACK_DELAY).getValueInMillis() : 0;
+    
+    fragmenter  = new Fragmenter(senderId, fragmentSize, nackEnabled ? RETAINED_EVENTS : 0);
+    reassembler = new Reassembler(
+        senderId,
+        conf.getIntProperty(Consts.MCAST_FRAGMENT_MAX_PENDING_BYTES, Defaults.DEFAULT_UDP_FRAGMENT_MAX_PENDING_BYTES),
+        conf.getTimeProperty(Consts.MCAST_FRAGMENT_TIMEOUT, Defaults.DEFAULT_UDP_FRAGMENT_TIMEOUT).getValueInMillis(),
+        nackDelay,
+        SysClock.RealtimeClock.getInstance()
+    );
+    log.debug("Fragment size set to %s (NACKs enabled: %s)", fragmentSize, nackEnabled);
+  }
+  
+  private void handleFragmentation(DatagramPacket pack) throws IOException, ClassNotFoundException {
+    if (Fragment.isNack(pack.getData(), pack.getOffset(), pack.getLength())) {
+      Nack nack = Nack.fromBytes(pack.getData(), pack.getOffset(), pack.getLength());
+      if (nack != null) {
+        for (byte[] datagram : fragmenter.retransmit(nack)) {
+          doSend(datagram, 0, datagram.length);
+        }
+      }
+    } else {
+      Fragment fragment = Fragment.fromBytes(pack.getData(), pack.getOffset(), pack.getLength());
+      if (fragment == null) {
+        log.debug("Ignoring invalid fragment");
+        return;
+      }
+      byte[] event = reassembler.add(fragment);
+      if (event != null) {
+        consumer.onAsyncEvent((RemoteEvent) McastUtil.fromBytes(event));
+      }
+    }
+  }
+  
   @Override
   public MulticastAddress getMulticastAddressFrom(Conf props) {
     return new UDPBroadcastDispatcher.UDPMulticastAddress(
@@ -115,6 +185,22 @@ public class UDPBroadcastDispatcher implements BroadcastDispatcher {
     Assertions.illegalState(server == null, "Instance was closed; cannot be started again");
     stateListeners.onConnected();
     server.start();
+    if (nackDelay > 0) {
+      sweeper = new Timer("UDPBroadcastDispatcher.Sweeper", true);
+      sweeper.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          try {
+            for (Nack nack : reassembler.sweep()) {
+              byte[] datagram = nack.toBytes();
+              doSend(datagram, 0, datagram.length);
+            }
+          } catch (Exception e) {
+            log.warning("Could not send NACK", e);
+          }
+        }
+      }, nackDelay, nackDelay);
+    }
 
   }
 
@@ -123,6 +209,10 @@ public class UDPBroadcastDispatcher implements BroadcastDispatcher {
    */
   @Override
   public synchronized void close() {
+    if (sweeper != null) {
+      sweeper.cancel();
+      sweeper = null;
+    }
     if (server != null) {
       server.close();
       server = null;
@@ -143,9 +233,7 @@ public class UDPBroadcastDispatcher implements BroadcastDispatcher {
     }
     evt.setUnicastAddress(unicastAddr);
 
-    if (server != null) {
-      server.send(McastUtil.toBytes(evt, bufsz));
-    }
+    send(evt);
   }
 
   /**
@@ -159,8 +247,32 @@ public class UDPBroadcastDispatcher implements BroadcastDispatcher {
     evt = new RemoteEvent(domain, evtType, data).setNode(consumer.getNode());
     evt.setUnicastAddress(unicastAddr);
 
+    send(evt);
+  }
+
+  private void send(RemoteEvent evt) throws IOException {
     if (server != null) {
-      server.send(McastUtil.toBytes(evt, bufsz));
+      SerializationBuffer buf = McastUtil.toBuffer(evt);
+      try {
+        if (buf.size() > bufsz) {
+          List<byte[]> datagrams = fragmenter.fragment(buf.getBytes(), 0, buf.size());
+          log.debug("Sending event of %s bytes as %s fragments", buf.size(), datagrams.size());
+          for (byte[] datagram : datagrams) {
+            doSend(datagram, 0, datagram.length);
+          }
+        } else {
+          doSend(buf.getBytes(), 0, buf.size());
+        }
+      } finally {
+        buf.release();
+      }
+    }
+  }
+  
+  private void doSend(byte[] bytes, int offset, int length) throws IOException {
+    MulticastServer current = server;
+    if (current != null) {
+      current.send(bytes, offset, length);
     }
   }
 
@@ -24,6 +24,7 @@ import org.sapia.ubik.mcast.server.UDPServer;
 import org.sapia.ubik.net.ServerAddress;
 import org.sapia.ubik.net.TcpPortSelector;
 import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.sapia.ubik.util.Assertions;
 import org.sapia.ubik.util.Localhost;
 import org.sapia.ubik.util.TimeValue;
@@ -122,7 +123,7 @@ public class UDPUnicastDispatcher implements UnicastDispatcher {
     try {
       log.debug("dispatch() : %s, type: %s, data: %s", addr, type, data);
       UDPUnicastAddress inet = (UDPUnicastAddress) addr;
-      doSend(inet.getInetAddress(), inet.getPort(), sock, McastUtil.toBytes(evt, server.getBufSize()), false, type);
+      doSend(inet.getInetAddress(), inet.getPort(), sock, evt, false, type);
       return true;
     } catch (TimeoutException e) {
       return false;
@@ -145,7 +146,7 @@ public class UDPUnicastDispatcher implements UnicastDispatcher {
     UDPUnicastAddress inet = (UDPUnicastAddress) addr;
 
     try {
-      return (Response) doSend(inet.getInetAddress(), inet.getPort(), sock, McastUtil.toBytes(evt, server.getBufSize()), true, type);
+      return (Response) doSend(inet.getInetAddress(), inet.getPort(), sock, evt, true, type);
     } catch (TimeoutException e) {
       return new Response(addr, evt.getId(), e).setStatusSuspect();
     } finally {
@@ -267,7 +268,7 @@ public class UDPUnicastDispatcher implements UnicastDispatcher {
             Object response = consumer.onSyncEvent(evt);
 
             try {
-              doSend(addr, port, sock, McastUtil.toBytes(new Response(UDPUnicastDispatcher.this.getAddress(), evt.getId(), response), server.getBufSize()), false, evt.getType());
+              doSend(addr, port, sock, new Response(UDPUnicastDispatcher.this.getAddress(), evt.getId(), response), false, evt.getType());
             } catch (TimeoutException e) {
               // will not occur - see doSend()
             }
@@ -276,7 +277,7 @@ public class UDPUnicastDispatcher implements UnicastDispatcher {
 
           } else {
             try {
-              doSend(addr, port, sock, McastUtil.toBytes(new Response(UDPUnicastDispatcher.this.getAddress(), evt.getId(), null).setNone(), server.getBufSize()), false, evt.getType());
+              doSend(addr, port, sock, new Response(UDPUnicastDispatcher.this.getAddress(), evt.getId(), null).setNone(), false, evt.getType());
             } catch (TimeoutException e) {
               // will not occur - see doSend()
             }
@@ -294,34 +295,48 @@ public class UDPUnicastDispatcher implements UnicastDispatcher {
     }
   }
 
+  private Object doSend(InetAddress addr, int port, DatagramSocket sock, Object toSend, boolean synchro, String type) throws IOException,
+      TimeoutException {
+    SerializationBuffer buf = McastUtil.toBuffer(toSend);
+    try {
+      doSend(addr, port, sock, buf.getBytes(), buf.size(), type);
+    } finally {
+      buf.release();
+    }
+    return synchro ? receive(sock) : null;
+  }
+
   private Object doSend(InetAddress addr, int port, DatagramSocket sock, byte[] bytes, boolean synchro, String type) throws IOException,
       TimeoutException {
-    if (bytes.length > server.getBufSize()) {
+    doSend(addr, port, sock, bytes, bytes.length, type);
+    return synchro ? receive(sock) : null;
+  }
+
+  private void doSend(InetAddress addr, int port, DatagramSocket sock, byte[] bytes, int length, String type) throws IOException {
+    if (length > server.getBufSize()) {
       throw new IOException("Size of data larger than buffer size; increase this instance's buffer size through the setBufsize() method");
     }
 
     log.debug("doSend() : %s, event type: %s", addr, type);
-    DatagramPacket pack = new DatagramPacket(bytes, 0, bytes.length, addr, port);
+    DatagramPacket pack = new DatagramPacket(bytes, 0, length, addr, port);
 
     sock.send(pack);
+  }
 
-    if (synchro) {
-      bytes = new byte[server.getBufSize()];
-      pack = new DatagramPacket(bytes, bytes.length);
+  private Object receive(DatagramSocket sock) throws IOException, TimeoutException {
+    byte[] bytes = new byte[server.getBufSize()];
+    DatagramPacket pack = new DatagramPacket(bytes, bytes.length);
 
-      try {
-        sock.receive(pack);
-      } catch (SocketTimeoutException e) {
-        throw new TimeoutException();
-      }
+    try {
+      sock.receive(pack);
+    } catch (SocketTimeoutException e) {
+      throw new TimeoutException();
+    }
 
-      try {
-        return McastUtil.fromDatagram(pack);
-      } catch (ClassNotFoundException e) {
-        throw new IOException("Could not deserialize object", e);
-      }
-    } else {
-      return null;
+    try {
+      return McastUtil.fromDatagram(pack);
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Could not deserialize object", e);
     }
   }
 }
@@ -1,16 +1,27 @@
 package org.sapia.ubik.net;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sapia.ubik.concurrent.NamedThreadFactory;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.util.Assertions;
-import org.sapia.ubik.util.pool.Pool;
+import org.sapia.ubik.util.pool.ConcurrentPool;
 
 /**
- * Implements a pool of {@link Connection} instances.
+ * Implements a pool of {@link Connection} instances. Connections are reused in
+ * LIFO order, and idle ones can be evicted and validated in the background (see
+ * {@link ConcurrentPool#maintain()}).
  * 
  * @author Yanick Duchesne
  */
-public class ConnectionPool extends Pool<Connection> {
+public class ConnectionPool extends ConcurrentPool<Connection> {
 
   /**
    * A builder that should be used to created {@link ConnectionPool} instances.
@@ -20,6 +31,12 @@ public class ConnectionPool extends Pool<Connection> {
     private String host;
     private int port;
     private int maxSize = ConnectionPool.NO_MAX;
+    private int maxIdle = ConnectionPool.NO_MAX;
+    private int minIdle;
+    private long idleTimeout = ConnectionPool.NO_IDLE_TIMEOUT;
+    private long acquireTimeout = ConnectionPool.DEFAULT_ACQUIRE_TIME_OUT;
+    private long reconnectBackoff = ConnectionPool.DEFAULT_RECONNECT_BACKOFF;
+    private long maxReconnectBackoff = ConnectionPool.DEFAULT_MAX_RECONNECT_BACKOFF;
     private ConnectionFactory connectionFactory;
 
     public Builder host(String host) {
@@ -37,6 +54,36 @@ public class ConnectionPool extends Pool<Connection> {
       return this;
     }
 
+    public Builder maxIdle(int maxIdle) {
+      this.maxIdle = maxIdle;
+      return this;
+    }
+
+    public Builder minIdle(int minIdle) {
+      this.minIdle = minIdle;
+      return this;
+    }
+
+    public Builder idleTimeout(long idleTimeout) {
+      this.idleTimeout = idleTimeout;
+      return this;
+    }
+
+    public Builder acquireTimeout(long acquireTimeout) {
+      this.acquireTimeout = acquireTimeout;
+      return this;
+    }
+
+    public Builder reconnectBackoff(long reconnectBackoff) {
+      this.reconnectBackoff = reconnectBackoff;
+      return this;
+    }
+
+    public Builder maxReconnectBackoff(long maxReconnectBackoff) {
+      this.maxReconnectBackoff = maxReconnectBackoff;
+      return this;
+    }
+
     public Builder connectionFactory(ConnectionFactory connectionFactory) {
       this.connectionFactory = connectionFactory;
       return this;
@@ -45,17 +92,48 @@ public class ConnectionPool extends Pool<Connection> {
     public ConnectionPool build() {
       Assertions.notNull(connectionFactory, "Connection factory not set");
       Assertions.notNull(host, "Host not set");
-      return new ConnectionPool(host, port, connectionFactory, maxSize);
+      ConnectionPool pool = new ConnectionPool(host, port, connectionFactory, maxSize);
+      pool.setMaxIdle(maxIdle);
+      pool.setMinIdle(minIdle);
+      pool.setIdleTimeout(idleTimeout);
+      pool.setDefaultAcquireTimeout(acquireTimeout);
+      pool.reconnectBackoff = reconnectBackoff;
+      pool.maxReconnectBackoff = maxReconnectBackoff;
+      return pool;
     }
   }
 
   // --------------------------------------------------------------------------
 
+  /**
+   * The default base delay (in millis) to wait for before reconnecting, after
+   * a connection attempt has failed.
+   */
+  public static final long DEFAULT_RECONNECT_BACKOFF = 100;
+
+  /**
+   * The default maximum delay (in millis) to wait for before reconnecting.
+   */
+  public static final long DEFAULT_MAX_RECONNECT_BACKOFF = 5000;
+
+  private static final int MAX_BACKOFF_SHIFT = 16;
+
+  // validates the idle connections of pools in which a connection has failed,
+  // so that callers do not wait on validation (see invalidateFailed())
+  private static final ExecutorService VALIDATOR = Executors.newSingleThreadExecutor(
+      NamedThreadFactory.createWith("ubik.net.ConnectionPool.Validator").setDaemon(true)
+  );
+
   private Category log = Log.createCategory(getClass());
 
   protected ConnectionFactory factory;
   protected String host;
   protected int port;
+  private long reconnectBackoff = DEFAULT_RECONNECT_BACKOFF;
+  private long maxReconnectBackoff = DEFAULT_MAX_RECONNECT_BACKOFF;
+  private AtomicInteger connectFailures = new AtomicInteger();
+  private AtomicBoolean validationPending = new AtomicBoolean();
+  Executor validator = VALIDATOR;
 
   /**
    * @param host
@@ -76,14 +154,88 @@ public class ConnectionPool extends Pool<Connection> {
     this.port = port;
   }
 
+  /**
+   * Invalidates the given connection, which has failed, and has the
+   * connections that are currently idle checked (see {@link ConcurrentPool#isValid(Object)}):
+   * only the ones that are found to be broken are closed. If the remote
+   * endpoint is down (or has been restarted), all idle connections are found
+   * broken and the pool ends up drained; otherwise (say if a single socket was
+   * reset), the healthy connections are kept, sparing callers from all
+   * reconnecting at once.
+   * <p>
+   * The idle connections are checked asynchronously, by a background thread
+   * (if a check is already pending for this pool, no other one is scheduled):
+   * the calling thread only disposes of the given connection.
+   *
+   * @param connection
+   *          a {@link Connection} that has failed.
+   */
+  public void invalidateFailed(Connection connection) {
+    invalidate(connection);
+    if (validationPending.compareAndSet(false, true)) {
+      try {
+        validator.execute(new Runnable() {
+          @Override
+          public void run() {
+            // cleared beforehand: failures occurring while the idle
+            // connections are checked trigger a new check
+            validationPending.set(false);
+            int evicted = evictInvalid();
+            if (evicted > 0) {
+              log.debug("Closed %s broken idle connection(s) to %s:%s", evicted, host, port);
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        validationPending.set(false);
+        log.warning("Could not schedule validation of idle connections to %s:%s", e, host, port);
+      }
+    }
+  }
+
+  /**
+   * @return the number of consecutive connection attempts that have failed.
+   */
+  public int getConnectFailures() {
+    return connectFailures.get();
+  }
+
   @Override
   protected final Connection doNewObject() throws Exception {
+    int failures = connectFailures.get();
+    if (failures > 0 && reconnectBackoff > 0) {
+      long delay = computeBackoff(failures);
+      log.debug("Waiting %s ms before reconnecting to %s:%s (%s failed attempt(s))", delay, host, port, failures);
+      Thread.sleep(delay);
+    }
     log.debug("Trying to create connection to %s:%s", host, port);
-    Connection connection = factory.newConnection(host, port);
+    Connection connection;
+    try {
+      connection = factory.newConnection(host, port);
+    } catch (Exception e) {
+      connectFailures.incrementAndGet();
+      throw e;
+    }
+    connectFailures.set(0);
     log.debug("Created connection to %s:%s", host, port);
     return connection;
   }
 
+  /**
+   * Computes the delay to wait for before reconnecting: the delay doubles with
+   * each failed attempt (up to the maximum), and a random jitter is applied so
+   * that concurrent callers do not all reconnect at the same time.
+   *
+   * @param failures
+   *          the number of consecutive failed attempts.
+   * @return the delay (in millis) to wait for.
+   */
+  long computeBackoff(int failures) {
+    long delay = Math.min(maxReconnectBackoff, reconnectBackoff << Math.min(failures - 1, MAX_BACKOFF_SHIFT));
+    long half = delay / 2;
+    return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+  }
+
   @Override
   protected void cleanup(Connection connection) {
     try {
@@ -93,4 +245,12 @@ public class ConnectionPool extends Pool<Connection> {
     }
   }
 
+  @Override
+  protected boolean isValid(Connection connection) {
+    if (connection instanceof SocketConnection) {
+      return ((SocketConnection) connection).isValid();
+    }
+    return true;
+  }
+
 }
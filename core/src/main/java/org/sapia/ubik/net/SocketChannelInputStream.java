@@ -0,0 +1,114 @@
+package org.sapia.ubik.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * An {@link InputStream} that reads from a non-blocking {@link SocketChannel}.
+ * When no data is available, the calling thread waits on a temporary
+ * {@link Selector} until the channel becomes readable, or until the channel's
+ * socket SO_TIMEOUT is reached (the wait is unbounded if the timeout is 0).
+ * <p>
+ * This instance internally buffers the data it reads: {@link #available()}
+ * returns the number of buffered bytes that can be read without touching the
+ * channel.
+ *
+ * @author yduchesne
+ *
+ */
+public class SocketChannelInputStream extends InputStream {
+
+  private SocketChannel channel;
+  private ByteBuffer    buffer;
+
+  /**
+   * @param channel
+   *          the non-blocking {@link SocketChannel} to read from.
+   * @param bufsize
+   *          the size of the internal buffer.
+   */
+  public SocketChannelInputStream(SocketChannel channel, int bufsize) {
+    this.channel = channel;
+    this.buffer  = ByteBuffer.allocate(bufsize);
+    this.buffer.flip();
+  }
+
+  @Override
+  public int available() throws IOException {
+    return buffer.remaining();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return buffer.get() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    len = Math.min(len, buffer.remaining());
+    buffer.get(bytes, off, len);
+    return len;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  // --------------------------------------------------------------------------
+
+  private boolean fill() throws IOException {
+    if (buffer.hasRemaining()) {
+      return true;
+    }
+    buffer.clear();
+    try {
+      int count;
+      while ((count = channel.read(buffer)) == 0) {
+        awaitReadable();
+      }
+      if (count < 0) {
+        return false;
+      }
+    } finally {
+      buffer.flip();
+    }
+    return true;
+  }
+
+  private void awaitReadable() throws IOException {
+    int timeout = channel.socket().getSoTimeout();
+    Selector selector = TemporarySelectors.get();
+    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+    try {
+      if (selector.select(timeout) == 0) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Thread interrupted while waiting for data");
+        } else if (!channel.isOpen()) {
+          throw new EOFException("Channel closed");
+        } else if (timeout > 0) {
+          throw new SocketTimeoutException("Read timed out after " + timeout + " millis");
+        }
+      }
+    } finally {
+      key.cancel();
+      selector.selectNow();
+    }
+  }
+}
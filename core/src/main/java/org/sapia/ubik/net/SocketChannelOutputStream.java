@@ -0,0 +1,75 @@
+package org.sapia.ubik.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * An {@link OutputStream} that writes to a non-blocking {@link SocketChannel}.
+ * When the channel's send buffer is full, the calling thread waits on a
+ * temporary {@link Selector} until the channel becomes writable again (or
+ * until the channel's socket SO_TIMEOUT is reached, if it is greater than 0).
+ * <p>
+ * This class does not buffer: it is expected to be wrapped in a buffered
+ * stream by the caller.
+ *
+ * @author yduchesne
+ *
+ */
+public class SocketChannelOutputStream extends OutputStream {
+
+  private SocketChannel channel;
+
+  /**
+   * @param channel
+   *          the non-blocking {@link SocketChannel} to write to.
+   */
+  public SocketChannelOutputStream(SocketChannel channel) {
+    this.channel = channel;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] bytes, int off, int len) throws IOException {
+    ByteBuffer toWrite = ByteBuffer.wrap(bytes, off, len);
+    while (toWrite.hasRemaining()) {
+      if (channel.write(toWrite) == 0) {
+        awaitWritable();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  // --------------------------------------------------------------------------
+
+  private void awaitWritable() throws IOException {
+    int timeout = channel.socket().getSoTimeout();
+    Selector selector = TemporarySelectors.get();
+    SelectionKey key = channel.register(selector, SelectionKey.OP_WRITE);
+    try {
+      if (selector.select(timeout) == 0) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Thread interrupted while waiting to write");
+        } else if (timeout > 0) {
+          throw new SocketTimeoutException("Write timed out after " + timeout + " millis");
+        }
+      }
+    } finally {
+      key.cancel();
+      selector.selectNow();
+    }
+  }
+}
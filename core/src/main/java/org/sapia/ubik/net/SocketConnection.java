@@ -2,8 +2,6 @@ package org.sapia.ubik.net;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -25,6 +23,12 @@ import org.sapia.ubik.util.IoUtils;
  */
 public class SocketConnection implements Connection {
   static final long DEFAULT_RESET_INTERVAL = 2000;
+
+  /**
+   * The time (in millis) that {@link #isValid()} waits for when peeking at the
+   * socket's input.
+   */
+  public static final int PEEK_TIMEOUT = 1;
   protected Socket sock;
   protected TCPAddress address;
   protected ClassLoader loader;
@@ -33,6 +37,8 @@ public class SocketConnection implements Connection {
   protected long lastReset;
   protected long resetInterval = DEFAULT_RESET_INTERVAL;
   private int bufsize;
+  private BufferedOutputStream bos;
+  private BufferedInputStream bis;
 
   public SocketConnection(String transportType, Socket sock, ClassLoader loader, int bufsize) {
     this(transportType, sock, bufsize);
@@ -65,7 +71,7 @@ public class SocketConnection implements Connection {
    * @see Connection#send(Object)
    */
   public void send(Object o) throws IOException, RemoteException {
-    writeHeader(sock.getOutputStream(), loader);
+    writeHeader(getOuputStream(), loader);
     doSend(o, os);
   }
 
@@ -75,7 +81,7 @@ public class SocketConnection implements Connection {
   public Object receive() throws IOException, ClassNotFoundException, RemoteException {
     try {
       sock.setSoTimeout(0);
-      readHeader(sock.getInputStream(), loader);
+      readHeader(getInputStream(), loader);
       return is.readObject();
     } catch (SocketTimeoutException e) {
       throw new RemoteException("Could not send/receive within allocated timeout", e);
@@ -91,7 +97,7 @@ public class SocketConnection implements Connection {
       ClassNotFoundException, RemoteException, SocketTimeoutException {
     try {
       sock.setSoTimeout((int) timeout);
-      readHeader(sock.getInputStream(), loader);
+      readHeader(getInputStream(), loader);
       return is.readObject();
     } catch (SocketTimeoutException e) {
       throw new RemoteException("Could not send/receive within allocated timeout", e);
@@ -102,6 +108,42 @@ public class SocketConnection implements Connection {
     }
   }
 
+  /**
+   * Checks that this connection may still be used. Besides checking that the
+   * underlying socket is still connected, and neither closed nor shut down,
+   * this method peeks at the socket's input, waiting at most
+   * {@link #PEEK_TIMEOUT} millis: since this method is meant to be called on
+   * idle connections, no data should be pending. Reaching the end of the
+   * stream (meaning the peer has closed the connection) or reading unexpected
+   * data both make the connection invalid.
+   * <p>
+   * This method must not be called while the connection is in use.
+   *
+   * @return <code>true</code> if this instance's socket is still usable.
+   */
+  public boolean isValid() {
+    if (!sock.isConnected() || sock.isClosed() || sock.isInputShutdown() || sock.isOutputShutdown()) {
+      return false;
+    }
+    try {
+      if (bis == null) {
+        bis = new BufferedInputStream(getInputStream(), bufsize);
+      }
+      int soTimeout = sock.getSoTimeout();
+      sock.setSoTimeout(PEEK_TIMEOUT);
+      try {
+        bis.read();
+        return false;
+      } catch (SocketTimeoutException e) {
+        return true;
+      } finally {
+        sock.setSoTimeout(soTimeout);
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
   /**
    * @see org.sapia.ubik.net.Connection#close()
    */
@@ -185,27 +227,60 @@ public class SocketConnection implements Connection {
     }
   }
 
+  /**
+   * Writes the reset flag that precedes each object sent, creating a new
+   * {@link ObjectOutputStream} if a reset is due.
+   * <p>
+   * The flag is written to the same buffer as the object that follows it (that
+   * buffer is kept for the lifetime of this instance): nothing is written to
+   * the socket until the object stream is flushed, so that the flag and the
+   * object go out in a single write.
+   * 
+   * @param outputStream
+   *          the {@link OutputStream} to write to.
+   * @param loader
+   *          the {@link ClassLoader} that this instance corresponds to.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
   protected void writeHeader(OutputStream outputStream, ClassLoader loader) throws IOException {
-    DataOutputStream dos = new DataOutputStream(outputStream);
+    if (bos == null) {
+      bos = new BufferedOutputStream(outputStream, bufsize);
+    }
     if (os == null || (System.currentTimeMillis() - lastReset) >= resetInterval) {
       lastReset = System.currentTimeMillis();
-      dos.writeBoolean(true);
-      dos.flush();
+      bos.write(1);
       os = null;
-      os = newOutputStream(new BufferedOutputStream(outputStream, bufsize), loader);
+      os = newOutputStream(bos, loader);
     } else {
-      dos.writeBoolean(false);
-      dos.flush();
+      bos.write(0);
     }
   }
 
+  /**
+   * Reads the reset flag that precedes each object received, creating a new
+   * {@link ObjectInputStream} if the flag is set. The flag is read through the
+   * same buffer as the object (that buffer is kept for the lifetime of this
+   * instance).
+   * 
+   * @param inputStream
+   *          the {@link InputStream} to read from.
+   * @param loader
+   *          the {@link ClassLoader} that this instance corresponds to.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
   protected void readHeader(InputStream inputStream, ClassLoader loader) throws IOException {
-    DataInputStream dis = new DataInputStream(inputStream);
-
-    boolean reset = dis.readBoolean();
-    if (is == null || reset) {
+    if (bis == null) {
+      bis = new BufferedInputStream(inputStream, bufsize);
+    }
+    int reset = bis.read();
+    if (reset < 0) {
+      throw new EOFException();
+    }
+    if (is == null || reset != 0) {
       is = null;
-      is = newInputStream(new BufferedInputStream(inputStream, bufsize), loader);
+      is = newInputStream(bis, loader);
     }
   }
 }
@@ -0,0 +1,33 @@
+package org.sapia.ubik.net;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+
+/**
+ * Holds one {@link Selector} per thread: such selectors are used to wait on a
+ * non-blocking channel without switching it back to blocking mode.
+ *
+ * @author yduchesne
+ *
+ */
+class TemporarySelectors {
+
+  private static final ThreadLocal<Selector> SELECTORS = new ThreadLocal<Selector>();
+
+  private TemporarySelectors() {
+  }
+
+  /**
+   * @return the calling thread's {@link Selector}.
+   * @throws IOException
+   *           if the selector could not be opened.
+   */
+  static Selector get() throws IOException {
+    Selector selector = SELECTORS.get();
+    if (selector == null || !selector.isOpen()) {
+      selector = Selector.open();
+      SELECTORS.set(selector);
+    }
+    return selector;
+  }
+}
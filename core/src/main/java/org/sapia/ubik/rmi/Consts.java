@@ -115,6 +115,102 @@ public interface Consts {
    */
   public static final String MCAST_BUFSIZE_KEY = "ubik.rmi.naming.mcast.bufsize";
 
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.udp.fragment.size</code> property. Multicast
+   * events whose serialized size exceeds the buffer size (see
+   * {@link #MCAST_BUFSIZE_KEY}) are split into sequence-numbered fragments
+   * holding at most the given number of bytes, which should keep datagrams
+   * under the network's MTU (defaults to 1400 bytes).
+   */
+  public static final String MCAST_FRAGMENT_SIZE = "ubik.rmi.naming.mcast.udp.fragment.size";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.udp.fragment.timeout</code> property. It
+   * indicates the amount of time after which incomplete fragmented events are
+   * discarded by receivers (defaults to 5000 millis).
+   */
+  public static final String MCAST_FRAGMENT_TIMEOUT = "ubik.rmi.naming.mcast.udp.fragment.timeout";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.udp.fragment.max-pending-bytes</code> property.
+   * It indicates the maximum number of bytes that receivers allocate for
+   * incomplete fragmented events: the oldest ones are discarded beyond that
+   * limit (defaults to 4194304 - that is, 4 MB).
+   */
+  public static final String MCAST_FRAGMENT_MAX_PENDING_BYTES = "ubik.rmi.naming.mcast.udp.fragment.max-pending-bytes";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.udp.fragment.nack.enabled</code> property. If
+   * <code>true</code>, receivers request the retransmission of the missing
+   * fragments of incomplete events, and senders keep their most recent
+   * fragmented events in order to resend them (defaults to false).
+   */
+  public static final String MCAST_FRAGMENT_NACK_ENABLED = "ubik.rmi.naming.mcast.udp.fragment.nack.enabled";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.udp.fragment.nack.delay</code> property. It
+   * indicates the amount of time after which receivers request the
+   * retransmission of missing fragments, when NACKs are enabled (defaults to
+   * 200 millis).
+   */
+  public static final String MCAST_FRAGMENT_NACK_DELAY = "ubik.rmi.naming.mcast.udp.fragment.nack.delay";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.batch.enabled</code> property. If
+   * <code>true</code>, the events that are broadcast to an event channel's
+   * domain are queued and packed into batches, which receivers unpack into the
+   * original events (defaults to false). Since nodes that don't support batches
+   * ignore them, this property should only be enabled once all nodes do.
+   */
+  public static final String MCAST_BATCH_ENABLED = "ubik.rmi.naming.mcast.batch.enabled";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.batch.linger</code> property. It indicates the
+   * maximum amount of time that an event is queued for, waiting for other
+   * events to be added to its batch (defaults to 5 millis).
+   */
+  public static final String MCAST_BATCH_LINGER = "ubik.rmi.naming.mcast.batch.linger";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.batch.max-events</code> property. It indicates
+   * the maximum number of events per batch (defaults to 100).
+   */
+  public static final String MCAST_BATCH_MAX_EVENTS = "ubik.rmi.naming.mcast.batch.max-events";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.batch.max-bytes</code> property. It indicates
+   * the number of bytes of event data from which a batch is sent, without
+   * waiting for further events (defaults to 32768).
+   */
+  public static final String MCAST_BATCH_MAX_BYTES = "ubik.rmi.naming.mcast.batch.max-bytes";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.batch.max-pending</code> property. It indicates
+   * the maximum number of events that may be queued: beyond that number, 
+   * publishers are blocked until queued events have been sent (defaults to
+   * 10000).
+   */
+  public static final String MCAST_BATCH_MAX_PENDING = "ubik.rmi.naming.mcast.batch.max-pending";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.batch.enqueue-timeout</code> property. It
+   * indicates the maximum amount of time that publishers are blocked for when
+   * the maximum number of queued events has been reached, after which the
+   * event is rejected (defaults to 5000 millis).
+   */
+  public static final String MCAST_BATCH_ENQUEUE_TIMEOUT = "ubik.rmi.naming.mcast.batch.enqueue-timeout";
+
   /**
    * This constant corresponds to the
    * <code>ubik.rmi.naming.mcast.throttle.threshold</code> property. It is
@@ -189,6 +285,57 @@ public interface Consts {
    * Indicates the number of random nodes at a time to gossip to.
    */
   public static final String MCAST_GOSSIP_MIN_NODE_COUNT = "ubik.rmi.naming.mcast.gossip.min.node-count";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.gossip.digest.enabled</code> property. If
+   * <code>true</code>, nodes gossip a digest of their view, and only exchange
+   * the entries that differ, rather than sending their whole view (defaults
+   * to false). Nodes always handle both forms of gossip: in the context of a
+   * rolling upgrade, this property should only be enabled once all nodes
+   * support digests.
+   */
+  public static final String MCAST_GOSSIP_DIGEST_ENABLED = "ubik.rmi.naming.mcast.gossip.digest.enabled";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.failure-detector</code> property. It
+   * indicates how nodes are deemed suspect: <code>timeout</code> (the default)
+   * suspects nodes that haven't sent a heartbeat for the duration given by
+   * {@link #MCAST_HEARTBEAT_TIMEOUT}; <code>phi-accrual</code> learns the
+   * distribution of each node's heartbeat inter-arrival times, and suspects
+   * nodes whose suspicion level exceeds {@link #MCAST_PHI_ACCRUAL_THRESHOLD}.
+   */
+  public static final String MCAST_FAILURE_DETECTOR = "ubik.rmi.naming.mcast.failure-detector";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.failure-detector.phi-accrual.threshold</code>
+   * property. It indicates the suspicion level (phi) above which nodes are
+   * deemed suspect when using the phi-accrual failure detector (defaults to
+   * 8): a phi of 1 corresponds to a 10% likelihood of a false suspicion, a
+   * phi of 2 to 1%, a phi of 3 to 0.1%, and so on.
+   */
+  public static final String MCAST_PHI_ACCRUAL_THRESHOLD = "ubik.rmi.naming.mcast.failure-detector.phi-accrual.threshold";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.failure-detector.phi-accrual.min-samples</code>
+   * property. It indicates the number of heartbeat inter-arrival times that
+   * must be recorded for a node before its suspicion level is computed
+   * (defaults to 10). Until then, the heartbeat timeout is used.
+   */
+  public static final String MCAST_PHI_ACCRUAL_MIN_SAMPLES = "ubik.rmi.naming.mcast.failure-detector.phi-accrual.min-samples";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.naming.mcast.failure-detector.phi-accrual.min-std-deviation</code>
+   * property. It indicates the minimum standard deviation to use when
+   * computing suspicion levels (defaults to 500ms), in order to avoid
+   * suspecting nodes whose heartbeats have been very regular so far, as soon
+   * as they are slightly late.
+   */
+  public static final String MCAST_PHI_ACCRUAL_MIN_STD_DEVIATION = "ubik.rmi.naming.mcast.failure-detector.phi-accrual.min-std-deviation";
   
   /**
    * This constant corresponds to the
@@ -395,6 +542,59 @@ public interface Consts {
    */
   public static final String MARSHALLING_BUFSIZE = "ubik.rmi.marshalling.buffer.size";
 
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.marshalling.buffer.max-retained-size</code> property. It
+   * indicates the maximum size (in bytes) of the per-thread serialization
+   * buffers that are kept between uses: bigger buffers are discarded once
+   * used. Defaults to 65536.
+   *
+   * @see org.sapia.ubik.serialization.SerializationBuffers
+   */
+  public static final String MARSHALLING_BUFFER_MAX_RETAINED_SIZE = "ubik.rmi.marshalling.buffer.max-retained-size";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.marshalling.class-dictionary.max-size</code> property. It
+   * indicates the maximum number of class descriptors that a connection keeps
+   * in its class dictionary: these descriptors are sent in full once per
+   * connection, and afterwards referred to by handle. A value of 0 disables
+   * the dictionary. Defaults to 0 (a value of 1024 is a reasonable one when
+   * enabling it).
+   * <p>
+   * A stream that uses a dictionary starts with a stream header version that
+   * the JDK does not support: JVMs that do not support dictionaries (such as
+   * ones running previous versions of Ubik) fail to read it, with a
+   * <code>StreamCorruptedException</code>. This property should thus only be
+   * set once all the JVMs that communicate together support it, and it should
+   * then be set to the same value on all of them.
+   * <p>
+   * The dictionary is only used by the <code>jdk</code> serialization provider
+   * (see {@link #SERIALIZATION_PROVIDER}). The JBoss provider - which is the
+   * default when the JBoss library is in the classpath - ignores it, as does
+   * the <code>binary</code> provider.
+   * <p>
+   * Commands sent over streams that have a dictionary also use a compact
+   * header, in which method and class names are interned in the dictionary. A
+   * value of 0 thus also disables the compact header, which allows talking to
+   * JVMs that support neither. Since both header formats (and both stream
+   * formats) are always accepted when reading, a cluster is upgraded in two
+   * steps:
+   * <ol>
+   * <li>deploy the new version on all the nodes, leaving this property unset
+   * (or set to 0);
+   * <li>once all the nodes run the new version, set this property to the same
+   * value on all of them, and restart them together: a node rejects the
+   * handles that exceed its own maximum size (all of them, if the property is
+   * 0), so that nodes with different values cannot communicate.
+   * </ol>
+   * Disabling the dictionary again also requires restarting all the nodes
+   * together.
+   *
+   * @see org.sapia.ubik.rmi.server.transport.StreamClassDictionary
+   */
+  public static final String MARSHALLING_CLASS_DICTIONARY_MAX_SIZE = "ubik.rmi.marshalling.class-dictionary.max-size";
+
   /**
    * Specifies if call-back should be used (true) or not (false) - system
    * property name: <code>ubik.rmi.callback.enabled</code>. Defaults to "false".
@@ -554,6 +754,27 @@ public interface Consts {
    * Specifies the number of times establish client connections should be retried.
    */
   public static final String CLIENT_CONNECTION_MAX_RETRY = "ubik.rmi.client.connection.max-retry";
+
+  /**
+   * Specifies the maximum number of threads performing the asynchronous
+   * invocations that block a thread until their response comes in (that is,
+   * when callbacks are not enabled) - defaults to 25. Invocations beyond that
+   * number are queued. System property: <code>ubik.rmi.client.async.max-threads</code>.
+   *
+   * @see #CLIENT_ASYNC_QUEUE_SIZE
+   */
+  public static final String CLIENT_ASYNC_MAX_THREADS = "ubik.rmi.client.async.max-threads";
+
+  /**
+   * Specifies the maximum number of asynchronous invocations that may be
+   * queued, waiting for a thread (defaults to 10000): the future of an
+   * invocation performed while the queue is full is completed with a
+   * {@link java.util.concurrent.RejectedExecutionException}. System property:
+   * <code>ubik.rmi.client.async.queue-size</code>.
+   *
+   * @see #CLIENT_ASYNC_MAX_THREADS
+   */
+  public static final String CLIENT_ASYNC_QUEUE_SIZE = "ubik.rmi.client.async.queue-size";
   
   /**
    * Specifies if colocated calls should be supported or not (defaults to
@@ -562,6 +783,113 @@ public interface Consts {
    */
   public static final String COLOCATED_CALLS_ENABLED = "ubik.rmi.colocated.calls.enabled";
 
+  /**
+   * Specifies the strategy that stateless stubs use to select the endpoint to
+   * which they send each invocation: <code>round-robin</code> (the default),
+   * <code>least-outstanding</code> (the endpoint with the fewest pending
+   * invocations), <code>latency</code> (the one with the lowest average
+   * latency, of two endpoints picked at random) or <code>locality</code>
+   * (endpoints on the same host, then the same subnet, are preferred). The
+   * strategy may be specified for a given JNDI binding by appending the name
+   * of the binding to the property name (for example:
+   * <code>ubik.rmi.stub.stateless.balancing.services/orders</code>). System
+   * property: <code>ubik.rmi.stub.stateless.balancing</code>.
+   *
+   * @see org.sapia.ubik.rmi.server.stub.BalancingStrategies
+   */
+  public static final String STATELESS_BALANCING = "ubik.rmi.stub.stateless.balancing";
+
+  /**
+   * Specifies if stateless stubs should keep a circuit breaker for each of
+   * their endpoints (defaults to <code>true</code>). When enabled, an endpoint
+   * that fails or answers too slowly stops being selected for a while, instead
+   * of being removed for good. System property:
+   * <code>ubik.rmi.stub.stateless.breaker.enabled</code>.
+   *
+   * @see org.sapia.ubik.rmi.server.stub.CircuitBreaker
+   */
+  public static final String STATELESS_BREAKER_ENABLED = "ubik.rmi.stub.stateless.breaker.enabled";
+
+  /**
+   * Specifies the number of most recent invocations on which the failure and
+   * slow call rates of an endpoint are computed (defaults to 20). System
+   * property: <code>ubik.rmi.stub.stateless.breaker.window-size</code>.
+   */
+  public static final String STATELESS_BREAKER_WINDOW_SIZE = "ubik.rmi.stub.stateless.breaker.window-size";
+
+  /**
+   * Specifies the minimum number of invocations that must have been recorded
+   * before the failure and slow call rates of an endpoint are taken into
+   * account (defaults to 10). System property:
+   * <code>ubik.rmi.stub.stateless.breaker.min-calls</code>.
+   */
+  public static final String STATELESS_BREAKER_MIN_CALLS = "ubik.rmi.stub.stateless.breaker.min-calls";
+
+  /**
+   * Specifies the rate of failed invocations (between 0 and 1) from which the
+   * circuit of an endpoint is opened (defaults to 0.5). System property:
+   * <code>ubik.rmi.stub.stateless.breaker.failure-rate</code>.
+   */
+  public static final String STATELESS_BREAKER_FAILURE_RATE = "ubik.rmi.stub.stateless.breaker.failure-rate";
+
+  /**
+   * Specifies the number of consecutive failed invocations from which the
+   * circuit of an endpoint is opened, regardless of the failure rate (defaults
+   * to 3). System property:
+   * <code>ubik.rmi.stub.stateless.breaker.consecutive-failures</code>.
+   */
+  public static final String STATELESS_BREAKER_CONSECUTIVE_FAILURES = "ubik.rmi.stub.stateless.breaker.consecutive-failures";
+
+  /**
+   * Specifies the duration from which an invocation is deemed slow (defaults
+   * to 5 seconds). System property:
+   * <code>ubik.rmi.stub.stateless.breaker.slow-call-threshold</code>.
+   */
+  public static final String STATELESS_BREAKER_SLOW_CALL_THRESHOLD = "ubik.rmi.stub.stateless.breaker.slow-call-threshold";
+
+  /**
+   * Specifies the rate of slow invocations (between 0 and 1) from which the
+   * circuit of an endpoint is opened (defaults to 0.8). System property:
+   * <code>ubik.rmi.stub.stateless.breaker.slow-call-rate</code>.
+   */
+  public static final String STATELESS_BREAKER_SLOW_CALL_RATE = "ubik.rmi.stub.stateless.breaker.slow-call-rate";
+
+  /**
+   * Specifies the amount of time during which the circuit of an endpoint stays
+   * open, after which a single probe invocation is let through to determine
+   * if the endpoint has recovered (defaults to 5 seconds). System property:
+   * <code>ubik.rmi.stub.stateless.breaker.open-interval</code>.
+   */
+  public static final String STATELESS_BREAKER_OPEN_INTERVAL = "ubik.rmi.stub.stateless.breaker.open-interval";
+
+  /**
+   * Specifies the methods of a given JNDI binding for which stateless stubs
+   * perform hedged invocations, as a comma-delimited list of method names (or
+   * <code>*</code>, for all methods). The name of the binding is appended to
+   * the property name (for example:
+   * <code>ubik.rmi.stub.stateless.hedging.methods.services/orders</code>).
+   * Methods may also be annotated with {@link Hedged}. Only idempotent methods
+   * should be hedged.
+   *
+   * @see org.sapia.ubik.rmi.server.stub.HedgingPolicy
+   */
+  public static final String STATELESS_HEDGED_METHODS = "ubik.rmi.stub.stateless.hedging.methods";
+
+  /**
+   * Specifies the percentile of the latency of recent invocations after which
+   * a hedged invocation is sent to a second endpoint, if the first one has
+   * not answered (defaults to 95). System property:
+   * <code>ubik.rmi.stub.stateless.hedging.percentile</code>.
+   */
+  public static final String STATELESS_HEDGING_PERCENTILE = "ubik.rmi.stub.stateless.hedging.percentile";
+
+  /**
+   * Specifies the minimum delay after which a hedged invocation is sent to a
+   * second endpoint (defaults to 5 millis). System property:
+   * <code>ubik.rmi.stub.stateless.hedging.min-delay</code>.
+   */
+  public static final String STATELESS_HEDGING_MIN_DELAY = "ubik.rmi.stub.stateless.hedging.min-delay";
+
   /**
    * This constant corresponds to the system property that defines the load
    * factor of the hashmap used by the <code>ObjectTable</code> to keep remote
@@ -639,13 +967,22 @@ public interface Consts {
   /**
    * This constant corresponds to the system property (
    * <code>ubik.rmi.transport.serialization.provider</code>) that specifies
-   * which serialization provider should be used: <code>jboss</code> or
-   * <code>jdk</code>.
+   * which serialization provider should be used: <code>jboss</code>,
+   * <code>jdk</code>, <code>binary</code>, or the name of a custom
+   * {@link org.sapia.ubik.rmi.server.transport.Serializer}.
    * <p>
-   * By default, unless the <code>jdk</code> provider is specified or the JBoss
+   * By default, unless another provider is specified or the JBoss
    * serialization implementation cannot be found in the classpath, the JBoss
-   * implementation will be used.
+   * implementation will be used. Note that per-connection class dictionaries
+   * and compact command headers (see
+   * {@link #MARSHALLING_CLASS_DICTIONARY_MAX_SIZE}) are only supported by the
+   * <code>jdk</code> provider.
+   * <p>
+   * The provider may also be specified per transport type, by suffixing this
+   * property with the transport type (for example:
+   * <code>ubik.rmi.transport.serialization.provider.nio/tcp/netty</code>).
    *
+   * @see org.sapia.ubik.rmi.server.transport.Serializers
    */
   public static final String SERIALIZATION_PROVIDER = "ubik.rmi.transport.serialization.provider";
 
@@ -661,4 +998,18 @@ public interface Consts {
    */
   public static final String SERIALIZATION_PROVIDER_JDK = "jdk";
 
+  /**
+   * Corresponds to the property value that should be used to specify the
+   * binary serialization provider.
+   */
+  public static final String SERIALIZATION_PROVIDER_BINARY = "binary";
+
+  /**
+   * This constant corresponds to the system property (
+   * <code>ubik.rmi.transport.serialization.binary.classes</code>) that holds
+   * the comma-delimited list of classes to register with the binary
+   * serialization provider. The list must be the same on all JVMs.
+   */
+  public static final String SERIALIZATION_BINARY_CLASSES = "ubik.rmi.transport.serialization.binary.classes";
+
 }
@@ -48,6 +48,20 @@ public class Defaults {
    */
   public static final int DEFAULT_CLIENT_CONNECTION_MAX_RETRY = 3;
 
+  /**
+   * The default maximum number of threads performing asynchronous invocations.
+   *
+   * @see Consts#CLIENT_ASYNC_MAX_THREADS
+   */
+  public static final int DEFAULT_CLIENT_ASYNC_MAX_THREADS = 25;
+
+  /**
+   * The default number of asynchronous invocations that may be queued.
+   *
+   * @see Consts#CLIENT_ASYNC_QUEUE_SIZE
+   */
+  public static final int DEFAULT_CLIENT_ASYNC_QUEUE_SIZE = 10000;
+
   /**
    * The default value for the batch size when looking up synchronously other JNDI nodes, from a
    * given node missing a stub (see {@link Consts#JNDI_SYNC_LOOKUP_BATCH_SIZE}).
@@ -71,10 +85,68 @@ public class Defaults {
    */
   public static final int DEFAULT_UDP_PACKET_SIZE = 3072;
 
+  /**
+   * The default UDP fragment size (see {@link Consts#MCAST_FRAGMENT_SIZE}).
+   */
+  public static final int DEFAULT_UDP_FRAGMENT_SIZE = 1400;
+
+  /**
+   * The default timeout of incomplete fragmented events (see {@link Consts#MCAST_FRAGMENT_TIMEOUT}).
+   */
+  public static final TimeValue DEFAULT_UDP_FRAGMENT_TIMEOUT = TimeValue.createMillis(5000);
+
+  /**
+   * The default maximum number of bytes of incomplete fragmented events (see {@link Consts#MCAST_FRAGMENT_MAX_PENDING_BYTES}).
+   */
+  public static final int DEFAULT_UDP_FRAGMENT_MAX_PENDING_BYTES = 4 * 1024 * 1024;
+
+  /**
+   * The default delay after which missing fragments are requested (see {@link Consts#MCAST_FRAGMENT_NACK_DELAY}).
+   */
+  public static final TimeValue DEFAULT_UDP_FRAGMENT_NACK_DELAY = TimeValue.createMillis(200);
+
+  /**
+   * The default batch linger time (see {@link Consts#MCAST_BATCH_LINGER}).
+   */
+  public static final TimeValue DEFAULT_BATCH_LINGER = TimeValue.createMillis(5);
+
+  /**
+   * The default maximum number of events per batch (see {@link Consts#MCAST_BATCH_MAX_EVENTS}).
+   */
+  public static final int DEFAULT_BATCH_MAX_EVENTS = 100;
+
+  /**
+   * The default maximum number of bytes per batch (see {@link Consts#MCAST_BATCH_MAX_BYTES}).
+   */
+  public static final int DEFAULT_BATCH_MAX_BYTES = 32768;
+
+  /**
+   * The default maximum number of queued events (see {@link Consts#MCAST_BATCH_MAX_PENDING}).
+   */
+  public static final int DEFAULT_BATCH_MAX_PENDING = 10000;
+
+  /**
+   * The default enqueue timeout (see {@link Consts#MCAST_BATCH_ENQUEUE_TIMEOUT}).
+   */
+  public static final TimeValue DEFAULT_BATCH_ENQUEUE_TIMEOUT = TimeValue.createMillis(5000);
+
   /**
    * The default marshalling buffer size (see {@link Consts#MARSHALLING_BUFSIZE}).
    */
   public static final int DEFAULT_MARSHALLING_BUFSIZE = 512;
+
+  /**
+   * The default maximum size of retained serialization buffers (see
+   * {@link Consts#MARSHALLING_BUFFER_MAX_RETAINED_SIZE}).
+   */
+  public static final int DEFAULT_MARSHALLING_BUFFER_MAX_RETAINED_SIZE = 65536;
+
+  /**
+   * The default maximum size of class dictionaries (see
+   * {@link Consts#MARSHALLING_CLASS_DICTIONARY_MAX_SIZE}): they are disabled by
+   * default.
+   */
+  public static final int DEFAULT_MARSHALLING_CLASS_DICTIONARY_MAX_SIZE = 0;
   
   /**
    * The default TTL for UDP multicast packets (see {@link Consts#MCAST_TTL}).
@@ -130,6 +202,21 @@ public class Defaults {
    */  
   public static final int DEFAULT_GOSSIP_MIN_NODE_COUNT = 3;
 
+  /**
+   * The default suspicion level of the phi-accrual failure detector (see {@link Consts#MCAST_PHI_ACCRUAL_THRESHOLD}).
+   */
+  public static final float DEFAULT_PHI_ACCRUAL_THRESHOLD = 8f;
+
+  /**
+   * The default minimum number of samples of the phi-accrual failure detector (see {@link Consts#MCAST_PHI_ACCRUAL_MIN_SAMPLES}).
+   */
+  public static final int DEFAULT_PHI_ACCRUAL_MIN_SAMPLES = 10;
+
+  /**
+   * The default minimum standard deviation of the phi-accrual failure detector (see {@link Consts#MCAST_PHI_ACCRUAL_MIN_STD_DEVIATION}).
+   */
+  public static final TimeValue DEFAULT_PHI_ACCRUAL_MIN_STD_DEVIATION = TimeValue.createMillis(500);
+
   /**
    * The default interval at which the event channel thread should run (see {@link Consts#MCAST_CONTROL_THREAD_INTERVAL}).
    */
@@ -275,6 +362,58 @@ public class Defaults {
    */ 
   public static final int DEFAULT_HTTP_CLIENT_READ_TIMEOUT       = 60000;
   
+  /**
+   * The default strategy used by stateless stubs to select endpoints.
+   */
+  public static final String DEFAULT_STATELESS_BALANCING = "round-robin";
+
+  /**
+   * The default number of invocations over which circuit breakers compute
+   * failure rates.
+   */
+  public static final int DEFAULT_STATELESS_BREAKER_WINDOW_SIZE = 20;
+
+  /**
+   * The default minimum number of invocations before circuit breakers take
+   * failure rates into account.
+   */
+  public static final int DEFAULT_STATELESS_BREAKER_MIN_CALLS = 10;
+
+  /**
+   * The default failure rate from which circuits are opened.
+   */
+  public static final float DEFAULT_STATELESS_BREAKER_FAILURE_RATE = 0.5f;
+
+  /**
+   * The default number of consecutive failures from which circuits are opened.
+   */
+  public static final int DEFAULT_STATELESS_BREAKER_CONSECUTIVE_FAILURES = 3;
+
+  /**
+   * The default duration from which invocations are deemed slow.
+   */
+  public static final TimeValue DEFAULT_STATELESS_BREAKER_SLOW_CALL_THRESHOLD = TimeValue.createMillis(5000);
+
+  /**
+   * The default slow call rate from which circuits are opened.
+   */
+  public static final float DEFAULT_STATELESS_BREAKER_SLOW_CALL_RATE = 0.8f;
+
+  /**
+   * The default amount of time during which circuits stay open.
+   */
+  public static final TimeValue DEFAULT_STATELESS_BREAKER_OPEN_INTERVAL = TimeValue.createMillis(5000);
+
+  /**
+   * The default latency percentile after which hedged invocations are sent.
+   */
+  public static final int DEFAULT_STATELESS_HEDGING_PERCENTILE = 95;
+
+  /**
+   * The default minimum delay after which hedged invocations are sent.
+   */
+  public static final TimeValue DEFAULT_STATELESS_HEDGING_MIN_DELAY = TimeValue.createMillis(5);
+
   private Defaults() {
   }
 }
@@ -0,0 +1,28 @@
+package org.sapia.ubik.rmi;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation allows specifying that invocations of a given method of a
+ * remote interface (or of all methods of that interface) may be hedged by
+ * stateless stubs: if the endpoint to which an invocation was sent has not
+ * answered after a delay based on the latency of recent invocations, the
+ * invocation is also sent to another endpoint, and the first response is
+ * used.
+ * <p>
+ * Since a hedged invocation may be performed twice, only idempotent methods
+ * should be annotated.
+ *
+ * @see Consts#STATELESS_HEDGED_METHODS
+ *
+ * @author yduchesne
+ *
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+public @interface Hedged {
+
+}
@@ -360,8 +360,7 @@ public class Hub {
       try {
         conn.send(new CommandConnect(address.getTransportType()));
       } catch (RemoteException e) {
-        pool.invalidate(conn);
-        pool.clear();
+        pool.invalidateFailed(conn);
         conn = pool.acquire();
         conn.send(new CommandConnect(address.getTransportType()));
       }
@@ -371,8 +370,7 @@ public class Hub {
       throw new RemoteException("No server at address: " + address, e);
     } catch (RemoteException e) {
       if (conn != null) {
-        pool.invalidate(conn);
-        pool.clear();
+        pool.invalidateFailed(conn);
       }
       throw e;
     } catch (IOException e) {
@@ -26,6 +26,7 @@ import org.sapia.ubik.rmi.server.stub.StubInvocationHandler;
 import org.sapia.ubik.rmi.server.transport.TransportManager;
 import org.sapia.ubik.util.Assertions;
 import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.MethodCache;
 import org.sapia.ubik.util.TypeCache;
 
 /**
@@ -42,6 +43,7 @@ public class ServerTable implements Module {
 
   private Category log = Log.createCategory(ServerTable.class);
   private TypeCache              typeCache = new TypeCache();
+  private MethodCache            methodCache = new MethodCache();
   private Map<String, ServerRef> serversByType = new ConcurrentHashMap<String, ServerRef>();
   private ObjectTable            objectTable;
   private ServerGC               gc;
@@ -71,6 +73,7 @@ public class ServerTable implements Module {
       ref.getServer().close();
     }
     typeCache.clear();
+    methodCache.clear();
     serversByType.clear();
   }
 
@@ -110,6 +113,14 @@ public class ServerTable implements Module {
     return typeCache;
   }
 
+  /**
+   * @return the {@link MethodCache}, which holds the cached methods that are
+   *         invoked on remote objects.
+   */
+  public MethodCache getMethodCache() {
+    return methodCache;
+  }
+
   /**
    * @param transportType
    *          a transport type identifier.
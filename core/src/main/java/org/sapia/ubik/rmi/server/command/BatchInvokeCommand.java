@@ -0,0 +1,159 @@
+package org.sapia.ubik.rmi.server.command;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.rmi.server.Config;
+import org.sapia.ubik.rmi.threads.Threads;
+import org.sapia.ubik.util.Strings;
+
+/**
+ * Performs a batch of remote method invocations - each corresponding to an
+ * {@link InvokeCommand} - in a single round trip. The nested commands are
+ * executed as they would be if they had been sent individually (which means
+ * that the {@link org.sapia.ubik.rmi.server.invocation.ServerPreInvokeEvent}
+ * and {@link org.sapia.ubik.rmi.server.invocation.ServerPostInvokeEvent} are
+ * dispatched for each of them), and their results are returned in an array,
+ * in the order of the commands. A nested command whose method throws an
+ * exception has that exception as its result: the other commands are executed
+ * regardless.
+ * <p>
+ * If this instance is parallel, the nested commands are executed concurrently
+ * on the server's worker pool. The thread executing this instance executes the
+ * commands that no worker has picked up yet, so that a saturated pool does not
+ * hold up the batch.
+ *
+ * @author yduchesne
+ */
+public class BatchInvokeCommand extends RMICommand implements Externalizable {
+
+  static final long serialVersionUID = 1L;
+
+  private InvokeCommand[] commands;
+  private boolean         parallel;
+
+  /**
+   * Do not call; used for externalization only.
+   */
+  public BatchInvokeCommand() {
+  }
+
+  /**
+   * @param commands
+   *          the {@link InvokeCommand}s to execute.
+   * @param parallel
+   *          if <code>true</code>, the commands are executed concurrently on
+   *          the server side.
+   */
+  public BatchInvokeCommand(InvokeCommand[] commands, boolean parallel) {
+    this.commands = commands;
+    this.parallel = parallel;
+  }
+
+  /**
+   * @return the {@link InvokeCommand}s held by this instance.
+   */
+  public InvokeCommand[] getCommands() {
+    return commands;
+  }
+
+  /**
+   * @return <code>true</code> if the commands held by this instance are
+   *         executed concurrently.
+   */
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  @Override
+  public void init(Config config) {
+    super.init(config);
+    for (InvokeCommand cmd : commands) {
+      cmd.init(config);
+    }
+  }
+
+  /**
+   * @return the array of the results of the nested commands.
+   */
+  @Override
+  public Object execute() throws Throwable {
+    Object[] results = new Object[commands.length];
+    if (!parallel || commands.length < 2) {
+      for (int i = 0; i < commands.length; i++) {
+        results[i] = executeCommand(commands[i]);
+      }
+      return results;
+    }
+
+    List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(commands.length);
+    ExecutorService workers = Threads.getGlobalWorkerPool();
+    for (int i = 0; i < commands.length; i++) {
+      final InvokeCommand cmd = commands[i];
+      FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          return executeCommand(cmd);
+        }
+      });
+      tasks.add(task);
+      // the first task is executed by the current thread
+      if (i > 0) {
+        try {
+          workers.execute(task);
+        } catch (RejectedExecutionException e) {
+          Log.debug(getClass(), "Worker pool rejected batched command; it will be executed by the current thread");
+        }
+      }
+    }
+
+    for (int i = 0; i < tasks.size(); i++) {
+      FutureTask<Object> task = tasks.get(i);
+      // does nothing if the task has been started by a worker
+      task.run();
+      try {
+        results[i] = task.get();
+      } catch (ExecutionException e) {
+        results[i] = e.getCause();
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    commands = (InvokeCommand[]) in.readObject();
+    parallel = in.readBoolean();
+  }
+
+  @Override
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(commands);
+    out.writeBoolean(parallel);
+  }
+
+  @Override
+  public String toString() {
+    return Strings.toStringFor(this, "commands", commands.length, "parallel", parallel);
+  }
+
+  private static Object executeCommand(InvokeCommand cmd) {
+    try {
+      return cmd.execute();
+    } catch (Throwable e) {
+      return e;
+    }
+  }
+}
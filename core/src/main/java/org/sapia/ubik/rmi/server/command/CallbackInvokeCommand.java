@@ -4,11 +4,14 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.net.ServerAddress;
 import org.sapia.ubik.rmi.server.Hub;
 import org.sapia.ubik.rmi.server.oid.OID;
+import org.sapia.ubik.util.Futures;
 
 /**
  * A method invocation command that is executed asynchronously: it is sent from
@@ -71,6 +74,21 @@ public class CallbackInvokeCommand extends InvokeCommand implements Externalizab
     }
   }
 
+  /**
+   * @see InvokeCommand#executeDeferred()
+   */
+  @Override
+  public CompletionStage<Object> executeDeferred() {
+    if (!executed) {
+      try {
+        return CompletableFuture.completedFuture(execute());
+      } catch (Throwable e) {
+        return Futures.failed(e);
+      }
+    }
+    return super.executeDeferred();
+  }
+
   /**
    * @see java.io.Externalizable#readExternal(ObjectInput)
    */
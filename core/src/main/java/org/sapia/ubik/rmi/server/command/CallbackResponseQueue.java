@@ -4,6 +4,8 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.javasimon.Counter;
+import org.sapia.ubik.concurrent.TimerWheel;
+import org.sapia.ubik.concurrent.TimerWheel.Timeout;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.rmi.server.stats.Stats;
@@ -13,6 +15,11 @@ import org.sapia.ubik.util.Pause;
 /**
  * This class implements a client-side response queue that internally keeps
  * response locks.
+ * <p>
+ * Locks are kept in a concurrent map, and are created and released without
+ * locking. The timeouts of the locks whose responses are awaited
+ * asynchronously are expired by a single {@link TimerWheel}, which allows large
+ * numbers of pending responses.
  * 
  * @author Yanick Duchesne
  */
@@ -22,6 +29,8 @@ public class CallbackResponseQueue {
   private Map<Long, ResponseLock> responseLocks = new ConcurrentHashMap<Long, ResponseLock>();
   private volatile boolean shutdown;
   private Counter callbackCount = Stats.createCounter(getClass(), "CallbackCount", "Number of callbacks performed");
+  private volatile TimerWheel timer;
+  private boolean closed;
 
   /**
    * @param timeout
@@ -33,15 +42,29 @@ public class CallbackResponseQueue {
     }
     shutdown = true;
 
-    Pause timer = new Pause(timeout);
+    Pause pause = new Pause(timeout);
 
-    while (responseLocks.size() > 0 && !timer.isOver()) {
+    while (responseLocks.size() > 0 && !pause.isOver()) {
       try {
-        wait(timer.remainingNotZero());
+        wait(pause.remainingNotZero());
       } catch (InterruptedException e) {
 
       }
     }
+    close();
+  }
+
+  /**
+   * Stops the timer that this instance uses to time out the response locks
+   * that are awaited asynchronously (see {@link ResponseLock#toFuture(long)}):
+   * the locks that are awaited asynchronously afterwards fail immediately.
+   */
+  synchronized void close() {
+    closed = true;
+    if (timer != null) {
+      timer.stop();
+      timer = null;
+    }
   }
 
   /***
@@ -50,14 +73,13 @@ public class CallbackResponseQueue {
    * 
    * @return a {@link ResponseLock}.
    */
-  public synchronized ResponseLock createResponseLock() {
+  public ResponseLock createResponseLock() {
     ResponseLock lock = new ResponseLock(this);
 
-    Assertions.illegalState(responseLocks.containsKey(lock.getId()), "Response lock already exists for: %s", lock.getId());
+    Assertions.illegalState(responseLocks.putIfAbsent(lock.getId(), lock) != null, "Response lock already exists for: %s", lock.getId());
 
     callbackCount.increase();
     log.debug("Creating response lock %s", lock.getId());
-    responseLocks.put(lock.getId(), lock);
     return lock;
   }
 
@@ -77,6 +99,49 @@ public class CallbackResponseQueue {
     }
   }
 
+  /**
+   * Schedules the timeout of the given lock, whose response is awaited
+   * asynchronously. A single {@link TimerWheel} is used for all such locks.
+   * <p>
+   * If this instance has been closed, the timer is not recreated (it would
+   * never be stopped): the lock is rather failed immediately (see
+   * {@link ResponseLock#onShutdown()}).
+   * 
+   * @param lock
+   *          a {@link ResponseLock}.
+   * @param timeout
+   *          the timeout (in millis) after which the lock should be timed out.
+   * @return the {@link Timeout} corresponding to the lock, or
+   *         <code>null</code> if this instance has been closed.
+   */
+  Timeout scheduleTimeout(final ResponseLock lock, long timeout) {
+    TimerWheel current = timer;
+    if (current == null) {
+      synchronized (this) {
+        if (closed) {
+          lock.onShutdown();
+          return null;
+        }
+        if (timer == null) {
+          timer = new TimerWheel("ubik.rmi.client.CallbackTimer");
+        }
+        current = timer;
+      }
+    }
+    try {
+      return current.schedule(new Runnable() {
+        @Override
+        public void run() {
+          lock.onTimeout();
+        }
+      }, timeout);
+    } catch (IllegalStateException e) {
+      // the timer was stopped concurrently, by close()
+      lock.onShutdown();
+      return null;
+    }
+  }
+
   /**
    * @return the number of {@link ResponseLock}s currently held by this
    *         instance.
@@ -85,13 +150,25 @@ public class CallbackResponseQueue {
     return responseLocks.size();
   }
 
-  synchronized void removeLock(long id) {
+  void removeLock(long id) {
     responseLocks.remove(id);
 
     // synchronizing with shutdown() method
     if (shutdown) {
-      notify();
+      synchronized (this) {
+        notifyAll();
+      }
     }
   }
 
+  // --------------------------------------------------------------------------
+  // Visible for testing
+
+  /**
+   * @return <code>true</code> if this instance currently has a timer.
+   */
+  boolean hasTimer() {
+    return timer != null;
+  }
+
 }
@@ -35,7 +35,7 @@ public class CommandModule implements Module {
 
   @Override
   public void stop() {
-    // noop
+    responseQueue.close();
   }
   
   /**
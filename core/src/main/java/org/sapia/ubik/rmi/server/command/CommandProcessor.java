@@ -1,6 +1,7 @@
 package org.sapia.ubik.rmi.server.command;
 
 import java.util.concurrent.ExecutorService;
+import java.util.function.BiConsumer;
 
 import org.javasimon.Split;
 import org.javasimon.Stopwatch;
@@ -12,6 +13,7 @@ import org.sapia.ubik.rmi.server.stats.Stats;
 import org.sapia.ubik.rmi.server.transport.Connections;
 import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.sapia.ubik.rmi.server.transport.TransportManager;
+import org.sapia.ubik.util.Futures;
 
 /**
  * An instance of this class serves as an entry-point for command objects, which
@@ -77,10 +79,23 @@ public class CommandProcessor {
     asyncExecutor.submit(new Runnable() {
       @Override
       public void run() {
-        AsyncCommand async = new AsyncCommand(cmdId, caller, from, cmd);
-        Object toReturn = null;
+        final AsyncCommand async = new AsyncCommand(cmdId, caller, from, cmd);
+        final Split split = commandExecTime.start();
 
-        Split split = commandExecTime.start();
+        // the thread is not held while the result of a method returning a
+        // future is pending: the response is sent upon its completion
+        if (cmd instanceof InvokeCommand) {
+          ((InvokeCommand) cmd).executeDeferred().whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable err) {
+              split.stop();
+              doRespond(async, err == null ? result : Futures.unwrap(err));
+            }
+          });
+          return;
+        }
+
+        Object toReturn = null;
         try {
           toReturn = async.execute();
         } catch (Throwable t) {
@@ -88,15 +103,18 @@ public class CommandProcessor {
         } finally {
           split.stop();
         }
-        
-        if (async.getCallerVmId().equals(VmId.getInstance())) {
-          localResponseQueue.onResponse(new Response(async.getCmdId(), toReturn));
-        } else {
-          doSendResponse(new Destination(async.getFrom(), async.getCallerVmId()), new Response(async.getCmdId(), toReturn));
-        }
+        doRespond(async, toReturn);
       }
     });
   }
+
+  private void doRespond(AsyncCommand async, Object toReturn) {
+    if (async.getCallerVmId().equals(VmId.getInstance())) {
+      localResponseQueue.onResponse(new Response(async.getCmdId(), toReturn));
+    } else {
+      doSendResponse(new Destination(async.getFrom(), async.getCallerVmId()), new Response(async.getCmdId(), toReturn));
+    }
+  }
   
   private void doSendResponse(Destination dest, Response resp) {
     
@@ -125,8 +143,7 @@ public class CommandProcessor {
         } catch (Exception e) {
           log.error("Error sending command to %s", e, dest.getServerAddress());
           if (pool != null && conn != null) {
-            pool.invalidate(conn);
-            pool.clear();
+            pool.invalidateFailed(conn);
           }
           return;
         }
@@ -137,8 +154,7 @@ public class CommandProcessor {
           pool.release(conn);
         } catch (Exception e) {
           log.info("Error receiving ack from %s", e, dest.getServerAddress());
-          pool.invalidate(conn);
-          pool.clear();
+          pool.invalidateFailed(conn);
         }
       }
     });
@@ -6,6 +6,10 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
 
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.rmi.Consts;
@@ -20,21 +24,35 @@ import org.sapia.ubik.rmi.server.oid.DefaultOID;
 import org.sapia.ubik.rmi.server.oid.OID;
 import org.sapia.ubik.rmi.server.transport.ClassDescriptor;
 import org.sapia.ubik.rmi.server.transport.MarshalledObject;
+import org.sapia.ubik.util.Futures;
+import org.sapia.ubik.util.MethodCache;
 import org.sapia.ubik.util.Strings;
+import org.sapia.ubik.util.Varints;
 
 /**
  * This commands performs a remote method invocation.
+ * <p>
+ * When the compact header format is used (see {@link RMICommand}), the OID is
+ * written as raw values (if it is a {@link DefaultOID}), and the method's
+ * signature as a count followed by class names: the method and class names are
+ * interned in the connection's class dictionary, so that each is sent in full
+ * only once per connection, and then as a handle. The parameters are serialized
+ * the same way, whatever the header format.
  *
  * @author Yanick Duchesne
  */
 public class InvokeCommand extends RMICommand implements Externalizable {
   static final long serialVersionUID = 1L;
 
+  private static final byte OID_DEFAULT = 0;
+  private static final byte OID_OTHER   = 1;
+
   private static final boolean vmUsesMarshalledObjects = System.getProperty(Consts.MARSHALLING) != null
       && System.getProperty(Consts.MARSHALLING).equals("true");
 
   private transient Class<?>[] paramTypes;
   private transient String transportType;
+  private transient Method method;
   private OID oid;
   private String methodName;
   private Object[] params;
@@ -129,78 +147,198 @@ public class InvokeCommand extends RMICommand implements Externalizable {
    */
   @Override
   public Object execute() throws Throwable {
+    ServerPreInvokeEvent preEvt = doPrepare();
+
+    try {
+      Object toReturn = doInvoke(preEvt);
+
+      // a future cannot be sent to the client: its result is sent instead (the
+      // client-side stub completes its own future with that result).
+      if (toReturn instanceof CompletionStage) {
+        try {
+          toReturn = ((CompletionStage<?>) toReturn).toCompletableFuture().get();
+        } catch (ExecutionException e) {
+          throw new InvocationTargetException(Futures.unwrap(e));
+        }
+      }
+
+      return doComplete(preEvt, toReturn);
+    } catch (Throwable e) {
+      return doFail(preEvt, e);
+    }
+  }
+
+  /**
+   * Performs this command's invocation in the same manner as
+   * {@link #execute()}, except that if the invoked method returns a
+   * {@link CompletionStage}, its completion is not waited for: the calling
+   * thread is thus not held while the invoked method's result is pending.
+   *
+   * @return a {@link CompletionStage} that is completed with the value that
+   *         {@link #execute()} returns - or with the error that it throws.
+   */
+  public CompletionStage<Object> executeDeferred() {
+    final ServerPreInvokeEvent preEvt;
+    Object toReturn;
+    try {
+      preEvt = doPrepare();
+    } catch (Throwable e) {
+      return Futures.failed(e);
+    }
+
+    try {
+      toReturn = doInvoke(preEvt);
+    } catch (Throwable e) {
+      return doCompleteDeferred(preEvt, null, e);
+    }
+
+    if (toReturn instanceof CompletionStage) {
+      final CompletableFuture<Object> response = new CompletableFuture<Object>();
+      ((CompletionStage<?>) toReturn).whenComplete(new BiConsumer<Object, Throwable>() {
+        @Override
+        public void accept(Object result, Throwable err) {
+          Throwable error = err == null ? null : new InvocationTargetException(Futures.unwrap(err));
+          doCompleteDeferred(preEvt, result, error).whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable err) {
+              if (err == null) {
+                response.complete(value);
+              } else {
+                response.completeExceptionally(err);
+              }
+            }
+          });
+        }
+      });
+      return response;
+    }
+    return doCompleteDeferred(preEvt, toReturn, null);
+  }
+
+  private ServerPreInvokeEvent doPrepare() throws Throwable {
     if (Hub.isShutdown()) {
       throw new ShutdownException();
     }
 
-    ServerRuntime runtime = Hub.getModules().getServerRuntime();
     Object obj = doGetObjectFor(oid);
+    method = doGetMethodFor(obj);
+    return new ServerPreInvokeEvent(this, obj);
+  }
 
-    if (paramTypes == null) {
-      if (obj.getClass().getClassLoader() == null) {
-        convertParams(Thread.currentThread().getContextClassLoader());
-      } else {
-        convertParams(obj.getClass().getClassLoader());
-      }
+  private Object doInvoke(ServerPreInvokeEvent preEvt) throws Throwable {
+    Method mt = method;
+    if (Log.isDebug()) {
+      Log.debug(getClass(), "invoking " + mt.getName() + " on " + oid + "(" + preEvt.getTarget() + ")");
     }
+    Hub.getModules().getServerRuntime().dispatchEvent(preEvt);
 
-    Method mt = obj.getClass().getMethod(methodName, paramTypes);
-
-    ServerPreInvokeEvent preEvt = new ServerPreInvokeEvent(this, obj);
+    return mt.invoke(preEvt.getTarget(), preEvt.getInvokeCommand().getParams());
+  }
 
-    try {
-      if (Log.isDebug()) {
-        Log.debug(getClass(), "invoking " + mt.getName() + " on " + oid + "(" + obj + ")");
+  // returns a future that is already completed, in the same manner as execute()
+  private CompletableFuture<Object> doCompleteDeferred(ServerPreInvokeEvent preEvt, Object toReturn, Throwable error) {
+    if (error == null) {
+      try {
+        return CompletableFuture.completedFuture(doComplete(preEvt, toReturn));
+      } catch (Throwable e) {
+        error = e;
       }
-      runtime.dispatchEvent(preEvt);
-
-      mt.setAccessible(true);
-      Object toReturn = mt.invoke(preEvt.getTarget(), preEvt.getInvokeCommand().getParams());
+    }
+    try {
+      return CompletableFuture.completedFuture(doFail(preEvt, error));
+    } catch (Throwable e) {
+      return Futures.failed(e);
+    }
+  }
 
-      ServerPostInvokeEvent postEvt = new ServerPostInvokeEvent(preEvt.getTarget(), preEvt.getInvokeCommand(), System.currentTimeMillis()
-          - preEvt.getInvokeTime());
+  private Object doComplete(ServerPreInvokeEvent preEvt, Object toReturn) throws Throwable {
+    ServerRuntime runtime = Hub.getModules().getServerRuntime();
+    ServerPostInvokeEvent postEvt = new ServerPostInvokeEvent(preEvt.getTarget(), preEvt.getInvokeCommand(), System.currentTimeMillis()
+        - preEvt.getInvokeTime());
 
-      postEvt.setResultObject(toReturn);
+    postEvt.setResultObject(toReturn);
 
-      runtime.dispatchEvent(postEvt);
+    runtime.dispatchEvent(postEvt);
 
-      if (usesMarshalledObjects) {
-        toReturn = new MarshalledObject(toReturn, VmId.getInstance(), config.getServerAddress().getTransportType());
-      }
+    if (usesMarshalledObjects) {
+      toReturn = new MarshalledObject(toReturn, VmId.getInstance(), config.getServerAddress().getTransportType());
+    }
 
-      return toReturn;
-    } catch (Throwable e) {
+    return toReturn;
+  }
 
-      // dispatching post invocation event
+  private Object doFail(ServerPreInvokeEvent preEvt, Throwable e) throws Throwable {
 
-      if (usesMarshalledObjects) {
-        return new MarshalledObject(e, VmId.getInstance(), config.getServerAddress().getTransportType());
-      }
+    // dispatching post invocation event
 
-      if (e instanceof InvocationTargetException) {
-        e = ((InvocationTargetException) e).getTargetException();
-      }
-      ServerPostInvokeEvent postEvt = new ServerPostInvokeEvent(preEvt.getTarget(), preEvt.getInvokeCommand(), System.currentTimeMillis()
-          - preEvt.getInvokeTime(), e);
+    if (usesMarshalledObjects) {
+      return new MarshalledObject(e, VmId.getInstance(), config.getServerAddress().getTransportType());
+    }
 
-      runtime.dispatchEvent(postEvt);
-      throw e;
+    if (e instanceof InvocationTargetException) {
+      e = ((InvocationTargetException) e).getTargetException();
     }
+    ServerPostInvokeEvent postEvt = new ServerPostInvokeEvent(preEvt.getTarget(), preEvt.getInvokeCommand(), System.currentTimeMillis()
+        - preEvt.getInvokeTime(), e);
+
+    Hub.getModules().getServerRuntime().dispatchEvent(postEvt);
+    throw e;
   }
 
   protected Object doGetObjectFor(OID oid) throws NoSuchObjectException {
     return Hub.getModules().getObjectTable().getObjectFor(oid);
   }
 
+  /**
+   * Returns the method to invoke on the given object, from the
+   * {@link MethodCache}. If the method is already cached, the parameter types
+   * are taken from it, rather than being resolved from their
+   * {@link ClassDescriptor}s.
+   *
+   * @param obj
+   *          the object on which to invoke the method.
+   * @return the {@link Method} to invoke.
+   */
+  protected Method doGetMethodFor(Object obj) throws IOException, ClassNotFoundException, NoSuchMethodException {
+    MethodCache cache = Hub.getModules().getServerTable().getMethodCache();
+    if (paramTypes == null) {
+      ClassLoader loader = obj.getClass().getClassLoader() == null ? Thread.currentThread().getContextClassLoader() : obj.getClass()
+          .getClassLoader();
+      Method mt = cache.getCachedMethod(obj.getClass(), methodName, paramClasses);
+      if (mt != null) {
+        paramTypes = mt.getParameterTypes();
+        unmarshalParams(loader);
+        return mt;
+      }
+      convertParams(loader);
+    }
+    return cache.getMethod(obj.getClass(), methodName, paramTypes);
+  }
+
   /**
    * @see java.io.Externalizable#readExternal(ObjectInput)
    */
   @Override
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
     super.readExternal(in);
-    oid = (OID) in.readObject();
-    methodName = (String) in.readObject();
-    paramClasses = (ClassDescriptor[]) in.readObject();
+    if (isCompactHeader()) {
+      if (in.readByte() == OID_DEFAULT) {
+        DefaultOID defaultOid = new DefaultOID();
+        defaultOid.readCompact(in);
+        oid = defaultOid;
+      } else {
+        oid = (OID) in.readObject();
+      }
+      methodName = readName(in);
+      paramClasses = new ClassDescriptor[Varints.readVarInt(in)];
+      for (int i = 0; i < paramClasses.length; i++) {
+        paramClasses[i] = new ClassDescriptor(readName(in));
+      }
+    } else {
+      oid = (OID) in.readObject();
+      methodName = (String) in.readObject();
+      paramClasses = (ClassDescriptor[]) in.readObject();
+    }
     params = (Object[]) in.readObject();
     usesMarshalledObjects = in.readBoolean();
   }
@@ -211,8 +349,23 @@ public class InvokeCommand extends RMICommand implements Externalizable {
   @Override
   public void writeExternal(ObjectOutput out) throws IOException {
     super.writeExternal(out);
-    out.writeObject(oid);
-    out.writeObject(methodName);
+    if (isCompactHeader()) {
+      if (oid instanceof DefaultOID) {
+        out.writeByte(OID_DEFAULT);
+        ((DefaultOID) oid).writeCompact(out);
+      } else {
+        out.writeByte(OID_OTHER);
+        out.writeObject(oid);
+      }
+      writeName(out, methodName);
+      Varints.writeVarInt(out, paramClasses.length);
+      for (ClassDescriptor paramClass : paramClasses) {
+        writeName(out, paramClass.getClassName());
+      }
+    } else {
+      out.writeObject(oid);
+      out.writeObject(methodName);
+    }
 
     if (usesMarshalledObjects) {
       if ((params != null) && (params.length > 0) && !(params[0] instanceof MarshalledObject)) {
@@ -222,7 +375,9 @@ public class InvokeCommand extends RMICommand implements Externalizable {
       }
     }
 
-    out.writeObject(paramClasses);
+    if (!isCompactHeader()) {
+      out.writeObject(paramClasses);
+    }
     out.writeObject(params);
     out.writeBoolean(usesMarshalledObjects);
   }
@@ -241,6 +396,10 @@ public class InvokeCommand extends RMICommand implements Externalizable {
       paramTypes[i] = paramClasses[i].resolve(loader);
     }
 
+    unmarshalParams(loader);
+  }
+
+  private void unmarshalParams(ClassLoader loader) throws IOException, ClassNotFoundException {
     if (usesMarshalledObjects && (params != null)) {
       for (int i = 0; i < params.length; i++) {
         params[i] = ((MarshalledObject) params[i]).get(loader);
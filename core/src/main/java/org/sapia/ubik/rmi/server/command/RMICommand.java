@@ -4,22 +4,50 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
 
 import org.sapia.ubik.net.Connection;
 import org.sapia.ubik.net.ServerAddress;
 import org.sapia.ubik.rmi.server.Config;
 import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.transport.MarshalInputStream;
+import org.sapia.ubik.rmi.server.transport.MarshalOutputStream;
+import org.sapia.ubik.rmi.server.transport.StreamClassDictionary;
 
 /**
  * This class models an executable command. Typically, a command object is
  * created on the client side, then sent to the server where it is executed.
+ * <p>
+ * A command's header may be written in one of two formats: the legacy one, in
+ * which the {@link VmId} is written as a serialized object, and a compact one,
+ * in which it is written as raw values, following a <code>null</code> marker
+ * and a version byte. Both formats are accepted when reading.
+ * <p>
+ * The format is chosen for each stream: the compact one is used when the
+ * command is written to a {@link MarshalOutputStream} that has a
+ * {@link StreamClassDictionary}. Such streams can only be read by peers that
+ * also support the compact format: they are thus only used when dictionaries
+ * have been explicitly enabled (see
+ * {@link org.sapia.ubik.rmi.Consts#MARSHALLING_CLASS_DICTIONARY_MAX_SIZE},
+ * which is 0 by default), and the legacy format is used otherwise. Since
+ * both formats are read, a cluster is upgraded by first deploying the new
+ * version everywhere with dictionaries disabled, and then enabling them on
+ * all nodes at once. Subclasses may check which format is used by
+ * calling {@link #isCompactHeader()}, and encode their own fields accordingly -
+ * names being written with {@link #writeName(ObjectOutput, String)}.
  * 
  * @author Yanick Duchesne
  */
 public abstract class RMICommand extends Command implements Externalizable {
 
+  /**
+   * The version of the compact header format.
+   */
+  static final byte COMPACT_HEADER_VERSION = 1;
+
   protected transient Config config;
   protected VmId vmId = VmId.getInstance();
+  private transient boolean compactHeader;
 
   public RMICommand() {
   }
@@ -66,6 +94,14 @@ public abstract class RMICommand extends Command implements Externalizable {
     return config.getConnection();
   }
 
+  /**
+   * @return <code>true</code> if this instance's header is written (or was
+   *         read) in the compact format.
+   */
+  protected boolean isCompactHeader() {
+    return compactHeader;
+  }
+
   /**
    * Executes this command.
    * 
@@ -78,13 +114,62 @@ public abstract class RMICommand extends Command implements Externalizable {
    * @see java.io.Externalizable#readExternal(ObjectInput)
    */
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
-    vmId = (VmId) in.readObject();
+    Object first = in.readObject();
+    if (first == null) {
+      byte version = in.readByte();
+      if (version != COMPACT_HEADER_VERSION) {
+        throw new StreamCorruptedException("Unsupported command header version: " + version);
+      }
+      compactHeader = true;
+      vmId = new VmId();
+      vmId.readExternal(in);
+    } else {
+      compactHeader = false;
+      vmId = (VmId) first;
+    }
   }
 
   /**
    * @see java.io.Externalizable#writeExternal(ObjectOutput)
    */
   public void writeExternal(ObjectOutput out) throws IOException {
-    out.writeObject(vmId);
+    compactHeader = out instanceof MarshalOutputStream && ((MarshalOutputStream) out).hasDictionary();
+    if (compactHeader) {
+      out.writeObject(null);
+      out.writeByte(COMPACT_HEADER_VERSION);
+      vmId.writeExternal(out);
+    } else {
+      out.writeObject(vmId);
+    }
+  }
+
+  /**
+   * Writes the given name, in the compact format: it is interned in the
+   * connection's {@link StreamClassDictionary}, so that it is sent in full only
+   * once.
+   *
+   * @param out
+   *          the {@link ObjectOutput} to write to.
+   * @param name
+   *          the name to write.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  protected static void writeName(ObjectOutput out, String name) throws IOException {
+    ((MarshalOutputStream) out).writeName(name);
+  }
+
+  /**
+   * @param in
+   *          the {@link ObjectInput} to read from.
+   * @return a name written with {@link #writeName(ObjectOutput, String)}.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  protected static String readName(ObjectInput in) throws IOException {
+    if (!(in instanceof MarshalInputStream)) {
+      throw new StreamCorruptedException("Compact command header cannot be read from " + in.getClass().getName());
+    }
+    return ((MarshalInputStream) in).readName();
   }
 }
@@ -1,13 +1,25 @@
 package org.sapia.ubik.rmi.server.command;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 
-import org.sapia.ubik.util.Pause;
+import org.sapia.ubik.concurrent.TimerWheel.Timeout;
+import org.sapia.ubik.rmi.server.ShutdownException;
 
 /**
- * A client-side lock on which the caller of an asynchronous call-back waits for
- * the corresponding call-back's response.
- * 
+ * Holds the pending response of an asynchronous call-back. The response is
+ * kept in a {@link CompletableFuture}: the caller may either wait for it (see
+ * {@link #await(long)}), or obtain the future (see {@link #toFuture(long)}).
+ * <p>
+ * An instance of this class is released from its {@link CallbackResponseQueue}
+ * as soon as its response comes in, or it times out.
+ *
  * @author yduchesne
  */
 public class ResponseLock {
@@ -15,10 +27,11 @@ public class ResponseLock {
   private static final long MAX_VALUE = Long.MAX_VALUE - 10000;
 
   private static AtomicLong count = new AtomicLong();
-  private Object response;
   private CallbackResponseQueue queue;
   private long id;
-  private volatile boolean ready;
+  private CompletableFuture<Object> future = new CompletableFuture<Object>();
+  private AtomicBoolean timeoutScheduled = new AtomicBoolean();
+  private volatile Timeout timeout;
 
   /**
    * Constructor for ResponseLock.
@@ -26,11 +39,21 @@ public class ResponseLock {
   ResponseLock(CallbackResponseQueue parent) {
     queue = parent;
     id = generateId();
+    future.whenComplete(new BiConsumer<Object, Throwable>() {
+      @Override
+      public void accept(Object response, Throwable err) {
+        Timeout t = timeout;
+        if (t != null) {
+          t.cancel();
+        }
+        release();
+      }
+    });
   }
 
   /**
    * Returns this lock's unique identifier.
-   * 
+   *
    * @return a this instance's unique identifier.
    */
   public long getId() {
@@ -48,7 +71,7 @@ public class ResponseLock {
    * Waits for the response of an asynchronous call-back. The caller will wait
    * for the length of time specified by the given timeout; if no response comes
    * in before the given timeout, a {@link ResponseTimeOutException} is thrown.
-   * 
+   *
    * @param timeout
    *          a timeout, in milliseconds.
    * @throws ResponseTimeOutException
@@ -57,32 +80,73 @@ public class ResponseLock {
    *           if the caller is interrupted while waiting for the response.
    * @return a response, as an {@link Object}.
    */
-  public synchronized Object await(long timeout) throws InterruptedException, ResponseTimeOutException {
-    Pause timer = new Pause(timeout);
-
-    while (!ready) {
-      wait(timer.remainingNotZero());
-
-      if (timer.isOver() && !ready) {
-        release();
+  public Object await(long timeout) throws InterruptedException, ResponseTimeOutException {
+    try {
+      return future.get(timeout, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      onTimeout();
+      try {
+        // the response may have come in just before the timeout
+        return future.getNow(null);
+      } catch (CompletionException ce) {
         throw new ResponseTimeOutException();
       }
+    } catch (ExecutionException e) {
+      // the future is only completed exceptionally upon timing out
+      throw new ResponseTimeOutException();
     }
+  }
 
-    release();
-    return response;
+  /**
+   * Returns a {@link CompletableFuture} that is completed with the response of
+   * an asynchronous call-back, rather than having the caller wait for that
+   * response. If no response comes in before the given timeout, the future is
+   * completed with a {@link ResponseTimeOutException}.
+   * <p>
+   * No thread is held while the response is pending: the future is completed
+   * by the thread that sets the response (see {@link #setResponse(Object)}),
+   * and timeouts are expired by the {@link CallbackResponseQueue}'s timer
+   * wheel. Only the first call to this method schedules a timeout.
+   *
+   * @param timeoutMillis
+   *          a timeout, in milliseconds.
+   * @return a {@link CompletableFuture} that is completed with the response.
+   */
+  public CompletableFuture<Object> toFuture(long timeoutMillis) {
+    if (!future.isDone() && timeoutScheduled.compareAndSet(false, true)) {
+      timeout = queue.scheduleTimeout(this, timeoutMillis);
+      if (timeout != null && future.isDone()) {
+        timeout.cancel();
+      }
+    }
+    return future;
   }
 
   /**
    * Sets this lock's response.
-   * 
+   *
    * @param r
    *          an {@link Object} corresponding to an asynchronous response.
    */
-  public synchronized void setResponse(Object r) {
-    response = r;
-    ready = true;
-    notify();
+  public void setResponse(Object r) {
+    future.complete(r);
+  }
+
+  /**
+   * Times out this instance: its future is completed with a
+   * {@link ResponseTimeOutException}, unless its response has come in.
+   */
+  void onTimeout() {
+    future.completeExceptionally(new ResponseTimeOutException());
+  }
+
+  /**
+   * Fails this instance because its {@link CallbackResponseQueue} is closed:
+   * its future is completed with a {@link ShutdownException}, unless its
+   * response has come in.
+   */
+  void onShutdown() {
+    future.completeExceptionally(new ShutdownException());
   }
 
   private static long generateId() {
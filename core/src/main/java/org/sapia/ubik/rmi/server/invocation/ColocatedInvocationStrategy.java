@@ -3,27 +3,37 @@ package org.sapia.ubik.rmi.server.invocation;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
 
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.module.ModuleContext;
 import org.sapia.ubik.rmi.server.ObjectTable;
 import org.sapia.ubik.rmi.server.ServerRuntime;
+import org.sapia.ubik.rmi.server.ServerTable;
+import org.sapia.ubik.rmi.server.command.BatchInvokeCommand;
 import org.sapia.ubik.rmi.server.command.InvokeCommand;
 import org.sapia.ubik.rmi.server.invocation.InvocationDispatcher.InvocationStats;
 import org.sapia.ubik.rmi.server.invocation.InvocationDispatcher.InvocationStrategy;
 import org.sapia.ubik.rmi.server.transport.Connections;
+import org.sapia.ubik.util.Futures;
+import org.sapia.ubik.util.MethodCache;
 
 public class ColocatedInvocationStrategy implements InvocationStrategy {
 
   private Category log = Log.createCategory(getClass());
   private ServerRuntime serverRuntime;
   private ObjectTable objectTable;
+  private MethodCache methodCache;
 
   @Override
   public void init(ModuleContext modules) {
     this.serverRuntime = modules.lookup(ServerRuntime.class);
     this.objectTable = modules.lookup(ObjectTable.class);
+    this.methodCache = modules.lookup(ServerTable.class).getMethodCache();
   }
 
   @Override
@@ -31,7 +41,7 @@ public class ColocatedInvocationStrategy implements InvocationStrategy {
 
     Object toReturn;
     Object target = objectTable.getObjectFor(cmd.getOID());
-    Method toCall = target.getClass().getMethod(cmd.getMethodName(), cmd.getParameterTypes());
+    Method toCall = methodCache.getMethod(target.getClass(), cmd.getMethodName(), cmd.getParameterTypes());
 
     log.debug("Performing colocated call ==> invoking %s on %s (%s)", toCall.getName(), cmd.getOID(), target);
 
@@ -40,7 +50,6 @@ public class ColocatedInvocationStrategy implements InvocationStrategy {
     serverRuntime.getDispatcher().dispatch(serverPreEvent);
 
     try {
-      toCall.setAccessible(true);
       toReturn = toCall.invoke(serverPreEvent.getTarget(), serverPreEvent.getInvokeCommand().getParams());
 
       // SERVER post invoke event dispatch
@@ -62,4 +71,42 @@ public class ColocatedInvocationStrategy implements InvocationStrategy {
     return toReturn;
   }
 
+  /**
+   * Performs the batch's invocations one after the other, in the calling
+   * thread.
+   */
+  @Override
+  public Object[] dispatchBatch(InvocationStats stats, Connections pool, BatchInvokeCommand batch) throws IOException, ClassNotFoundException,
+      Throwable {
+    InvokeCommand[] commands = batch.getCommands();
+    Object[] results = new Object[commands.length];
+    for (int i = 0; i < commands.length; i++) {
+      results[i] = dispatchInvocation(stats, pool, commands[i]);
+    }
+    return results;
+  }
+
+  /**
+   * Performs the invocation in the calling thread. If the target method returns
+   * a {@link CompletionStage}, the returned future is completed with the result
+   * of that stage.
+   */
+  @Override
+  public CompletableFuture<Object> dispatchInvocationAsync(InvocationStats stats, Connections pool, InvokeCommand cmd, Executor executor) {
+    try {
+      Object toReturn = dispatchInvocation(stats, pool, cmd);
+      if (toReturn instanceof CompletionStage) {
+        return ((CompletionStage<?>) toReturn).toCompletableFuture().handle(new BiFunction<Object, Throwable, Object>() {
+          @Override
+          public Object apply(Object result, Throwable err) {
+            return err == null ? result : Futures.unwrap(err);
+          }
+        });
+      }
+      return CompletableFuture.completedFuture(toReturn);
+    } catch (Throwable e) {
+      return Futures.failed(e);
+    }
+  }
+
 }
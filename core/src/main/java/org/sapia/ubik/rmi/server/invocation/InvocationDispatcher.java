@@ -1,19 +1,32 @@
 package org.sapia.ubik.rmi.server.invocation;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
 import org.javasimon.Stopwatch;
+import org.sapia.ubik.concurrent.ConfigurableExecutor;
+import org.sapia.ubik.concurrent.ConfigurableExecutor.ThreadingConfiguration;
+import org.sapia.ubik.concurrent.NamedThreadFactory;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.module.Module;
 import org.sapia.ubik.module.ModuleContext;
 import org.sapia.ubik.module.ModuleContext.State;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
 import org.sapia.ubik.rmi.server.ClientRuntime;
 import org.sapia.ubik.rmi.server.ShutdownException;
 import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.command.BatchInvokeCommand;
+import org.sapia.ubik.rmi.server.command.CallbackInvokeCommand;
 import org.sapia.ubik.rmi.server.command.InvokeCommand;
 import org.sapia.ubik.rmi.server.stats.Stats;
 import org.sapia.ubik.rmi.server.transport.Connections;
+import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.Futures;
 
 /**
  * This class handles remote method invocations on the client-side.
@@ -38,6 +51,32 @@ public class InvocationDispatcher implements Module {
 
     public Object dispatchInvocation(InvocationStats stats, Connections pool, InvokeCommand cmd) throws IOException, ClassNotFoundException,
         Throwable;
+
+    /**
+     * Dispatches the given invocation command without waiting for its return
+     * value. As with {@link #dispatchInvocation(InvocationStats, Connections, InvokeCommand)},
+     * an exception thrown by the remote method is used as the return value.
+     * 
+     * @param executor
+     *          the {@link Executor} to use for invocations that cannot be
+     *          performed without blocking a thread until their return value
+     *          comes in.
+     * @return the {@link CompletableFuture} that will be completed with the
+     *         invocation's return value.
+     */
+    public CompletableFuture<Object> dispatchInvocationAsync(InvocationStats stats, Connections pool, InvokeCommand cmd, Executor executor);
+
+    /**
+     * Dispatches the given batch of invocation commands. As with
+     * {@link #dispatchInvocation(InvocationStats, Connections, InvokeCommand)},
+     * an exception thrown by a remote method is used as the return value of
+     * the corresponding invocation.
+     *
+     * @return the return values of the batch's invocations, in the order of
+     *         its commands.
+     */
+    public Object[] dispatchBatch(InvocationStats stats, Connections pool, BatchInvokeCommand batch) throws IOException, ClassNotFoundException,
+        Throwable;
   }
 
   // --------------------------------------------------------------------------
@@ -47,6 +86,7 @@ public class InvocationDispatcher implements Module {
   private ModuleContext context;
   private ClientRuntime clientRuntime;
   private InvocationStrategyFactory invocationStrategyFactory;
+  private volatile ExecutorService asyncExecutor;
 
   @Override
   public void init(ModuleContext context) {
@@ -60,7 +100,11 @@ public class InvocationDispatcher implements Module {
   }
 
   @Override
-  public void stop() {
+  public synchronized void stop() {
+    if (asyncExecutor != null) {
+      asyncExecutor.shutdown();
+      asyncExecutor = null;
+    }
   }
 
   /**
@@ -109,4 +153,125 @@ public class InvocationDispatcher implements Module {
     log.debug("Returning invocation response %s", toReturn);
     return toReturn;
   }
+
+  /**
+   * Dispatches the given invocation command asynchronously, using the passed in
+   * connection pool. The returned {@link CompletableFuture} is completed with
+   * the invocation's return value, or with the exception thrown by the remote
+   * method.
+   * <p>
+   * If the command is a {@link CallbackInvokeCommand}, the calling thread only
+   * waits for the server's acknowledgement: no thread is held while the
+   * response is pending. Otherwise, the invocation is performed by a thread of
+   * this instance's executor, since the connection must be waited on until the
+   * response comes in.
+   * 
+   * @param vmId
+   *          the {@link VmId} of the stub that is performing the call.
+   * @param pool
+   *          {@link Connections} to the server to call.
+   * @param cmd
+   *          an {@link InvokeCommand} representing the remote method invocation
+   *          to be performed.
+   * @return the {@link CompletableFuture} that will be completed with the
+   *         return value of the invocation.
+   */
+  public CompletableFuture<Object> dispatchInvocationAsync(VmId vmId, Connections pool, InvokeCommand cmd) {
+    if (context.getState() == State.STOPPING) {
+      return Futures.failed(new ShutdownException());
+    }
+
+    log.debug("Sending asynchronous invocation for object: %s on vmId %s", cmd.getOID(), vmId);
+
+    final ClientPreInvokeEvent pre = new ClientPreInvokeEvent(cmd);
+    clientRuntime.getDispatcher().dispatch(pre);
+
+    InvocationStrategy handler = invocationStrategyFactory.getInvocationStrategy(vmId);
+    return handler.dispatchInvocationAsync(stats, pool, pre.getCommand(), getAsyncExecutor()).thenApply(new Function<Object, Object>() {
+      @Override
+      public Object apply(Object toReturn) {
+        ClientPostInvokeEvent post = new ClientPostInvokeEvent(pre.getCommand(), toReturn);
+        clientRuntime.getDispatcher().dispatch(post);
+        return toReturn;
+      }
+    });
+  }
+
+  /**
+   * Dispatches the given batch of invocation commands using the passed in
+   * connection pool: the batch is sent to the server in a single round trip
+   * (if the invocations are not colocated). The client-side pre- and
+   * post-invocation events are dispatched for each of the batch's commands.
+   *
+   * @param vmId
+   *          the {@link VmId} of the stub that is performing the calls.
+   * @param pool
+   *          {@link Connections} to the server to call.
+   * @param batch
+   *          the {@link BatchInvokeCommand} holding the {@link InvokeCommand}s
+   *          representing the remote method invocations to be performed.
+   * @return the return values of the invocations, in the order of the
+   *         batch's commands (the return value of an invocation whose remote
+   *         method has thrown an exception is that exception).
+   * @throws java.io.IOException
+   *           if an IO problem occurs while performing this operation.
+   * @throws ClassNotFoundException
+   *           if the class of a return value could not be found in the
+   *           deserialization process.
+   * @throws Throwable
+   *           if another error occurs sending the batch.
+   */
+  public Object[] dispatchBatch(VmId vmId, Connections pool, BatchInvokeCommand batch) throws java.io.IOException, ClassNotFoundException,
+      Throwable {
+
+    if (context.getState() == State.STOPPING) {
+      throw new ShutdownException();
+    }
+
+    log.debug("Sending batch of %s invocations on vmId %s", batch.getCommands().length, vmId);
+
+    InvokeCommand[] commands = batch.getCommands();
+    for (int i = 0; i < commands.length; i++) {
+      ClientPreInvokeEvent pre = new ClientPreInvokeEvent(commands[i]);
+      clientRuntime.getDispatcher().dispatch(pre);
+      commands[i] = pre.getCommand();
+    }
+
+    InvocationStrategy handler = invocationStrategyFactory.getInvocationStrategy(vmId);
+    Object[] results = handler.dispatchBatch(stats, pool, batch);
+
+    for (int i = 0; i < commands.length; i++) {
+      clientRuntime.getDispatcher().dispatch(new ClientPostInvokeEvent(commands[i], results[i]));
+    }
+    return results;
+  }
+
+  /**
+   * @return the {@link ExecutorService} used to perform the asynchronous
+   *         invocations that require blocking a thread. Its number of threads
+   *         and the size of its queue are bounded (see
+   *         {@link Consts#CLIENT_ASYNC_MAX_THREADS} and
+   *         {@link Consts#CLIENT_ASYNC_QUEUE_SIZE}).
+   */
+  public ExecutorService getAsyncExecutor() {
+    ExecutorService executor = asyncExecutor;
+    if (executor == null) {
+      synchronized (this) {
+        if (asyncExecutor == null) {
+          Conf conf = Conf.getSystemProperties();
+          int maxThreads = conf.getIntProperty(Consts.CLIENT_ASYNC_MAX_THREADS, Defaults.DEFAULT_CLIENT_ASYNC_MAX_THREADS);
+          ConfigurableExecutor created = new ConfigurableExecutor(ThreadingConfiguration.newInstance()
+              .setCorePoolSize(maxThreads)
+              .setMaxPoolSize(maxThreads)
+              .setQueueSize(conf.getIntProperty(Consts.CLIENT_ASYNC_QUEUE_SIZE, Defaults.DEFAULT_CLIENT_ASYNC_QUEUE_SIZE))
+              .setKeepAlive(Defaults.DEFAULT_OUTBOUND_KEEP_ALIVE),
+              NamedThreadFactory.createWith("ubik.rmi.client.AsyncInvoker").setDaemon(true));
+          created.allowCoreThreadTimeOut(true);
+          asyncExecutor = created;
+        }
+        executor = asyncExecutor;
+      }
+    }
+    return executor;
+  }
 }
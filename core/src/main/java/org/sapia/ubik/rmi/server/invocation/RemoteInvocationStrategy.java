@@ -2,6 +2,11 @@ package org.sapia.ubik.rmi.server.invocation;
 
 import java.io.IOException;
 import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.javasimon.Split;
 import org.sapia.ubik.log.Category;
@@ -9,10 +14,12 @@ import org.sapia.ubik.log.Log;
 import org.sapia.ubik.module.ModuleContext;
 import org.sapia.ubik.rmi.Consts;
 import org.sapia.ubik.rmi.server.ClientRuntime;
+import org.sapia.ubik.rmi.server.command.BatchInvokeCommand;
 import org.sapia.ubik.rmi.server.command.CallbackInvokeCommand;
 import org.sapia.ubik.rmi.server.command.CallbackResponseQueue;
 import org.sapia.ubik.rmi.server.command.CommandModule;
 import org.sapia.ubik.rmi.server.command.InvokeCommand;
+import org.sapia.ubik.rmi.server.command.RMICommand;
 import org.sapia.ubik.rmi.server.command.ResponseLock;
 import org.sapia.ubik.rmi.server.command.ResponseTimeOutException;
 import org.sapia.ubik.rmi.server.invocation.InvocationDispatcher.InvocationStats;
@@ -21,6 +28,7 @@ import org.sapia.ubik.rmi.server.transport.Connections;
 import org.sapia.ubik.rmi.server.transport.MarshalledObject;
 import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.Futures;
 
 /**
  * An instance of this class sends a RMI method command (see
@@ -66,6 +74,26 @@ public class RemoteInvocationStrategy implements InvocationStrategy {
   private Object doDispatchInvocation(InvocationStats perf, Connections pool, InvokeCommand cmd) throws IOException, ClassNotFoundException,
       Throwable {
 
+    Object toReturn = sendReceive(perf, pool, cmd);
+    return unmarshal(cmd, toReturn);
+  }
+
+  /**
+   * Sends the given batch in a single round trip, and returns the results of
+   * its nested commands.
+   */
+  @Override
+  public Object[] dispatchBatch(InvocationStats perf, Connections pool, BatchInvokeCommand batch) throws IOException, ClassNotFoundException,
+      Throwable {
+    Object[] results = (Object[]) sendReceive(perf, pool, batch);
+    InvokeCommand[] commands = batch.getCommands();
+    for (int i = 0; i < results.length; i++) {
+      results[i] = unmarshal(commands[i], results[i]);
+    }
+    return results;
+  }
+
+  private Object sendReceive(InvocationStats perf, Connections pool, RMICommand cmd) throws IOException, ClassNotFoundException, Throwable {
     Object toReturn;
 
     Split acquireSplit = perf.acquireCon.start();
@@ -83,14 +111,16 @@ public class RemoteInvocationStrategy implements InvocationStrategy {
       invokeReceiveSplit.stop();
       pool.release(conn);
     } catch (RemoteException e) {
-      pool.invalidate(conn);
-      pool.clear();
+      pool.invalidateFailed(conn);
       throw e;
     } catch (Exception e) {
       pool.release(conn);
       throw e;
     }
+    return toReturn;
+  }
 
+  private Object unmarshal(InvokeCommand cmd, Object toReturn) throws IOException, ClassNotFoundException {
     if (cmd.usesMarshalledObjects() && (toReturn != null)) {
       try {
         toReturn = ((MarshalledObject) toReturn).get(Thread.currentThread().getContextClassLoader());
@@ -100,10 +130,26 @@ public class RemoteInvocationStrategy implements InvocationStrategy {
         throw new ClassCastException(aMessage);
       }
     }
-
     return toReturn;
   }
 
+  @Override
+  public CompletableFuture<Object> dispatchInvocationAsync(final InvocationStats perf, final Connections pool, final InvokeCommand cmd, Executor executor) {
+    if (cmd instanceof CallbackInvokeCommand) {
+      return doDispatchCallbackInvocationAsync(perf, pool, (CallbackInvokeCommand) cmd);
+    }
+    return Futures.supplyAsync(new Supplier<Object>() {
+      @Override
+      public Object get() {
+        try {
+          return doDispatchInvocation(perf, pool, cmd);
+        } catch (Throwable e) {
+          throw new CompletionException(e);
+        }
+      }
+    }, executor);
+  }
+
   private Object doDispatchCallbackInvocation(InvocationStats perf, Connections pool, CallbackInvokeCommand cmd) throws IOException,
       ClassNotFoundException, Throwable {
 
@@ -124,8 +170,7 @@ public class RemoteInvocationStrategy implements InvocationStrategy {
       conn.receive();
       pool.release(conn);
     } catch (RemoteException e) {
-      pool.invalidate(conn);
-      pool.clear();
+      pool.invalidateFailed(conn);
       throw e;
     } catch (Exception e) {
       pool.release(conn);
@@ -153,4 +198,56 @@ public class RemoteInvocationStrategy implements InvocationStrategy {
 
     return toReturn;
   }
+
+  private CompletableFuture<Object> doDispatchCallbackInvocationAsync(InvocationStats perf, Connections pool, final CallbackInvokeCommand cmd) {
+    ResponseLock lock = responses.createResponseLock();
+
+    log.debug("Sending asynchronous callback invocation %s", lock.getId());
+
+    RmiConnection conn = null;
+    try {
+      cmd.setUp(lock.getId(), clientRuntime.getCallbackAddress(pool.getTransportType()));
+
+      Split acquireConSplit = perf.acquireCon.start();
+      conn = pool.acquire();
+      acquireConSplit.stop();
+
+      conn.send(cmd, cmd.getVmId(), conn.getServerAddress().getTransportType());
+      conn.receive();
+      pool.release(conn);
+    } catch (RemoteException e) {
+      lock.release();
+      if (conn != null) {
+        pool.invalidateFailed(conn);
+      }
+      return Futures.failed(e);
+    } catch (Throwable e) {
+      lock.release();
+      if (conn != null) {
+        pool.release(conn);
+      }
+      return Futures.failed(e);
+    }
+
+    // the future is completed by the thread receiving the response: the
+    // caller's class loader is used to unmarshal the return value.
+    final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    return lock.toFuture(timeout).thenApply(new Function<Object, Object>() {
+      @Override
+      public Object apply(Object toReturn) {
+        if (cmd.usesMarshalledObjects() && (toReturn != null)) {
+          try {
+            return ((MarshalledObject) toReturn).get(loader);
+          } catch (ClassCastException e) {
+            String aMessage = "Could not cast to MarshalledObject: " + toReturn.getClass() + "\n" + toReturn;
+            log.error(aMessage);
+            throw new ClassCastException(aMessage);
+          } catch (IOException | ClassNotFoundException e) {
+            throw new CompletionException(e);
+          }
+        }
+        return toReturn;
+      }
+    });
+  }
 }
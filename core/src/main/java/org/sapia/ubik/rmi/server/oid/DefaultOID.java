@@ -1,11 +1,14 @@
 package org.sapia.ubik.rmi.server.oid;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 
 import org.sapia.ubik.util.Strings;
+import org.sapia.ubik.util.Varints;
 
 /**
  * This class models a unique remote object identifier. An instance of this
@@ -67,6 +70,34 @@ public class DefaultOID implements Externalizable, OID {
     out.writeInt(hashCode);
   }
 
+  /**
+   * Reads this instance's state in the compact format produced by
+   * {@link #writeCompact(DataOutput)}.
+   * 
+   * @param in
+   *          the {@link DataInput} to read from.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  public void readCompact(DataInput in) throws IOException {
+    id = Varints.readVarLong(in);
+    hashCode = in.readInt();
+  }
+
+  /**
+   * Writes this instance's state in a compact format: the ID is written as a
+   * variable-length long, and thus takes only a few bytes.
+   * 
+   * @param out
+   *          the {@link DataOutput} to write to.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  public void writeCompact(DataOutput out) throws IOException {
+    Varints.writeVarLong(out, id);
+    out.writeInt(hashCode);
+  }
+
   public String toString() {
     return Strings.toString("id", id, "hashCode", Integer.toHexString(hashCode));
   }
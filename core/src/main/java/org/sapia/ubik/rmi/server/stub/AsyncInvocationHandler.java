@@ -0,0 +1,31 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Specifies the behavior of {@link StubInvocationHandler}s that can perform
+ * remote method invocations asynchronously.
+ *
+ * @see AsyncStubs
+ *
+ * @author yduchesne
+ *
+ */
+public interface AsyncInvocationHandler {
+
+  /**
+   * Performs the given method invocation asynchronously.
+   *
+   * @param proxy
+   *          the stub on which the method was called.
+   * @param toCall
+   *          the {@link Method} to call.
+   * @param params
+   *          the method's parameters.
+   * @return the {@link CompletableFuture} that is completed with the method's
+   *         return value, or with the exception that the method has thrown.
+   */
+  public CompletableFuture<Object> invokeAsync(Object proxy, Method toCall, Object[] params);
+
+}
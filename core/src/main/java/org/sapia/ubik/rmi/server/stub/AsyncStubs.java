@@ -0,0 +1,200 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.sapia.ubik.util.Assertions;
+import org.sapia.ubik.util.Exceptions;
+import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.Futures;
+import org.sapia.ubik.util.VoidFunc;
+
+/**
+ * Allows calling the methods of stubs asynchronously. Given a stub:
+ *
+ * <pre>
+ * CompletableFuture&lt;String&gt; name = AsyncStubs.call(stub, new Func&lt;String, Service&gt;() {
+ *   public String call(Service s) {
+ *     return s.getName();
+ *   }
+ * });
+ * </pre>
+ *
+ * The function is passed an object that records the method invoked on it: that
+ * method is then invoked asynchronously on the stub. The function must invoke a
+ * single method, and should not use the return value of that method (which is
+ * <code>null</code>, or the default value of the method's primitive return
+ * type).
+ * <p>
+ * Invocations are performed without holding a thread while their response is
+ * pending if call-backs are enabled (see
+ * {@link org.sapia.ubik.rmi.Consts#CALLBACK_ENABLED}). Otherwise, each pending
+ * invocation holds a thread of the client-side asynchronous invocation pool.
+ * <p>
+ * Alternatively, remote interfaces may declare methods returning a
+ * {@link CompletableFuture} (or a {@link CompletionStage}): such methods are
+ * invoked asynchronously on the client side. On the server side, the result of
+ * the future returned by the remote object is sent back to the client.
+ *
+ * @author yduchesne
+ *
+ */
+public final class AsyncStubs {
+
+  private AsyncStubs() {
+  }
+
+  /**
+   * @param stub
+   *          the stub to call.
+   * @param call
+   *          the {@link Func} invoking the method to call on the object that is
+   *          passed to it.
+   * @return the {@link CompletableFuture} that is completed with the method's
+   *         return value.
+   */
+  @SuppressWarnings("unchecked")
+  public static <R, T> CompletableFuture<R> call(T stub, Func<R, T> call) {
+    InvocationHandler handler = getInvocationHandler(stub);
+    if (!(handler instanceof AsyncInvocationHandler)) {
+      try {
+        return CompletableFuture.completedFuture(call.call(stub));
+      } catch (Throwable e) {
+        return Futures.failed(e);
+      }
+    }
+    Recorder recorder = new Recorder();
+    call.call((T) Proxy.newProxyInstance(stub.getClass().getClassLoader(), stub.getClass().getInterfaces(), recorder));
+    Assertions.illegalState(recorder.method == null, "No method was invoked on the stub");
+    return (CompletableFuture<R>) ((AsyncInvocationHandler) handler).invokeAsync(stub, recorder.method, recorder.params);
+  }
+
+  /**
+   * @param stub
+   *          the stub to call.
+   * @param call
+   *          the {@link VoidFunc} invoking the method to call on the object
+   *          that is passed to it.
+   * @return the {@link CompletableFuture} that is completed when the method
+   *         has returned.
+   */
+  public static <T> CompletableFuture<Void> run(T stub, final VoidFunc<T> call) {
+    return call(stub, new Func<Object, T>() {
+      @Override
+      public Object call(T arg) {
+        call.call(arg);
+        return null;
+      }
+    }).thenApply(new Function<Object, Void>() {
+      @Override
+      public Void apply(Object result) {
+        return null;
+      }
+    });
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted
+
+  /**
+   * @param method
+   *          a {@link Method}.
+   * @return <code>true</code> if the given method returns a
+   *         {@link CompletableFuture} or a {@link CompletionStage}, and should
+   *         thus be invoked asynchronously.
+   */
+  static boolean isAsync(Method method) {
+    return method.getReturnType() == CompletableFuture.class || method.getReturnType() == CompletionStage.class;
+  }
+
+  /**
+   * Converts the return value of an asynchronous invocation: if it is an
+   * exception (meaning the remote method has thrown it), the returned future
+   * is completed exceptionally.
+   */
+  static CompletableFuture<Object> toResult(CompletableFuture<Object> future) {
+    return future.thenCompose(new Function<Object, CompletableFuture<Object>>() {
+      @Override
+      public CompletableFuture<Object> apply(Object toReturn) {
+        if (toReturn instanceof Throwable) {
+          Throwable err = (Throwable) toReturn;
+          Exceptions.fillInStackTrace(err);
+          return Futures.failed(err);
+        }
+        return CompletableFuture.completedFuture(toReturn);
+      }
+    });
+  }
+
+  /**
+   * Returns a future that is completed with the result of the given one, or
+   * with the result of the future returned by the given function, if the given
+   * future completes exceptionally.
+   */
+  static CompletableFuture<Object> recover(CompletableFuture<Object> future, final Func<CompletableFuture<Object>, Throwable> recovery) {
+    return future.handle(new BiFunction<Object, Throwable, CompletableFuture<Object>>() {
+      @Override
+      public CompletableFuture<Object> apply(Object result, Throwable err) {
+        if (err == null) {
+          return CompletableFuture.completedFuture(result);
+        }
+        return recovery.call(Futures.unwrap(err));
+      }
+    }).thenCompose(new Function<CompletableFuture<Object>, CompletableFuture<Object>>() {
+      @Override
+      public CompletableFuture<Object> apply(CompletableFuture<Object> f) {
+        return f;
+      }
+    });
+  }
+
+  static InvocationHandler getInvocationHandler(Object stub) {
+    if (Proxy.isProxyClass(stub.getClass())) {
+      return Proxy.getInvocationHandler(stub);
+    }
+    return null;
+  }
+
+  // ==========================================================================
+
+  static final class Recorder implements InvocationHandler {
+
+    Method   method;
+    Object[] params;
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] params) throws Throwable {
+      Assertions.illegalState(this.method != null, "Only one method may be invoked on the stub, got: %s and %s", this.method, method);
+      this.method = method;
+      this.params = params;
+      return defaultValue(method.getReturnType());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+      if (!type.isPrimitive() || type == void.class) {
+        return null;
+      } else if (type == boolean.class) {
+        return Boolean.FALSE;
+      } else if (type == char.class) {
+        return Character.valueOf((char) 0);
+      } else if (type == byte.class) {
+        return Byte.valueOf((byte) 0);
+      } else if (type == short.class) {
+        return Short.valueOf((short) 0);
+      } else if (type == int.class) {
+        return Integer.valueOf(0);
+      } else if (type == long.class) {
+        return Long.valueOf(0);
+      } else if (type == float.class) {
+        return Float.valueOf(0);
+      } else {
+        return Double.valueOf(0);
+      }
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * Holds the {@link BalancingStrategy} implementations that are built in, and
+ * creates them given their name (see {@link Consts#STATELESS_BALANCING}).
+ *
+ * @author yduchesne
+ *
+ */
+public final class BalancingStrategies {
+
+  /**
+   * The name of the round-robin strategy.
+   */
+  public static final String ROUND_ROBIN       = "round-robin";
+
+  /**
+   * The name of the least-outstanding-requests strategy.
+   */
+  public static final String LEAST_OUTSTANDING = "least-outstanding";
+
+  /**
+   * The name of the strategy choosing, of two endpoints picked at random, the
+   * one with the lowest average latency.
+   */
+  public static final String LATENCY           = "latency";
+
+  /**
+   * The name of the strategy preferring endpoints on the same host, then on
+   * the same subnet.
+   */
+  public static final String LOCALITY          = "locality";
+
+  private static final Category LOG = Log.createCategory(BalancingStrategies.class);
+
+  private BalancingStrategies() {
+  }
+
+  /**
+   * @param name
+   *          the name of the strategy to create.
+   * @return a new {@link BalancingStrategy}.
+   * @throws IllegalArgumentException
+   *           if no strategy exists for the given name.
+   */
+  public static BalancingStrategy forName(String name) {
+    if (ROUND_ROBIN.equals(name)) {
+      return new RoundRobin();
+    } else if (LEAST_OUTSTANDING.equals(name)) {
+      return new LeastOutstanding();
+    } else if (LATENCY.equals(name)) {
+      return new PowerOfTwoLatency();
+    } else if (LOCALITY.equals(name)) {
+      return new Locality();
+    }
+    throw new IllegalArgumentException("Unknown balancing strategy: " + name);
+  }
+
+  /**
+   * @param bindingName
+   *          the JNDI name of a stateless stub.
+   * @return the {@link BalancingStrategy} configured for the given binding
+   *         (or the default one, if none is configured for that binding).
+   */
+  public static BalancingStrategy forBinding(String bindingName) {
+    Conf conf = Conf.getSystemProperties();
+    String name = conf.getProperty(Consts.STATELESS_BALANCING + "." + bindingName,
+        conf.getProperty(Consts.STATELESS_BALANCING, Defaults.DEFAULT_STATELESS_BALANCING));
+    try {
+      return forName(name.trim());
+    } catch (IllegalArgumentException e) {
+      LOG.warning("%s: using %s instead", e.getMessage(), Defaults.DEFAULT_STATELESS_BALANCING);
+      return new RoundRobin();
+    }
+  }
+
+  // ==========================================================================
+
+  /**
+   * Rotates through the endpoints. Since the list of candidates is specific
+   * to the calling thread, so is the rotation.
+   */
+  public static class RoundRobin implements BalancingStrategy {
+
+    @Override
+    public RemoteRefContext select(List<RemoteRefContext> candidates) {
+      RemoteRefContext selected = candidates.remove(0);
+      candidates.add(selected);
+      return selected;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Selects the endpoint with the fewest pending invocations. Ties are broken
+   * by rotating through the candidates.
+   */
+  public static class LeastOutstanding implements BalancingStrategy {
+
+    @Override
+    public RemoteRefContext select(List<RemoteRefContext> candidates) {
+      RemoteRefContext selected = null;
+      int selectedIndex = 0;
+      for (int i = 0; i < candidates.size(); i++) {
+        RemoteRefContext candidate = candidates.get(i);
+        if (selected == null || candidate.getStats().getInFlight() < selected.getStats().getInFlight()) {
+          selected = candidate;
+          selectedIndex = i;
+        }
+      }
+      candidates.add(candidates.remove(selectedIndex));
+      return selected;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Picks two endpoints at random, and selects the one with the lowest
+   * average latency (weighted by its number of pending invocations, so that an
+   * endpoint that stops responding is avoided before its average catches up).
+   * Endpoints for which no latency has been recorded yet are preferred, so that
+   * each gets sampled.
+   */
+  public static class PowerOfTwoLatency implements BalancingStrategy {
+
+    @Override
+    public RemoteRefContext select(List<RemoteRefContext> candidates) {
+      int size = candidates.size();
+      if (size == 1) {
+        return candidates.get(0);
+      }
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      int first = random.nextInt(size);
+      int second = random.nextInt(size - 1);
+      if (second >= first) {
+        second++;
+      }
+      RemoteRefContext a = candidates.get(first);
+      RemoteRefContext b = candidates.get(second);
+      return cost(a.getStats()) <= cost(b.getStats()) ? a : b;
+    }
+
+    private static double cost(EndpointStats stats) {
+      return stats.getLatencyNanos() * (stats.getInFlight() + 1);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Prefers the endpoints on the same host as this JVM, then the ones on the
+   * same subnet as one of this host's network interfaces, then the others.
+   * Amongst the preferred endpoints, selects the one with the fewest pending
+   * invocations. Endpoints whose address is not a {@link TCPAddress} are
+   * considered remote.
+   */
+  public static class Locality implements BalancingStrategy {
+
+    static final int SAME_HOST   = 0;
+    static final int SAME_SUBNET = 1;
+    static final int REMOTE      = 2;
+
+    private Map<String, Integer> distances = new ConcurrentHashMap<String, Integer>();
+
+    @Override
+    public RemoteRefContext select(List<RemoteRefContext> candidates) {
+      RemoteRefContext selected = null;
+      int selectedIndex = 0;
+      int selectedDistance = REMOTE;
+      for (int i = 0; i < candidates.size(); i++) {
+        RemoteRefContext candidate = candidates.get(i);
+        int distance = distanceTo(candidate.getAddress());
+        if (selected == null || distance < selectedDistance
+            || (distance == selectedDistance && candidate.getStats().getInFlight() < selected.getStats().getInFlight())) {
+          selected = candidate;
+          selectedIndex = i;
+          selectedDistance = distance;
+        }
+      }
+      candidates.add(candidates.remove(selectedIndex));
+      return selected;
+    }
+
+    int distanceTo(ServerAddress address) {
+      if (!(address instanceof TCPAddress)) {
+        return REMOTE;
+      }
+      String host = ((TCPAddress) address).getHost();
+      Integer distance = distances.get(host);
+      if (distance == null) {
+        distance = computeDistance(host);
+        distances.put(host, distance);
+      }
+      return distance;
+    }
+
+    private static int computeDistance(String host) {
+      try {
+        InetAddress target = InetAddress.getByName(host);
+        if (target.isLoopbackAddress()) {
+          return SAME_HOST;
+        }
+        int distance = REMOTE;
+        for (NetworkInterface nic : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+          for (InterfaceAddress local : nic.getInterfaceAddresses()) {
+            if (local.getAddress().equals(target)) {
+              return SAME_HOST;
+            } else if (isSameSubnet(local, target)) {
+              distance = SAME_SUBNET;
+            }
+          }
+        }
+        return distance;
+      } catch (UnknownHostException | SocketException e) {
+        LOG.debug("Could not determine locality of host %s", e, host);
+        return REMOTE;
+      }
+    }
+
+    private static boolean isSameSubnet(InterfaceAddress local, InetAddress target) {
+      byte[] localBytes = local.getAddress().getAddress();
+      byte[] targetBytes = target.getAddress();
+      int prefix = local.getNetworkPrefixLength();
+      if (localBytes.length != targetBytes.length || prefix <= 0) {
+        return false;
+      }
+      for (int bit = 0; bit < prefix && bit < localBytes.length * 8; bit++) {
+        int mask = 0x80 >> (bit % 8);
+        if ((localBytes[bit / 8] & mask) != (targetBytes[bit / 8] & mask)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.util.List;
+
+/**
+ * Selects the endpoint to which a {@link RemoteRefStateless} sends a given
+ * invocation. Implementations typically base their choice on the
+ * {@link EndpointStats} of each endpoint (see
+ * {@link RemoteRefContext#getStats()}).
+ * <p>
+ * An instance is shared by all threads using a given stub: it must be
+ * thread-safe.
+ *
+ * @see BalancingStrategies
+ *
+ * @author yduchesne
+ *
+ */
+public interface BalancingStrategy {
+
+  /**
+   * @param candidates
+   *          the (non-empty) {@link List} of {@link RemoteRefContext}s
+   *          corresponding to the available endpoints. The list is confined to
+   *          the calling thread, and may be reordered by this method.
+   * @return the {@link RemoteRefContext} to use.
+   */
+  public RemoteRefContext select(List<RemoteRefContext> candidates);
+
+}
@@ -0,0 +1,35 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.lang.reflect.Method;
+
+/**
+ * Specifies the behavior of {@link StubInvocationHandler}s that can perform
+ * several remote method invocations in a single round trip.
+ *
+ * @see StubBatch
+ *
+ * @author yduchesne
+ *
+ */
+public interface BatchInvocationHandler {
+
+  /**
+   * Performs the given method invocations in a single round trip.
+   *
+   * @param proxy
+   *          the stub on which the methods were called.
+   * @param toCall
+   *          the {@link Method}s to call.
+   * @param params
+   *          the parameters of each method.
+   * @param parallel
+   *          if <code>true</code>, the invocations are performed concurrently
+   *          on the server side.
+   * @return the return value of each method, in the order of the given
+   *         methods - or the exception that a method has thrown.
+   * @throws Throwable
+   *           if an error occurs sending the invocations.
+   */
+  public Object[] invokeBatch(Object proxy, Method[] toCall, Object[][] params, boolean parallel) throws Throwable;
+
+}
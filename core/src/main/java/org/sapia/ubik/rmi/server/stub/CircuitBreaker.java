@@ -0,0 +1,394 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.Strings;
+import org.sapia.ubik.util.SysClock;
+import org.sapia.ubik.util.SysClock.RealtimeClock;
+
+/**
+ * Keeps track of the outcome of the invocations performed on a given endpoint,
+ * and determines if that endpoint should be selected. An instance is kept by
+ * each {@link RemoteRefContext}.
+ * <p>
+ * The circuit is initially closed. It is opened when, over the most recent
+ * invocations, the rate of failed invocations or the rate of slow invocations
+ * reaches its threshold - or when a given number of invocations fail in a row.
+ * While the circuit is open, the endpoint is not selected. Once the open
+ * interval has elapsed, the circuit becomes half-open: a single probe
+ * invocation is let through, which closes the circuit if it succeeds (and
+ * re-opens it otherwise).
+ * <p>
+ * The probe is identified by the permit returned by
+ * {@link #tryAcquirePermission()}: while the circuit is half-open, the
+ * outcome of the other invocations (such as the ones that were pending when
+ * the circuit was opened) is ignored.
+ *
+ * @see Consts#STATELESS_BREAKER_ENABLED
+ *
+ * @author yduchesne
+ *
+ */
+public class CircuitBreaker {
+
+  /**
+   * The states of a {@link CircuitBreaker}.
+   */
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  /**
+   * The permit returned by {@link #tryAcquirePermission()} when the invocation
+   * is not permitted.
+   */
+  public static final long DENIED = -1;
+
+  /**
+   * The permit returned by {@link #tryAcquirePermission()} when the invocation
+   * is permitted, and is not a probe.
+   */
+  public static final long PERMITTED = 0;
+
+  private static final int FAILED = 1;
+  private static final int SLOW   = 2;
+
+  private static volatile Settings defaultSettings;
+
+  private Settings         settings;
+  private SysClock         clock;
+  private volatile State   state = State.CLOSED;
+  private volatile long    openedAt;
+  private long             probe;
+  private long             probeCount;
+  private int[]            outcomes;
+  private int              index;
+  private int              calls;
+  private int              failures;
+  private int              slowCalls;
+  private int              consecutiveFailures;
+  private volatile long    tripCount;
+
+  /**
+   * Creates an instance configured with the {@link Settings} specified as
+   * system properties.
+   */
+  public CircuitBreaker() {
+    this(Settings.getDefault(), RealtimeClock.getInstance());
+  }
+
+  /**
+   * @param settings
+   *          the {@link Settings} to use.
+   * @param clock
+   *          the {@link SysClock} to use.
+   */
+  public CircuitBreaker(Settings settings, SysClock clock) {
+    this.settings = settings;
+    this.clock = clock;
+    this.outcomes = new int[Math.max(1, settings.windowSize)];
+  }
+
+  /**
+   * @return <code>true</code> if this instance is enabled.
+   */
+  public boolean isEnabled() {
+    return settings.enabled;
+  }
+
+  /**
+   * This method has no side effect: it is meant to filter out the endpoints
+   * that should not be selected.
+   *
+   * @return <code>true</code> if an invocation could currently be performed
+   *         on the endpoint to which this instance corresponds.
+   */
+  public boolean isCallPermitted() {
+    if (!settings.enabled) {
+      return true;
+    }
+    switch (state) {
+    case CLOSED:
+      return true;
+    case OPEN:
+      return clock.currentTimeMillis() - openedAt >= settings.openIntervalMillis;
+    default:
+      synchronized (this) {
+        return probe == PERMITTED;
+      }
+    }
+  }
+
+  /**
+   * To be called when the endpoint to which this instance corresponds has
+   * been selected: if the open interval has elapsed, the circuit becomes
+   * half-open and the upcoming invocation is the probe.
+   *
+   * @return the permit to pass to {@link #onSuccess(long, long)} or
+   *         {@link #onFailure(long)} once the invocation has completed:
+   *         {@link #PERMITTED}, a positive value if the invocation is the probe,
+   *         or {@link #DENIED} if the circuit is open (or if another probe is
+   *         pending).
+   */
+  public synchronized long tryAcquirePermission() {
+    if (!settings.enabled) {
+      return PERMITTED;
+    }
+    switch (state) {
+    case CLOSED:
+      return PERMITTED;
+    case OPEN:
+      if (clock.currentTimeMillis() - openedAt < settings.openIntervalMillis) {
+        return DENIED;
+      }
+      state = State.HALF_OPEN;
+      probe = ++probeCount;
+      return probe;
+    default:
+      if (probe != PERMITTED) {
+        return DENIED;
+      }
+      probe = ++probeCount;
+      return probe;
+    }
+  }
+
+  /**
+   * Records a successful invocation.
+   *
+   * @param permit
+   *          the permit that was acquired for the invocation.
+   * @param latencyNanos
+   *          the latency of the invocation, in nanos.
+   * @see #tryAcquirePermission()
+   */
+  public synchronized void onSuccess(long permit, long latencyNanos) {
+    if (!settings.enabled) {
+      return;
+    }
+    boolean slow = settings.slowCallNanos > 0 && latencyNanos >= settings.slowCallNanos;
+    if (state == State.HALF_OPEN) {
+      if (permit != probe) {
+        return;
+      } else if (slow) {
+        open();
+      } else {
+        close();
+      }
+    } else if (state == State.CLOSED) {
+      consecutiveFailures = 0;
+      record(slow ? SLOW : 0);
+    }
+  }
+
+  /**
+   * Records an invocation that failed with a remote exception.
+   *
+   * @param permit
+   *          the permit that was acquired for the invocation.
+   * @see #tryAcquirePermission()
+   */
+  public synchronized void onFailure(long permit) {
+    if (!settings.enabled) {
+      return;
+    }
+    if (state == State.HALF_OPEN) {
+      if (permit == probe) {
+        open();
+      }
+    } else if (state == State.CLOSED) {
+      consecutiveFailures++;
+      record(FAILED);
+      if (settings.consecutiveFailures > 0 && consecutiveFailures >= settings.consecutiveFailures) {
+        open();
+      }
+    }
+  }
+
+  /**
+   * To be called when no invocation was performed with the given permit: if
+   * it corresponds to the probe, another one may then be let through.
+   *
+   * @param permit
+   *          a permit returned by {@link #tryAcquirePermission()}.
+   */
+  public synchronized void release(long permit) {
+    if (state == State.HALF_OPEN && permit == probe) {
+      probe = PERMITTED;
+    }
+  }
+
+  /**
+   * Closes the circuit, discarding the invocations recorded so far.
+   */
+  public synchronized void reset() {
+    close();
+  }
+
+  /**
+   * @return this instance's current {@link State}.
+   */
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * @return the rate of failed invocations, over the most recent ones.
+   */
+  public synchronized double getFailureRate() {
+    return calls == 0 ? 0 : (double) failures / calls;
+  }
+
+  /**
+   * @return the rate of slow invocations, over the most recent ones.
+   */
+  public synchronized double getSlowCallRate() {
+    return calls == 0 ? 0 : (double) slowCalls / calls;
+  }
+
+  /**
+   * @return the number of times the circuit was opened.
+   */
+  public long getTripCount() {
+    return tripCount;
+  }
+
+  private void record(int outcome) {
+    if (calls == outcomes.length) {
+      int evicted = outcomes[index];
+      if ((evicted & FAILED) != 0) {
+        failures--;
+      }
+      if ((evicted & SLOW) != 0) {
+        slowCalls--;
+      }
+    } else {
+      calls++;
+    }
+    outcomes[index] = outcome;
+    index = (index + 1) % outcomes.length;
+    if ((outcome & FAILED) != 0) {
+      failures++;
+    }
+    if ((outcome & SLOW) != 0) {
+      slowCalls++;
+    }
+
+    if (calls >= settings.minCalls
+        && ((double) failures / calls >= settings.failureRate || (double) slowCalls / calls >= settings.slowCallRate)) {
+      open();
+    }
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAt = clock.currentTimeMillis();
+    probe = PERMITTED;
+    tripCount++;
+    clearWindow();
+  }
+
+  private void close() {
+    state = State.CLOSED;
+    probe = PERMITTED;
+    clearWindow();
+  }
+
+  private void clearWindow() {
+    index = 0;
+    calls = 0;
+    failures = 0;
+    slowCalls = 0;
+    consecutiveFailures = 0;
+  }
+
+  @Override
+  public String toString() {
+    return Strings.toString("state", state, "failureRate", getFailureRate(), "slowCallRate", getSlowCallRate(), "tripCount", tripCount);
+  }
+
+  // ==========================================================================
+
+  /**
+   * Holds the thresholds of {@link CircuitBreaker}s.
+   */
+  public static class Settings {
+
+    private boolean enabled;
+    private int     windowSize;
+    private int     minCalls;
+    private double  failureRate;
+    private int     consecutiveFailures;
+    private long    slowCallNanos;
+    private double  slowCallRate;
+    private long    openIntervalMillis;
+
+    /**
+     * @param enabled
+     *          if <code>false</code>, circuit breakers let all invocations
+     *          through.
+     * @param windowSize
+     *          the number of invocations over which rates are computed.
+     * @param minCalls
+     *          the minimum number of invocations before rates are taken into
+     *          account.
+     * @param failureRate
+     *          the rate of failed invocations from which circuits are opened.
+     * @param consecutiveFailures
+     *          the number of consecutive failures from which circuits are
+     *          opened (0 to disable).
+     * @param slowCallMillis
+     *          the duration from which invocations are deemed slow (0 to
+     *          disable).
+     * @param slowCallRate
+     *          the rate of slow invocations from which circuits are opened.
+     * @param openIntervalMillis
+     *          the amount of time during which circuits stay open.
+     */
+    public Settings(boolean enabled, int windowSize, int minCalls, double failureRate, int consecutiveFailures,
+        long slowCallMillis, double slowCallRate, long openIntervalMillis) {
+      this.enabled = enabled;
+      this.windowSize = windowSize;
+      this.minCalls = minCalls;
+      this.failureRate = failureRate;
+      this.consecutiveFailures = consecutiveFailures;
+      this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+      this.slowCallRate = slowCallRate;
+      this.openIntervalMillis = openIntervalMillis;
+    }
+
+    /**
+     * @param conf
+     *          the {@link Conf} holding the properties to use.
+     * @return a new {@link Settings}.
+     * @see Consts#STATELESS_BREAKER_ENABLED
+     */
+    public static Settings fromConf(Conf conf) {
+      return new Settings(
+          conf.getBooleanProperty(Consts.STATELESS_BREAKER_ENABLED, true),
+          conf.getIntProperty(Consts.STATELESS_BREAKER_WINDOW_SIZE, Defaults.DEFAULT_STATELESS_BREAKER_WINDOW_SIZE),
+          conf.getIntProperty(Consts.STATELESS_BREAKER_MIN_CALLS, Defaults.DEFAULT_STATELESS_BREAKER_MIN_CALLS),
+          conf.getFloatProperty(Consts.STATELESS_BREAKER_FAILURE_RATE, Defaults.DEFAULT_STATELESS_BREAKER_FAILURE_RATE),
+          conf.getIntProperty(Consts.STATELESS_BREAKER_CONSECUTIVE_FAILURES, Defaults.DEFAULT_STATELESS_BREAKER_CONSECUTIVE_FAILURES),
+          conf.getTimeProperty(Consts.STATELESS_BREAKER_SLOW_CALL_THRESHOLD, Defaults.DEFAULT_STATELESS_BREAKER_SLOW_CALL_THRESHOLD).getValueInMillis(),
+          conf.getFloatProperty(Consts.STATELESS_BREAKER_SLOW_CALL_RATE, Defaults.DEFAULT_STATELESS_BREAKER_SLOW_CALL_RATE),
+          conf.getTimeProperty(Consts.STATELESS_BREAKER_OPEN_INTERVAL, Defaults.DEFAULT_STATELESS_BREAKER_OPEN_INTERVAL).getValueInMillis());
+    }
+
+    /**
+     * @return the {@link Settings} specified as system properties (these are
+     *         read once).
+     */
+    public static Settings getDefault() {
+      Settings settings = defaultSettings;
+      if (settings == null) {
+        settings = fromConf(Conf.getSystemProperties());
+        defaultSettings = settings;
+      }
+      return settings;
+    }
+  }
+}
@@ -90,8 +90,13 @@ class ContextList implements Contexts.UpdateListener {
    *          instance should update itself with.
    */
   synchronized void update(Collection<RemoteRefContext> otherContexts) {
-    contextSet.clear();
-    contextSet.addAll(otherContexts);
+    // the contexts already held are kept, together with their endpoint stats
+    Set<RemoteRefContext> updated = new HashSet<RemoteRefContext>();
+    for (RemoteRefContext other : otherContexts) {
+      RemoteRefContext existing = find(other);
+      updated.add(existing == null ? other : existing);
+    }
+    contextSet = updated;
     timestamp = System.nanoTime();
   }
 
@@ -166,6 +171,17 @@ class ContextList implements Contexts.UpdateListener {
     }
   }
 
+  private RemoteRefContext find(RemoteRefContext context) {
+    if (contextSet.contains(context)) {
+      for (RemoteRefContext existing : contextSet) {
+        if (existing.equals(context)) {
+          return existing;
+        }
+      }
+    }
+    return null;
+  }
+
   private void notifyListeners(final RemoteRefContext removed) {
     Threads.getGlobalWorkerPool().submit(new Runnable() {
       @Override
@@ -0,0 +1,81 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the load statistics of an endpoint, as observed by the client: the
+ * number of invocations currently pending, and the exponentially weighted
+ * moving average (EWMA) of the latency of invocations. An instance is kept by
+ * each {@link RemoteRefContext}, and is used by {@link BalancingStrategy}s.
+ *
+ * @author yduchesne
+ *
+ */
+public class EndpointStats {
+
+  /**
+   * The weight given to each new latency sample.
+   */
+  static final double LATENCY_WEIGHT = 0.2;
+
+  private AtomicInteger    inFlight = new AtomicInteger();
+  private volatile double  latencyNanos;
+  private volatile boolean sampled;
+
+  /**
+   * Signals the start of an invocation.
+   *
+   * @return the start time of the invocation, to pass to
+   *         {@link #end(long, boolean)}.
+   */
+  public long begin() {
+    inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Signals the end of an invocation.
+   *
+   * @param startNanos
+   *          the start time returned by {@link #begin()}.
+   * @param sample
+   *          if <code>true</code>, the invocation's latency is taken into
+   *          account in the average latency.
+   */
+  public void end(long startNanos, boolean sample) {
+    inFlight.decrementAndGet();
+    if (sample) {
+      record(System.nanoTime() - startNanos);
+    }
+  }
+
+  /**
+   * @return the number of invocations currently pending.
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the average latency of invocations, in nanos (0 if no invocation
+   *         has completed yet).
+   */
+  public double getLatencyNanos() {
+    return latencyNanos;
+  }
+
+  // lost updates under contention are acceptable: the average is an estimate
+  void record(long nanos) {
+    if (sampled) {
+      latencyNanos = latencyNanos + LATENCY_WEIGHT * (nanos - latencyNanos);
+    } else {
+      latencyNanos = nanos;
+      sampled = true;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "[inFlight=" + inFlight.get() + ", latencyNanos=" + (long) latencyNanos + "]";
+  }
+}
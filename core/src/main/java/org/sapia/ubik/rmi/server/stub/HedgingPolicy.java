@@ -0,0 +1,168 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.rmi.Hedged;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * Determines which methods of a stateless stub are subject to hedged
+ * invocations, and the delay after which a hedged invocation is sent to a
+ * second endpoint. That delay corresponds to a given percentile of the latency
+ * of the method's recent invocations: no invocation is hedged until enough of
+ * them have been recorded.
+ *
+ * @see Hedged
+ * @see Consts#STATELESS_HEDGED_METHODS
+ *
+ * @author yduchesne
+ *
+ */
+public class HedgingPolicy {
+
+  private static final String ALL_METHODS = "*";
+
+  private static final LatencyTracker NOT_HEDGED = new LatencyTracker(1, 0, 0);
+
+  private Set<String>                             methodNames;
+  private int                                     percentile;
+  private long                                    minDelayNanos;
+  private ConcurrentMap<Method, LatencyTracker>   trackers = new ConcurrentHashMap<Method, LatencyTracker>();
+  private AtomicLong                              hedgeCount = new AtomicLong();
+
+  /**
+   * @param methodNames
+   *          the names of the methods to hedge (in addition to the ones
+   *          annotated with {@link Hedged}) - <code>*</code> stands for all
+   *          methods.
+   * @param percentile
+   *          the percentile of latencies corresponding to the hedging delay.
+   * @param minDelayMillis
+   *          the minimum hedging delay.
+   */
+  public HedgingPolicy(Set<String> methodNames, int percentile, long minDelayMillis) {
+    this.methodNames = methodNames;
+    this.percentile = Math.max(1, Math.min(percentile, 100));
+    this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+  }
+
+  /**
+   * @param bindingName
+   *          the JNDI name of a stateless stub.
+   * @return the {@link HedgingPolicy} configured for the given binding.
+   */
+  public static HedgingPolicy forBinding(String bindingName) {
+    Conf conf = Conf.getSystemProperties();
+    Set<String> methodNames = new HashSet<String>();
+    String names = conf.getProperty(Consts.STATELESS_HEDGED_METHODS + "." + bindingName);
+    if (names != null) {
+      for (String n : names.split(",")) {
+        if (!n.trim().isEmpty()) {
+          methodNames.add(n.trim());
+        }
+      }
+    }
+    return new HedgingPolicy(methodNames,
+        conf.getIntProperty(Consts.STATELESS_HEDGING_PERCENTILE, Defaults.DEFAULT_STATELESS_HEDGING_PERCENTILE),
+        conf.getTimeProperty(Consts.STATELESS_HEDGING_MIN_DELAY, Defaults.DEFAULT_STATELESS_HEDGING_MIN_DELAY).getValueInMillis());
+  }
+
+  /**
+   * @param method
+   *          a remote {@link Method}.
+   * @return the {@link LatencyTracker} of the given method, or
+   *         <code>null</code> if its invocations are not to be hedged.
+   */
+  public LatencyTracker getTracker(Method method) {
+    LatencyTracker tracker = trackers.get(method);
+    if (tracker == null) {
+      tracker = isHedged(method) ? new LatencyTracker(LatencyTracker.DEFAULT_SIZE, percentile, minDelayNanos) : NOT_HEDGED;
+      LatencyTracker existing = trackers.putIfAbsent(method, tracker);
+      if (existing != null) {
+        tracker = existing;
+      }
+    }
+    return tracker == NOT_HEDGED ? null : tracker;
+  }
+
+  /**
+   * @return the number of invocations that were sent to a second endpoint.
+   */
+  public long getHedgeCount() {
+    return hedgeCount.get();
+  }
+
+  void incrementHedgeCount() {
+    hedgeCount.incrementAndGet();
+  }
+
+  private boolean isHedged(Method method) {
+    return method.isAnnotationPresent(Hedged.class) || method.getDeclaringClass().isAnnotationPresent(Hedged.class)
+        || methodNames.contains(ALL_METHODS) || methodNames.contains(method.getName());
+  }
+
+  // ==========================================================================
+
+  /**
+   * Keeps the most recent latencies of a given method's invocations, and
+   * computes the hedging delay from them. The delay is recomputed
+   * periodically, rather than upon each invocation.
+   */
+  public static class LatencyTracker {
+
+    static final int DEFAULT_SIZE = 128;
+    static final int MIN_SAMPLES  = 20;
+
+    private static final int RECOMPUTE_INTERVAL = 16;
+
+    private long[]        samples;
+    private int           index;
+    private int           count;
+    private int           sinceComputed;
+    private int           percentile;
+    private long          minDelayNanos;
+    private volatile long delayNanos = -1;
+
+    LatencyTracker(int size, int percentile, long minDelayNanos) {
+      this.samples = new long[size];
+      this.percentile = percentile;
+      this.minDelayNanos = minDelayNanos;
+    }
+
+    /**
+     * @param nanos
+     *          the latency of an invocation, in nanos.
+     */
+    public synchronized void record(long nanos) {
+      samples[index] = nanos;
+      index = (index + 1) % samples.length;
+      if (count < samples.length) {
+        count++;
+      }
+      if (count >= MIN_SAMPLES && (++sinceComputed >= RECOMPUTE_INTERVAL || delayNanos < 0)) {
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        delayNanos = Math.max(minDelayNanos, sorted[Math.max(0, rank)]);
+        sinceComputed = 0;
+      }
+    }
+
+    /**
+     * @return the delay after which an invocation should be hedged, in nanos
+     *         (or -1 if not enough invocations have been recorded yet).
+     */
+    public long getDelayNanos() {
+      return delayNanos;
+    }
+  }
+}
@@ -39,6 +39,8 @@ public class RemoteRefContext implements Externalizable {
 
   protected transient volatile Connections pool;
   protected transient Object lock = new Object();
+  private transient EndpointStats stats = new EndpointStats();
+  private transient CircuitBreaker breaker = new CircuitBreaker();
 
   /** Used for serialization only */
   public RemoteRefContext() {
@@ -102,6 +104,22 @@ public class RemoteRefContext implements Externalizable {
     return hopCount <= 1;
   }
 
+  /**
+   * @return the {@link EndpointStats} of the endpoint to which this instance
+   *         corresponds, as observed through this instance.
+   */
+  public EndpointStats getStats() {
+    return stats;
+  }
+
+  /**
+   * @return the {@link CircuitBreaker} of the endpoint to which this instance
+   *         corresponds, as observed through this instance.
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return breaker;
+  }
+
   /**
    * @return the {@link Connections} that this instance uses.
    */
@@ -192,8 +210,7 @@ public class RemoteRefContext implements Externalizable {
         conn.send(cmd);
       } catch (RemoteException e) {
         synchronized (lock) {
-          pool.invalidate(conn);
-          pool.clear();
+          pool.invalidateFailed(conn);
         }
         conn = pool.acquire();
         conn.send(cmd);
@@ -1,6 +1,7 @@
 package org.sapia.ubik.rmi.server.stub;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
 
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.rmi.server.ShutdownException;
@@ -8,6 +9,8 @@ import org.sapia.ubik.rmi.server.command.CallbackInvokeCommand;
 import org.sapia.ubik.rmi.server.command.InvokeCommand;
 import org.sapia.ubik.rmi.server.stub.LocalMethod.LocalMethodMap;
 import org.sapia.ubik.util.Exceptions;
+import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.Futures;
 
 /**
  * This class implements a basic stub handler (no fail over, no load balancing,
@@ -15,7 +18,7 @@ import org.sapia.ubik.util.Exceptions;
  *
  * @author Yanick Duchesne
  */
-public class RemoteRefEx extends RemoteRef {
+public class RemoteRefEx extends RemoteRef implements AsyncInvocationHandler, BatchInvocationHandler {
 
   static final long serialVersionUID = 1L;
 
@@ -50,6 +53,10 @@ public class RemoteRefEx extends RemoteRef {
       return invoker.invoke(this, params);
     }
 
+    if (AsyncStubs.isAsync(toCall)) {
+      return invokeAsync(proxy, toCall, params);
+    }
+
     if (context.isCallback()) {
       if (Log.isDebug()) {
         Log.debug(getClass(), "invoking (callback) method " + toCall + " on vmId: " + context.getVmId());
@@ -80,7 +87,64 @@ public class RemoteRefEx extends RemoteRef {
     return toReturn;
   }
 
+  @Override
+  public CompletableFuture<Object> invokeAsync(final Object proxy, final Method toCall, final Object[] params) {
+    LocalMethodInvoker invoker = LOCAL_METHODS.getInvokerFor(toCall);
+    if (invoker != null) {
+      try {
+        return CompletableFuture.completedFuture(invoker.invoke(this, params));
+      } catch (Throwable e) {
+        return Futures.failed(e);
+      }
+    }
+
+    InvokeCommand cmd;
+    if (context.isCallback()) {
+      cmd = new CallbackInvokeCommand(context.getOid(), toCall.getName(), params, toCall.getParameterTypes(), context.getAddress().getTransportType());
+    } else {
+      cmd = new InvokeCommand(context.getOid(), toCall.getName(), params, toCall.getParameterTypes(), context.getAddress().getTransportType());
+    }
+
+    if (Log.isDebug()) {
+      Log.debug(getClass(), "invoking (async) method " + toCall + " on vmId: " + context.getVmId());
+    }
+
+    CompletableFuture<Object> result = AsyncStubs.toResult(dispatcher().dispatchInvocationAsync(context.getVmId(), context.getConnections(), cmd));
+    return AsyncStubs.recover(result, new Func<CompletableFuture<Object>, Throwable>() {
+      @Override
+      public CompletableFuture<Object> call(Throwable err) {
+        return onAsyncError(proxy, toCall, params, err);
+      }
+    });
+  }
+
+  @Override
+  public Object[] invokeBatch(Object proxy, Method[] toCall, Object[][] params, boolean parallel) throws Throwable {
+    if (Log.isDebug()) {
+      Log.debug(getClass(), "invoking batch of " + toCall.length + " methods on vmId: " + context.getVmId());
+    }
+    return StubBatch.dispatchBatch(dispatcher(), context, toCall, params, parallel);
+  }
+
   protected Object onShutdown(Object proxy, Method toCall, Object[] params) throws Throwable {
     throw new ShutdownException();
   }
+
+  /**
+   * Called when an asynchronous invocation fails. By default, returns a future
+   * that is completed with the given error.
+   *
+   * @param proxy
+   *          the stub on which the method was called.
+   * @param toCall
+   *          the {@link Method} that was called.
+   * @param params
+   *          the method's parameters.
+   * @param err
+   *          the error that occurred.
+   * @return the {@link CompletableFuture} to return to the caller.
+   */
+  protected CompletableFuture<Object> onAsyncError(Object proxy, Method toCall, Object[] params, Throwable err) {
+    return Futures.failed(err);
+  }
 }
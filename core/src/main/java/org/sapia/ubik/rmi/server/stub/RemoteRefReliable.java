@@ -4,6 +4,9 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import javax.naming.NamingException;
 
@@ -12,6 +15,9 @@ import org.sapia.ubik.log.Log;
 import org.sapia.ubik.rmi.naming.ServiceLocator;
 import org.sapia.ubik.rmi.server.RuntimeRemoteException;
 import org.sapia.ubik.rmi.server.ShutdownException;
+import org.sapia.ubik.rmi.server.invocation.InvocationDispatcher;
+import org.sapia.ubik.util.Exceptions;
+import org.sapia.ubik.util.Futures;
 
 /**
  * A stub handler that manages reconnecting to another server instance provided
@@ -88,25 +94,58 @@ public class RemoteRefReliable extends RemoteRefEx {
     return doFailOver(proxy, toCall, params, new ShutdownException());
   }
 
+  /**
+   * Performs fail-over if the given error is a remote exception (or a
+   * {@link ShutdownException}). The lookup of the new remote object is
+   * performed by the thread pool of the {@link InvocationDispatcher}, after
+   * which the invocation is performed asynchronously again.
+   */
+  @Override
+  protected CompletableFuture<Object> onAsyncError(final Object proxy, final Method toCall, final Object[] params, final Throwable err) {
+    if (url == null || !(Exceptions.isRemoteException(err) || err instanceof ShutdownException)) {
+      return super.onAsyncError(proxy, toCall, params, err);
+    }
+    log.info("Error caught on asynchronous invocation, performing failover");
+    return Futures.supplyAsync(new Supplier<CompletableFuture<Object>>() {
+      @Override
+      public CompletableFuture<Object> get() {
+        try {
+          doSwitchContext();
+        } catch (NamingException e) {
+          return Futures.failed(err);
+        }
+        return RemoteRefReliable.super.invokeAsync(proxy, toCall, params);
+      }
+    }, dispatcher().getAsyncExecutor()).thenCompose(new Function<CompletableFuture<Object>, CompletableFuture<Object>>() {
+      @Override
+      public CompletableFuture<Object> apply(CompletableFuture<Object> f) {
+        return f;
+      }
+    });
+  }
+
   /**
    * Implements fail-over logic.
    */
   protected synchronized Object doFailOver(Object obj, Method toCall, Object[] params, Throwable err) throws Throwable {
     try {
-      Object remote = ServiceLocator.lookup(url);
-
-      log.debug("Looked up remote object %s", url);
-
-      synchronized (lock) {
-        log.debug("Performing failover for %s", url);
-        RemoteRefContext newContext = Stubs.getStubInvocationHandler(remote).getContexts().iterator().next();
-        newContext.getConnections().clear();
-        context = newContext;
-      }
-
+      doSwitchContext();
       return super.invoke(obj, toCall, params);
     } catch (NamingException e) {
       throw err;
     }
   }
+
+  private synchronized void doSwitchContext() throws NamingException {
+    Object remote = ServiceLocator.lookup(url);
+
+    log.debug("Looked up remote object %s", url);
+
+    synchronized (lock) {
+      log.debug("Performing failover for %s", url);
+      RemoteRefContext newContext = Stubs.getStubInvocationHandler(remote).getContexts().iterator().next();
+      newContext.getConnections().clear();
+      context = newContext;
+    }
+  }
 }
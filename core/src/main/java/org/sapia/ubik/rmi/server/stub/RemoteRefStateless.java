@@ -9,6 +9,15 @@ import java.rmi.RemoteException;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
@@ -27,12 +36,24 @@ import org.sapia.ubik.rmi.server.stub.LocalMethod.LocalMethodMap;
 import org.sapia.ubik.util.Collects;
 import org.sapia.ubik.util.Exceptions;
 import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.Futures;
 import org.sapia.ubik.util.Strings;
 
 /**
  * A {@link StubInvocationHandler} that manages reconnecting to another server
  * instance provided a method call fails.
  * <p>
+ * Each endpoint has a {@link CircuitBreaker}: an endpoint whose invocations
+ * fail (or are too slow) is no longer selected until its circuit closes again,
+ * which is determined by a probe invocation once the open interval has
+ * elapsed. Endpoints that signal they are shutting down are removed.
+ * <p>
+ * Invocations of the methods designated by the {@link HedgingPolicy} are
+ * hedged: if the selected endpoint has not answered after a delay based on
+ * the latency of the method's recent invocations, the invocation is also sent
+ * to another endpoint, and the first response is used (the other one is
+ * discarded).
+ * <p>
  * Note that this class does NOT inherit from {@link RemoteRef} - despite what
  * the name might suggest. This is because this class, by definition, does not
  * correspond to a single server endpoint, but to multiple server endpoints.
@@ -44,7 +65,7 @@ import org.sapia.ubik.util.Strings;
  * hierarchy.
  *
  */
-public class RemoteRefStateless implements StubInvocationHandler, Externalizable, HealthCheck {
+public class RemoteRefStateless implements StubInvocationHandler, AsyncInvocationHandler, BatchInvocationHandler, Externalizable, HealthCheck {
 
   static final long serialVersionUID = 1L;
 
@@ -59,6 +80,8 @@ public class RemoteRefStateless implements StubInvocationHandler, Externalizable
   private transient ContextList contexts = new ContextList();
   private transient ThreadLocal<ThreadSpecificContextList> threadContexts = new ThreadLocal<>();
   private transient volatile InvocationDispatcher dispatcher;
+  private transient volatile BalancingStrategy balancing;
+  private transient volatile HedgingPolicy hedging;
 
   /**
    * Do not use: meant for externalization.
@@ -98,6 +121,52 @@ public class RemoteRefStateless implements StubInvocationHandler, Externalizable
     return name;
   }
 
+  /**
+   * @return the {@link BalancingStrategy} used to select the endpoint of each
+   *         invocation - by default, the one configured for this instance's
+   *         name (see {@link BalancingStrategies#forBinding(String)}).
+   */
+  public BalancingStrategy getBalancingStrategy() {
+    BalancingStrategy strategy = balancing;
+    if (strategy == null) {
+      strategy = BalancingStrategies.forBinding(name);
+      balancing = strategy;
+    }
+    return strategy;
+  }
+
+  /**
+   * @param balancing
+   *          the {@link BalancingStrategy} to use to select the endpoint of
+   *          each invocation.
+   */
+  public void setBalancingStrategy(BalancingStrategy balancing) {
+    this.balancing = balancing;
+  }
+
+  /**
+   * @return the {@link HedgingPolicy} determining which invocations are hedged
+   *         - by default, the one configured for this instance's name (see
+   *         {@link HedgingPolicy#forBinding(String)}).
+   */
+  public HedgingPolicy getHedgingPolicy() {
+    HedgingPolicy policy = hedging;
+    if (policy == null) {
+      policy = HedgingPolicy.forBinding(name);
+      hedging = policy;
+    }
+    return policy;
+  }
+
+  /**
+   * @param hedging
+   *          the {@link HedgingPolicy} determining which invocations are
+   *          hedged.
+   */
+  public void setHedgingPolicy(HedgingPolicy hedging) {
+    this.hedging = hedging;
+  }
+
   @Override
   public Collection<RemoteRefContext> getContexts() {
     return contexts.getAll();
@@ -115,19 +184,82 @@ public class RemoteRefStateless implements StubInvocationHandler, Externalizable
       return invoker.invoke(this, params);
     }
 
+    if (AsyncStubs.isAsync(toCall)) {
+      return invokeAsync(obj, toCall, params);
+    }
+
+    HedgingPolicy.LatencyTracker latencies = getHedgingPolicy().getTracker(toCall);
     RemoteRefContext context = acquire();
+    long permit = threadContextList().getPermit();
+    if (latencies != null && canHedge(context)) {
+      return invokeHedged(context, permit, obj, toCall, params, latencies);
+    }
+
     log.debug("Performing invocation using context: %s", context);
     try {
-      toReturn = doInvoke(context, obj, toCall, params);
-    } catch (ShutdownException e) {
-      toReturn = handleError(context, obj, toCall, params, e);
+      toReturn = doInvoke(context, permit, obj, toCall, params);
     } catch (RemoteException | RuntimeRemoteException e) {
-      toReturn = handleError(context, obj, toCall, params, e);
+      toReturn = handleError(context, obj, toCall, params, e, new HashSet<RemoteRefContext>());
     }
 
     return toReturn;
   }
 
+  /**
+   * Performs the given invocation asynchronously. If the invocation fails with
+   * a remote exception, it is performed again on another endpoint (if any).
+   */
+  @Override
+  public CompletableFuture<Object> invokeAsync(Object obj, Method toCall, Object[] params) {
+    LocalMethodInvoker invoker = LOCAL_METHODS.getInvokerFor(toCall);
+    if (invoker != null) {
+      try {
+        return CompletableFuture.completedFuture(invoker.invoke(this, params));
+      } catch (Throwable e) {
+        return Futures.failed(e);
+      }
+    }
+
+    try {
+      RemoteRefContext context = acquire();
+      return doInvokeAsync(context, threadContextList().getPermit(), toCall, params, new HashSet<RemoteRefContext>());
+    } catch (RemoteException e) {
+      return Futures.failed(e);
+    }
+  }
+
+  /**
+   * Performs the given invocations in a single round trip to one of the
+   * endpoints. If the batch fails with a remote exception, it is sent to
+   * another endpoint (if any).
+   */
+  @Override
+  public Object[] invokeBatch(Object proxy, Method[] toCall, Object[][] params, boolean parallel) throws Throwable {
+    RemoteRefContext context = acquire();
+    long permit = threadContextList().getPermit();
+    Set<RemoteRefContext> tried = new HashSet<RemoteRefContext>();
+    while (true) {
+      log.debug("Performing batch invocation using context: %s", context);
+      // a batch counts as a pending invocation, but its latency is not sampled
+      EndpointStats stats = context.getStats();
+      long start = stats.begin();
+      try {
+        Object[] results = StubBatch.dispatchBatch(dispatcher(), context, toCall, params, parallel);
+        context.getCircuitBreaker().onSuccess(permit, 0);
+        return results;
+      } catch (RemoteException | RuntimeRemoteException e) {
+        context.getCircuitBreaker().onFailure(permit);
+        context = failover(context, e, tried);
+        if (context == null) {
+          throw e;
+        }
+        permit = threadContextList().getPermit();
+      } finally {
+        stats.end(start, false);
+      }
+    }
+  }
+
   /**
    * @see org.sapia.ubik.rmi.server.stub.HealthCheck#isValid()
    */
@@ -213,7 +345,32 @@ public class RemoteRefStateless implements StubInvocationHandler, Externalizable
     return contexts.count() > 0;
   }
 
-  private Object doInvoke(RemoteRefContext context, Object obj, Method toCall, Object[] params) throws Throwable {
+  private Object doInvoke(RemoteRefContext context, long permit, Object obj, Method toCall, Object[] params) throws Throwable {
+    long start = context.getStats().begin();
+    Throwable error = null;
+    try {
+      return doDispatch(context, toCall, params);
+    } catch (Throwable e) {
+      error = e;
+      throw e;
+    } finally {
+      complete(context, permit, start, error);
+    }
+  }
+
+  // the latency of invocations that fail remotely is not taken into account:
+  // such failures are recorded by the endpoint's circuit breaker instead
+  private static void complete(RemoteRefContext context, long permit, long start, Throwable error) {
+    if (error != null && Exceptions.isRemoteException(error)) {
+      context.getStats().end(start, false);
+      context.getCircuitBreaker().onFailure(permit);
+    } else {
+      context.getCircuitBreaker().onSuccess(permit, System.nanoTime() - start);
+      context.getStats().end(start, true);
+    }
+  }
+
+  private Object doDispatch(RemoteRefContext context, Method toCall, Object[] params) throws Throwable {
     Object toReturn = null;
 
     if (context.isCallback()) {
@@ -228,6 +385,10 @@ public class RemoteRefStateless implements StubInvocationHandler, Externalizable
           new InvokeCommand(context.getOid(), toCall.getName(), params, toCall.getParameterTypes(), context.getAddress().getTransportType()));
     }
 
+    return returnValue(toReturn);
+  }
+
+  private static Object returnValue(Object toReturn) throws Throwable {
     if (toReturn == null) {
       return toReturn;
     } else if (toReturn instanceof Throwable) {
@@ -239,36 +400,201 @@ public class RemoteRefStateless implements StubInvocationHandler, Externalizable
     return toReturn;
   }
 
+  // a hedged invocation is performed asynchronously, while the calling thread
+  // waits for the hedging delay: without callbacks, this takes a thread of the
+  // (bounded) async executor - if none is idle, the invocation is performed
+  // by the calling thread, and is not hedged
+  private boolean canHedge(RemoteRefContext context) {
+    if (context.isCallback()) {
+      return true;
+    }
+    ExecutorService executor = dispatcher().getAsyncExecutor();
+    if (executor instanceof ThreadPoolExecutor) {
+      ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+      return pool.getActiveCount() < pool.getMaximumPoolSize();
+    }
+    return true;
+  }
+
+  // each command is given its own copy of the parameters: these may be
+  // replaced by MarshalledObjects while the command is serialized
+  private static Object[] copy(Object[] params) {
+    return params == null ? null : params.clone();
+  }
+
+  private Object invokeHedged(RemoteRefContext primary, long permit, Object obj, Method toCall, Object[] params, HedgingPolicy.LatencyTracker latencies)
+      throws Throwable {
+    log.debug("Performing hedged invocation using context: %s", primary);
+    Set<RemoteRefContext> tried = new HashSet<RemoteRefContext>();
+    long delay = latencies.getDelayNanos();
+    CompletableFuture<Object> first = track(dispatchAsync(primary, permit, toCall, copy(params)), latencies);
+    CompletableFuture<Object> response = first;
+    try {
+      if (delay >= 0) {
+        try {
+          first.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+          response = hedge(primary, first, toCall, params, latencies, tried);
+        }
+      }
+      return returnValue(response.get());
+    } catch (ExecutionException e) {
+      Throwable err = Futures.unwrap(e);
+      if (!Exceptions.isRemoteException(err)) {
+        throw err;
+      }
+      return handleError(primary, obj, toCall, params, err, tried);
+    }
+  }
+
+  private CompletableFuture<Object> hedge(RemoteRefContext primary, CompletableFuture<Object> first, Method toCall, Object[] params,
+      HedgingPolicy.LatencyTracker latencies, Set<RemoteRefContext> tried) throws RemoteException {
+    tried.add(primary);
+    RemoteRefContext backup = threadContextList().select(getBalancingStrategy(), tried);
+    if (backup == null) {
+      return first;
+    }
+    long permit = threadContextList().getPermit();
+    if (!canHedge(backup)) {
+      backup.getCircuitBreaker().release(permit);
+      return first;
+    }
+    log.debug("No response from %s: hedging invocation using context: %s", primary.getAddress(), backup);
+    tried.add(backup);
+    getHedgingPolicy().incrementHedgeCount();
+    CompletableFuture<Object> second = track(dispatchAsync(backup, permit, toCall, copy(params)), latencies);
+
+    // the first response is used; the other invocation cannot be aborted
+    // remotely, so its response is discarded
+    final CompletableFuture<Object> response = new CompletableFuture<Object>();
+    final AtomicInteger failures = new AtomicInteger();
+    BiConsumer<Object, Throwable> handler = new BiConsumer<Object, Throwable>() {
+      @Override
+      public void accept(Object result, Throwable err) {
+        if (err == null) {
+          response.complete(result);
+        } else if (failures.incrementAndGet() == 2) {
+          response.completeExceptionally(err);
+        }
+      }
+    };
+    first.whenComplete(handler);
+    second.whenComplete(handler);
+    return response;
+  }
+
+  // records the latency of each endpoint's response, including the ones that
+  // are discarded, so that hedging does not skew the percentile
+  private static CompletableFuture<Object> track(CompletableFuture<Object> dispatched, final HedgingPolicy.LatencyTracker latencies) {
+    final long start = System.nanoTime();
+    dispatched.whenComplete(new BiConsumer<Object, Throwable>() {
+      @Override
+      public void accept(Object result, Throwable err) {
+        if (err == null) {
+          latencies.record(System.nanoTime() - start);
+        }
+      }
+    });
+    return dispatched;
+  }
+
+  private CompletableFuture<Object> doInvokeAsync(final RemoteRefContext context, long permit, final Method toCall, final Object[] params,
+      final Set<RemoteRefContext> tried) {
+    CompletableFuture<Object> result = AsyncStubs.toResult(dispatchAsync(context, permit, toCall, params));
+    return AsyncStubs.recover(result, new Func<CompletableFuture<Object>, Throwable>() {
+      @Override
+      public CompletableFuture<Object> call(Throwable err) {
+        if (Exceptions.isRemoteException(err)) {
+          try {
+            RemoteRefContext next = failover(context, err, tried);
+            if (next != null) {
+              return doInvokeAsync(next, threadContextList().getPermit(), toCall, params, tried);
+            }
+          } catch (RemoteException e) {
+            return Futures.failed(err);
+          }
+        }
+        return Futures.failed(err);
+      }
+    });
+  }
+
+  private CompletableFuture<Object> dispatchAsync(final RemoteRefContext context, final long permit, Method toCall, Object[] params) {
+    InvokeCommand cmd;
+    if (context.isCallback()) {
+      log.debug("Invoking asynchronously (callback): %s", toCall);
+      cmd = new CallbackInvokeCommand(context.getOid(), toCall.getName(), params, toCall.getParameterTypes(), context.getAddress().getTransportType());
+    } else {
+      log.debug("Invoking asynchronously (no callback): %s", toCall);
+      cmd = new InvokeCommand(context.getOid(), toCall.getName(), params, toCall.getParameterTypes(), context.getAddress().getTransportType());
+    }
+
+    final long start = context.getStats().begin();
+    CompletableFuture<Object> dispatched = dispatcher().dispatchInvocationAsync(context.getVmId(), context.getConnections(), cmd);
+    dispatched.whenComplete(new BiConsumer<Object, Throwable>() {
+      @Override
+      public void accept(Object result, Throwable err) {
+        if (err == null) {
+          complete(context, permit, start, null);
+        } else {
+          context.getStats().end(start, false);
+          // a rejection by the local executor says nothing about the endpoint
+          if (Futures.unwrap(err) instanceof RejectedExecutionException) {
+            context.getCircuitBreaker().release(permit);
+          } else {
+            context.getCircuitBreaker().onFailure(permit);
+          }
+        }
+      }
+    });
+    return dispatched;
+  }
+
   private RemoteRefContext acquire() throws RemoteException {
-    log.debug("Proceeding to round-robin");
+    return threadContextList().select(getBalancingStrategy());
+  }
+
+  private ThreadSpecificContextList threadContextList() {
     ThreadSpecificContextList tsl = threadContexts.get();
     if (tsl == null) {
       tsl = contexts.getThreadSpecificContextList();
       threadContexts.set(tsl);
     }
-    return tsl.roundrobin();
+    return tsl;
   }
 
-  private RemoteRefContext removeAcquire(RemoteRefContext toRemove) throws RemoteException {
-    log.info("Removing invalid instance: %s", toRemove.getAddress());
-    contexts.remove(toRemove);
-    log.debug("Remaining: %s", contexts);
-    return acquire();
+  /**
+   * Removes the given context if its endpoint is shutting down (or if circuit
+   * breaking is disabled), and selects another context amongst the ones that
+   * have not been tried yet.
+   *
+   * @return the {@link RemoteRefContext} to use next, or <code>null</code> if
+   *         none is available.
+   */
+  private RemoteRefContext failover(RemoteRefContext failed, Throwable err, Set<RemoteRefContext> tried) throws RemoteException {
+    tried.add(failed);
+    if (err instanceof ShutdownException || !failed.getCircuitBreaker().isEnabled()) {
+      log.info("Removing invalid instance: %s", failed.getAddress());
+      contexts.remove(failed);
+      log.debug("Remaining: %s", contexts);
+    } else {
+      log.info("Invocation failed on %s (circuit: %s)", failed.getAddress(), failed.getCircuitBreaker().getState());
+    }
+    if (contexts.count() == 0) {
+      return null;
+    }
+    return threadContextList().select(getBalancingStrategy(), tried);
   }
 
-  private Object handleError(RemoteRefContext context, Object obj, Method toCall, Object[] params, Throwable err) throws Throwable {
-    do {
-      context = removeAcquire(context);
-
+  private Object handleError(RemoteRefContext context, Object obj, Method toCall, Object[] params, Throwable err, Set<RemoteRefContext> tried)
+      throws Throwable {
+    while ((context = failover(context, err, tried)) != null) {
       try {
-        return doInvoke(context, obj, toCall, params);
-      } catch (Throwable t) {
-        if (Exceptions.isRemoteException(t)) {
-          err = t;
-        }
+        return doInvoke(context, threadContextList().getPermit(), obj, toCall, params);
+      } catch (RemoteException | RuntimeRemoteException e) {
+        err = e;
       }
-    } while (Exceptions.isRemoteException(err) && (contexts.count() > 0));
-
+    }
     throw err;
   }
 
@@ -1,10 +1,12 @@
 package org.sapia.ubik.rmi.server.stub;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -27,11 +29,12 @@ import org.sapia.ubik.util.Condition;
 
 /**
  * This class manages stateless stubs on the client-side and insures that
- * notications are properly dispatched.
+ * notications are properly dispatched. It also exposes the state of the
+ * {@link CircuitBreaker}s of the stubs' endpoints.
  *
  * @author yduchesne
  */
-public class StatelessStubTable implements Module {
+public class StatelessStubTable implements Module, StatelessStubTableMBean {
 
   private Category log = Log.createCategory(getClass());
   private List<DomainContexts> domainContexts = new ArrayList<DomainContexts>();
@@ -40,6 +43,7 @@ public class StatelessStubTable implements Module {
 
   @Override
   public void init(ModuleContext context) {
+    context.registerMbean(this);
   }
 
   @Override
@@ -65,6 +69,74 @@ public class StatelessStubTable implements Module {
     dc.registerStatelessRef(ref, newContexts);
   }
 
+  // --------------------------------------------------------------------------
+  // MBean
+
+  @Override
+  public int getEndpointCount() {
+    return getEndpoints().size();
+  }
+
+  @Override
+  public int getOpenCircuitCount() {
+    return countCircuits(CircuitBreaker.State.OPEN);
+  }
+
+  @Override
+  public int getHalfOpenCircuitCount() {
+    return countCircuits(CircuitBreaker.State.HALF_OPEN);
+  }
+
+  @Override
+  public long getCircuitTripCount() {
+    long count = 0;
+    for (RemoteRefContext context : getEndpoints().keySet()) {
+      count += context.getCircuitBreaker().getTripCount();
+    }
+    return count;
+  }
+
+  @Override
+  public String[] getCircuitStates() {
+    Map<RemoteRefContext, String> endpoints = getEndpoints();
+    List<String> states = new ArrayList<String>(endpoints.size());
+    for (Map.Entry<RemoteRefContext, String> e : endpoints.entrySet()) {
+      states.add(e.getValue() + "@" + e.getKey().getAddress() + ": " + e.getKey().getCircuitBreaker());
+    }
+    return states.toArray(new String[states.size()]);
+  }
+
+  @Override
+  public void resetCircuits() {
+    for (RemoteRefContext context : getEndpoints().keySet()) {
+      context.getCircuitBreaker().reset();
+    }
+  }
+
+  private int countCircuits(CircuitBreaker.State state) {
+    int count = 0;
+    for (RemoteRefContext context : getEndpoints().keySet()) {
+      if (context.getCircuitBreaker().getState() == state) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // contexts may be shared between stubs: they are collected by identity,
+  // and mapped to the name of their binding
+  private Map<RemoteRefContext, String> getEndpoints() {
+    Map<RemoteRefContext, String> endpoints = new IdentityHashMap<RemoteRefContext, String>();
+    synchronized (domainContexts) {
+      for (DomainContexts dc : domainContexts) {
+        dc.collectEndpoints(endpoints);
+      }
+    }
+    return endpoints;
+  }
+
+  // --------------------------------------------------------------------------
+
   private DomainContexts getDomainContextsFor(DomainName domainName, MulticastAddress addr) {
     synchronized (domainContexts) {
       for (DomainContexts dc : domainContexts) {
@@ -90,6 +162,7 @@ public class StatelessStubTable implements Module {
     private EventChannelTable eventChannelTable;
 
     private Map<String, Contexts> contextsByObjectName = new HashMap<String, Contexts>();
+    private Map<String, List<WeakReference<ContextList>>> contextListsByObjectName = new HashMap<String, List<WeakReference<ContextList>>>();
 
     DomainContexts(EventChannelTable table, DomainName domainName, MulticastAddress address) {
       this.eventChannelTable = table;
@@ -191,6 +264,12 @@ public class StatelessStubTable implements Module {
 
       // subscribe stub's context list for future modifications
       contexts.addUpdateListener(ref.getContextList());
+      List<WeakReference<ContextList>> contextLists = contextListsByObjectName.get(name);
+      if (contextLists == null) {
+        contextLists = new ArrayList<WeakReference<ContextList>>();
+        contextListsByObjectName.put(name, contextLists);
+      }
+      contextLists.add(new WeakReference<ContextList>(ref.getContextList()));
 
       // adding ref's contexts to the Contexts instance
       contexts.addAll(newContexts);
@@ -219,6 +298,22 @@ public class StatelessStubTable implements Module {
       });
     }
 
+    synchronized void collectEndpoints(Map<RemoteRefContext, String> endpoints) {
+      for (Map.Entry<String, List<WeakReference<ContextList>>> e : contextListsByObjectName.entrySet()) {
+        List<WeakReference<ContextList>> contextLists = e.getValue();
+        for (int i = 0; i < contextLists.size(); i++) {
+          ContextList contextList = contextLists.get(i).get();
+          if (contextList == null) {
+            contextLists.remove(i--);
+          } else {
+            for (RemoteRefContext context : contextList.getAll()) {
+              endpoints.put(context, e.getKey());
+            }
+          }
+        }
+      }
+    }
+
     void registerWithEventChannel() {
       eventChannelTable.getEventChannelFor(domainName.toString(), multicastAddress).registerAsyncListener(SyncPutEvent.class.getName(), this);
       eventChannelTable.getEventChannelFor(domainName.toString(), multicastAddress).registerAsyncListener(StatelessRefSyncEvent.class.getName(), this);
@@ -0,0 +1,37 @@
+package org.sapia.ubik.rmi.server.stub;
+
+public interface StatelessStubTableMBean {
+
+  /**
+   * @return the number of endpoints used by the stateless stubs of this JVM.
+   */
+  public int getEndpointCount();
+
+  /**
+   * @return the number of endpoints whose {@link CircuitBreaker} is open.
+   */
+  public int getOpenCircuitCount();
+
+  /**
+   * @return the number of endpoints whose {@link CircuitBreaker} is
+   *         half-open.
+   */
+  public int getHalfOpenCircuitCount();
+
+  /**
+   * @return the number of times the {@link CircuitBreaker}s of the endpoints
+   *         were opened.
+   */
+  public long getCircuitTripCount();
+
+  /**
+   * @return the state of the {@link CircuitBreaker} of each endpoint, together
+   *         with its binding name and address.
+   */
+  public String[] getCircuitStates();
+
+  /**
+   * Closes the {@link CircuitBreaker}s of all endpoints.
+   */
+  public void resetCircuits();
+}
@@ -0,0 +1,210 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.sapia.ubik.rmi.server.command.BatchInvokeCommand;
+import org.sapia.ubik.rmi.server.command.InvokeCommand;
+import org.sapia.ubik.rmi.server.invocation.InvocationDispatcher;
+import org.sapia.ubik.util.Assertions;
+import org.sapia.ubik.util.Exceptions;
+import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.VoidFunc;
+
+/**
+ * Collects calls to the methods of a stub, in order to send them to the
+ * remote object in a single round trip. Given a stub:
+ *
+ * <pre>
+ * StubBatch&lt;Service&gt; batch = StubBatch.of(stub);
+ * for (final String key : keys) {
+ *   batch.call(new Func&lt;Item, Service&gt;() {
+ *     public Item call(Service s) {
+ *       return s.lookup(key);
+ *     }
+ *   });
+ * }
+ * Object[] items = batch.execute();
+ * </pre>
+ *
+ * As with {@link AsyncStubs}, each function is passed an object that records
+ * the (single) method invoked on it. The recorded invocations are performed
+ * when {@link #execute()} is called: they are sent as a single
+ * {@link BatchInvokeCommand}, and executed on the server side in the order in
+ * which they were added - or concurrently, if the batch is
+ * {@link #parallel()}. The server-side invocation events are dispatched for
+ * each invocation, as they would be if it had been performed individually.
+ * <p>
+ * The futures returned when adding invocations are completed once the batch
+ * has been executed. The methods of a batch are not meant to be called
+ * concurrently.
+ *
+ * @author yduchesne
+ *
+ * @param <T>
+ *          the type of the stub.
+ */
+public class StubBatch<T> {
+
+  private T                               stub;
+  private boolean                         parallel;
+  private List<Method>                    methods = new ArrayList<Method>();
+  private List<Object[]>                  params  = new ArrayList<Object[]>();
+  private List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+
+  private StubBatch(T stub) {
+    this.stub = stub;
+  }
+
+  /**
+   * @param stub
+   *          the stub whose methods are to be called.
+   * @return a new {@link StubBatch}.
+   */
+  public static <T> StubBatch<T> of(T stub) {
+    return new StubBatch<T>(stub);
+  }
+
+  /**
+   * Indicates that the invocations of this batch should be performed
+   * concurrently on the server side.
+   *
+   * @return this instance.
+   */
+  public StubBatch<T> parallel() {
+    parallel = true;
+    return this;
+  }
+
+  /**
+   * @param call
+   *          the {@link Func} invoking the method to call on the object that is
+   *          passed to it.
+   * @return the {@link CompletableFuture} that is completed with the method's
+   *         return value, once this batch has been executed.
+   */
+  @SuppressWarnings("unchecked")
+  public <R> CompletableFuture<R> call(Func<R, T> call) {
+    AsyncStubs.Recorder recorder = new AsyncStubs.Recorder();
+    call.call((T) Proxy.newProxyInstance(stub.getClass().getClassLoader(), stub.getClass().getInterfaces(), recorder));
+    Assertions.illegalState(recorder.method == null, "No method was invoked on the stub");
+    CompletableFuture<Object> future = new CompletableFuture<Object>();
+    methods.add(recorder.method);
+    params.add(recorder.params);
+    futures.add(future);
+    return (CompletableFuture<R>) future;
+  }
+
+  /**
+   * @param call
+   *          the {@link VoidFunc} invoking the method to call on the object
+   *          that is passed to it.
+   * @return the {@link CompletableFuture} that is completed when the method
+   *         has returned, once this batch has been executed.
+   */
+  public CompletableFuture<Void> run(final VoidFunc<T> call) {
+    CompletableFuture<Object> result = call(new Func<Object, T>() {
+      @Override
+      public Object call(T arg) {
+        call.call(arg);
+        return null;
+      }
+    });
+    return result.thenApply(new Function<Object, Void>() {
+      @Override
+      public Void apply(Object r) {
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return the number of invocations that this batch holds.
+   */
+  public int size() {
+    return methods.size();
+  }
+
+  /**
+   * Performs the invocations held by this instance, and clears it.
+   *
+   * @return the return value of each invocation, in the order in which the
+   *         invocations were added - or the exception that the invoked method
+   *         has thrown.
+   * @throws Throwable
+   *           if an error occurs sending the invocations (the futures
+   *           corresponding to the invocations are then completed with that
+   *           error).
+   */
+  public Object[] execute() throws Throwable {
+    Method[] toCall = methods.toArray(new Method[methods.size()]);
+    Object[][] toPass = params.toArray(new Object[params.size()][]);
+    List<CompletableFuture<Object>> toComplete = new ArrayList<CompletableFuture<Object>>(futures);
+    methods.clear();
+    params.clear();
+    futures.clear();
+
+    Object[] results;
+    try {
+      InvocationHandler handler = AsyncStubs.getInvocationHandler(stub);
+      if (handler instanceof BatchInvocationHandler) {
+        results = ((BatchInvocationHandler) handler).invokeBatch(stub, toCall, toPass, parallel);
+      } else {
+        results = invokeEach(toCall, toPass);
+      }
+    } catch (Throwable e) {
+      for (CompletableFuture<Object> future : toComplete) {
+        future.completeExceptionally(e);
+      }
+      throw e;
+    }
+
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] instanceof Throwable) {
+        Throwable err = (Throwable) results[i];
+        Exceptions.fillInStackTrace(err);
+        toComplete.get(i).completeExceptionally(err);
+      } else {
+        toComplete.get(i).complete(results[i]);
+      }
+    }
+    return results;
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted
+
+  /**
+   * Creates the {@link BatchInvokeCommand} corresponding to the given
+   * invocations, and dispatches it to the endpoint of the given context.
+   */
+  static Object[] dispatchBatch(InvocationDispatcher dispatcher, RemoteRefContext context, Method[] toCall, Object[][] params, boolean parallel)
+      throws Throwable {
+    InvokeCommand[] commands = new InvokeCommand[toCall.length];
+    for (int i = 0; i < toCall.length; i++) {
+      commands[i] = new InvokeCommand(context.getOid(), toCall[i].getName(), params[i], toCall[i].getParameterTypes(), context.getAddress()
+          .getTransportType());
+    }
+    return dispatcher.dispatchBatch(context.getVmId(), context.getConnections(), new BatchInvokeCommand(commands, parallel));
+  }
+
+  // invokes the methods on the stub one by one: the stub's handler does not
+  // support batches
+  private Object[] invokeEach(Method[] toCall, Object[][] toPass) throws Throwable {
+    Object[] results = new Object[toCall.length];
+    for (int i = 0; i < toCall.length; i++) {
+      try {
+        results[i] = toCall[i].invoke(stub, toPass[i]);
+      } catch (InvocationTargetException e) {
+        results[i] = e.getTargetException();
+      }
+    }
+    return results;
+  }
+}
@@ -119,9 +119,10 @@ public class Stubs {
       return returnValue;
     } catch (RemoteException re) {
       if (conn != null) {
-        pool.invalidate(conn);
+        pool.invalidateFailed(conn);
+      } else {
+        pool.clear();
       }
-      pool.clear();
       throw re;
     } catch (Exception e) {
       if (conn != null) {
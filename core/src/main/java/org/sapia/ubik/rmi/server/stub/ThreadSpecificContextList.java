@@ -2,7 +2,9 @@ package org.sapia.ubik.rmi.server.stub;
 
 import java.rmi.RemoteException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.sapia.ubik.rmi.server.stub.ContextList.Callback;
 
@@ -16,9 +18,12 @@ import org.sapia.ubik.rmi.server.stub.ContextList.Callback;
  */
 class ThreadSpecificContextList {
   
+  private static final BalancingStrategy ROUND_ROBIN = new BalancingStrategies.RoundRobin();
+
   private long timestamp;
   private ContextList.Callback   owner;
   private List<RemoteRefContext> contexts = new ArrayList<>();
+  private long permit = CircuitBreaker.PERMITTED;
 
   /**
    * @param owner a {@link Callback} abstracting the {@link ContextList} 
@@ -34,6 +39,35 @@ class ThreadSpecificContextList {
    * object is currently available.
    */
   RemoteRefContext roundrobin() throws RemoteException {
+    return select(ROUND_ROBIN);
+  }
+
+  /**
+   * @param strategy the {@link BalancingStrategy} to use.
+   * @return the {@link RemoteRefContext} selected by the given strategy.
+   * @throws RemoteException no {@link RemoteRefContext} corresponding to a remote
+   * object is currently available.
+   */
+  RemoteRefContext select(BalancingStrategy strategy) throws RemoteException {
+    return select(strategy, Collections.<RemoteRefContext>emptySet());
+  }
+
+  /**
+   * Selects amongst the {@link RemoteRefContext}s whose {@link CircuitBreaker} permits
+   * invocations, and which are not excluded. If all circuits are open and no context
+   * is excluded, selects amongst all contexts, rather than failing outright.
+   * <p>
+   * The permit acquired from the selected context's {@link CircuitBreaker} is then
+   * returned by {@link #getPermit()}.
+   *
+   * @param strategy the {@link BalancingStrategy} to use.
+   * @param excluded the {@link RemoteRefContext}s that should not be selected.
+   * @return the {@link RemoteRefContext} selected by the given strategy, or <code>null</code>
+   * if all the available ones are excluded or have their circuit open.
+   * @throws RemoteException no {@link RemoteRefContext} corresponding to a remote
+   * object is currently available.
+   */
+  RemoteRefContext select(BalancingStrategy strategy, Set<RemoteRefContext> excluded) throws RemoteException {
     if (timestamp != owner.getTimestamp()) {
       contexts.clear();
       contexts.addAll(owner.getContexts());
@@ -42,8 +76,55 @@ class ThreadSpecificContextList {
     if (contexts.size() == 0) {
       throw new RemoteException("No connection available");
     }
-    RemoteRefContext toReturn = contexts.remove(0);
-    contexts.add(toReturn);
-    return toReturn;
+
+    List<RemoteRefContext> candidates = null;
+    for (int i = 0; i < contexts.size(); i++) {
+      RemoteRefContext context = contexts.get(i);
+      boolean selectable = !excluded.contains(context) && context.getCircuitBreaker().isCallPermitted();
+      if (candidates == null && !selectable) {
+        candidates = new ArrayList<>(contexts.subList(0, i));
+      } else if (candidates != null && selectable) {
+        candidates.add(context);
+      }
+    }
+
+    while (true) {
+      RemoteRefContext selected;
+      if (candidates == null) {
+        selected = strategy.select(contexts);
+      } else if (!candidates.isEmpty()) {
+        // rotating this list, since the strategy only reorders the candidates
+        selected = strategy.select(candidates);
+        contexts.remove(selected);
+        contexts.add(selected);
+      } else if (excluded.isEmpty()) {
+        // the invocation is performed without permission: its outcome is
+        // only recorded if the circuit is closed in the meantime
+        selected = strategy.select(contexts);
+        permit = selected.getCircuitBreaker().tryAcquirePermission();
+        return selected;
+      } else {
+        permit = CircuitBreaker.PERMITTED;
+        return null;
+      }
+      permit = selected.getCircuitBreaker().tryAcquirePermission();
+      if (permit != CircuitBreaker.DENIED) {
+        return selected;
+      }
+      // another thread acquired the probe in the meantime
+      if (candidates == null) {
+        candidates = new ArrayList<>(contexts);
+      }
+      candidates.remove(selected);
+    }
+  }
+
+  /**
+   * @return the permit acquired from the {@link CircuitBreaker} of the context
+   * returned by the last selection performed by this instance.
+   * @see CircuitBreaker#tryAcquirePermission()
+   */
+  long getPermit() {
+    return permit;
   }
 }
@@ -0,0 +1,57 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.javasimon.Split;
+import org.javasimon.Stopwatch;
+import org.sapia.ubik.rmi.server.Hub;
+import org.sapia.ubik.rmi.server.ServerTable;
+import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.stats.Stats;
+import org.sapia.ubik.serialization.BinaryObjectOutputStream;
+import org.sapia.ubik.serialization.ClassRegistry;
+import org.sapia.ubik.util.Assertions;
+
+/**
+ * This class is used to marshal outgoing requests in the binary format (see
+ * {@link BinaryObjectOutputStream}). Just like the {@link MarshalOutputStream},
+ * it replaces remote objects by stubs.
+ *
+ * @see BinarySerializer
+ *
+ * @author yduchesne
+ */
+public class BinaryMarshalOutputStream extends BinaryObjectOutputStream implements RmiObjectOutput {
+
+  private static Stopwatch stubOutput = Stats.createStopwatch(BinaryMarshalOutputStream.class, "StubOutput", "Time to create a stub");
+
+  private VmId id;
+  private String transportType;
+  private volatile ServerTable serverTable = Hub.getModules().getServerTable();
+
+  BinaryMarshalOutputStream(OutputStream os, ClassRegistry registry) throws IOException {
+    super(os, registry);
+  }
+
+  public void setUp(VmId id, String transportType) {
+    this.id = id;
+    this.transportType = transportType;
+  }
+
+  /**
+   * @see BinaryObjectOutputStream#replaceObject(Object)
+   */
+  protected Object replaceObject(Object obj) throws IOException {
+    if (obj instanceof java.rmi.Remote) {
+      Assertions.illegalState(id == null, "VmId not set on %s", getClass().getName());
+      Split split = stubOutput.start();
+      Object remote = serverTable.createRemoteObject(obj, id, transportType);
+      split.stop();
+      return remote;
+    } else {
+      return obj;
+    }
+  }
+
+}
@@ -0,0 +1,96 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.serialization.BinaryObjectInputStream;
+import org.sapia.ubik.serialization.BinaryObjectOutputStream;
+import org.sapia.ubik.serialization.ClassRegistry;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * A {@link Serializer} that uses the schema-less binary format implemented by
+ * {@link BinaryObjectOutputStream} and {@link BinaryObjectInputStream}.
+ * <p>
+ * The classes listed (comma-delimited) by the
+ * {@link Consts#SERIALIZATION_BINARY_CLASSES} property are registered with
+ * this instance's {@link ClassRegistry}, in the order in which they appear:
+ * the list must thus be the same on all the JVMs that communicate together.
+ *
+ * @author yduchesne
+ *
+ */
+public class BinarySerializer implements Serializer {
+
+  private Category      log      = Log.createCategory(getClass());
+  private ClassRegistry registry = new ClassRegistry();
+
+  public BinarySerializer() {
+    this(Conf.getSystemProperties());
+  }
+
+  /**
+   * @param conf
+   *          the {@link Conf} holding this instance's configuration.
+   */
+  public BinarySerializer(Conf conf) {
+    String classNames = conf.getProperty(Consts.SERIALIZATION_BINARY_CLASSES);
+    if (classNames != null) {
+      for (String n : classNames.split(",")) {
+        n = n.trim();
+        if (n.length() > 0) {
+          try {
+            registry.register(Class.forName(n, false, Thread.currentThread().getContextClassLoader()));
+          } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Could not load class to register with binary serializer: " + n, e);
+          }
+        }
+      }
+      log.debug("Registered %s classes", registry.size());
+    }
+  }
+
+  /**
+   * @return this instance's {@link ClassRegistry}.
+   */
+  public ClassRegistry getClassRegistry() {
+    return registry;
+  }
+
+  @Override
+  public String getName() {
+    return Consts.SERIALIZATION_PROVIDER_BINARY;
+  }
+
+  @Override
+  public byte[] getStreamMagic() {
+    return BinaryObjectOutputStream.MAGIC.clone();
+  }
+
+  @Override
+  public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+    return new BinaryMarshalOutputStream(os, registry);
+  }
+
+  @Override
+  public ObjectInputStream createInputStream(InputStream is) throws IOException {
+    return new BinaryObjectInputStream(is, registry);
+  }
+
+  @Override
+  public ObjectOutputStream createOutputStream(OutputStream os, StreamClassDictionary dictionary) throws IOException {
+    return createOutputStream(os);
+  }
+
+  @Override
+  public ObjectInputStream createInputStream(InputStream is, StreamClassDictionary dictionary) throws IOException {
+    return createInputStream(is);
+  }
+
+}
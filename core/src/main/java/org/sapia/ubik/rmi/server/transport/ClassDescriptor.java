@@ -45,6 +45,23 @@ public class ClassDescriptor implements Externalizable {
     this.className = type.getName();
   }
 
+  /**
+   * @param className
+   *          the name of the class to describe (which may correspond to a
+   *          primitive type).
+   */
+  public ClassDescriptor(String className) {
+    this.className = className;
+    this.primitive = primitives.containsKey(className);
+  }
+
+  /**
+   * @return the name of the class that this instance describes.
+   */
+  public String getClassName() {
+    return className;
+  }
+
   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
     className = in.readUTF();
     primitive = in.readBoolean();
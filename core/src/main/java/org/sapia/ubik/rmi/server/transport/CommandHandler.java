@@ -1,6 +1,9 @@
 package org.sapia.ubik.rmi.server.transport;
 
 import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
 
 import org.javasimon.Counter;
 import org.javasimon.Split;
@@ -12,6 +15,7 @@ import org.sapia.ubik.rmi.interceptor.MultiDispatcher;
 import org.sapia.ubik.rmi.server.command.InvokeCommand;
 import org.sapia.ubik.rmi.server.command.RMICommand;
 import org.sapia.ubik.rmi.server.stats.Stats;
+import org.sapia.ubik.util.Futures;
 
 /**
  * Utility class that handles incoming {@link RMICommand} instances on the
@@ -53,6 +57,62 @@ public class CommandHandler {
     }
   }
 
+  /**
+   * Handles the given command in the same manner as
+   * {@link #handleCommand(RMICommand, Connection)}, except that if the command
+   * is an {@link InvokeCommand} whose method returns a {@link CompletionStage},
+   * the calling thread does not wait for the method's result: the response is
+   * sent to the client by the thread completing that result.
+   * <p>
+   * This method is meant for transports that allow sending a response from
+   * any thread.
+   *
+   * @param cmd
+   *          the {@link RMICommand} to handle.
+   * @param client
+   *          the {@link Connection} to which to send the response.
+   * @return a {@link CompletionStage} that is completed once the response has
+   *         been sent (or could not be sent).
+   */
+  public CompletionStage<Void> handleCommandDeferred(final RMICommand cmd, final Connection client) {
+    if (!(cmd instanceof InvokeCommand)) {
+      handleCommand(cmd, client);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final Split split = execTime.start();
+    tps.increase();
+
+    if (log.isDebug()) {
+      log.debug("Performing method invocation: %s", ((InvokeCommand) cmd).getMethodName());
+    }
+
+    final Split invoke = remoteCall.start();
+    CompletionStage<Object> result;
+    try {
+      eventDispatcher.dispatch(new IncomingCommandEvent(cmd));
+      log.debug("Executing command: %s from vm %s", cmd.getClass().getName(), cmd.getVmId());
+      result = ((InvokeCommand) cmd).executeDeferred();
+    } catch (Throwable t) {
+      result = Futures.failed(t);
+    }
+
+    final CompletableFuture<Void> sent = new CompletableFuture<Void>();
+    result.whenComplete(new BiConsumer<Object, Throwable>() {
+      @Override
+      public void accept(Object resp, Throwable err) {
+        try {
+          invoke.stop();
+          doSendResponse(cmd, client, err == null ? resp : Futures.unwrap(err), true);
+        } finally {
+          split.stop();
+          sent.complete(null);
+        }
+      }
+    });
+    return sent;
+  }
+
   private void doHandleCommand(RMICommand cmd, Connection client) {
 
     Object resp = null;
@@ -80,6 +140,10 @@ public class CommandHandler {
       resp = t;
     }
 
+    doSendResponse(cmd, client, resp, invokeCommand);
+  }
+
+  private void doSendResponse(RMICommand cmd, Connection client, Object resp, boolean invokeCommand) {
     Split send = null;
     if (invokeCommand) {
       send = sendResponse.start();
@@ -34,6 +34,18 @@ public interface Connections {
    */
   public void invalidate(RmiConnection conn);
 
+  /**
+   * Notifies this pool that the given connection has failed (typically, that
+   * a {@link RemoteException} was thrown while using it). The connection is
+   * invalidated, and the pool may then check the other connections that it
+   * keeps, discarding the ones that are broken. This method should be called
+   * rather than {@link #clear()}, which discards healthy connections as well.
+   * 
+   * @param conn
+   *          the {@link RmiConnection} that has failed.
+   */
+  public void invalidateFailed(RmiConnection conn);
+
   /**
    * Closes all connections kept internally and removes them.
    */
@@ -0,0 +1,56 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import org.sapia.ubik.rmi.Consts;
+
+/**
+ * A {@link Serializer} which relies on the JBoss serialization library
+ * (creates {@link JBossMarshalOutputStream}s and
+ * {@link JBossMarshalInputStream}s).
+ * <p>
+ * The JBoss streams do not support {@link StreamClassDictionary}s: class
+ * descriptors are thus sent once per stream (rather than once per
+ * connection), and commands are sent with their legacy header. Use the
+ * {@link JdkSerializer} to benefit from both.
+ *
+ * @author yduchesne
+ *
+ */
+public class JBossSerializer implements Serializer {
+
+  @Override
+  public String getName() {
+    return Consts.SERIALIZATION_PROVIDER_JBOSS;
+  }
+
+  @Override
+  public byte[] getStreamMagic() {
+    return null;
+  }
+
+  @Override
+  public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+    return new JBossMarshalOutputStream(os);
+  }
+
+  @Override
+  public ObjectInputStream createInputStream(InputStream is) throws IOException {
+    return new JBossMarshalInputStream(is);
+  }
+
+  @Override
+  public ObjectOutputStream createOutputStream(OutputStream os, StreamClassDictionary dictionary) throws IOException {
+    return createOutputStream(os);
+  }
+
+  @Override
+  public ObjectInputStream createInputStream(InputStream is, StreamClassDictionary dictionary) throws IOException {
+    return createInputStream(is);
+  }
+
+}
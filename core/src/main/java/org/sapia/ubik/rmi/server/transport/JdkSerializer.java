@@ -0,0 +1,55 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.OutputStream;
+
+import org.sapia.ubik.rmi.Consts;
+
+/**
+ * A {@link Serializer} which relies on the JDK's serialization (creates
+ * {@link MarshalOutputStream}s and {@link MarshalInputStream}s). Class
+ * descriptors are exchanged through {@link StreamClassDictionary}s, unless
+ * these are disabled.
+ *
+ * @author yduchesne
+ *
+ */
+public class JdkSerializer implements Serializer {
+
+  private static final byte[] MAGIC = { (byte) (ObjectStreamConstants.STREAM_MAGIC >>> 8), (byte) ObjectStreamConstants.STREAM_MAGIC };
+
+  @Override
+  public String getName() {
+    return Consts.SERIALIZATION_PROVIDER_JDK;
+  }
+
+  @Override
+  public byte[] getStreamMagic() {
+    return MAGIC.clone();
+  }
+
+  @Override
+  public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+    return new MarshalOutputStream(os);
+  }
+
+  @Override
+  public ObjectInputStream createInputStream(InputStream is) throws IOException {
+    return new MarshalInputStream(is);
+  }
+
+  @Override
+  public ObjectOutputStream createOutputStream(OutputStream os, StreamClassDictionary dictionary) throws IOException {
+    return new MarshalOutputStream(os, dictionary);
+  }
+
+  @Override
+  public ObjectInputStream createInputStream(InputStream is, StreamClassDictionary dictionary) throws IOException {
+    return new MarshalInputStream(is, dictionary);
+  }
+
+}
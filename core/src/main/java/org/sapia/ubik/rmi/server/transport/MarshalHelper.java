@@ -12,6 +12,7 @@ import org.sapia.ubik.log.Log;
 import org.sapia.ubik.rmi.server.Hub;
 import org.sapia.ubik.rmi.server.ServerTable;
 import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.sapia.ubik.serialization.SerializationStreams;
 
 /**
@@ -58,6 +59,38 @@ public class MarshalHelper {
     oos.close();
   }
 
+  /**
+   * This method performs the serialization of the given object in the same
+   * manner as {@link #serialize(Object, OutputStream)}, but into the calling
+   * thread's recycled {@link SerializationBuffer}.
+   *
+   * @param toSerialize the Object to serialize.
+   * @return the serialized bytes.
+   * @throws IOException if an I/O error occurs while serializing.
+   */
+  public static byte[] serialize(Object toSerialize) throws IOException {
+    SerializationBuffer buf = null;
+    if (!Hub.isShutdown()) {
+      ServerTable st = Hub.getModules().getServerTable();
+      if (st.getServerCount() == 1) {
+        buf = MarshalStreamFactory.acquireBuffer();
+        String transportType = st.getServerTypes().iterator().next();
+        ((RmiObjectOutput) buf.getObjectOutputStream()).setUp(VmId.getInstance(), transportType);
+      } else {
+        LOG.debug("Could not perform remote object conversion to stub: current server could not be guessed");
+        buf = SerializationStreams.acquireBuffer();
+      }
+    } else {
+      buf = SerializationStreams.acquireBuffer();
+    }
+    try {
+      buf.writeObject(toSerialize);
+      return buf.toByteArray();
+    } finally {
+      buf.release();
+    }
+  }
+
   /**
    * Performs deserialization, closes the provided stream once done.
    *
@@ -3,20 +3,74 @@ package org.sapia.ubik.rmi.server.transport;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
+import java.io.StreamCorruptedException;
 
 /**
  * This class is used to unmarshal incoming responses from servers.
- * 
+ * <p>
+ * If the stream's header indicates it, class descriptors are read through a
+ * {@link StreamClassDictionary} (see {@link MarshalOutputStream}): the one
+ * passed at construction if any (typically, one that is kept for the lifetime
+ * of a connection), or else one that is owned by the stream.
+ *
  * @see org.sapia.ubik.rmi.server.Server
  * @see org.sapia.ubik.rmi.server.transport.RmiConnection
  * @see org.sapia.ubik.rmi.server.transport.TransportProvider
- * 
+ *
  * @author Yanick Duchesne
  */
 public class MarshalInputStream extends ObjectInputStream {
+
+  /**
+   * The stream version that indicates that class descriptors are written
+   * through a {@link StreamClassDictionary}.
+   */
+  static final short DICTIONARY_STREAM_VERSION = 0x0105;
+
+  /**
+   * Precedes a class descriptor (or name) that is written in full, and not
+   * registered.
+   */
+  static final int DESC_UNREGISTERED  = 0;
+
+  /**
+   * Precedes a handle, followed by the class descriptor (or name) registered
+   * under it.
+   */
+  static final int DESC_REGISTERED    = 1;
+
+  /**
+   * Added to the handle of a registered class descriptor (or name), when only
+   * that handle is written.
+   */
+  static final int DESC_HANDLE_OFFSET = 2;
+
+  // set when the stream header is read, from within the super-constructor:
+  // must not have an initializer
+  private boolean useDictionary;
+  private StreamClassDictionary dictionary;
+
   MarshalInputStream(InputStream is) throws IOException {
+    this(is, null);
+  }
+
+  /**
+   * @param is
+   *          the {@link InputStream} to read from.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} to use (if <code>null</code>,
+   *          this instance creates its own if needed).
+   * @throws IOException
+   *           if an I/O error occurs reading the stream header.
+   */
+  MarshalInputStream(InputStream is, StreamClassDictionary dictionary) throws IOException {
     super(is);
     super.enableResolveObject(true);
+    if (useDictionary) {
+      this.dictionary = dictionary == null ? new StreamClassDictionary() : dictionary;
+    }
   }
 
   /**
@@ -30,4 +84,93 @@ public class MarshalInputStream extends ObjectInputStream {
     return super.readUnshared();
   }
 
+  /**
+   * Reads the JDK's stream header, accepting the version that indicates that
+   * class descriptors are written through a {@link StreamClassDictionary}.
+   */
+  @Override
+  protected void readStreamHeader() throws IOException, StreamCorruptedException {
+    short magic = readShort();
+    short version = readShort();
+    if (magic != ObjectStreamConstants.STREAM_MAGIC) {
+      throw new StreamCorruptedException(String.format("invalid stream header: %04X%04X", magic, version));
+    }
+    if (version == DICTIONARY_STREAM_VERSION) {
+      useDictionary = true;
+    } else if (version != ObjectStreamConstants.STREAM_VERSION) {
+      throw new StreamCorruptedException(String.format("invalid stream header: %04X%04X", magic, version));
+    }
+  }
+
+  @Override
+  protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+    if (dictionary == null) {
+      return super.readClassDescriptor();
+    }
+    int code = readVarInt();
+    if (code == DESC_UNREGISTERED) {
+      return super.readClassDescriptor();
+    } else if (code == DESC_REGISTERED) {
+      int handle = readVarInt();
+      ObjectStreamClass desc = super.readClassDescriptor();
+      try {
+        dictionary.put(handle, desc);
+      } catch (IllegalArgumentException e) {
+        throw new StreamCorruptedException(e.getMessage());
+      }
+      return desc;
+    } else {
+      ObjectStreamClass desc = dictionary.get(code - DESC_HANDLE_OFFSET);
+      if (desc == null) {
+        throw new StreamCorruptedException("Unknown class descriptor handle: " + (code - DESC_HANDLE_OFFSET));
+      }
+      return desc;
+    }
+  }
+
+  /**
+   * Reads a name written with {@link MarshalOutputStream#writeName(String)}.
+   *
+   * @return the name that was read.
+   * @throws IOException
+   *           if an I/O error occurs, or if this instance has no
+   *           {@link StreamClassDictionary}.
+   */
+  public String readName() throws IOException {
+    if (dictionary == null) {
+      throw new StreamCorruptedException("Names cannot be read without a class dictionary");
+    }
+    int code = readVarInt();
+    if (code == DESC_UNREGISTERED) {
+      return readUTF();
+    } else if (code == DESC_REGISTERED) {
+      int handle = readVarInt();
+      String name = readUTF();
+      try {
+        dictionary.putName(handle, name);
+      } catch (IllegalArgumentException e) {
+        throw new StreamCorruptedException(e.getMessage());
+      }
+      return name;
+    } else {
+      String name = dictionary.getName(code - DESC_HANDLE_OFFSET);
+      if (name == null) {
+        throw new StreamCorruptedException("Unknown name handle: " + (code - DESC_HANDLE_OFFSET));
+      }
+      return name;
+    }
+  }
+
+  private int readVarInt() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Malformed handle");
+  }
+
 }
@@ -2,6 +2,8 @@ package org.sapia.ubik.rmi.server.transport;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
 import java.io.OutputStream;
 
 import org.javasimon.Split;
@@ -14,6 +16,20 @@ import org.sapia.ubik.util.Assertions;
 
 /**
  * This class is used to marshal outgoing requests.
+ * <p>
+ * When enabled (see {@link StreamClassDictionary#isEnabled()}), class
+ * descriptors are written through a {@link StreamClassDictionary}: each one is
+ * written in full only once, and then referred to by handle. If a dictionary
+ * is passed at construction (typically, one that is kept for the lifetime of
+ * a connection), it is shared with the other streams that are given it;
+ * otherwise, the stream uses its own dictionary, which is cleared when
+ * {@link #reset()} is called (so that what is written after the reset can be
+ * read independently of what was written before).
+ * <p>
+ * A stream that uses a dictionary can only be read by a
+ * {@link MarshalInputStream}: commands thus check {@link #hasDictionary()} to
+ * determine if they may write their compact header, in which names are
+ * interned through the dictionary (see {@link #writeName(String)}).
  * 
  * @see org.sapia.ubik.rmi.server.Server
  * @see org.sapia.ubik.rmi.server.transport.RmiConnection
@@ -29,9 +45,32 @@ public class MarshalOutputStream extends ObjectOutputStream implements RmiObject
   private String transportType;
   private volatile ServerTable serverTable = Hub.getModules().getServerTable();
 
+  // set when the stream header is written, from within the super-constructor:
+  // must not have an initializer
+  private boolean useDictionary;
+  private StreamClassDictionary dictionary;
+  private boolean ownsDictionary;
+
   MarshalOutputStream(OutputStream os) throws IOException {
+    this(os, null);
+  }
+
+  /**
+   * @param os
+   *          the {@link OutputStream} to write to.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} to use (if <code>null</code>,
+   *          this instance creates its own).
+   * @throws IOException
+   *           if an I/O error occurs writing the stream header.
+   */
+  MarshalOutputStream(OutputStream os, StreamClassDictionary dictionary) throws IOException {
     super(os);
     super.enableReplaceObject(true);
+    if (useDictionary) {
+      this.ownsDictionary = dictionary == null;
+      this.dictionary = dictionary == null ? new StreamClassDictionary() : dictionary;
+    }
   }
 
   public void setUp(VmId id, String transportType) {
@@ -54,8 +93,99 @@ public class MarshalOutputStream extends ObjectOutputStream implements RmiObject
     }
   }
 
+  /**
+   * Writes the JDK's stream header, with a version that indicates if class
+   * descriptors are written through a {@link StreamClassDictionary}.
+   */
+  @Override
+  protected void writeStreamHeader() throws IOException {
+    useDictionary = StreamClassDictionary.isEnabled();
+    writeShort(ObjectStreamConstants.STREAM_MAGIC);
+    writeShort(useDictionary ? MarshalInputStream.DICTIONARY_STREAM_VERSION : ObjectStreamConstants.STREAM_VERSION);
+  }
+
+  /**
+   * Writes the given descriptor's handle if it is in this instance's
+   * {@link StreamClassDictionary}, or else writes it in full, preceded by the
+   * handle it is registered with (if the dictionary is not full).
+   */
+  @Override
+  protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+    if (dictionary == null) {
+      super.writeClassDescriptor(desc);
+      return;
+    }
+    int handle = dictionary.getHandle(desc);
+    if (handle >= 0) {
+      writeVarInt(handle + MarshalInputStream.DESC_HANDLE_OFFSET);
+    } else {
+      handle = dictionary.register(desc);
+      if (handle >= 0) {
+        writeVarInt(MarshalInputStream.DESC_REGISTERED);
+        writeVarInt(handle);
+      } else {
+        writeVarInt(MarshalInputStream.DESC_UNREGISTERED);
+      }
+      super.writeClassDescriptor(desc);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if this instance writes class descriptors (and
+   *         names) through a {@link StreamClassDictionary}.
+   */
+  public boolean hasDictionary() {
+    return dictionary != null;
+  }
+
+  /**
+   * Writes the given name's handle if it is in this instance's
+   * {@link StreamClassDictionary}, or else writes it in full, preceded by the
+   * handle it is registered with (if the dictionary is not full). To be read
+   * with {@link MarshalInputStream#readName()}.
+   *
+   * @param name
+   *          the name to write.
+   * @throws IOException
+   *           if an I/O error occurs.
+   * @throws IllegalStateException
+   *           if this instance has no dictionary.
+   */
+  public void writeName(String name) throws IOException {
+    Assertions.illegalState(dictionary == null, "Names cannot be written without a class dictionary");
+    int handle = dictionary.getNameHandle(name);
+    if (handle >= 0) {
+      writeVarInt(handle + MarshalInputStream.DESC_HANDLE_OFFSET);
+    } else {
+      handle = dictionary.registerName(name);
+      if (handle >= 0) {
+        writeVarInt(MarshalInputStream.DESC_REGISTERED);
+        writeVarInt(handle);
+      } else {
+        writeVarInt(MarshalInputStream.DESC_UNREGISTERED);
+      }
+      writeUTF(name);
+    }
+  }
+
+  @Override
+  public void reset() throws IOException {
+    super.reset();
+    if (ownsDictionary) {
+      dictionary.clear();
+    }
+  }
+
   protected void writeObjectOverride(Object obj) throws IOException {
     super.writeUnshared(obj);
   }
 
+  private void writeVarInt(int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    writeByte(value);
+  }
+
 }
@@ -6,43 +6,105 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 
-import org.sapia.ubik.log.Category;
-import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.ServerAddress;
 import org.sapia.ubik.serialization.JBossSerializationDetector;
+import org.sapia.ubik.serialization.SerializationBuffer;
+import org.sapia.ubik.serialization.SerializationBuffers;
 
 /**
  * This class creates {@link ObjectOutputStream} and {@link ObjectInputStream}
- * instances, which are based either on the JBoss serialization library, or on
- * the default implementations that come with the JDK.
+ * instances, using the {@link Serializer} that is configured by default, for a
+ * given transport type, or for a given {@link ServerAddress}.
+ * <p>
+ * Unless configured otherwise, the streams are based either on the JBoss
+ * serialization library, or on the default implementations that come with the
+ * JDK.
  *
  * @see JBossSerializationDetector
+ * @see Serializers
  *
  * @author yduchesnes
  */
 public class MarshalStreamFactory {
 
-  private static Category log = Log.createCategory(MarshalStreamFactory.class);
-  private static boolean useJbossSerialization;
-  static {
-    useJbossSerialization = JBossSerializationDetector.isJbossSerializationDetected();
-    if (useJbossSerialization) {
-      log.debug("JBoss serialization lib detected in classpath, returning JBossMarshalOutputStream");
+  private static final SerializationBuffers BUFFERS = new SerializationBuffers(new SerializationBuffer.StreamFactory() {
+    @Override
+    public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+      return MarshalStreamFactory.createOutputStream(os);
     }
-  }
+  });
 
   public static ObjectOutputStream createOutputStream(OutputStream out) throws IOException {
-    if (useJbossSerialization) {
-      return new JBossMarshalOutputStream(out);
-    } else {
-      return new MarshalOutputStream(out);
-    }
+    return Serializers.getDefault().createOutputStream(out);
+  }
+
+  public static ObjectOutputStream createOutputStream(OutputStream out, String transportType) throws IOException {
+    return Serializers.getSerializerFor(transportType).createOutputStream(out);
+  }
+
+  public static ObjectOutputStream createOutputStream(OutputStream out, ServerAddress address) throws IOException {
+    return Serializers.getSerializerFor(address).createOutputStream(out);
+  }
+
+  /**
+   * @param out
+   *          the {@link OutputStream} to write to.
+   * @param address
+   *          the {@link ServerAddress} of the connection's peer.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} kept by the connection for its
+   *          outgoing side.
+   * @return a new {@link ObjectOutputStream}.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public static ObjectOutputStream createOutputStream(OutputStream out, ServerAddress address, StreamClassDictionary dictionary) throws IOException {
+    return Serializers.getSerializerFor(address).createOutputStream(out, dictionary);
+  }
+
+  /**
+   * @param out
+   *          the {@link OutputStream} to write to.
+   * @param transportType
+   *          the type of the transport over which the stream is sent.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} kept by the connection for its
+   *          outgoing side.
+   * @return a new {@link ObjectOutputStream}.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public static ObjectOutputStream createOutputStream(OutputStream out, String transportType, StreamClassDictionary dictionary) throws IOException {
+    return Serializers.getSerializerFor(transportType).createOutputStream(out, dictionary);
+  }
+
+  /**
+   * @return a {@link SerializationBuffer} whose stream is created by the
+   *         default {@link Serializer} (the stream implements
+   *         {@link RmiObjectOutput}). The buffer must be released once done
+   *         with it.
+   * @throws IOException
+   *           if an I/O error occurs preparing the buffer.
+   */
+  public static SerializationBuffer acquireBuffer() throws IOException {
+    return BUFFERS.acquire();
   }
 
   public static ObjectInputStream createInputStream(InputStream in) throws IOException {
-    if (useJbossSerialization) {
-      return new JBossMarshalInputStream(in);
-    } else {
-      return new MarshalInputStream(in);
-    }
+    return Serializers.createInputStream(in);
+  }
+
+  /**
+   * @param in
+   *          the {@link InputStream} to read from.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} kept by the connection for its
+   *          incoming side.
+   * @return a new {@link ObjectInputStream}.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public static ObjectInputStream createInputStream(InputStream in, StreamClassDictionary dictionary) throws IOException {
+    return Serializers.createInputStream(in, dictionary);
   }
 }
@@ -1,16 +1,12 @@
 package org.sapia.ubik.rmi.server.transport;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
 
-import org.sapia.ubik.rmi.Consts;
-import org.sapia.ubik.rmi.Defaults;
 import org.sapia.ubik.rmi.server.VmId;
-import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.sapia.ubik.util.Serialization;
 
 /**
@@ -20,8 +16,6 @@ import org.sapia.ubik.util.Serialization;
  */
 public class MarshalledObject implements Externalizable {
 
-  private static int bufsize = Conf.getSystemProperties().getIntProperty(Consts.MARSHALLING_BUFSIZE, Defaults.DEFAULT_MARSHALLING_BUFSIZE);
-
   private byte[] bytes;
 
   /**
@@ -73,12 +67,13 @@ public class MarshalledObject implements Externalizable {
   }
 
   private static byte[] serialize(VmId vmid, String transportType, Object o) throws IOException {
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(bufsize);
-    ObjectOutputStream ous = MarshalStreamFactory.createOutputStream(bos);
-    ((RmiObjectOutput) ous).setUp(vmid, transportType);
-    ous.writeObject(o);
-    ous.flush();
-    ous.close();
-    return bos.toByteArray();
+    SerializationBuffer buf = MarshalStreamFactory.acquireBuffer();
+    try {
+      ((RmiObjectOutput) buf.getObjectOutputStream()).setUp(vmid, transportType);
+      buf.writeObject(o);
+      return buf.toByteArray();
+    } finally {
+      buf.release();
+    }
   }
 }
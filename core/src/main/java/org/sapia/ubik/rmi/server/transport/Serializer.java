@@ -0,0 +1,92 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Specifies the behavior of serialization providers: a serializer creates the
+ * object streams with which commands and their responses are marshalled.
+ * <p>
+ * Implementations are looked up by name through the
+ * {@link org.sapia.ubik.provider.Providers} mechanism (with the name being the
+ * hint), and are selected through the {@link Serializers} class.
+ *
+ * @see Serializers
+ *
+ * @author yduchesne
+ *
+ */
+public interface Serializer {
+
+  /**
+   * @return this instance's name.
+   */
+  public String getName();
+
+  /**
+   * Returns the bytes with which the streams created by this instance begin:
+   * these are used to detect the format of incoming streams.
+   *
+   * @return the bytes with which the streams created by this instance begin,
+   *         or <code>null</code> if these are not known.
+   */
+  public byte[] getStreamMagic();
+
+  /**
+   * @param os
+   *          the {@link OutputStream} to write to.
+   * @return a new {@link ObjectOutputStream}, which must also implement the
+   *         {@link RmiObjectOutput} interface (so that remote objects are
+   *         replaced by stubs).
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public ObjectOutputStream createOutputStream(OutputStream os) throws IOException;
+
+  /**
+   * @param is
+   *          the {@link InputStream} to read from.
+   * @return a new {@link ObjectInputStream}.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public ObjectInputStream createInputStream(InputStream is) throws IOException;
+
+  /**
+   * Creates an output stream for a connection which keeps the given
+   * {@link StreamClassDictionary} for its lifetime, so that class descriptors
+   * are not sent again each time the connection creates or resets its stream.
+   * Implementations that do not support class dictionaries ignore it.
+   *
+   * @param os
+   *          the {@link OutputStream} to write to.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} of the connection's outgoing
+   *          side.
+   * @return a new {@link ObjectOutputStream} (see
+   *         {@link #createOutputStream(OutputStream)}).
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public ObjectOutputStream createOutputStream(OutputStream os, StreamClassDictionary dictionary) throws IOException;
+
+  /**
+   * Creates an input stream for a connection which keeps the given
+   * {@link StreamClassDictionary} for its lifetime (see
+   * {@link #createOutputStream(OutputStream, StreamClassDictionary)}).
+   *
+   * @param is
+   *          the {@link InputStream} to read from.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} of the connection's incoming
+   *          side.
+   * @return a new {@link ObjectInputStream}.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public ObjectInputStream createInputStream(InputStream is, StreamClassDictionary dictionary) throws IOException;
+
+}
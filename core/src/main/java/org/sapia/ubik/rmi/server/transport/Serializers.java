@@ -0,0 +1,266 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.provider.Providers;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.serialization.JBossSerializationDetector;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * Selects the {@link Serializer} to use:
+ * <ul>
+ * <li>For a given {@link ServerAddress}: the serializer explicitly registered
+ * for that address (see {@link #register(ServerAddress, Serializer)}), if any,
+ * or else the one configured for the address' transport type.
+ * <li>For a given transport type: the serializer whose name is given by the
+ * <code>ubik.rmi.transport.serialization.provider.&lt;transport_type&gt;</code>
+ * property, if specified, or else the default serializer.
+ * <li>By default: the serializer whose name is given by the
+ * {@link Consts#SERIALIZATION_PROVIDER} property.
+ * </ul>
+ * Serializers are looked up by name using {@link Providers}. The
+ * <code>jboss</code> serializer is replaced by the <code>jdk</code> one if the
+ * JBoss serialization library is not in the classpath.
+ * <p>
+ * Incoming streams are read with the serializer whose stream magic they begin
+ * with (see {@link #createInputStream(InputStream)}), so that JVMs may use
+ * different serializers when talking to each other.
+ *
+ * @author yduchesne
+ *
+ */
+public final class Serializers {
+
+  private static Category log = Log.createCategory(Serializers.class);
+
+  private static final Map<String, Serializer>        BY_NAME      = new ConcurrentHashMap<String, Serializer>();
+  private static final Map<String, Serializer>        BY_TRANSPORT = new ConcurrentHashMap<String, Serializer>();
+  private static final Map<ServerAddress, Serializer> BY_ADDRESS   = new ConcurrentHashMap<ServerAddress, Serializer>();
+
+  private static volatile Serializer[] detectable     = new Serializer[0];
+  private static volatile boolean      builtInsLoaded;
+
+  private Serializers() {
+  }
+
+  /**
+   * @return the default {@link Serializer}.
+   */
+  public static Serializer getDefault() {
+    return getSerializer(resolveName(Conf.getSystemProperties().getProperty(Consts.SERIALIZATION_PROVIDER, Consts.SERIALIZATION_PROVIDER_JBOSS)));
+  }
+
+  /**
+   * @param name
+   *          the name of the desired serializer.
+   * @return the {@link Serializer} with the given name.
+   */
+  public static Serializer getSerializer(String name) {
+    Serializer serializer = BY_NAME.get(name);
+    if (serializer == null) {
+      synchronized (BY_NAME) {
+        serializer = BY_NAME.get(name);
+        if (serializer == null) {
+          serializer = Providers.get().load(Serializer.class, name);
+          log.debug("Loaded serializer %s for %s", serializer, name);
+          BY_NAME.put(name, serializer);
+          addDetectable(serializer);
+        }
+      }
+    }
+    return serializer;
+  }
+
+  /**
+   * @param transportType
+   *          a transport type.
+   * @return the {@link Serializer} to use for the given transport type.
+   */
+  public static Serializer getSerializerFor(String transportType) {
+    Serializer serializer = BY_TRANSPORT.get(transportType);
+    if (serializer == null) {
+      String name = Conf.getSystemProperties().getProperty(Consts.SERIALIZATION_PROVIDER + "." + transportType);
+      serializer = name == null ? getDefault() : getSerializer(resolveName(name));
+      BY_TRANSPORT.put(transportType, serializer);
+    }
+    return serializer;
+  }
+
+  /**
+   * @param address
+   *          a {@link ServerAddress}.
+   * @return the {@link Serializer} to use when sending to the given address.
+   */
+  public static Serializer getSerializerFor(ServerAddress address) {
+    Serializer serializer = BY_ADDRESS.get(address);
+    if (serializer == null) {
+      serializer = getSerializerFor(address.getTransportType());
+    }
+    return serializer;
+  }
+
+  /**
+   * Registers the given serializer with the given address: it will be used to
+   * send to that address. Note that incoming streams are always read with the
+   * serializer that is loaded by name (see {@link #getSerializer(String)}).
+   *
+   * @param address
+   *          a {@link ServerAddress}.
+   * @param serializer
+   *          the {@link Serializer} to use for the given address.
+   */
+  public static void register(ServerAddress address, Serializer serializer) {
+    BY_ADDRESS.put(address, serializer);
+    synchronized (BY_NAME) {
+      addDetectable(serializer);
+    }
+  }
+
+  /**
+   * @param address
+   *          the {@link ServerAddress} whose serializer should be
+   *          unregistered.
+   */
+  public static void unregister(ServerAddress address) {
+    BY_ADDRESS.remove(address);
+  }
+
+  /**
+   * Creates an {@link ObjectInputStream} for the given stream, using the
+   * serializer whose stream magic the given stream begins with. Streams that
+   * do not begin with any known magic are read with the JBoss serializer if
+   * the JBoss library is in the classpath, or with the JDK serializer
+   * otherwise.
+   *
+   * @param is
+   *          the {@link InputStream} to read from.
+   * @return a new {@link ObjectInputStream}.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public static ObjectInputStream createInputStream(InputStream is) throws IOException {
+    return createInputStream(is, null);
+  }
+
+  /**
+   * Creates an {@link ObjectInputStream} for the given stream, in the same
+   * manner as {@link #createInputStream(InputStream)}, for a connection that
+   * keeps the given {@link StreamClassDictionary} for its lifetime.
+   *
+   * @param is
+   *          the {@link InputStream} to read from.
+   * @param dictionary
+   *          the {@link StreamClassDictionary} of the connection's incoming
+   *          side, or <code>null</code> if there is none.
+   * @return a new {@link ObjectInputStream}.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  public static ObjectInputStream createInputStream(InputStream is, StreamClassDictionary dictionary) throws IOException {
+    if (!builtInsLoaded) {
+      // making sure that the built-in formats can always be detected
+      getSerializer(Consts.SERIALIZATION_PROVIDER_JDK);
+      getSerializer(Consts.SERIALIZATION_PROVIDER_BINARY);
+      builtInsLoaded = true;
+    }
+    Serializer[] candidates = detectable;
+    byte[][] magics = new byte[candidates.length][];
+    boolean[] matching = new boolean[candidates.length];
+    int maxLen = 0;
+    for (int i = 0; i < candidates.length; i++) {
+      magics[i] = candidates[i].getStreamMagic();
+      matching[i] = true;
+      maxLen = Math.max(maxLen, magics[i].length);
+    }
+
+    byte[] header = new byte[maxLen];
+    int count = 0;
+    while (count < maxLen) {
+      boolean anyMatching = false;
+      for (int i = 0; i < candidates.length; i++) {
+        if (matching[i] && magics[i].length == count) {
+          return doCreateInputStream(candidates[i], replay(header, count, is), dictionary);
+        }
+        anyMatching |= matching[i];
+      }
+      if (!anyMatching) {
+        break;
+      }
+      int b = is.read();
+      if (b < 0) {
+        break;
+      }
+      header[count] = (byte) b;
+      for (int i = 0; i < candidates.length; i++) {
+        matching[i] = matching[i] && magics[i].length > count && magics[i][count] == (byte) b;
+      }
+      count++;
+    }
+    for (int i = 0; i < candidates.length; i++) {
+      if (matching[i] && magics[i].length == count) {
+        return doCreateInputStream(candidates[i], replay(header, count, is), dictionary);
+      }
+    }
+    return doCreateInputStream(getSerializer(resolveName(Consts.SERIALIZATION_PROVIDER_JBOSS)), replay(header, count, is), dictionary);
+  }
+
+  /**
+   * Clears the serializers cached by this class (used for testing).
+   */
+  static void clear() {
+    synchronized (BY_NAME) {
+      BY_NAME.clear();
+      BY_TRANSPORT.clear();
+      BY_ADDRESS.clear();
+      detectable = new Serializer[0];
+      builtInsLoaded = false;
+    }
+  }
+
+  private static ObjectInputStream doCreateInputStream(Serializer serializer, InputStream is, StreamClassDictionary dictionary) throws IOException {
+    return dictionary == null ? serializer.createInputStream(is) : serializer.createInputStream(is, dictionary);
+  }
+
+  // returns a stream that yields the bytes that were read in order to detect
+  // the stream's format, and then the remainder of that stream. A read that
+  // spans both is completed from the given stream (in a single read), so that
+  // deserializers that read their header in one call get it in its entirety.
+  private static InputStream replay(byte[] header, int count, InputStream is) throws IOException {
+    PushbackInputStream replay = new PushbackInputStream(is, Math.max(1, header.length));
+    replay.unread(header, 0, count);
+    return replay;
+  }
+
+  private static void addDetectable(Serializer serializer) {
+    if (serializer.getStreamMagic() == null) {
+      return;
+    }
+    List<Serializer> updated = new ArrayList<Serializer>();
+    for (Serializer s : detectable) {
+      if (s.getName().equals(serializer.getName())) {
+        return;
+      }
+      updated.add(s);
+    }
+    updated.add(serializer);
+    detectable = updated.toArray(new Serializer[updated.size()]);
+  }
+
+  private static String resolveName(String name) {
+    if (name.equals(Consts.SERIALIZATION_PROVIDER_JBOSS) && !JBossSerializationDetector.isJbossSerializationDetected()) {
+      return Consts.SERIALIZATION_PROVIDER_JDK;
+    }
+    return name;
+  }
+}
@@ -0,0 +1,230 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * Holds the class descriptors ({@link ObjectStreamClass} instances) that have
+ * been exchanged over a given connection, in one direction: the
+ * {@link MarshalOutputStream} sending on the connection writes a class
+ * descriptor in full the first time, together with the handle it assigns to
+ * it, and then only writes that handle. The {@link MarshalInputStream}
+ * receiving on the other end keeps the descriptors it reads in its own
+ * dictionary, under the handles that were sent along.
+ * <p>
+ * An instance is meant to be kept for the lifetime of a connection: it thus
+ * outlives the object streams that a connection may create (or reset) over
+ * time, whereas object identity remains scoped to a single stream. An instance
+ * is used either for writing or for reading - not both - and is not
+ * thread-safe (a connection is used by one thread at a time).
+ * <p>
+ * An instance also holds the names (of methods and classes) that commands
+ * write through {@link MarshalOutputStream#writeName(String)}: these are
+ * interned in the same manner, so that a given name is sent once per
+ * connection, and then referred to by handle.
+ * <p>
+ * Dictionaries are only used by the {@link JdkSerializer}: the
+ * {@link JBossSerializer} (the default one, if the JBoss library is in the
+ * classpath) and the {@link BinarySerializer} ignore them.
+ * <p>
+ * The number of descriptors kept (and the number of names) is bounded by the
+ * {@link Consts#MARSHALLING_CLASS_DICTIONARY_MAX_SIZE} property: once the
+ * bound is reached, new descriptors and names are always sent in full. That
+ * property defaults to 0, in which case dictionaries are not used: since
+ * streams that use one cannot be read by JVMs that lack dictionary support,
+ * they must be enabled explicitly.
+ *
+ * @author yduchesne
+ *
+ */
+public class StreamClassDictionary {
+
+  private int                             maxSize;
+  private Map<ObjectStreamClass, Integer> handles     = new HashMap<ObjectStreamClass, Integer>();
+  private List<ObjectStreamClass>         descriptors = new ArrayList<ObjectStreamClass>();
+  private Map<String, Integer>            nameHandles = new HashMap<String, Integer>();
+  private List<String>                    names       = new ArrayList<String>();
+
+  public StreamClassDictionary() {
+    this(getConfiguredMaxSize());
+  }
+
+  /**
+   * @param maxSize
+   *          the maximum number of descriptors that this instance may hold.
+   */
+  public StreamClassDictionary(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return <code>true</code> if class dictionaries are enabled (that is, if
+   *         the {@link Consts#MARSHALLING_CLASS_DICTIONARY_MAX_SIZE} property
+   *         is greater than 0).
+   */
+  public static boolean isEnabled() {
+    return getConfiguredMaxSize() > 0;
+  }
+
+  /**
+   * @return the maximum number of descriptors that this instance may hold.
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return the number of descriptors that this instance holds.
+   */
+  public int size() {
+    return Math.max(handles.size(), descriptors.size());
+  }
+
+  // --------------------------------------------------------------------------
+  // Writing side
+
+  /**
+   * @param desc
+   *          an {@link ObjectStreamClass}.
+   * @return the handle of the given descriptor, or <code>-1</code> if it has
+   *         not been registered.
+   */
+  public int getHandle(ObjectStreamClass desc) {
+    Integer handle = handles.get(desc);
+    return handle == null ? -1 : handle;
+  }
+
+  /**
+   * @param desc
+   *          the {@link ObjectStreamClass} to register.
+   * @return the handle assigned to the given descriptor, or <code>-1</code> if
+   *         this instance is full.
+   */
+  public int register(ObjectStreamClass desc) {
+    if (handles.size() >= maxSize) {
+      return -1;
+    }
+    int handle = handles.size();
+    handles.put(desc, handle);
+    return handle;
+  }
+
+  // --------------------------------------------------------------------------
+  // Reading side
+
+  /**
+   * @param handle
+   *          a descriptor handle.
+   * @return the {@link ObjectStreamClass} corresponding to the given handle,
+   *         or <code>null</code> if there is none.
+   */
+  public ObjectStreamClass get(int handle) {
+    return handle >= 0 && handle < descriptors.size() ? descriptors.get(handle) : null;
+  }
+
+  /**
+   * Keeps the given descriptor under the given handle (replacing the
+   * descriptor kept under that handle, if any).
+   *
+   * @param handle
+   *          the handle that was assigned to the given descriptor by the
+   *          sending side.
+   * @param desc
+   *          an {@link ObjectStreamClass}.
+   * @throws IllegalArgumentException
+   *           if the handle is negative or not smaller than this instance's
+   *           maximum size.
+   */
+  public void put(int handle, ObjectStreamClass desc) {
+    if (handle < 0 || handle >= maxSize) {
+      throw new IllegalArgumentException("Invalid class descriptor handle: " + handle + " (max size: " + maxSize + ")");
+    }
+    while (descriptors.size() <= handle) {
+      descriptors.add(null);
+    }
+    descriptors.set(handle, desc);
+  }
+
+  // --------------------------------------------------------------------------
+  // Names
+
+  /**
+   * @param name
+   *          a name.
+   * @return the handle of the given name, or <code>-1</code> if it has not
+   *         been registered.
+   */
+  public int getNameHandle(String name) {
+    Integer handle = nameHandles.get(name);
+    return handle == null ? -1 : handle;
+  }
+
+  /**
+   * @param name
+   *          the name to register.
+   * @return the handle assigned to the given name, or <code>-1</code> if this
+   *         instance is full.
+   */
+  public int registerName(String name) {
+    if (nameHandles.size() >= maxSize) {
+      return -1;
+    }
+    int handle = nameHandles.size();
+    nameHandles.put(name, handle);
+    return handle;
+  }
+
+  /**
+   * @param handle
+   *          a name handle.
+   * @return the name corresponding to the given handle, or <code>null</code>
+   *         if there is none.
+   */
+  public String getName(int handle) {
+    return handle >= 0 && handle < names.size() ? names.get(handle) : null;
+  }
+
+  /**
+   * Keeps the given name under the given handle (replacing the name kept under
+   * that handle, if any).
+   *
+   * @param handle
+   *          the handle that was assigned to the given name by the sending
+   *          side.
+   * @param name
+   *          a name.
+   * @throws IllegalArgumentException
+   *           if the handle is negative or not smaller than this instance's
+   *           maximum size.
+   */
+  public void putName(int handle, String name) {
+    if (handle < 0 || handle >= maxSize) {
+      throw new IllegalArgumentException("Invalid name handle: " + handle + " (max size: " + maxSize + ")");
+    }
+    while (names.size() <= handle) {
+      names.add(null);
+    }
+    names.set(handle, name);
+  }
+
+  /**
+   * Removes all the descriptors and names held by this instance.
+   */
+  public void clear() {
+    handles.clear();
+    descriptors.clear();
+    nameHandles.clear();
+    names.clear();
+  }
+
+  private static int getConfiguredMaxSize() {
+    return Conf.getSystemProperties().getIntProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE, Defaults.DEFAULT_MARSHALLING_CLASS_DICTIONARY_MAX_SIZE);
+  }
+}
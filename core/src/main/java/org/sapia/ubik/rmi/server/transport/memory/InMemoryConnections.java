@@ -58,4 +58,8 @@ public class InMemoryConnections implements Connections {
   public void invalidate(RmiConnection conn) {
   }
 
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+  }
+
 }
@@ -43,7 +43,7 @@ public class MinaResponseEncoder implements ProtocolEncoder {
 
     private ObjectOutputStream getObjectOutputStream() throws IOException {
       if (stream == null) {
-        stream = MarshalStreamFactory.createOutputStream(new MinaByteBufferOutputStream(outgoing));
+        stream = MarshalStreamFactory.createOutputStream(new MinaByteBufferOutputStream(outgoing), MinaTransportProvider.TRANSPORT_TYPE);
       }
       return stream;
     }
@@ -68,7 +68,7 @@ public class MinaRmiClientConnection implements RmiConnection {
   public void send(Object o, VmId vmId, String transportType) throws IOException, RemoteException {
     byteBuffer.clear();
     if (oos == null) {
-      oos = MarshalStreamFactory.createOutputStream(new MinaByteBufferOutputStream(byteBuffer));
+      oos = MarshalStreamFactory.createOutputStream(new MinaByteBufferOutputStream(byteBuffer), address);
     }
     ((RmiObjectOutput) oos).setUp(vmId, transportType);
 
@@ -92,7 +92,7 @@ public class MinaRmiClientConnection implements RmiConnection {
   public void send(Object o) throws IOException, RemoteException {
     byteBuffer.clear();
     if (oos == null) {
-      oos = MarshalStreamFactory.createOutputStream(new MinaByteBufferOutputStream(byteBuffer));
+      oos = MarshalStreamFactory.createOutputStream(new MinaByteBufferOutputStream(byteBuffer), address);
     }
 
     Split split = serializationTime.start();
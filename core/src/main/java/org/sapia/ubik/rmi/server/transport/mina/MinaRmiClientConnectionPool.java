@@ -61,6 +61,11 @@ public class MinaRmiClientConnectionPool implements Connections {
     pool.invalidate(conn);
   }
 
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+    pool.invalidateFailed(conn);
+  }
+
   @Override
   public String getTransportType() {
     return MinaTransportProvider.TRANSPORT_TYPE;
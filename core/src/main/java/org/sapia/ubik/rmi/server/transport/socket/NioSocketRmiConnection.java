@@ -0,0 +1,75 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+
+import org.sapia.ubik.net.SocketChannelInputStream;
+import org.sapia.ubik.net.SocketChannelOutputStream;
+
+/**
+ * A server-side {@link SocketRmiConnection} over a non-blocking
+ * {@link SocketChannel}. It is used by the {@link NioSocketRmiServer}: the
+ * bytes exchanged are exactly those of a plain {@link SocketRmiConnection}, so
+ * that existing clients are not affected.
+ * <p>
+ * An instance of this class reads into its own buffer: the
+ * {@link #hasBufferedInput()} method allows determining if a command has
+ * already been (at least partially) read from the channel, in which case the
+ * connection should not be handed back to the selector.
+ *
+ * @author yduchesne
+ */
+public class NioSocketRmiConnection extends SocketRmiConnection {
+
+  private SocketChannel             channel;
+  private SocketChannelInputStream  input;
+  private SocketChannelOutputStream output;
+
+  public NioSocketRmiConnection(String transportType, SocketChannel channel, ClassLoader loader, int bufsize) {
+    super(transportType, channel.socket(), loader, bufsize);
+    this.channel = channel;
+    this.input   = new SocketChannelInputStream(channel, bufsize);
+    this.output  = new SocketChannelOutputStream(channel);
+  }
+
+  /**
+   * @return the {@link SocketChannel} that this instance wraps.
+   */
+  public SocketChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * @return <code>true</code> if this instance holds buffered data that was
+   *         read from its channel but has not yet been consumed.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  public boolean hasBufferedInput() throws IOException {
+    return input.available() > 0;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return input;
+  }
+
+  @Override
+  public OutputStream getOuputStream() throws IOException {
+    return output;
+  }
+
+  @Override
+  protected void readHeader(InputStream inputStream, ClassLoader loader) throws IOException {
+    // the channel stream is already buffered: wrapping it in a BufferedInputStream
+    // would hide pending bytes from hasBufferedInput().
+    boolean reset = new DataInputStream(inputStream).readBoolean();
+    if (is == null || reset) {
+      is = null;
+      is = newInputStream(inputStream, loader);
+    }
+  }
+}
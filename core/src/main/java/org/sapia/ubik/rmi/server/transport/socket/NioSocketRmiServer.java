@@ -0,0 +1,415 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sapia.ubik.concurrent.NamedThreadFactory;
+import org.sapia.ubik.concurrent.ThreadShutdown;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.Request;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.net.WorkerPool;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.rmi.server.Server;
+import org.sapia.ubik.rmi.server.command.RMICommand;
+import org.sapia.ubik.rmi.threads.Threads;
+import org.sapia.ubik.util.Assertions;
+import org.sapia.ubik.util.Localhost;
+
+/**
+ * A socket server that multiplexes client connections over a small number of
+ * NIO selector threads, rather than dedicating a worker thread to each
+ * connection (as {@link SocketRmiServer} does).
+ * <p>
+ * Idle connections are parked in a {@link Selector}: when a connection becomes
+ * readable, it is temporarily removed from its selector and handed to the
+ * worker pool, which reads the incoming {@link RMICommand}, executes it, and
+ * sends back the response. The connection is then given back to its selector.
+ * The number of worker threads therefore grows with the number of concurrent
+ * calls, not with the number of open connections.
+ * <p>
+ * The wire format is the one of {@link SocketRmiConnection}: this server is
+ * used by the {@link SocketTransportProvider} when the
+ * {@link SocketTransportProvider#NIO} property is set to <code>true</code>, and
+ * requires no change on the client-side.
+ *
+ * @author yduchesne
+ */
+public class NioSocketRmiServer implements Server, SocketRmiServerMBean {
+
+  /**
+   * A convenient {@link NioSocketRmiServer} builder.
+   */
+  public static class Builder {
+
+    private String          transportType;
+    private String          bindAddress;
+    private int             port;
+    private long            resetInterval;
+    private int             bufsize = Defaults.DEFAULT_MARSHALLING_BUFSIZE;
+    private int             selectorThreads = Defaults.DEFAULT_INBOUND_THREADS;
+    private ExecutorService executor;
+
+    private Builder(String transportType) {
+      this.transportType = transportType;
+    }
+
+    /**
+     * @param bindAddress
+     *          the address to which the server should be bound (if not
+     *          specified, the {@link Localhost} class is used to select one).
+     * @return this instance.
+     */
+    public Builder setBindAddress(String bindAddress) {
+      this.bindAddress = bindAddress;
+      return this;
+    }
+
+    /**
+     * @param port
+     *          the port on which the server should listen - if not specified, a
+     *          random port is selected.
+     * @return this instance.
+     */
+    public Builder setPort(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * @param resetInterval
+     *          the interval (in millis) at which the MarshalOutputStream will
+     *          reset it's internal object cache.
+     * @return this instance.
+     */
+    public Builder setResetInterval(long resetInterval) {
+      this.resetInterval = resetInterval;
+      return this;
+    }
+
+    /**
+     * @param bufsize
+     *          the size of the buffers used for reading from client connections.
+     * @return this instance.
+     */
+    public Builder setBufsize(int bufsize) {
+      this.bufsize = bufsize;
+      return this;
+    }
+
+    /**
+     * @param selectorThreads
+     *          the number of NIO selector threads.
+     * @return this instance.
+     */
+    public Builder setSelectorThreads(int selectorThreads) {
+      this.selectorThreads = selectorThreads;
+      return this;
+    }
+
+    /**
+     * @param executor
+     *          the {@link ExecutorService} to use for worker threads.
+     * @return this instance.
+     */
+    public Builder setExecutor(ExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    public static Builder create(String transportType) {
+      return new Builder(transportType);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public NioSocketRmiServer build() throws IOException {
+      Assertions.isTrue(selectorThreads > 0, "Number of selector threads must be greater than 0, got: %s", selectorThreads);
+      if (executor == null) {
+        executor = Threads.createWorkerPool();
+      }
+      return new NioSocketRmiServer(this);
+    }
+  }
+
+  // ==========================================================================
+
+  /**
+   * A {@link Request} that corresponds to a connection that has been taken out
+   * of its selector, and that must be given back to it once processing has
+   * completed.
+   */
+  static class ChannelRequest extends Request {
+
+    private SelectionKey key;
+    private SelectorLoop loop;
+
+    private ChannelRequest(NioSocketRmiConnection conn, ServerAddress addr, SelectionKey key, SelectorLoop loop) {
+      super(conn, addr);
+      this.key  = key;
+      this.loop = loop;
+    }
+
+    /**
+     * Hands back this instance's connection to its selector.
+     */
+    void resume() {
+      loop.resume(key);
+    }
+  }
+
+  // ==========================================================================
+
+  private Category                log           = Log.createCategory(getClass());
+  private String                  transportType;
+  private long                    resetInterval;
+  private int                     bufsize;
+  private ServerSocketChannel     serverChannel;
+  private ServerAddress           addr;
+  private WorkerPool<Request>     workers;
+  private ExecutorService         selectorExecutor;
+  private SelectorLoop[]          loops;
+  private AtomicInteger           loopIndex     = new AtomicInteger();
+  private Thread                  acceptorThread;
+  private volatile boolean        closed;
+
+  private NioSocketRmiServer(Builder builder) throws IOException {
+    this.transportType = builder.transportType;
+    this.resetInterval = builder.resetInterval;
+    this.bufsize       = builder.bufsize;
+    this.workers       = new NioSocketRmiServerThreadPool(builder.executor);
+
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().setReuseAddress(true);
+    if (builder.bindAddress != null) {
+      serverChannel.socket().bind(new InetSocketAddress(builder.bindAddress, builder.port));
+    } else {
+      serverChannel.socket().bind(new InetSocketAddress(builder.port));
+    }
+    addr = new TCPAddress(transportType, getAddress(), getPort());
+
+    selectorExecutor = Threads.createIoInboundPool("rmi.tcp.nio.Selector", builder.selectorThreads);
+    loops = new SelectorLoop[builder.selectorThreads];
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new SelectorLoop(Selector.open());
+    }
+  }
+
+  /**
+   * @see org.sapia.ubik.rmi.server.Server#getServerAddress()
+   */
+  @Override
+  public ServerAddress getServerAddress() {
+    return addr;
+  }
+
+  @Override
+  public String getAddress() {
+    InetAddress inetAddr = serverChannel.socket().getInetAddress();
+    if (inetAddr.isAnyLocalAddress()) {
+      try {
+        return InetAddress.getLocalHost().getHostAddress();
+      } catch (UnknownHostException e) {
+        throw new IllegalStateException(e.getClass().getName() + " caught - msg " + e.getMessage());
+      }
+    }
+    return inetAddr.getHostAddress();
+  }
+
+  @Override
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  @Override
+  public int getThreadCount() {
+    return workers.getThreadCount();
+  }
+
+  /**
+   * @return the number of client connections currently registered with this
+   *         instance's selectors.
+   */
+  public int getConnectionCount() {
+    int count = 0;
+    for (SelectorLoop loop : loops) {
+      count += loop.selector.keys().size();
+    }
+    return count;
+  }
+
+  /**
+   * @see org.sapia.ubik.rmi.server.Server#start()
+   */
+  @Override
+  public void start() throws RemoteException {
+    log.debug("Starting NIO server on %s", addr);
+
+    for (SelectorLoop loop : loops) {
+      selectorExecutor.execute(loop);
+    }
+
+    acceptorThread = NamedThreadFactory.createWith("rmi.tcp.nio.Acceptor").setDaemon(true).newThread(new Runnable() {
+      @Override
+      public void run() {
+        doAccept();
+      }
+    });
+    acceptorThread.start();
+  }
+
+  /**
+   * @see org.sapia.ubik.rmi.server.Server#close()
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      log.warning("Error closing server channel", e);
+    }
+    for (SelectorLoop loop : loops) {
+      loop.selector.wakeup();
+    }
+    selectorExecutor.shutdown();
+    workers.shutdown();
+    if (acceptorThread != null) {
+      ThreadShutdown.create(acceptorThread).shutdownLenient();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted
+
+  private void doAccept() {
+    while (!closed) {
+      SocketChannel client;
+      try {
+        client = serverChannel.accept();
+      } catch (ClosedChannelException e) {
+        log.info("Shutting down");
+        break;
+      } catch (IOException e) {
+        log.error("Error accepting client connection", e);
+        continue;
+      }
+
+      try {
+        client.configureBlocking(false);
+        NioSocketRmiConnection conn = new NioSocketRmiConnection(transportType, client, Thread.currentThread().getContextClassLoader(), bufsize);
+        conn.setResetInterval(resetInterval);
+        loops[Math.abs(loopIndex.getAndIncrement() % loops.length)].register(conn);
+      } catch (IOException e) {
+        log.warning("Could not register client connection; closing it", e);
+        try {
+          client.close();
+        } catch (IOException e2) {
+          // noop
+        }
+      }
+    }
+  }
+
+  // ==========================================================================
+
+  private class SelectorLoop implements Runnable {
+
+    private Selector                            selector;
+    private Queue<NioSocketRmiConnection>       pendingRegistrations = new ConcurrentLinkedQueue<NioSocketRmiConnection>();
+    private Queue<SelectionKey>                 pendingResumes       = new ConcurrentLinkedQueue<SelectionKey>();
+
+    private SelectorLoop(Selector selector) {
+      this.selector = selector;
+    }
+
+    private void register(NioSocketRmiConnection conn) {
+      pendingRegistrations.add(conn);
+      selector.wakeup();
+    }
+
+    private void resume(SelectionKey key) {
+      pendingResumes.add(key);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      while (!closed) {
+        try {
+          selector.select();
+          doProcessPending();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (key.isValid() && key.isReadable()) {
+              doDispatch(key);
+            }
+          }
+        } catch (IOException e) {
+          log.error("Error caught in selector loop", e);
+        }
+      }
+      doClose();
+    }
+
+    private void doProcessPending() {
+      NioSocketRmiConnection conn;
+      while ((conn = pendingRegistrations.poll()) != null) {
+        try {
+          conn.getChannel().register(selector, SelectionKey.OP_READ, conn);
+        } catch (ClosedChannelException e) {
+          conn.close();
+        }
+      }
+      SelectionKey key;
+      while ((key = pendingResumes.poll()) != null) {
+        if (key.isValid()) {
+          key.interestOps(SelectionKey.OP_READ);
+        }
+      }
+    }
+
+    private void doDispatch(SelectionKey key) {
+      NioSocketRmiConnection conn = (NioSocketRmiConnection) key.attachment();
+      key.interestOps(0);
+      try {
+        workers.submit(new ChannelRequest(conn, addr, key, this));
+      } catch (RejectedExecutionException e) {
+        log.warning("Worker pool is saturated: closing connection from %s", conn.getServerAddress());
+        conn.close();
+      }
+    }
+
+    private void doClose() {
+      for (SelectionKey key : selector.keys()) {
+        ((NioSocketRmiConnection) key.attachment()).close();
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        log.warning("Error closing selector", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.Request;
+import org.sapia.ubik.net.Worker;
+import org.sapia.ubik.rmi.interceptor.MultiDispatcher;
+import org.sapia.ubik.rmi.server.Config;
+import org.sapia.ubik.rmi.server.command.RMICommand;
+import org.sapia.ubik.rmi.server.transport.CommandHandler;
+
+/**
+ * Processes the commands of a connection that has been made readable in a
+ * {@link NioSocketRmiServer}. Contrary to the {@link SocketRmiServerThread},
+ * an instance of this class does not loop on the connection until it is closed:
+ * it processes the command(s) at hand and then hands back the connection to its
+ * selector.
+ *
+ * @author yduchesne
+ */
+public class NioSocketRmiServerThread implements Worker<Request> {
+
+  private Category log = Log.createCategory(getClass());
+  private CommandHandler handler;
+
+  NioSocketRmiServerThread(MultiDispatcher dispatcher) {
+    handler = new CommandHandler(dispatcher, getClass());
+  }
+
+  @Override
+  public void execute(Request req) {
+    NioSocketRmiServer.ChannelRequest channelReq = (NioSocketRmiServer.ChannelRequest) req;
+    NioSocketRmiConnection conn = (NioSocketRmiConnection) req.getConnection();
+    RMICommand cmd;
+
+    try {
+      do {
+        try {
+          cmd = (RMICommand) conn.receive();
+        } catch (RemoteException e) {
+          log.debug("Caught remote exception: client probably closed the connection");
+          conn.close();
+          return;
+        } catch (IOException e) {
+          log.debug("Caught IO exception: client might have closed the connection");
+          conn.close();
+          return;
+        } catch (Exception e) {
+          log.error("Could not handle request", e);
+          continue;
+        }
+
+        log.debug("Command received: %s from %s@%s", cmd.getClass().getName(), conn.getServerAddress(), cmd.getVmId());
+
+        cmd.init(new Config(req.getServerAddress(), conn));
+
+        handler.handleCommand(cmd, conn);
+      } while (conn.hasBufferedInput());
+    } catch (IOException e) {
+      log.debug("Caught IO exception while checking for buffered input", e);
+      conn.close();
+      return;
+    }
+
+    channelReq.resume();
+  }
+
+}
@@ -0,0 +1,33 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.util.concurrent.ExecutorService;
+
+import org.sapia.ubik.net.Request;
+import org.sapia.ubik.net.Worker;
+import org.sapia.ubik.net.WorkerPool;
+import org.sapia.ubik.rmi.server.Hub;
+
+/**
+ * Implements a pool of {@link NioSocketRmiServerThread}s in a
+ * {@link NioSocketRmiServer} instance. Since workers are not bound to a given
+ * connection, a single {@link NioSocketRmiServerThread} is shared by all
+ * threads.
+ *
+ * @author yduchesne
+ */
+public class NioSocketRmiServerThreadPool extends WorkerPool<Request> {
+
+  private volatile NioSocketRmiServerThread worker;
+
+  public NioSocketRmiServerThreadPool(ExecutorService executor) {
+    super(executor);
+  }
+
+  @Override
+  protected Worker<Request> newWorker() {
+    if (worker == null) {
+      worker = new NioSocketRmiServerThread(Hub.getModules().getServerRuntime().getDispatcher());
+    }
+    return worker;
+  }
+}
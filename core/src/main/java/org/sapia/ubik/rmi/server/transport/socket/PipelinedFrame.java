@@ -0,0 +1,116 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+
+import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
+import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
+
+/**
+ * Models a frame exchanged over a {@link PipelinedSocketConnection}. A frame
+ * consists of a correlation ID (which allows matching responses to requests,
+ * the former being potentially sent back out of order), followed by the length
+ * of the payload, and by the payload itself:
+ *
+ * <pre>
+ * [correlation ID: int][payload length: int][payload: bytes]
+ * </pre>
+ *
+ * The payload holds a single object, serialized with its own marshal stream.
+ *
+ * @author yduchesne
+ */
+class PipelinedFrame {
+
+  private int    correlationId;
+  private byte[] payload;
+
+  PipelinedFrame(int correlationId, byte[] payload) {
+    this.correlationId = correlationId;
+    this.payload       = payload;
+  }
+
+  /**
+   * @return this frame's correlation ID.
+   */
+  int getCorrelationId() {
+    return correlationId;
+  }
+
+  /**
+   * @return this frame's payload.
+   */
+  byte[] getPayload() {
+    return payload;
+  }
+
+  /**
+   * @return the object held by this frame's payload.
+   * @throws IOException
+   *           if an I/O error occurs.
+   * @throws ClassNotFoundException
+   *           if the class of the deserialized object could not be found.
+   */
+  Object getObject() throws IOException, ClassNotFoundException {
+    ObjectInputStream ois = MarshalStreamFactory.createInputStream(new ByteArrayInputStream(payload));
+    return ois.readObject();
+  }
+
+  void writeTo(DataOutputStream out) throws IOException {
+    out.writeInt(correlationId);
+    out.writeInt(payload.length);
+    out.write(payload);
+  }
+
+  /**
+   * @param in
+   *          the {@link DataInputStream} to read from.
+   * @param maxFrameSize
+   *          the maximum size of the payload, in bytes.
+   * @return the {@link PipelinedFrame} that was read.
+   * @throws IOException
+   *           if an I/O error occurs, or if the payload length is negative or
+   *           greater than the given maximum.
+   */
+  static PipelinedFrame readFrom(DataInputStream in, int maxFrameSize) throws IOException {
+    int correlationId = in.readInt();
+    int length = in.readInt();
+    if (length < 0 || length > maxFrameSize) {
+      throw new StreamCorruptedException("Invalid frame length: " + length + " (maximum is " + maxFrameSize + ")");
+    }
+    byte[] payload = new byte[length];
+    in.readFully(payload);
+    return new PipelinedFrame(correlationId, payload);
+  }
+
+  /**
+   * @param correlationId
+   *          the correlation ID to assign to the frame.
+   * @param toSend
+   *          the object to serialize into the frame's payload.
+   * @param vmId
+   *          the {@link VmId} of the JVM sending the object.
+   * @param transportType
+   *          the transport type to use for exporting remote objects that might
+   *          be part of the object graph.
+   * @return a new {@link PipelinedFrame}.
+   * @throws IOException
+   *           if a problem occurs while serializing.
+   */
+  static PipelinedFrame create(int correlationId, Object toSend, VmId vmId, String transportType) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = MarshalStreamFactory.createOutputStream(bos);
+    ((RmiObjectOutput) oos).setUp(vmId, transportType);
+    oos.writeObject(toSend);
+    oos.flush();
+    oos.close();
+    return new PipelinedFrame(correlationId, bos.toByteArray());
+  }
+}
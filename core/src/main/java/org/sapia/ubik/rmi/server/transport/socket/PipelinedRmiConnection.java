@@ -0,0 +1,114 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.ThreadInterruptedException;
+import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.transport.RmiConnection;
+
+/**
+ * A lightweight, client-side {@link RmiConnection} that corresponds to a single
+ * call over a shared {@link PipelinedSocketClient}. Instances of this class are
+ * cheap to create: the {@link PipelinedSocketClientConnectionPool} returns a new
+ * one at each acquisition, rather than checking out a physical connection.
+ * <p>
+ * An instance of this class supports sending one object and receiving the
+ * corresponding response, after which it may be reused for another call.
+ *
+ * @author yduchesne
+ */
+public class PipelinedRmiConnection implements RmiConnection {
+
+  private PipelinedSocketClient             client;
+  private CompletableFuture<PipelinedFrame> response;
+
+  PipelinedRmiConnection(PipelinedSocketClient client) {
+    this.client = client;
+  }
+
+  /**
+   * @return the {@link PipelinedSocketClient} over which this instance sends
+   *         its requests.
+   */
+  PipelinedSocketClient getClient() {
+    return client;
+  }
+
+  @Override
+  public void send(Object toSend, VmId associated, String transportType) throws IOException, RemoteException {
+    response = client.send(toSend, associated, transportType);
+  }
+
+  @Override
+  public void send(Object o) throws IOException, RemoteException {
+    send(o, VmId.getInstance(), getServerAddress().getTransportType());
+  }
+
+  @Override
+  public Object receive() throws IOException, ClassNotFoundException, RemoteException {
+    CompletableFuture<PipelinedFrame> current = doGetResponse();
+    try {
+      return current.get().getObject();
+    } catch (InterruptedException e) {
+      client.cancel(current);
+      throw new ThreadInterruptedException();
+    } catch (ExecutionException e) {
+      throw doConvert(e);
+    }
+  }
+
+  @Override
+  public Object receive(long timeout) throws IOException, ClassNotFoundException, RemoteException, SocketTimeoutException {
+    CompletableFuture<PipelinedFrame> current = doGetResponse();
+    try {
+      return current.get(timeout, TimeUnit.MILLISECONDS).getObject();
+    } catch (InterruptedException e) {
+      client.cancel(current);
+      throw new ThreadInterruptedException();
+    } catch (TimeoutException e) {
+      client.cancel(current);
+      throw new RemoteException("Could not send/receive within allocated timeout", e);
+    } catch (ExecutionException e) {
+      throw doConvert(e);
+    }
+  }
+
+  /**
+   * Closes the underlying {@link PipelinedSocketClient}: all calls pending on it
+   * will fail.
+   */
+  @Override
+  public void close() {
+    client.close();
+  }
+
+  @Override
+  public ServerAddress getServerAddress() {
+    return client.getConnection().getAddress();
+  }
+
+  // --------------------------------------------------------------------------
+
+  private CompletableFuture<PipelinedFrame> doGetResponse() {
+    CompletableFuture<PipelinedFrame> current = response;
+    if (current == null) {
+      throw new IllegalStateException("No request was sent");
+    }
+    response = null;
+    return current;
+  }
+
+  private IOException doConvert(ExecutionException e) {
+    if (e.getCause() instanceof IOException) {
+      return (IOException) e.getCause();
+    }
+    return new RemoteException("Error receiving response", e.getCause());
+  }
+}
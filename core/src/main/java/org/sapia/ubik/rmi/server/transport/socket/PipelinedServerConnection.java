@@ -0,0 +1,56 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.transport.RmiConnection;
+
+/**
+ * The server-side {@link RmiConnection} corresponding to a single request
+ * received over a {@link PipelinedSocketConnection}: the response sent through
+ * an instance of this class is tagged with the correlation ID of the request.
+ *
+ * @author yduchesne
+ */
+class PipelinedServerConnection implements RmiConnection {
+
+  private PipelinedSocketConnection connection;
+  private PipelinedFrame            request;
+
+  PipelinedServerConnection(PipelinedSocketConnection connection, PipelinedFrame request) {
+    this.connection = connection;
+    this.request    = request;
+  }
+
+  @Override
+  public void send(Object toSend, VmId associated, String transportType) throws IOException, RemoteException {
+    connection.write(PipelinedFrame.create(request.getCorrelationId(), toSend, associated, transportType));
+  }
+
+  @Override
+  public void send(Object o) throws IOException, RemoteException {
+    send(o, VmId.getInstance(), connection.getAddress().getTransportType());
+  }
+
+  @Override
+  public Object receive() throws IOException, ClassNotFoundException, RemoteException {
+    return request.getObject();
+  }
+
+  @Override
+  public Object receive(long timeout) throws IOException, ClassNotFoundException, RemoteException {
+    return receive();
+  }
+
+  @Override
+  public void close() {
+    connection.close();
+  }
+
+  @Override
+  public ServerAddress getServerAddress() {
+    return connection.getAddress();
+  }
+}
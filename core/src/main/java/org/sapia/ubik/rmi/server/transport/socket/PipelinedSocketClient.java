@@ -0,0 +1,153 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sapia.ubik.concurrent.NamedThreadFactory;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.rmi.server.VmId;
+
+/**
+ * The client-side of a {@link PipelinedSocketConnection}: an instance of this
+ * class allows multiple threads to have calls in flight over the same
+ * connection. Each call is assigned a correlation ID, which is used to match
+ * the response with its pending {@link CompletableFuture}. Responses are read
+ * by a dedicated reader thread, and may arrive in any order.
+ * <p>
+ * Note that the reader thread does not deserialize the responses: this is left
+ * to the calling threads (see {@link PipelinedRmiConnection}).
+ *
+ * @author yduchesne
+ */
+public class PipelinedSocketClient {
+
+  private Category                                          log     = Log.createCategory(getClass());
+  private PipelinedSocketConnection                         connection;
+  private AtomicInteger                                     ids     = new AtomicInteger();
+  private Map<Integer, CompletableFuture<PipelinedFrame>>   pending = new ConcurrentHashMap<Integer, CompletableFuture<PipelinedFrame>>();
+  private Thread                                            reader;
+
+  public PipelinedSocketClient(PipelinedSocketConnection connection) {
+    this.connection = connection;
+    this.reader     = NamedThreadFactory.createWith("rmi.tcp.pipelined.Reader").setDaemon(true).newThread(new Runnable() {
+      @Override
+      public void run() {
+        doRead();
+      }
+    });
+    reader.start();
+  }
+
+  /**
+   * @return this instance's {@link PipelinedSocketConnection}.
+   */
+  public PipelinedSocketConnection getConnection() {
+    return connection;
+  }
+
+  /**
+   * @return the number of calls for which a response is pending.
+   */
+  public int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * @return <code>true</code> if this instance's connection is closed.
+   */
+  public boolean isClosed() {
+    return connection.isClosed();
+  }
+
+  /**
+   * Sends the given object, returning a {@link CompletableFuture} that will be
+   * completed with the corresponding response frame.
+   *
+   * @param toSend
+   *          the object to send.
+   * @param vmId
+   *          the {@link VmId} of the calling JVM.
+   * @param transportType
+   *          the transport type to use for exporting remote objects.
+   * @return the {@link CompletableFuture} corresponding to the response.
+   * @throws IOException
+   *           if the object could not be serialized.
+   * @throws RemoteException
+   *           if this instance's connection is closed.
+   */
+  CompletableFuture<PipelinedFrame> send(Object toSend, VmId vmId, String transportType) throws IOException, RemoteException {
+    int id = ids.incrementAndGet();
+    PipelinedFrame frame = PipelinedFrame.create(id, toSend, vmId, transportType);
+    CompletableFuture<PipelinedFrame> future = new CompletableFuture<PipelinedFrame>();
+    pending.put(id, future);
+    try {
+      connection.write(frame);
+    } catch (RemoteException e) {
+      pending.remove(id);
+      throw e;
+    }
+    if (connection.isClosed() && pending.remove(id) != null) {
+      throw new RemoteException("Connection to " + connection.getAddress() + " closed while sending");
+    }
+    return future;
+  }
+
+  /**
+   * @param future
+   *          a {@link CompletableFuture} that was returned by this instance,
+   *          and whose response will not be waited for.
+   */
+  void cancel(CompletableFuture<PipelinedFrame> future) {
+    pending.values().remove(future);
+  }
+
+  /**
+   * Closes this instance: all pending calls are completed with a
+   * {@link RemoteException}.
+   */
+  public void close() {
+    connection.close();
+    reader.interrupt();
+    doFailPending(new RemoteException("Connection to " + connection.getAddress() + " was closed"));
+  }
+
+  // --------------------------------------------------------------------------
+
+  private void doRead() {
+    while (!connection.isClosed()) {
+      try {
+        PipelinedFrame frame = connection.read();
+        CompletableFuture<PipelinedFrame> future = pending.remove(frame.getCorrelationId());
+        if (future != null) {
+          future.complete(frame);
+        } else {
+          log.debug("Discarding response %s: no call pending for it", frame.getCorrelationId());
+        }
+      } catch (IOException e) {
+        if (!connection.isClosed()) {
+          log.warning("Error reading from %s; closing connection", e, connection.getAddress());
+        }
+        break;
+      } catch (Throwable e) {
+        log.error("Unexpected error reading from %s; closing connection", e, connection.getAddress());
+        break;
+      }
+    }
+    // the pending calls would otherwise never complete
+    close();
+  }
+
+  private void doFailPending(RemoteException cause) {
+    for (Integer id : pending.keySet()) {
+      CompletableFuture<PipelinedFrame> future = pending.remove(id);
+      if (future != null) {
+        future.completeExceptionally(cause);
+      }
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.rmi.server.transport.Connections;
+import org.sapia.ubik.rmi.server.transport.RmiConnection;
+import org.sapia.ubik.util.Assertions;
+
+/**
+ * A {@link Connections} implementation that does not check out connections:
+ * rather, it keeps a fixed number of {@link PipelinedSocketClient}s to a given
+ * server, over which calls are multiplexed. Each call to {@link #acquire()}
+ * returns a new {@link PipelinedRmiConnection}, bound to one of these clients
+ * (picked in a round-robin fashion). Clients are connected lazily, and
+ * reconnected if they have been closed.
+ *
+ * @author yduchesne
+ */
+public class PipelinedSocketClientConnectionPool implements Connections {
+
+  private Category                         log   = Log.createCategory(getClass());
+  private String                           transportType;
+  private String                           host;
+  private int                              port;
+  private PipelinedSocketConnectionFactory factory;
+  private AtomicReferenceArray<PipelinedSocketClient> clients;
+  private AtomicInteger                    index = new AtomicInteger();
+  private volatile long                    lastUsageTime = System.currentTimeMillis();
+
+  /**
+   * @param transportType
+   *          the transport type of the connections.
+   * @param host
+   *          the host of the server to connect to.
+   * @param port
+   *          the port of the server.
+   * @param maxConnections
+   *          the number of physical connections to keep to the server.
+   * @param factory
+   *          the {@link PipelinedSocketConnectionFactory} to use to create
+   *          connections.
+   */
+  public PipelinedSocketClientConnectionPool(String transportType, String host, int port, int maxConnections, PipelinedSocketConnectionFactory factory) {
+    Assertions.isTrue(maxConnections > 0, "Number of connections must be greater than 0, got: %s", maxConnections);
+    this.transportType = transportType;
+    this.host          = host;
+    this.port          = port;
+    this.factory       = factory;
+    this.clients       = new AtomicReferenceArray<PipelinedSocketClient>(maxConnections);
+  }
+
+  @Override
+  public RmiConnection acquire() throws RemoteException {
+    lastUsageTime = System.currentTimeMillis();
+    return new PipelinedRmiConnection(doGetClient(Math.abs(index.getAndIncrement() % clients.length())));
+  }
+
+  /**
+   * This method does nothing: the connections returned by this instance do not
+   * need to be released.
+   */
+  @Override
+  public void release(RmiConnection conn) {
+  }
+
+  @Override
+  public void invalidate(RmiConnection conn) {
+    PipelinedSocketClient client = ((PipelinedRmiConnection) conn).getClient();
+    if (client.isClosed()) {
+      for (int i = 0; i < clients.length(); i++) {
+        clients.compareAndSet(i, client, null);
+      }
+    }
+  }
+
+  /**
+   * Only invalidates the given connection: the other connections are shared
+   * by concurrent callers, and a broken connection is closed by its reader or
+   * writer thread anyway.
+   */
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+    invalidate(conn);
+  }
+
+  /**
+   * Discards the connections that have been closed, and closes the ones that
+   * have no calls pending. Connections that have calls in flight are left
+   * untouched: closing them would make these calls fail, even though the
+   * connections may be healthy (a connection that is really broken is closed
+   * by its reader or writer thread anyway, which fails its pending calls).
+   */
+  @Override
+  public void clear() {
+    for (int i = 0; i < clients.length(); i++) {
+      PipelinedSocketClient client = clients.get(i);
+      if (client != null && (client.isClosed() || client.getPendingCount() == 0) && clients.compareAndSet(i, client, null)) {
+        client.close();
+      }
+    }
+  }
+
+  /**
+   * Performs a {@link #clear()} if no connection has been acquired from this
+   * instance for the given amount of time.
+   *
+   * @param idleTimeout
+   *          the time (in millis) after which this instance's connections are
+   *          deemed idle.
+   */
+  public void maintain(long idleTimeout) {
+    if (System.currentTimeMillis() - lastUsageTime > idleTimeout) {
+      clear();
+    }
+  }
+
+  /**
+   * Closes all connections, including those that have calls in flight.
+   */
+  public void close() {
+    for (int i = 0; i < clients.length(); i++) {
+      PipelinedSocketClient client = clients.getAndSet(i, null);
+      if (client != null) {
+        client.close();
+      }
+    }
+  }
+
+  /**
+   * @return the time (in millis) at which a connection was last acquired from
+   *         this instance.
+   */
+  public long getLastUsageTime() {
+    return lastUsageTime;
+  }
+
+  @Override
+  public String getTransportType() {
+    return transportType;
+  }
+
+  // --------------------------------------------------------------------------
+
+  private PipelinedSocketClient doGetClient(int i) throws RemoteException {
+    PipelinedSocketClient client = clients.get(i);
+    if (client == null || client.isClosed()) {
+      synchronized (clients) {
+        client = clients.get(i);
+        if (client == null || client.isClosed()) {
+          try {
+            log.debug("Creating pipelined connection to %s:%s", host, port);
+            client = new PipelinedSocketClient(factory.newPipelinedConnection(host, port));
+            clients.set(i, client);
+          } catch (RemoteException e) {
+            throw e;
+          } catch (IOException e) {
+            throw new RemoteException("Could not connect to " + host + ":" + port, e);
+          }
+        }
+      }
+    }
+    return client;
+  }
+}
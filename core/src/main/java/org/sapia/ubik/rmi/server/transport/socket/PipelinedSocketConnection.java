@@ -0,0 +1,148 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.sapia.ubik.concurrent.NamedThreadFactory;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.util.IoUtils;
+
+/**
+ * Wraps a {@link Socket} over which {@link PipelinedFrame}s are exchanged, in
+ * both directions, and possibly concurrently.
+ * <p>
+ * Outgoing frames are queued: a dedicated writer thread drains the queue and
+ * writes all the frames that are pending to the socket at once, with a single
+ * flush. Frames are read by calling {@link #read()}: it is up to the owner of
+ * this instance to dedicate a thread to that task.
+ *
+ * @author yduchesne
+ */
+public class PipelinedSocketConnection {
+
+  private static final int MAX_FRAMES_PER_WRITE = 64;
+
+  private Category                        log      = Log.createCategory(getClass());
+  private Socket                          sock;
+  private TCPAddress                      address;
+  private DataInputStream                 input;
+  private DataOutputStream                output;
+  private BlockingQueue<PipelinedFrame>   outgoing = new LinkedBlockingQueue<PipelinedFrame>();
+  private Thread                          writer;
+  private int                             maxFrameSize;
+  private volatile boolean                closed;
+
+  /**
+   * @param transportType
+   *          the transport type to which this instance corresponds.
+   * @param sock
+   *          the {@link Socket} to wrap.
+   * @param bufsize
+   *          the size of the buffers used for I/O.
+   * @param maxFrameSize
+   *          the maximum size of the frames that may be read, in bytes.
+   * @throws IOException
+   *           if the socket's streams could not be acquired.
+   */
+  public PipelinedSocketConnection(String transportType, Socket sock, int bufsize, int maxFrameSize) throws IOException {
+    this.sock    = sock;
+    this.maxFrameSize = maxFrameSize;
+    this.address = new TCPAddress(transportType, sock.getInetAddress().getHostAddress(), sock.getPort());
+    this.input   = new DataInputStream(new BufferedInputStream(sock.getInputStream(), bufsize));
+    this.output  = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream(), bufsize));
+    this.writer  = NamedThreadFactory.createWith("rmi.tcp.pipelined.Writer").setDaemon(true).newThread(new Runnable() {
+      @Override
+      public void run() {
+        doWrite();
+      }
+    });
+    writer.start();
+  }
+
+  /**
+   * @return the address of the remote peer.
+   */
+  public TCPAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * @return <code>true</code> if this instance has been closed.
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * @param frame
+   *          a {@link PipelinedFrame} to queue for sending.
+   * @throws RemoteException
+   *           if this instance is closed.
+   */
+  void write(PipelinedFrame frame) throws RemoteException {
+    if (closed) {
+      throw new RemoteException("Connection to " + address + " is closed");
+    }
+    outgoing.add(frame);
+  }
+
+  /**
+   * Blocks until the next frame is received.
+   *
+   * @return the {@link PipelinedFrame} that was read.
+   * @throws IOException
+   *           if an I/O error occurs, or if the frame exceeds the maximum
+   *           size.
+   */
+  PipelinedFrame read() throws IOException {
+    return PipelinedFrame.readFrom(input, maxFrameSize);
+  }
+
+  /**
+   * Closes this instance.
+   */
+  public void close() {
+    if (!closed) {
+      closed = true;
+      writer.interrupt();
+      IoUtils.closeSilently(sock);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  private void doWrite() {
+    List<PipelinedFrame> batch = new ArrayList<PipelinedFrame>(MAX_FRAMES_PER_WRITE);
+    while (!closed) {
+      try {
+        batch.add(outgoing.take());
+        outgoing.drainTo(batch, MAX_FRAMES_PER_WRITE - 1);
+        for (PipelinedFrame f : batch) {
+          f.writeTo(output);
+        }
+        output.flush();
+      } catch (InterruptedException e) {
+        break;
+      } catch (IOException e) {
+        if (!closed) {
+          log.warning("Error writing to %s; closing connection", e, address);
+          close();
+        }
+        break;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+}
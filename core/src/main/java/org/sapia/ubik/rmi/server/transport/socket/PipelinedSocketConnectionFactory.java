@@ -0,0 +1,36 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+
+import org.sapia.ubik.net.SocketConnectionFactory;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * Creates the client-side {@link PipelinedSocketConnection}s used by the
+ * {@link PipelinedSocketClientConnectionPool}. Socket creation, connection
+ * timeout and retries are those of the {@link SocketConnectionFactory}.
+ *
+ * @author yduchesne
+ */
+public class PipelinedSocketConnectionFactory extends SocketConnectionFactory {
+
+  private int maxFrameSize = Conf.getSystemProperties().getIntProperty(PipelinedSocketTransportProvider.MAX_FRAME_SIZE,
+      PipelinedSocketTransportProvider.DEFAULT_MAX_FRAME_SIZE);
+
+  public PipelinedSocketConnectionFactory(String transportType) {
+    super(transportType);
+  }
+
+  /**
+   * @param host
+   *          the host to connect to.
+   * @param port
+   *          the port to connect to.
+   * @return a new {@link PipelinedSocketConnection}.
+   * @throws IOException
+   *           if the connection could not be established.
+   */
+  public PipelinedSocketConnection newPipelinedConnection(String host, int port) throws IOException {
+    return new PipelinedSocketConnection(transportType, newSocket(host, port), bufsize, maxFrameSize);
+  }
+}
@@ -0,0 +1,340 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.rmi.RemoteException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.sapia.ubik.concurrent.NamedThreadFactory;
+import org.sapia.ubik.concurrent.ThreadShutdown;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.DefaultUbikServerSocketFactory;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.net.UbikServerSocketFactory;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.rmi.server.Config;
+import org.sapia.ubik.rmi.server.Hub;
+import org.sapia.ubik.rmi.server.Server;
+import org.sapia.ubik.rmi.server.command.RMICommand;
+import org.sapia.ubik.rmi.server.transport.CommandHandler;
+import org.sapia.ubik.rmi.threads.Threads;
+import org.sapia.ubik.util.Localhost;
+
+/**
+ * The server counterpart of the {@link PipelinedSocketClientConnectionPool}:
+ * each client connection is assigned a reader thread, which reads incoming
+ * {@link PipelinedFrame}s and dispatches them to the worker pool. Commands
+ * received over the same connection are thus executed concurrently, and their
+ * responses are sent back as they complete, tagged with the correlation ID of
+ * the corresponding request.
+ * <p>
+ * Since clients multiplex their calls over a few connections, the number of
+ * reader threads stays low.
+ *
+ * @author yduchesne
+ */
+public class PipelinedSocketRmiServer implements Server, SocketRmiServerMBean {
+
+  /**
+   * A convenient {@link PipelinedSocketRmiServer} builder.
+   */
+  public static class Builder {
+
+    private String                  transportType;
+    private String                  bindAddress;
+    private int                     port;
+    private int                     bufsize = Defaults.DEFAULT_MARSHALLING_BUFSIZE;
+    private int                     maxFrameSize = PipelinedSocketTransportProvider.DEFAULT_MAX_FRAME_SIZE;
+    private UbikServerSocketFactory serverSocketFactory;
+    private ExecutorService         executor;
+
+    private Builder(String transportType) {
+      this.transportType = transportType;
+    }
+
+    /**
+     * @param bindAddress
+     *          the address to which the server should be bound (if not
+     *          specified, the {@link Localhost} class is used to select one).
+     * @return this instance.
+     */
+    public Builder setBindAddress(String bindAddress) {
+      this.bindAddress = bindAddress;
+      return this;
+    }
+
+    /**
+     * @param port
+     *          the port on which the server should listen.
+     * @return this instance.
+     */
+    public Builder setPort(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * @param bufsize
+     *          the size of the buffers used for I/O.
+     * @return this instance.
+     */
+    public Builder setBufsize(int bufsize) {
+      this.bufsize = bufsize;
+      return this;
+    }
+
+    /**
+     * @param maxFrameSize
+     *          the maximum size of the frames that the server accepts, in
+     *          bytes: a client sending a larger frame is disconnected.
+     * @return this instance.
+     */
+    public Builder setMaxFrameSize(int maxFrameSize) {
+      this.maxFrameSize = maxFrameSize;
+      return this;
+    }
+
+    /**
+     * @param serverSocketFactory
+     *          the {@link UbikServerSocketFactory} that the server will be
+     *          using to create a {@link ServerSocket} instance.
+     * @return this instance.
+     */
+    public Builder setServerSocketFactory(UbikServerSocketFactory serverSocketFactory) {
+      this.serverSocketFactory = serverSocketFactory;
+      return this;
+    }
+
+    /**
+     * @param executor
+     *          the {@link ExecutorService} to use for executing commands.
+     * @return this instance.
+     */
+    public Builder setExecutor(ExecutorService executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    public static Builder create(String transportType) {
+      return new Builder(transportType);
+    }
+
+    // ------------------------------------------------------------------------
+
+    public PipelinedSocketRmiServer build() throws IOException {
+      if (serverSocketFactory == null) {
+        serverSocketFactory = new DefaultUbikServerSocketFactory();
+      }
+      if (executor == null) {
+        executor = Threads.createWorkerPool();
+      }
+      return new PipelinedSocketRmiServer(this);
+    }
+  }
+
+  // ==========================================================================
+
+  private Category        log          = Log.createCategory(getClass());
+  private String          transportType;
+  private int             bufsize;
+  private int             maxFrameSize;
+  private ServerSocket    server;
+  private ServerAddress   addr;
+  private ExecutorService workers;
+  private ExecutorService readers;
+  private CommandHandler  handler;
+  private AtomicInteger   activeCount  = new AtomicInteger();
+  private Thread          acceptorThread;
+  private volatile boolean closed;
+
+  private PipelinedSocketRmiServer(Builder builder) throws IOException {
+    this.transportType = builder.transportType;
+    this.bufsize       = builder.bufsize;
+    this.maxFrameSize  = builder.maxFrameSize;
+    this.workers       = builder.executor;
+    this.readers       = Threads.createIoInboundPool("rmi.tcp.pipelined.ServerReader");
+    if (builder.bindAddress != null) {
+      server = builder.serverSocketFactory.createServerSocket(builder.port, builder.bindAddress);
+    } else {
+      server = builder.serverSocketFactory.createServerSocket(builder.port);
+    }
+    addr    = new TCPAddress(transportType, getAddress(), getPort());
+    handler = new CommandHandler(Hub.getModules().getServerRuntime().getDispatcher(), getClass());
+  }
+
+  @Override
+  public ServerAddress getServerAddress() {
+    return addr;
+  }
+
+  @Override
+  public String getAddress() {
+    InetAddress inetAddr = server.getInetAddress();
+    if (inetAddr.isAnyLocalAddress()) {
+      try {
+        return InetAddress.getLocalHost().getHostAddress();
+      } catch (UnknownHostException e) {
+        throw new IllegalStateException(e.getClass().getName() + " caught - msg " + e.getMessage());
+      }
+    }
+    return inetAddr.getHostAddress();
+  }
+
+  @Override
+  public int getPort() {
+    return server.getLocalPort();
+  }
+
+  @Override
+  public int getThreadCount() {
+    return activeCount.get();
+  }
+
+  @Override
+  public void start() throws RemoteException {
+    log.debug("Starting pipelined server on %s", addr);
+    acceptorThread = NamedThreadFactory.createWith("rmi.tcp.pipelined.Acceptor").setDaemon(true).newThread(new Runnable() {
+      @Override
+      public void run() {
+        doAccept();
+      }
+    });
+    acceptorThread.start();
+  }
+
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      server.close();
+    } catch (IOException e) {
+      log.warning("Error closing server socket", e);
+    }
+    readers.shutdownNow();
+    workers.shutdown();
+    if (acceptorThread != null) {
+      ThreadShutdown.create(acceptorThread).shutdownLenient();
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  private void doAccept() {
+    while (!closed) {
+      Socket client;
+      try {
+        client = server.accept();
+      } catch (SocketException e) {
+        log.info("Shutting down");
+        break;
+      } catch (IOException e) {
+        log.error("Error accepting client connection", e);
+        continue;
+      }
+
+      try {
+        final PipelinedSocketConnection conn = new PipelinedSocketConnection(transportType, client, bufsize, maxFrameSize);
+        readers.execute(new Runnable() {
+          @Override
+          public void run() {
+            doRead(conn);
+          }
+        });
+      } catch (IOException e) {
+        log.warning("Could not set up client connection; closing it", e);
+        try {
+          client.close();
+        } catch (IOException e2) {
+          // noop
+        }
+      }
+    }
+  }
+
+  private void doRead(final PipelinedSocketConnection conn) {
+    try {
+      doReadFrames(conn);
+    } catch (Throwable e) {
+      log.error("Unexpected error reading from %s; closing connection", e, conn.getAddress());
+    } finally {
+      conn.close();
+    }
+  }
+
+  private void doReadFrames(final PipelinedSocketConnection conn) {
+    while (!closed && !conn.isClosed()) {
+      final PipelinedFrame frame;
+      try {
+        frame = conn.read();
+      } catch (StreamCorruptedException e) {
+        log.warning("Invalid frame received from %s; closing connection", e, conn.getAddress());
+        break;
+      } catch (IOException e) {
+        log.debug("Caught IO exception: client might have closed the connection");
+        break;
+      }
+
+      try {
+        workers.execute(new Runnable() {
+          @Override
+          public void run() {
+            doHandle(conn, frame);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        log.warning("Worker pool is saturated: rejecting request from %s", conn.getAddress());
+        try {
+          new PipelinedServerConnection(conn, frame).send(new RemoteException("Server is busy: request rejected"));
+        } catch (IOException e2) {
+          break;
+        }
+      }
+    }
+  }
+
+  private void doHandle(PipelinedSocketConnection conn, PipelinedFrame frame) {
+    activeCount.incrementAndGet();
+    PipelinedServerConnection call = new PipelinedServerConnection(conn, frame);
+    RMICommand cmd;
+    try {
+      cmd = (RMICommand) call.receive();
+    } catch (Exception e) {
+      activeCount.decrementAndGet();
+      log.error("Could not handle request from %s", e, conn.getAddress());
+      // the caller is waiting for a response with this request's identifier
+      try {
+        call.send(new RemoteException("Could not handle request", e));
+      } catch (IOException e2) {
+        log.warning("Could not send error response to %s; closing connection", e2, conn.getAddress());
+        conn.close();
+      }
+      return;
+    }
+
+    log.debug("Command received: %s from %s@%s", cmd.getClass().getName(), conn.getAddress(), cmd.getVmId());
+
+    cmd.init(new Config(addr, call));
+
+    // responses are framed with their request's identifier: they may be sent
+    // from any thread, so the worker is not held while a future is pending
+    handler.handleCommandDeferred(cmd, call).whenComplete(new BiConsumer<Void, Throwable>() {
+      @Override
+      public void accept(Void result, Throwable err) {
+        activeCount.decrementAndGet();
+      }
+    });
+  }
+}
@@ -0,0 +1,166 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.net.TcpPortSelector;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.rmi.server.Hub;
+import org.sapia.ubik.rmi.server.Server;
+import org.sapia.ubik.rmi.server.transport.Connections;
+import org.sapia.ubik.rmi.threads.Threads;
+import org.sapia.ubik.taskman.Task;
+import org.sapia.ubik.taskman.TaskContext;
+import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.Localhost;
+
+/**
+ * A {@link SocketTransportProvider} whose client connections are pipelined: a
+ * few physical connections are kept to each server, and calls are multiplexed
+ * over them, each being tagged with a correlation ID. Responses may thus come
+ * back in any order, and a slow call does not hold up the others.
+ * <p>
+ * The frame-based protocol used by this transport is not compatible with the
+ * one of the plain socket transport: both ends must use this provider.
+ *
+ * @see PipelinedSocketRmiServer
+ * @see PipelinedSocketClientConnectionPool
+ *
+ * @author yduchesne
+ */
+public class PipelinedSocketTransportProvider extends SocketTransportProvider {
+
+  /**
+   * Constant corresponding to this provider class' transport type.
+   */
+  public static final String PIPELINED_TRANSPORT_TYPE = "tcp/pipelined";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pipelined.connections</code> system
+   * property. It indicates the number of physical connections to keep to a
+   * given server (defaults to {@link #DEFAULT_CONNECTIONS}).
+   */
+  public static final String CONNECTIONS = "ubik.rmi.transport.socket.pipelined.connections";
+
+  /**
+   * The default number of physical connections kept to a given server.
+   */
+  public static final int DEFAULT_CONNECTIONS = 2;
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pipelined.max-frame-size</code> system
+   * property. It indicates the maximum size (in bytes) of the frames that may be
+   * received: a peer sending a larger frame is disconnected (defaults to
+   * {@link #DEFAULT_MAX_FRAME_SIZE}).
+   */
+  public static final String MAX_FRAME_SIZE = "ubik.rmi.transport.socket.pipelined.max-frame-size";
+
+  /**
+   * The default maximum size of the frames that may be received (64 MB).
+   */
+  public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+  private Category log = Log.createCategory(getClass());
+  private Map<ServerAddress, PipelinedSocketClientConnectionPool> pools = new ConcurrentHashMap<ServerAddress, PipelinedSocketClientConnectionPool>();
+  private volatile boolean poolCleanerStarted;
+
+  public PipelinedSocketTransportProvider() {
+    super(PIPELINED_TRANSPORT_TYPE);
+  }
+
+  /**
+   * @see org.sapia.ubik.rmi.server.transport.TransportProvider#getPoolFor(ServerAddress)
+   */
+  @Override
+  public synchronized Connections getPoolFor(ServerAddress address) throws RemoteException {
+    if (!poolCleanerStarted) {
+      final long idleTimeout = Conf.getSystemProperties().getLongProperty(POOL_IDLE_TIMEOUT, DEFAULT_STALE_CLIENT_CONNECTION_TIME);
+      Hub.getModules().getTaskManager().addTask(new TaskContext(getClass().getSimpleName(), DEFAULT_STALE_CLIENT_CONNECTION_TIME), new Task() {
+        @Override
+        public void exec(TaskContext ctx) {
+          doCleanPools(idleTimeout);
+        }
+      });
+      poolCleanerStarted = true;
+    }
+
+    PipelinedSocketClientConnectionPool pool = pools.get(address);
+    if (pool == null) {
+      if (!(address instanceof TCPAddress)) {
+        throw new IllegalArgumentException("Address not instance of TCPAddress: " + address);
+      }
+      Conf props = Conf.getSystemProperties();
+      TCPAddress tcpAddr = (TCPAddress) address;
+      pool = new PipelinedSocketClientConnectionPool(getTransportType(), tcpAddr.getHost(), tcpAddr.getPort(),
+          props.getIntProperty(CONNECTIONS, DEFAULT_CONNECTIONS), new PipelinedSocketConnectionFactory(getTransportType()));
+      pools.put(address, pool);
+    }
+    return pool;
+  }
+
+  @Override
+  protected Server doNewServer(int port, Conf props) throws RemoteException {
+    String bindAddress = null;
+
+    try {
+      bindAddress = props.getProperty(BIND_ADDRESS, Localhost.getPreferredLocalAddress().getHostAddress());
+    } catch (IOException e) {
+      throw new RemoteException("Invalid bind address", e);
+    }
+
+    if (port == 0) {
+      try {
+        port = new TcpPortSelector().select();
+      } catch (IOException e) {
+        throw new RemoteException("Could not acquire random port");
+      }
+    }
+
+    try {
+      log.info("Bind address: %s", bindAddress);
+      log.info("Port: %s", port);
+
+      return PipelinedSocketRmiServer.Builder.create(getTransportType())
+          .setBindAddress(bindAddress)
+          .setExecutor(Threads.createWorkerPool())
+          .setPort(port)
+          .setBufsize(props.getIntProperty(Consts.MARSHALLING_BUFSIZE, Defaults.DEFAULT_MARSHALLING_BUFSIZE))
+          .setMaxFrameSize(props.getIntProperty(MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE))
+          .build();
+    } catch (IOException e) {
+      throw new RemoteException("Could not create server", e);
+    }
+  }
+
+  /**
+   * @see org.sapia.ubik.rmi.server.transport.TransportProvider#shutdown()
+   */
+  @Override
+  public void shutdown() {
+    for (PipelinedSocketClientConnectionPool pool : pools.values()) {
+      pool.close();
+    }
+    pools.clear();
+  }
+
+  // closes the connections of the pools that have not been used for a while
+  // (connections that have calls in flight are left untouched)
+  private void doCleanPools(long idleTimeout) {
+    for (PipelinedSocketClientConnectionPool pool : pools.values()) {
+      try {
+        pool.maintain(idleTimeout);
+      } catch (RuntimeException e) {
+        log.warning("Error performing maintenance on pipelined connection pool", e);
+      }
+    }
+  }
+}
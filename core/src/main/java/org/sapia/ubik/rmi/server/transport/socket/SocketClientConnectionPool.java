@@ -31,8 +31,18 @@ public class SocketClientConnectionPool implements Connections {
    *          the port of the server.
    */
   public SocketClientConnectionPool(String transportType, String host, int port, ConnectionFactory connectionFactory) {
+    this(transportType, new ConnectionPool.Builder().host(host).port(port).connectionFactory(connectionFactory).build());
+  }
+
+  /**
+   * @param transportType
+   *          the transport type of the pooled connections.
+   * @param pool
+   *          the {@link ConnectionPool} to which this instance delegates.
+   */
+  public SocketClientConnectionPool(String transportType, ConnectionPool pool) {
     this.transportType = transportType;
-    pool = new ConnectionPool.Builder().host(host).port(port).connectionFactory(connectionFactory).build();
+    this.pool = pool;
   }
 
   @Override
@@ -66,6 +76,11 @@ public class SocketClientConnectionPool implements Connections {
     pool.invalidate(conn);
   }
 
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+    pool.invalidateFailed(conn);
+  }
+
   @Override
   public String getTransportType() {
     return transportType;
@@ -14,15 +14,23 @@ import org.sapia.ubik.rmi.server.transport.MarshalOutputStream;
 import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
 import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
+import org.sapia.ubik.rmi.server.transport.StreamClassDictionary;
 
 /**
  * A connection over a {@link Socket} - the connection uses the
  * {@link MarshalOutputStream} class to serialize outgoing objects.
+ * <p>
+ * The connection keeps a {@link StreamClassDictionary} for each direction:
+ * class descriptors are thus sent once per connection, rather than each time
+ * the connection creates a new stream (see {@link #setResetInterval(long)}).
  * 
  * @author Yanick Duchesne
  */
 public class SocketRmiConnection extends SocketConnection implements RmiConnection {
 
+  private StreamClassDictionary outgoingClasses = new StreamClassDictionary();
+  private StreamClassDictionary incomingClasses = new StreamClassDictionary();
+
   public SocketRmiConnection(String transportType, Socket sock, ClassLoader loader, int bufsize) {
     super(transportType, sock, loader, bufsize);
   }
@@ -36,7 +44,7 @@ public class SocketRmiConnection extends SocketConnection implements RmiConnecti
    *      String)
    */
   public void send(Object o, VmId vmId, String tranportType) throws IOException, RemoteException {
-    writeHeader(sock.getOutputStream(), loader);
+    writeHeader(getOuputStream(), loader);
     ((RmiObjectOutput) os).setUp(vmId, tranportType);
     super.doSend(o, os);
   }
@@ -46,7 +54,7 @@ public class SocketRmiConnection extends SocketConnection implements RmiConnecti
    *      ClassLoader)
    */
   protected ObjectOutputStream newOutputStream(OutputStream os, ClassLoader loader) throws IOException {
-    return MarshalStreamFactory.createOutputStream(os);
+    return MarshalStreamFactory.createOutputStream(os, getServerAddress(), outgoingClasses);
   }
 
   /**
@@ -54,6 +62,6 @@ public class SocketRmiConnection extends SocketConnection implements RmiConnecti
    *      ClassLoader)
    */
   protected ObjectInputStream newInputStream(InputStream is, ClassLoader loader) throws IOException {
-    return MarshalStreamFactory.createInputStream(is);
+    return MarshalStreamFactory.createInputStream(is, incomingClasses);
   }
 }
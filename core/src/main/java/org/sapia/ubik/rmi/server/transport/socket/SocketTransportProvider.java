@@ -10,11 +10,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.net.ConnectionFactory;
+import org.sapia.ubik.net.ConnectionPool;
 import org.sapia.ubik.net.ServerAddress;
 import org.sapia.ubik.net.TCPAddress;
 import org.sapia.ubik.net.TcpPortSelector;
 import org.sapia.ubik.net.UbikServerSocketFactory;
 import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
 import org.sapia.ubik.rmi.server.Hub;
 import org.sapia.ubik.rmi.server.Server;
 import org.sapia.ubik.rmi.server.transport.Connections;
@@ -74,8 +76,81 @@ public class SocketTransportProvider implements TransportProvider {
    */
   public static final String PORT = "ubik.rmi.transport.socket.port";
 
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.nio</code> system property. If set to
+   * <code>true</code>, a {@link NioSocketRmiServer} is created rather than a
+   * {@link SocketRmiServer}: client connections are then multiplexed over NIO
+   * selector threads (whose number is given by the
+   * {@link Consts#SERVER_INBOUND_THREADS} property), rather than each being
+   * assigned a dedicated worker thread. Defaults to <code>false</code>.
+   * <p>
+   * Note that the {@link #SERVER_FACTORY} property is not supported in NIO
+   * mode.
+   */
+  public static final String NIO = "ubik.rmi.transport.socket.nio";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pool.max-size</code> system property. It
+   * indicates the maximum number of connections that a client-side connection
+   * pool may create (by default, there is no maximum).
+   */
+  public static final String POOL_MAX_SIZE = "ubik.rmi.transport.socket.pool.max-size";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pool.max-idle</code> system property. It
+   * indicates the maximum number of idle connections that a client-side
+   * connection pool keeps (by default, there is no maximum).
+   */
+  public static final String POOL_MAX_IDLE = "ubik.rmi.transport.socket.pool.max-idle";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pool.min-idle</code> system property. It
+   * indicates the minimum number of idle connections that a client-side
+   * connection pool keeps open, once it has been used (defaults to 0).
+   */
+  public static final String POOL_MIN_IDLE = "ubik.rmi.transport.socket.pool.min-idle";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pool.idle-timeout</code> system property.
+   * It indicates the time (in millis) after which an idle client-side
+   * connection is closed (defaults to 10000).
+   */
+  public static final String POOL_IDLE_TIMEOUT = "ubik.rmi.transport.socket.pool.idle-timeout";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pool.acquire-timeout</code> system
+   * property. It indicates the time (in millis) to wait for a connection to
+   * become available, when a client-side connection pool has reached its
+   * maximum size (by default, callers wait indefinitely).
+   */
+  public static final String POOL_ACQUIRE_TIMEOUT = "ubik.rmi.transport.socket.pool.acquire-timeout";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pool.reconnect-backoff</code> system
+   * property. It indicates the base delay (in millis) that a client-side
+   * connection pool waits for before reconnecting, after a connection attempt
+   * has failed: the delay doubles with each consecutive failure, and is
+   * randomized (defaults to 100 - a value of 0 disables the backoff).
+   */
+  public static final String POOL_RECONNECT_BACKOFF = "ubik.rmi.transport.socket.pool.reconnect-backoff";
+
+  /**
+   * This constant corresponds to the
+   * <code>ubik.rmi.transport.socket.pool.reconnect-backoff-max</code> system
+   * property. It indicates the maximum delay (in millis) that a client-side
+   * connection pool waits for before reconnecting (defaults to 5000).
+   */
+  public static final String POOL_MAX_RECONNECT_BACKOFF = "ubik.rmi.transport.socket.pool.reconnect-backoff-max";
+
   protected static final long DEFAULT_RESET_INTERVAL = 2000;
-  private static final long DEFAULT_STALE_CLIENT_CONNECTION_TIME = 10000;
+  protected static final long DEFAULT_STALE_CLIENT_CONNECTION_TIME = 10000;
 
   private String transportType;
   private Category log = Log.createCategory(getClass());
@@ -122,7 +197,18 @@ public class SocketTransportProvider implements TransportProvider {
         if (factory instanceof SocketRmiConnectionFactory) {
           ((SocketRmiConnectionFactory) factory).setResetInterval(resetInterval);
         }
-        pool = new SocketClientConnectionPool(transportType, tcpAddr.getHost(), tcpAddr.getPort(), factory);
+        pool = new SocketClientConnectionPool(transportType, new ConnectionPool.Builder()
+            .host(tcpAddr.getHost())
+            .port(tcpAddr.getPort())
+            .connectionFactory(factory)
+            .maxSize(props.getIntProperty(POOL_MAX_SIZE, ConnectionPool.NO_MAX))
+            .maxIdle(props.getIntProperty(POOL_MAX_IDLE, ConnectionPool.NO_MAX))
+            .minIdle(props.getIntProperty(POOL_MIN_IDLE, 0))
+            .idleTimeout(props.getLongProperty(POOL_IDLE_TIMEOUT, DEFAULT_STALE_CLIENT_CONNECTION_TIME))
+            .acquireTimeout(props.getLongProperty(POOL_ACQUIRE_TIMEOUT, ConnectionPool.DEFAULT_ACQUIRE_TIME_OUT))
+            .reconnectBackoff(props.getLongProperty(POOL_RECONNECT_BACKOFF, ConnectionPool.DEFAULT_RECONNECT_BACKOFF))
+            .maxReconnectBackoff(props.getLongProperty(POOL_MAX_RECONNECT_BACKOFF, ConnectionPool.DEFAULT_MAX_RECONNECT_BACKOFF))
+            .build());
         pools.put(address, pool);
       } catch (ClassNotFoundException e) {
         throw new RemoteException("Could load connection factory class (was not found)", e);
@@ -167,7 +253,7 @@ public class SocketTransportProvider implements TransportProvider {
   }
 
   protected Server doNewServer(int port, Conf props) throws RemoteException {
-    SocketRmiServer server;
+    Server server;
     long resetInterval;
     String bindAddress = null;
     UbikServerSocketFactory serverSocketFactory = null;
@@ -208,6 +294,20 @@ public class SocketTransportProvider implements TransportProvider {
       log.info("Bind address: %s", bindAddress);
       log.info("Port: %s", port);
 
+      if (props.getBooleanProperty(NIO, false)) {
+        if (serverSocketFactory != null) {
+          log.warning("Server socket factory %s is ignored in NIO mode", serverSocketFactory.getClass().getName());
+        }
+        return NioSocketRmiServer.Builder.create(transportType)
+            .setBindAddress(bindAddress)
+            .setExecutor(Threads.createWorkerPool())
+            .setResetInterval(resetInterval)
+            .setPort(port)
+            .setBufsize(props.getIntProperty(Consts.MARSHALLING_BUFSIZE, Defaults.DEFAULT_MARSHALLING_BUFSIZE))
+            .setSelectorThreads(props.getIntProperty(Consts.SERVER_INBOUND_THREADS, Defaults.DEFAULT_INBOUND_THREADS))
+            .build();
+      }
+
       server = SocketRmiServer.Builder.create(transportType)
           .setBindAddress(bindAddress)
           .setExecutor(Threads.createWorkerPool())
@@ -234,14 +334,18 @@ public class SocketTransportProvider implements TransportProvider {
    */
   @Override
   public void shutdown() {
-    doCleanPools();
+    for (SocketClientConnectionPool pool : pools.values()) {
+      pool.internalPool().clear();
+    }
   }
 
   private void doCleanPools() {
     for (SocketClientConnectionPool pool : pools.values()) {
-      if ((System.currentTimeMillis() - pool.internalPool().getLastUsageTime()) >= DEFAULT_STALE_CLIENT_CONNECTION_TIME) {
-        log.debug("Shrinking socket client connection pool...");
-        pool.internalPool().shrinkTo(0);
+      log.debug("Performing maintenance on socket client connection pool...");
+      try {
+        pool.internalPool().maintain();
+      } catch (RuntimeException e) {
+        log.warning("Error performing maintenance on connection pool", e);
       }
     }
   }
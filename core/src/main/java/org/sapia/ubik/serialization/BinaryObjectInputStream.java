@@ -0,0 +1,588 @@
+package org.sapia.ubik.serialization;
+
+import static org.sapia.ubik.serialization.BinaryObjectOutputStream.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.NotActiveException;
+import java.io.ObjectInputStream;
+import java.io.ObjectInputValidation;
+import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.sapia.ubik.serialization.ClassInfo.FieldInfo;
+
+/**
+ * Reads objects written by a {@link BinaryObjectOutputStream}.
+ * <p>
+ * Classes are resolved with the current thread's context class loader, and
+ * with the class loader of this class if they cannot be found with the former.
+ * <p>
+ * Note that this class does not read ahead: it consumes no more bytes from its
+ * underlying stream than those of the objects that it reads.
+ *
+ * @author yduchesne
+ *
+ */
+public class BinaryObjectInputStream extends ObjectInputStream {
+
+  private InputStream    in;
+  private ClassRegistry  registry;
+  private byte[]         scratch = new byte[8];
+  private List<Class<?>> classes = new ArrayList<Class<?>>();
+  private List<Object>   handles = new ArrayList<Object>();
+  private int            depth;
+
+  /**
+   * @param in
+   *          the {@link InputStream} to read from.
+   * @param registry
+   *          the {@link ClassRegistry} holding the classes that are read as
+   *          numeric identifiers.
+   * @throws IOException
+   *           if an I/O error occurs while reading the stream header, or if
+   *           the header is invalid.
+   */
+  public BinaryObjectInputStream(InputStream in, ClassRegistry registry) throws IOException {
+    super();
+    this.in = in;
+    this.registry = registry;
+    for (byte b : MAGIC) {
+      if (readByte() != b) {
+        throw new StreamCorruptedException("Invalid stream header");
+      }
+    }
+    byte version = readByte();
+    if (version != VERSION) {
+      throw new StreamCorruptedException("Unsupported stream version: " + version);
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  // Object input
+
+  @Override
+  protected Object readObjectOverride() throws IOException, ClassNotFoundException {
+    return doReadObject();
+  }
+
+  @Override
+  public Object readUnshared() throws IOException, ClassNotFoundException {
+    return doReadObject();
+  }
+
+  @Override
+  public void defaultReadObject() throws IOException, ClassNotFoundException {
+    throw new NotActiveException("Not supported by binary format");
+  }
+
+  @Override
+  public GetField readFields() throws IOException, ClassNotFoundException {
+    throw new NotActiveException("Not supported by binary format");
+  }
+
+  @Override
+  public void registerValidation(ObjectInputValidation obj, int prio) throws NotActiveException {
+    throw new NotActiveException("Not supported by binary format");
+  }
+
+  /**
+   * Loads the class with the given name.
+   *
+   * @param name
+   *          a class name.
+   * @return the {@link Class} with the given name.
+   * @throws ClassNotFoundException
+   *           if no such class could be found.
+   */
+  protected Class<?> loadClass(String name) throws ClassNotFoundException {
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (loader != null) {
+      try {
+        return Class.forName(name, false, loader);
+      } catch (ClassNotFoundException e) {
+        // trying with this class' loader
+      }
+    }
+    return Class.forName(name, false, BinaryObjectInputStream.class.getClassLoader());
+  }
+
+  // --------------------------------------------------------------------------
+  // Primitive input
+
+  @Override
+  public int read() throws IOException {
+    return in.read();
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    return in.read(b, off, len);
+  }
+
+  @Override
+  public int available() throws IOException {
+    return in.available();
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      int count = in.read(b, off, len);
+      if (count < 0) {
+        throw new EOFException();
+      }
+      off += count;
+      len -= count;
+    }
+  }
+
+  @Override
+  public int skipBytes(int len) throws IOException {
+    int skipped = 0;
+    while (skipped < len && in.read() >= 0) {
+      skipped++;
+    }
+    return skipped;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    int b = in.read();
+    if (b < 0) {
+      throw new EOFException();
+    }
+    return (byte) b;
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xFF;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    readFully(scratch, 0, 2);
+    return (short) (((scratch[0] & 0xFF) << 8) | (scratch[1] & 0xFF));
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xFFFF;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return (char) readShort();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    readFully(scratch, 0, 4);
+    return ((scratch[0] & 0xFF) << 24) | ((scratch[1] & 0xFF) << 16) | ((scratch[2] & 0xFF) << 8) | (scratch[3] & 0xFF);
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return Float.intBitsToFloat(readInt());
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    return readString();
+  }
+
+  @Override
+  @Deprecated
+  public String readLine() throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) >= 0 && c != '\n') {
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return c < 0 && line.length() == 0 ? null : line.toString();
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted methods
+
+  private Object doReadObject() throws IOException, ClassNotFoundException {
+    depth++;
+    try {
+      int tag = readUnsignedByte();
+      if (depth == 1) {
+        while (tag == TAG_RESET) {
+          classes.clear();
+          tag = readUnsignedByte();
+        }
+      }
+      return readValue(tag);
+    } finally {
+      if (--depth == 0) {
+        handles.clear();
+      }
+    }
+  }
+
+  private Object readValue() throws IOException, ClassNotFoundException {
+    return readValue(readUnsignedByte());
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private Object readValue(int tag) throws IOException, ClassNotFoundException {
+    switch (tag) {
+    case TAG_NULL:
+      return null;
+    case TAG_REF:
+      int handle = readVarInt();
+      if (handle >= handles.size()) {
+        throw new StreamCorruptedException("Invalid handle: " + handle);
+      }
+      return handles.get(handle);
+    case TAG_TRUE:
+      return Boolean.TRUE;
+    case TAG_FALSE:
+      return Boolean.FALSE;
+    case TAG_BYTE:
+      return readByte();
+    case TAG_SHORT:
+      return readShort();
+    case TAG_CHAR:
+      return readChar();
+    case TAG_INT:
+      return unZigZag(readVarInt());
+    case TAG_LONG:
+      return unZigZag(readVarLong());
+    case TAG_FLOAT:
+      return readFloat();
+    case TAG_DOUBLE:
+      return readDouble();
+    case TAG_STRING:
+      return readString();
+    case TAG_DATE:
+      return new Date(readLong());
+    case TAG_ENUM:
+      Class enumType = readClass();
+      return Enum.valueOf(enumType, readString());
+    case TAG_OBJECT_ARRAY:
+      Class<?> componentType = readClass();
+      Object[] array = (Object[]) Array.newInstance(componentType, readLength());
+      handles.add(array);
+      for (int i = 0; i < array.length; i++) {
+        array[i] = readValue();
+      }
+      return array;
+    case TAG_COLLECTION:
+      Class<?> collectionType = readClass();
+      if (!COLLECTION_CLASSES.contains(collectionType)) {
+        throw new InvalidClassException(collectionType.getName(), "Unsupported collection type");
+      }
+      Collection collection = (Collection) newContainer(collectionType);
+      handles.add(collection);
+      for (int size = readLength(); size > 0; size--) {
+        collection.add(readValue());
+      }
+      return collection;
+    case TAG_MAP:
+      Class<?> mapType = readClass();
+      if (!MAP_CLASSES.contains(mapType)) {
+        throw new InvalidClassException(mapType.getName(), "Unsupported map type");
+      }
+      Map map = (Map) newContainer(mapType);
+      handles.add(map);
+      for (int size = readLength(); size > 0; size--) {
+        map.put(readValue(), readValue());
+      }
+      return map;
+    case TAG_EXTERNAL:
+      Class<?> externalType = readClass();
+      ClassInfo externalInfo = ClassInfo.forClass(externalType);
+      if (externalInfo.kind != ClassInfo.Kind.EXTERNALIZABLE) {
+        throw new InvalidClassException(externalType.getName(), "Class is not externalizable, or cannot be instantiated");
+      }
+      Externalizable external = (Externalizable) externalInfo.newInstance();
+      handles.add(external);
+      external.readExternal(this);
+      return external;
+    case TAG_OBJECT:
+      Class<?> objectType = readClass();
+      ClassInfo objectInfo = ClassInfo.forClass(objectType);
+      if (objectInfo.kind != ClassInfo.Kind.FIELDS) {
+        throw new InvalidClassException(objectType.getName(), "Class cannot be read field by field");
+      }
+      Object obj = objectInfo.newInstance();
+      handles.add(obj);
+      readFields(obj, objectInfo.fields);
+      return obj;
+    case TAG_JDK:
+      int jdkHandle = handles.size();
+      handles.add(null);
+      Object jdkObj = readJdk();
+      handles.set(jdkHandle, jdkObj);
+      return jdkObj;
+    default:
+      return readArray(tag);
+    }
+  }
+
+  private Object readArray(int tag) throws IOException {
+    switch (tag) {
+    case TAG_BYTE_ARRAY:
+      byte[] bytes = new byte[readLength()];
+      handles.add(bytes);
+      readFully(bytes);
+      return bytes;
+    case TAG_INT_ARRAY:
+      int[] ints = new int[readLength()];
+      handles.add(ints);
+      for (int i = 0; i < ints.length; i++) {
+        ints[i] = unZigZag(readVarInt());
+      }
+      return ints;
+    case TAG_LONG_ARRAY:
+      long[] longs = new long[readLength()];
+      handles.add(longs);
+      for (int i = 0; i < longs.length; i++) {
+        longs[i] = unZigZag(readVarLong());
+      }
+      return longs;
+    case TAG_DOUBLE_ARRAY:
+      double[] doubles = new double[readLength()];
+      handles.add(doubles);
+      for (int i = 0; i < doubles.length; i++) {
+        doubles[i] = readDouble();
+      }
+      return doubles;
+    case TAG_FLOAT_ARRAY:
+      float[] floats = new float[readLength()];
+      handles.add(floats);
+      for (int i = 0; i < floats.length; i++) {
+        floats[i] = readFloat();
+      }
+      return floats;
+    case TAG_BOOLEAN_ARRAY:
+      boolean[] booleans = new boolean[readLength()];
+      handles.add(booleans);
+      for (int i = 0; i < booleans.length; i++) {
+        booleans[i] = readBoolean();
+      }
+      return booleans;
+    case TAG_SHORT_ARRAY:
+      short[] shorts = new short[readLength()];
+      handles.add(shorts);
+      for (int i = 0; i < shorts.length; i++) {
+        shorts[i] = readShort();
+      }
+      return shorts;
+    case TAG_CHAR_ARRAY:
+      char[] chars = new char[readLength()];
+      handles.add(chars);
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = readChar();
+      }
+      return chars;
+    default:
+      throw new StreamCorruptedException("Invalid tag: " + tag);
+    }
+  }
+
+  private void readFields(Object obj, FieldInfo[] fields) throws IOException, ClassNotFoundException {
+    try {
+      for (FieldInfo f : fields) {
+        switch (f.type) {
+        case 'Z':
+          f.field.setBoolean(obj, readBoolean());
+          break;
+        case 'B':
+          f.field.setByte(obj, readByte());
+          break;
+        case 'S':
+          f.field.setShort(obj, readShort());
+          break;
+        case 'C':
+          f.field.setChar(obj, readChar());
+          break;
+        case 'I':
+          f.field.setInt(obj, unZigZag(readVarInt()));
+          break;
+        case 'J':
+          f.field.setLong(obj, unZigZag(readVarLong()));
+          break;
+        case 'F':
+          f.field.setFloat(obj, readFloat());
+          break;
+        case 'D':
+          f.field.setDouble(obj, readDouble());
+          break;
+        default:
+          f.field.set(obj, readValue());
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new InvalidClassException(obj.getClass().getName(), "Could not set field: " + e.getMessage());
+    } catch (IllegalArgumentException e) {
+      throw new InvalidClassException(obj.getClass().getName(), "Incompatible field value: " + e.getMessage());
+    }
+  }
+
+  private Object newContainer(Class<?> type) throws IOException {
+    try {
+      return type.newInstance();
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new InvalidClassException(type.getName(), "Could not create instance: " + e);
+    }
+  }
+
+  private Object readJdk() throws IOException, ClassNotFoundException {
+    byte[] bytes = new byte[readLength()];
+    readFully(bytes);
+    return new JdkInputStream(new ByteArrayInputStream(bytes)).readObject();
+  }
+
+  private Class<?> readClass() throws IOException, ClassNotFoundException {
+    int value = readVarInt();
+    switch (value & 3) {
+    case CLASS_REGISTERED:
+      Class<?> registered = registry.getClass(value >>> 2);
+      if (registered == null) {
+        throw new InvalidClassException("Unknown class identifier: " + (value >>> 2));
+      }
+      return registered;
+    case CLASS_HANDLE:
+      int handle = value >>> 2;
+      if (handle >= classes.size()) {
+        throw new StreamCorruptedException("Invalid class handle: " + handle);
+      }
+      return classes.get(handle);
+    case CLASS_NEW:
+      Class<?> loaded = loadClass(readString());
+      classes.add(loaded);
+      return loaded;
+    default:
+      throw new StreamCorruptedException("Invalid class marker: " + value);
+    }
+  }
+
+  private String readString() throws IOException {
+    int len = readLength();
+    char[] chars = new char[len];
+    for (int i = 0; i < len; i++) {
+      int c = readUnsignedByte();
+      if (c < 0x80) {
+        chars[i] = (char) c;
+      } else {
+        chars[i] = (char) readVarInt(c);
+      }
+    }
+    return new String(chars);
+  }
+
+  private int readLength() throws IOException {
+    int len = readVarInt();
+    if (len < 0) {
+      throw new StreamCorruptedException("Invalid length: " + len);
+    }
+    return len;
+  }
+
+  private int readVarInt() throws IOException {
+    return readVarInt(readUnsignedByte());
+  }
+
+  private int readVarInt(int first) throws IOException {
+    int value = first & 0x7F;
+    int shift = 7;
+    int b = first;
+    while ((b & 0x80) != 0) {
+      if (shift > 28) {
+        throw new StreamCorruptedException("Malformed variable-length int");
+      }
+      b = readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      shift += 7;
+    }
+    return value;
+  }
+
+  private long readVarLong() throws IOException {
+    long value = 0;
+    int shift = 0;
+    int b;
+    do {
+      if (shift > 63) {
+        throw new StreamCorruptedException("Malformed variable-length long");
+      }
+      b = readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return value;
+  }
+
+  private static int unZigZag(int v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  private static long unZigZag(long v) {
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  // ==========================================================================
+
+  /**
+   * Reads objects that fell back to JDK serialization, resolving classes like
+   * the enclosing instance does.
+   */
+  private class JdkInputStream extends ObjectInputStream {
+
+    private JdkInputStream(InputStream is) throws IOException {
+      super(is);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      try {
+        return loadClass(desc.getName());
+      } catch (ClassNotFoundException e) {
+        return super.resolveClass(desc);
+      }
+    }
+  }
+}
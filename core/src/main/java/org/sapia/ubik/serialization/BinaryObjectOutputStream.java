@@ -0,0 +1,640 @@
+package org.sapia.ubik.serialization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.NotActiveException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.sapia.ubik.serialization.ClassInfo.FieldInfo;
+
+/**
+ * An {@link ObjectOutputStream} that writes objects in a compact, schema-less
+ * binary format, rather than with JDK serialization:
+ * <ul>
+ * <li>Primitive wrappers, strings, primitive arrays, enums and dates are
+ * written as tagged values (integers are written as variable-length values).
+ * <li>Object arrays, and the common <code>java.util</code> lists, sets and
+ * maps, are written element by element.
+ * <li>{@link Externalizable} objects are written by their
+ * <code>writeExternal()</code> method.
+ * <li>Other serializable objects are written field by field (superclass fields
+ * first), provided their class does not customize its serialization (with
+ * <code>writeObject()</code>, <code>writeReplace()</code>, etc.) and has a
+ * no-args constructor. Otherwise they fall back to JDK serialization.
+ * </ul>
+ * Classes are written as the identifier they have in the {@link ClassRegistry}
+ * passed to this instance, if they are registered; otherwise their name is
+ * written once per stream (until {@link #reset()} is called), and a handle is
+ * written thereafter. References to the same object, within the graph of a
+ * given top-level object, are written as handles.
+ * <p>
+ * Subclasses may replace objects before they are written, by overriding
+ * {@link #replaceObject(Object)}: the method is called for every object
+ * except <code>null</code>, strings and primitive wrappers.
+ * <p>
+ * Streams created by this class must be read with a
+ * {@link BinaryObjectInputStream}.
+ *
+ * @author yduchesne
+ *
+ */
+public class BinaryObjectOutputStream extends ObjectOutputStream {
+
+  /**
+   * The bytes that start each stream in this format.
+   */
+  public static final byte[] MAGIC = { (byte) 0xB1, (byte) 0x0B };
+
+  static final byte VERSION = 1;
+
+  static final int TAG_NULL          = 0;
+  static final int TAG_REF           = 1;
+  static final int TAG_TRUE          = 2;
+  static final int TAG_FALSE         = 3;
+  static final int TAG_BYTE          = 4;
+  static final int TAG_SHORT         = 5;
+  static final int TAG_CHAR          = 6;
+  static final int TAG_INT           = 7;
+  static final int TAG_LONG          = 8;
+  static final int TAG_FLOAT         = 9;
+  static final int TAG_DOUBLE        = 10;
+  static final int TAG_STRING        = 11;
+  static final int TAG_DATE          = 12;
+  static final int TAG_ENUM          = 13;
+  static final int TAG_BOOLEAN_ARRAY = 14;
+  static final int TAG_BYTE_ARRAY    = 15;
+  static final int TAG_SHORT_ARRAY   = 16;
+  static final int TAG_CHAR_ARRAY    = 17;
+  static final int TAG_INT_ARRAY     = 18;
+  static final int TAG_LONG_ARRAY    = 19;
+  static final int TAG_FLOAT_ARRAY   = 20;
+  static final int TAG_DOUBLE_ARRAY  = 21;
+  static final int TAG_OBJECT_ARRAY  = 22;
+  static final int TAG_COLLECTION    = 23;
+  static final int TAG_MAP           = 24;
+  static final int TAG_EXTERNAL      = 25;
+  static final int TAG_OBJECT        = 26;
+  static final int TAG_JDK           = 27;
+  static final int TAG_RESET         = 28;
+
+  static final int CLASS_NEW        = 0;
+  static final int CLASS_REGISTERED = 1;
+  static final int CLASS_HANDLE     = 2;
+
+  /**
+   * The collection classes that are written element by element.
+   */
+  static final Set<Class<?>> COLLECTION_CLASSES = new HashSet<Class<?>>();
+
+  /**
+   * The map classes that are written entry by entry.
+   */
+  static final Set<Class<?>> MAP_CLASSES = new HashSet<Class<?>>();
+
+  static {
+    COLLECTION_CLASSES.add(ArrayList.class);
+    COLLECTION_CLASSES.add(LinkedList.class);
+    COLLECTION_CLASSES.add(HashSet.class);
+    COLLECTION_CLASSES.add(LinkedHashSet.class);
+    MAP_CLASSES.add(HashMap.class);
+    MAP_CLASSES.add(LinkedHashMap.class);
+  }
+
+  private static final int BUFSIZE = 1024;
+
+  private OutputStream                    out;
+  private ClassRegistry                   registry;
+  private byte[]                          buf            = new byte[BUFSIZE];
+  private int                             pos;
+  private Map<Class<?>, Integer>          classHandles   = new HashMap<Class<?>, Integer>();
+  private IdentityHashMap<Object, Integer> objectHandles = new IdentityHashMap<Object, Integer>();
+  private int                             depth;
+  private ByteArrayOutputStream           jdkBytes;
+
+  /**
+   * @param out
+   *          the {@link OutputStream} to write to.
+   * @param registry
+   *          the {@link ClassRegistry} holding the classes that are written as
+   *          numeric identifiers.
+   * @throws IOException
+   *           if an I/O error occurs while writing the stream header.
+   */
+  public BinaryObjectOutputStream(OutputStream out, ClassRegistry registry) throws IOException {
+    super();
+    this.out = out;
+    this.registry = registry;
+    write(MAGIC);
+    writeByte(VERSION);
+  }
+
+  // --------------------------------------------------------------------------
+  // Object output
+
+  @Override
+  protected void writeObjectOverride(Object obj) throws IOException {
+    doWriteObject(obj);
+  }
+
+  @Override
+  public void writeUnshared(Object obj) throws IOException {
+    doWriteObject(obj);
+  }
+
+  /**
+   * Writes a marker that has the reading side forget the classes read so far,
+   * and forgets the classes written so far.
+   */
+  @Override
+  public void reset() throws IOException {
+    if (depth > 0) {
+      throw new IOException("Stream active");
+    }
+    classHandles.clear();
+    writeTag(TAG_RESET);
+  }
+
+  @Override
+  public void defaultWriteObject() throws IOException {
+    throw new NotActiveException("Not supported by binary format");
+  }
+
+  @Override
+  public PutField putFields() throws IOException {
+    throw new NotActiveException("Not supported by binary format");
+  }
+
+  @Override
+  public void writeFields() throws IOException {
+    throw new NotActiveException("Not supported by binary format");
+  }
+
+  @Override
+  public void useProtocolVersion(int version) throws IOException {
+  }
+
+  /**
+   * This method is called for each object that is written (except for
+   * <code>null</code>, strings and primitive wrappers), and returns the object
+   * to write in its place. This implementation returns the object as is.
+   */
+  @Override
+  protected Object replaceObject(Object obj) throws IOException {
+    return obj;
+  }
+
+  // --------------------------------------------------------------------------
+  // Primitive output
+
+  @Override
+  public void write(int b) throws IOException {
+    ensure(1);
+    buf[pos++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b) throws IOException {
+    write(b, 0, b.length);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (len >= BUFSIZE) {
+      drain();
+      out.write(b, off, len);
+    } else {
+      ensure(len);
+      System.arraycopy(b, off, buf, pos, len);
+      pos += len;
+    }
+  }
+
+  @Override
+  public void writeBoolean(boolean v) throws IOException {
+    write(v ? 1 : 0);
+  }
+
+  @Override
+  public void writeByte(int v) throws IOException {
+    write(v);
+  }
+
+  @Override
+  public void writeShort(int v) throws IOException {
+    ensure(2);
+    buf[pos++] = (byte) (v >>> 8);
+    buf[pos++] = (byte) v;
+  }
+
+  @Override
+  public void writeChar(int v) throws IOException {
+    writeShort(v);
+  }
+
+  @Override
+  public void writeInt(int v) throws IOException {
+    ensure(4);
+    buf[pos++] = (byte) (v >>> 24);
+    buf[pos++] = (byte) (v >>> 16);
+    buf[pos++] = (byte) (v >>> 8);
+    buf[pos++] = (byte) v;
+  }
+
+  @Override
+  public void writeLong(long v) throws IOException {
+    writeInt((int) (v >>> 32));
+    writeInt((int) v);
+  }
+
+  @Override
+  public void writeFloat(float v) throws IOException {
+    writeInt(Float.floatToIntBits(v));
+  }
+
+  @Override
+  public void writeDouble(double v) throws IOException {
+    writeLong(Double.doubleToLongBits(v));
+  }
+
+  @Override
+  public void writeBytes(String s) throws IOException {
+    for (int i = 0; i < s.length(); i++) {
+      write(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeChars(String s) throws IOException {
+    for (int i = 0; i < s.length(); i++) {
+      writeChar(s.charAt(i));
+    }
+  }
+
+  @Override
+  public void writeUTF(String s) throws IOException {
+    writeString(s);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    drain();
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    out.close();
+  }
+
+  @Override
+  protected void drain() throws IOException {
+    if (pos > 0) {
+      out.write(buf, 0, pos);
+      pos = 0;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted methods
+
+  private void doWriteObject(Object obj) throws IOException {
+    depth++;
+    try {
+      writeValue(obj);
+    } finally {
+      if (--depth == 0) {
+        objectHandles.clear();
+      }
+    }
+  }
+
+  private void writeValue(Object obj) throws IOException {
+    if (obj == null) {
+      writeTag(TAG_NULL);
+      return;
+    }
+
+    Class<?> type = obj.getClass();
+    if (type == String.class) {
+      writeTag(TAG_STRING);
+      writeString((String) obj);
+    } else if (type == Integer.class) {
+      writeTag(TAG_INT);
+      writeVarInt(zigZag((Integer) obj));
+    } else if (type == Long.class) {
+      writeTag(TAG_LONG);
+      writeVarLong(zigZag((Long) obj));
+    } else if (type == Boolean.class) {
+      writeTag(((Boolean) obj) ? TAG_TRUE : TAG_FALSE);
+    } else if (type == Double.class) {
+      writeTag(TAG_DOUBLE);
+      writeDouble((Double) obj);
+    } else if (type == Float.class) {
+      writeTag(TAG_FLOAT);
+      writeFloat((Float) obj);
+    } else if (type == Short.class) {
+      writeTag(TAG_SHORT);
+      writeShort((Short) obj);
+    } else if (type == Byte.class) {
+      writeTag(TAG_BYTE);
+      writeByte((Byte) obj);
+    } else if (type == Character.class) {
+      writeTag(TAG_CHAR);
+      writeChar((Character) obj);
+    } else {
+      Integer handle = objectHandles.get(obj);
+      if (handle != null) {
+        writeTag(TAG_REF);
+        writeVarInt(handle);
+      } else {
+        Object replacement = replaceObject(obj);
+        if (replacement == obj) {
+          writeInstance(obj, obj, type);
+        } else if (replacement == null || isValue(replacement.getClass())) {
+          writeValue(replacement);
+        } else {
+          writeInstance(obj, replacement, replacement.getClass());
+        }
+      }
+    }
+  }
+
+  private void writeInstance(Object original, Object obj, Class<?> type) throws IOException {
+    if (type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+      writeTag(TAG_ENUM);
+      writeClass(((Enum<?>) obj).getDeclaringClass());
+      writeString(((Enum<?>) obj).name());
+    } else if (type == Date.class) {
+      writeTag(TAG_DATE);
+      writeLong(((Date) obj).getTime());
+    } else {
+      objectHandles.put(original, objectHandles.size());
+      writeContent(obj, type);
+    }
+  }
+
+  private void writeContent(Object obj, Class<?> type) throws IOException {
+    if (type.isArray()) {
+      writeArray(obj, type.getComponentType());
+    } else if (COLLECTION_CLASSES.contains(type)) {
+      Collection<?> c = (Collection<?>) obj;
+      writeTag(TAG_COLLECTION);
+      writeClass(type);
+      writeVarInt(c.size());
+      for (Object e : c) {
+        writeValue(e);
+      }
+    } else if (MAP_CLASSES.contains(type)) {
+      Map<?, ?> m = (Map<?, ?>) obj;
+      writeTag(TAG_MAP);
+      writeClass(type);
+      writeVarInt(m.size());
+      for (Map.Entry<?, ?> e : m.entrySet()) {
+        writeValue(e.getKey());
+        writeValue(e.getValue());
+      }
+    } else {
+      ClassInfo info = ClassInfo.forClass(type);
+      switch (info.kind) {
+      case EXTERNALIZABLE:
+        writeTag(TAG_EXTERNAL);
+        writeClass(type);
+        ((Externalizable) obj).writeExternal(this);
+        break;
+      case FIELDS:
+        writeTag(TAG_OBJECT);
+        writeClass(type);
+        writeFields(obj, info.fields);
+        break;
+      case JDK:
+        writeTag(TAG_JDK);
+        writeJdk(obj);
+        break;
+      default:
+        throw new NotSerializableException(type.getName());
+      }
+    }
+  }
+
+  private void writeFields(Object obj, FieldInfo[] fields) throws IOException {
+    try {
+      for (FieldInfo f : fields) {
+        switch (f.type) {
+        case 'Z':
+          writeBoolean(f.field.getBoolean(obj));
+          break;
+        case 'B':
+          writeByte(f.field.getByte(obj));
+          break;
+        case 'S':
+          writeShort(f.field.getShort(obj));
+          break;
+        case 'C':
+          writeChar(f.field.getChar(obj));
+          break;
+        case 'I':
+          writeVarInt(zigZag(f.field.getInt(obj)));
+          break;
+        case 'J':
+          writeVarLong(zigZag(f.field.getLong(obj)));
+          break;
+        case 'F':
+          writeFloat(f.field.getFloat(obj));
+          break;
+        case 'D':
+          writeDouble(f.field.getDouble(obj));
+          break;
+        default:
+          writeValue(f.field.get(obj));
+        }
+      }
+    } catch (IllegalAccessException e) {
+      throw new IOException("Could not access field of " + obj.getClass().getName(), e);
+    }
+  }
+
+  private void writeArray(Object array, Class<?> componentType) throws IOException {
+    if (componentType == byte.class) {
+      byte[] a = (byte[]) array;
+      writeTag(TAG_BYTE_ARRAY);
+      writeVarInt(a.length);
+      write(a);
+    } else if (componentType == int.class) {
+      int[] a = (int[]) array;
+      writeTag(TAG_INT_ARRAY);
+      writeVarInt(a.length);
+      for (int v : a) {
+        writeVarInt(zigZag(v));
+      }
+    } else if (componentType == long.class) {
+      long[] a = (long[]) array;
+      writeTag(TAG_LONG_ARRAY);
+      writeVarInt(a.length);
+      for (long v : a) {
+        writeVarLong(zigZag(v));
+      }
+    } else if (componentType == double.class) {
+      double[] a = (double[]) array;
+      writeTag(TAG_DOUBLE_ARRAY);
+      writeVarInt(a.length);
+      for (double v : a) {
+        writeDouble(v);
+      }
+    } else if (componentType == float.class) {
+      float[] a = (float[]) array;
+      writeTag(TAG_FLOAT_ARRAY);
+      writeVarInt(a.length);
+      for (float v : a) {
+        writeFloat(v);
+      }
+    } else if (componentType == boolean.class) {
+      boolean[] a = (boolean[]) array;
+      writeTag(TAG_BOOLEAN_ARRAY);
+      writeVarInt(a.length);
+      for (boolean v : a) {
+        writeBoolean(v);
+      }
+    } else if (componentType == short.class) {
+      short[] a = (short[]) array;
+      writeTag(TAG_SHORT_ARRAY);
+      writeVarInt(a.length);
+      for (short v : a) {
+        writeShort(v);
+      }
+    } else if (componentType == char.class) {
+      char[] a = (char[]) array;
+      writeTag(TAG_CHAR_ARRAY);
+      writeVarInt(a.length);
+      for (char v : a) {
+        writeChar(v);
+      }
+    } else {
+      Object[] a = (Object[]) array;
+      writeTag(TAG_OBJECT_ARRAY);
+      writeClass(componentType);
+      writeVarInt(a.length);
+      for (Object v : a) {
+        writeValue(v);
+      }
+    }
+  }
+
+  private void writeJdk(Object obj) throws IOException {
+    if (jdkBytes == null) {
+      jdkBytes = new ByteArrayOutputStream(BUFSIZE);
+    } else {
+      jdkBytes.reset();
+    }
+    JdkOutputStream jdk = new JdkOutputStream(jdkBytes);
+    jdk.writeObject(obj);
+    jdk.flush();
+    writeVarInt(jdkBytes.size());
+    drain();
+    jdkBytes.writeTo(out);
+  }
+
+  private void writeClass(Class<?> type) throws IOException {
+    int id = registry.getId(type);
+    if (id > 0) {
+      writeVarInt((id << 2) | CLASS_REGISTERED);
+      return;
+    }
+    Integer handle = classHandles.get(type);
+    if (handle != null) {
+      writeVarInt((handle << 2) | CLASS_HANDLE);
+    } else {
+      classHandles.put(type, classHandles.size());
+      writeVarInt(CLASS_NEW);
+      writeString(type.getName());
+    }
+  }
+
+  private void writeTag(int tag) throws IOException {
+    write(tag);
+  }
+
+  private void writeString(String s) throws IOException {
+    int len = s.length();
+    writeVarInt(len);
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        ensure(1);
+        buf[pos++] = (byte) c;
+      } else {
+        writeVarInt(c);
+      }
+    }
+  }
+
+  private void writeVarInt(int v) throws IOException {
+    ensure(5);
+    while ((v & ~0x7F) != 0) {
+      buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[pos++] = (byte) v;
+  }
+
+  private void writeVarLong(long v) throws IOException {
+    ensure(10);
+    while ((v & ~0x7FL) != 0) {
+      buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    buf[pos++] = (byte) v;
+  }
+
+  private void ensure(int len) throws IOException {
+    if (pos + len > buf.length) {
+      drain();
+    }
+  }
+
+  private static boolean isValue(Class<?> type) {
+    return type == String.class || type == Integer.class || type == Long.class || type == Boolean.class || type == Double.class
+        || type == Float.class || type == Short.class || type == Byte.class || type == Character.class;
+  }
+
+  private static int zigZag(int v) {
+    return (v << 1) ^ (v >> 31);
+  }
+
+  private static long zigZag(long v) {
+    return (v << 1) ^ (v >> 63);
+  }
+
+  // ==========================================================================
+
+  /**
+   * Writes objects that fall back to JDK serialization: objects nested in such
+   * objects are still passed to {@link BinaryObjectOutputStream#replaceObject(Object)}.
+   */
+  private class JdkOutputStream extends ObjectOutputStream {
+
+    private JdkOutputStream(OutputStream os) throws IOException {
+      super(os);
+      enableReplaceObject(true);
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) throws IOException {
+      return BinaryObjectOutputStream.this.replaceObject(obj);
+    }
+  }
+}
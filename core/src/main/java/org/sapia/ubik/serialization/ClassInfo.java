@@ -0,0 +1,258 @@
+package org.sapia.ubik.serialization;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds how the instances of a given class are written in the binary format
+ * (see {@link BinaryObjectOutputStream}), and the reflective data used to do
+ * so. Instances are cached per class.
+ *
+ * @author yduchesne
+ *
+ */
+final class ClassInfo {
+
+  /**
+   * Indicates how the instances of a class are written.
+   */
+  enum Kind {
+
+    /**
+     * The instances are written by calling their
+     * {@link Externalizable#writeExternal(java.io.ObjectOutput)} method.
+     */
+    EXTERNALIZABLE,
+
+    /**
+     * The values of the instances' fields are written one after the other.
+     */
+    FIELDS,
+
+    /**
+     * The instances are written with JDK serialization, since their class
+     * customizes it (or is a JDK class).
+     */
+    JDK,
+
+    /**
+     * The instances cannot be serialized.
+     */
+    NOT_SERIALIZABLE
+  }
+
+  // --------------------------------------------------------------------------
+
+  /**
+   * Holds a serialized field, together with the code of its type.
+   */
+  static final class FieldInfo {
+
+    final Field field;
+    final char  type;
+
+    private FieldInfo(Field field) {
+      this.field = field;
+      Class<?> t = field.getType();
+      if (!t.isPrimitive()) {
+        type = 'L';
+      } else if (t == boolean.class) {
+        type = 'Z';
+      } else if (t == long.class) {
+        type = 'J';
+      } else {
+        type = Character.toUpperCase(t.getName().charAt(0));
+      }
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  private static final String[] SYSTEM_PACKAGES = { "java.", "javax.", "sun.", "com.sun.", "jdk." };
+
+  private static final String[] CUSTOM_SERIALIZATION_METHODS = { "writeObject", "readObject", "readObjectNoData" };
+
+  private static final String[] REPLACEMENT_METHODS = { "writeReplace", "readResolve" };
+
+  private static final FieldInfo[] NO_FIELDS = new FieldInfo[0];
+
+  private static final ConcurrentHashMap<Class<?>, ClassInfo> CACHE = new ConcurrentHashMap<Class<?>, ClassInfo>();
+
+  final Kind              kind;
+  final FieldInfo[]       fields;
+  private Class<?>        type;
+  private Constructor<?>  constructor;
+
+  private ClassInfo(Class<?> type, Kind kind, Constructor<?> constructor, FieldInfo[] fields) {
+    this.type = type;
+    this.kind = kind;
+    this.constructor = constructor;
+    this.fields = fields;
+  }
+
+  /**
+   * @return a new instance of this instance's class, created with its no-args
+   *         constructor.
+   * @throws IOException
+   *           if the instance could not be created.
+   */
+  Object newInstance() throws IOException {
+    try {
+      return constructor.newInstance();
+    } catch (InvocationTargetException e) {
+      throw new InvalidClassException(type.getName(), "Error caught creating instance: " + e.getTargetException());
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new InvalidClassException(type.getName(), "Could not create instance: " + e);
+    }
+  }
+
+  /**
+   * @param type
+   *          a {@link Class}.
+   * @return the {@link ClassInfo} corresponding to the given class.
+   */
+  static ClassInfo forClass(Class<?> type) {
+    ClassInfo info = CACHE.get(type);
+    if (info == null) {
+      info = doCreate(type);
+      ClassInfo existing = CACHE.putIfAbsent(type, info);
+      if (existing != null) {
+        info = existing;
+      }
+    }
+    return info;
+  }
+
+  // --------------------------------------------------------------------------
+
+  private static ClassInfo doCreate(Class<?> type) {
+    if (!Serializable.class.isAssignableFrom(type)) {
+      return new ClassInfo(type, Kind.NOT_SERIALIZABLE, null, NO_FIELDS);
+    }
+    if (type.isArray() || type.isEnum() || Proxy.isProxyClass(type) || declaresAny(type, REPLACEMENT_METHODS)) {
+      return jdk(type);
+    }
+    if (Externalizable.class.isAssignableFrom(type)) {
+      Constructor<?> ctor = accessibleConstructor(type);
+      return ctor == null || !Modifier.isPublic(ctor.getModifiers()) ? jdk(type) : new ClassInfo(type, Kind.EXTERNALIZABLE, ctor, NO_FIELDS);
+    }
+    if (extendsSystemClass(type) || declaresAny(type, CUSTOM_SERIALIZATION_METHODS) || declaresPersistentFields(type)) {
+      return jdk(type);
+    }
+    Constructor<?> ctor = accessibleConstructor(type);
+    if (ctor == null) {
+      return jdk(type);
+    }
+    try {
+      return new ClassInfo(type, Kind.FIELDS, ctor, serializedFields(type));
+    } catch (RuntimeException e) {
+      // fields could not be made accessible
+      return jdk(type);
+    }
+  }
+
+  private static ClassInfo jdk(Class<?> type) {
+    return new ClassInfo(type, Kind.JDK, null, NO_FIELDS);
+  }
+
+  private static boolean isSystemClass(Class<?> type) {
+    for (String p : SYSTEM_PACKAGES) {
+      if (type.getName().startsWith(p)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean extendsSystemClass(Class<?> type) {
+    for (Class<?> current = type; current != null && Serializable.class.isAssignableFrom(current); current = current.getSuperclass()) {
+      if (isSystemClass(current)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean declaresAny(Class<?> type, String[] methodNames) {
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Method m : current.getDeclaredMethods()) {
+        if (!Modifier.isStatic(m.getModifiers())) {
+          for (String n : methodNames) {
+            if (n.equals(m.getName())) {
+              return true;
+            }
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean declaresPersistentFields(Class<?> type) {
+    for (Class<?> current = type; current != null && Serializable.class.isAssignableFrom(current); current = current.getSuperclass()) {
+      try {
+        Field f = current.getDeclaredField("serialPersistentFields");
+        if (f.getType() == ObjectStreamField[].class) {
+          return true;
+        }
+      } catch (NoSuchFieldException e) {
+        // noop
+      }
+    }
+    return false;
+  }
+
+  private static Constructor<?> accessibleConstructor(Class<?> type) {
+    if (Modifier.isAbstract(type.getModifiers())) {
+      return null;
+    }
+    try {
+      Constructor<?> ctor = type.getDeclaredConstructor();
+      ctor.setAccessible(true);
+      return ctor;
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static FieldInfo[] serializedFields(Class<?> type) {
+    List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+    for (Class<?> current = type; current != null && Serializable.class.isAssignableFrom(current); current = current.getSuperclass()) {
+      hierarchy.add(0, current);
+    }
+    List<FieldInfo> fields = new ArrayList<FieldInfo>();
+    for (Class<?> c : hierarchy) {
+      Field[] declared = c.getDeclaredFields();
+      Arrays.sort(declared, new Comparator<Field>() {
+        @Override
+        public int compare(Field f1, Field f2) {
+          return f1.getName().compareTo(f2.getName());
+        }
+      });
+      for (Field f : declared) {
+        int mod = f.getModifiers();
+        if (!Modifier.isStatic(mod) && !Modifier.isTransient(mod)) {
+          f.setAccessible(true);
+          fields.add(new FieldInfo(f));
+        }
+      }
+    }
+    return fields.toArray(new FieldInfo[fields.size()]);
+  }
+}
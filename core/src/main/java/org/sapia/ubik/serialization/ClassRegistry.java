@@ -0,0 +1,91 @@
+package org.sapia.ubik.serialization;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sapia.ubik.util.Assertions;
+
+/**
+ * Holds the classes that are registered with the binary serialization format
+ * (see {@link BinaryObjectOutputStream}): an instance of a registered class is
+ * written with the numeric identifier of its class, rather than with the
+ * class' name.
+ * <p>
+ * A class must be registered with the same identifier on both the sending and
+ * the receiving side: classes should thus be registered in the same order, or
+ * with explicit identifiers.
+ *
+ * @author yduchesne
+ *
+ */
+public class ClassRegistry {
+
+  private Map<Class<?>, Integer> idsByClass = new ConcurrentHashMap<Class<?>, Integer>();
+  private Map<Integer, Class<?>> classesById = new ConcurrentHashMap<Integer, Class<?>>();
+  private int                    lastId;
+
+  /**
+   * Registers the given class with the identifier following the greatest one
+   * registered so far. This method has no effect if the class is already
+   * registered.
+   *
+   * @param clazz
+   *          the {@link Class} to register.
+   * @return this instance.
+   */
+  public synchronized ClassRegistry register(Class<?> clazz) {
+    if (!idsByClass.containsKey(clazz)) {
+      register(lastId + 1, clazz);
+    }
+    return this;
+  }
+
+  /**
+   * @param id
+   *          the identifier to register the given class with (must be greater
+   *          than 0).
+   * @param clazz
+   *          the {@link Class} to register.
+   * @return this instance.
+   * @throws IllegalArgumentException
+   *           if the given identifier is invalid, or if the given class or
+   *           identifier are already registered.
+   */
+  public synchronized ClassRegistry register(int id, Class<?> clazz) {
+    Assertions.isTrue(id > 0, "Class identifier must be greater than 0, got: %s", id);
+    Assertions.isFalse(idsByClass.containsKey(clazz), "Class %s already registered", clazz.getName());
+    Assertions.isFalse(classesById.containsKey(id), "Class identifier %s already registered for %s", id, classesById.get(id));
+    idsByClass.put(clazz, id);
+    classesById.put(id, clazz);
+    lastId = Math.max(lastId, id);
+    return this;
+  }
+
+  /**
+   * @param clazz
+   *          a {@link Class}.
+   * @return the identifier with which the given class is registered, or 0 if
+   *         it is not registered.
+   */
+  public int getId(Class<?> clazz) {
+    Integer id = idsByClass.get(clazz);
+    return id == null ? 0 : id;
+  }
+
+  /**
+   * @param id
+   *          a class identifier.
+   * @return the {@link Class} registered with the given identifier, or
+   *         <code>null</code> if no class is registered with it.
+   */
+  public Class<?> getClass(int id) {
+    return classesById.get(id);
+  }
+
+  /**
+   * @return the number of registered classes.
+   */
+  public int size() {
+    return idsByClass.size();
+  }
+}
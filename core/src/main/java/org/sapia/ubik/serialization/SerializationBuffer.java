@@ -0,0 +1,228 @@
+package org.sapia.ubik.serialization;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.jboss.serial.io.JBossObjectOutputStream;
+
+/**
+ * A growable byte buffer into which objects are serialized, and which is meant
+ * to be recycled (see {@link SerializationBuffers}): both the buffer's byte
+ * array and its {@link ObjectOutputStream} are kept from one use to the next.
+ * <p>
+ * Each use of an instance produces a self-contained stream: the object stream
+ * is reset between uses, and its header is rewritten at the beginning of the
+ * buffer. The bytes are accessible without being copied (see
+ * {@link #getBytes()} and {@link #size()}), up to the moment the instance is
+ * released.
+ * <p>
+ * Typical usage:
+ *
+ * <pre>
+ * SerializationBuffer buf = buffers.acquire();
+ * try {
+ *   buf.writeObject(toSerialize);
+ *   out.write(buf.getBytes(), 0, buf.size());
+ * } finally {
+ *   buf.release();
+ * }
+ * </pre>
+ *
+ * @author yduchesne
+ *
+ */
+public class SerializationBuffer extends OutputStream {
+
+  /**
+   * Creates the {@link ObjectOutputStream}s of {@link SerializationBuffer}s.
+   */
+  public interface StreamFactory {
+
+    /**
+     * @param os
+     *          the {@link OutputStream} to write to.
+     * @return a new {@link ObjectOutputStream}.
+     * @throws IOException
+     *           if an I/O error occurs creating the stream.
+     */
+    public ObjectOutputStream createOutputStream(OutputStream os) throws IOException;
+
+  }
+
+  // ==========================================================================
+
+  private StreamFactory      factory;
+  private int                initialSize;
+  private int                maxRetainedSize;
+  private byte[]             bytes;
+  private int                count;
+  private ObjectOutputStream stream;
+  private byte[]             header;
+  private boolean            inUse;
+
+  /**
+   * @param factory
+   *          the {@link StreamFactory} to use to create this instance's object
+   *          stream.
+   * @param initialSize
+   *          the initial size of this instance's byte array.
+   * @param maxRetainedSize
+   *          the maximum size of the byte array that this instance keeps once
+   *          released: a bigger array is replaced by one of the initial size.
+   */
+  public SerializationBuffer(StreamFactory factory, int initialSize, int maxRetainedSize) {
+    this.factory = factory;
+    this.initialSize = initialSize;
+    this.maxRetainedSize = maxRetainedSize;
+    this.bytes = new byte[initialSize];
+  }
+
+  /**
+   * @return <code>true</code> if this instance is currently in use (it has been
+   *         acquired and not released yet).
+   */
+  public boolean isInUse() {
+    return inUse;
+  }
+
+  /**
+   * Prepares this instance for a new use.
+   *
+   * @throws IOException
+   *           if an I/O error occurs resetting this instance's object stream.
+   */
+  void acquire() throws IOException {
+    inUse = true;
+    count = 0;
+    if (stream == null || header == null) {
+      createStream();
+    } else {
+      try {
+        stream.reset();
+        stream.flush();
+      } catch (IOException | RuntimeException e) {
+        stream = null;
+        throw e;
+      }
+      count = 0;
+      write(header, 0, header.length);
+    }
+  }
+
+  /**
+   * Releases this instance, which should not be used anymore by the caller.
+   */
+  public void release() {
+    inUse = false;
+    if (bytes.length > maxRetainedSize) {
+      bytes = new byte[initialSize];
+      count = 0;
+    }
+  }
+
+  /**
+   * @return the {@link ObjectOutputStream} that writes to this instance.
+   */
+  public ObjectOutputStream getObjectOutputStream() {
+    return stream;
+  }
+
+  /**
+   * Serializes the given object to this instance, and flushes the object
+   * stream.
+   *
+   * @param toSerialize
+   *          the object to serialize.
+   * @throws IOException
+   *           if an I/O error occurs while serializing.
+   */
+  public void writeObject(Object toSerialize) throws IOException {
+    try {
+      stream.writeObject(toSerialize);
+      stream.flush();
+    } catch (IOException | RuntimeException e) {
+      // the stream's state is unknown: it will be recreated
+      stream = null;
+      throw e;
+    }
+  }
+
+  /**
+   * @return this instance's internal byte array, which holds the serialized
+   *         bytes from index 0 to {@link #size()} (exclusively).
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return the number of serialized bytes.
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * @return a copy of the serialized bytes.
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(bytes, count);
+  }
+
+  /**
+   * @return an {@link InputStream} over the serialized bytes (which are not
+   *         copied).
+   */
+  public InputStream toInputStream() {
+    return new ByteArrayInputStream(bytes, 0, count);
+  }
+
+  /**
+   * @param os
+   *          the {@link OutputStream} to which to write the serialized bytes.
+   * @throws IOException
+   *           if an I/O error occurs while writing.
+   */
+  public void writeTo(OutputStream os) throws IOException {
+    os.write(bytes, 0, count);
+  }
+
+  // --------------------------------------------------------------------------
+  // OutputStream
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(count + 1);
+    bytes[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    ensureCapacity(count + len);
+    System.arraycopy(b, off, bytes, count, len);
+    count += len;
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted methods
+
+  private void createStream() throws IOException {
+    stream = null;
+    ObjectOutputStream created = factory.createOutputStream(this);
+    created.flush();
+    // JBoss streams are not guaranteed to return to their initial state when
+    // reset: a new one is then created for each use
+    header = created instanceof JBossObjectOutputStream ? null : toByteArray();
+    stream = created;
+  }
+
+  private void ensureCapacity(int required) {
+    if (required > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length << 1));
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package org.sapia.ubik.serialization;
+
+import java.io.IOException;
+
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.serialization.SerializationBuffer.StreamFactory;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * Keeps one {@link SerializationBuffer} per thread, for a given
+ * {@link StreamFactory}. If a thread acquires a buffer while it already holds
+ * the one kept for it (when serialization is nested, for example), a new,
+ * non-recycled buffer is returned.
+ * <p>
+ * The initial size of the buffers corresponds to the
+ * {@link Consts#MARSHALLING_BUFSIZE} property, and the maximum size of the
+ * buffers that are kept between uses to the
+ * {@link Consts#MARSHALLING_BUFFER_MAX_RETAINED_SIZE} property.
+ *
+ * @author yduchesne
+ *
+ */
+public class SerializationBuffers {
+
+  private StreamFactory                     factory;
+  private int                               initialSize;
+  private int                               maxRetainedSize;
+  private ThreadLocal<SerializationBuffer> buffers = new ThreadLocal<SerializationBuffer>();
+
+  /**
+   * @param factory
+   *          the {@link StreamFactory} with which buffers create their object
+   *          streams.
+   */
+  public SerializationBuffers(StreamFactory factory) {
+    this(factory, Conf.getSystemProperties());
+  }
+
+  /**
+   * @param factory
+   *          the {@link StreamFactory} with which buffers create their object
+   *          streams.
+   * @param conf
+   *          the {@link Conf} holding this instance's configuration.
+   */
+  public SerializationBuffers(StreamFactory factory, Conf conf) {
+    this.factory = factory;
+    this.initialSize = conf.getIntProperty(Consts.MARSHALLING_BUFSIZE, Defaults.DEFAULT_MARSHALLING_BUFSIZE);
+    this.maxRetainedSize = conf.getIntProperty(Consts.MARSHALLING_BUFFER_MAX_RETAINED_SIZE, Defaults.DEFAULT_MARSHALLING_BUFFER_MAX_RETAINED_SIZE);
+  }
+
+  /**
+   * @return a {@link SerializationBuffer}, ready to be written to. The buffer
+   *         must be released by the caller once done with it.
+   * @throws IOException
+   *           if an I/O error occurs preparing the buffer.
+   */
+  public SerializationBuffer acquire() throws IOException {
+    SerializationBuffer buf = buffers.get();
+    if (buf == null) {
+      buf = new SerializationBuffer(factory, initialSize, maxRetainedSize);
+      buffers.set(buf);
+    } else if (buf.isInUse()) {
+      buf = new SerializationBuffer(factory, initialSize, maxRetainedSize);
+    }
+    try {
+      buf.acquire();
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw e;
+    }
+    return buf;
+  }
+
+}
@@ -19,9 +19,27 @@ import org.jboss.serial.io.JBossObjectOutputStream;
  */
 public class SerializationStreams {
 
+  private static final SerializationBuffers BUFFERS = new SerializationBuffers(new SerializationBuffer.StreamFactory() {
+    @Override
+    public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+      return createObjectOutputStream(os);
+    }
+  });
+
   private SerializationStreams() {
   }
 
+  /**
+   * @return a {@link SerializationBuffer} whose stream is created with
+   *         {@link #createObjectOutputStream(OutputStream)}. The buffer must be
+   *         released once done with it.
+   * @throws IOException
+   *           if an I/O error occurs preparing the buffer.
+   */
+  public static SerializationBuffer acquireBuffer() throws IOException {
+    return BUFFERS.acquire();
+  }
+
   public static ObjectOutputStream createObjectOutputStream(OutputStream os) throws IOException {
     if (JBossSerializationDetector.isJbossSerializationDetected()) {
       return new JBossObjectOutputStream(os);
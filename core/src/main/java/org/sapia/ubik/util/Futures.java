@@ -0,0 +1,67 @@
+package org.sapia.ubik.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Provides {@link CompletableFuture}-related utility methods.
+ *
+ * @author yduchesne
+ *
+ */
+public final class Futures {
+
+  private Futures() {
+  }
+
+  /**
+   * @param error
+   *          the {@link Throwable} with which to complete the returned future.
+   * @return a {@link CompletableFuture} that is completed exceptionally with
+   *         the given error.
+   */
+  public static <T> CompletableFuture<T> failed(Throwable error) {
+    CompletableFuture<T> future = new CompletableFuture<T>();
+    future.completeExceptionally(error);
+    return future;
+  }
+
+  /**
+   * Behaves as {@link CompletableFuture#supplyAsync(Supplier, Executor)},
+   * except that if the given executor rejects the task, the returned future
+   * is completed with the {@link RejectedExecutionException}, rather than that
+   * exception being thrown.
+   *
+   * @param supplier
+   *          the {@link Supplier} providing the value with which to complete
+   *          the returned future.
+   * @param executor
+   *          the {@link Executor} to use.
+   * @return a new {@link CompletableFuture}.
+   */
+  public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier, Executor executor) {
+    try {
+      return CompletableFuture.supplyAsync(supplier, executor);
+    } catch (RejectedExecutionException e) {
+      return failed(e);
+    }
+  }
+
+  /**
+   * @param error
+   *          an error with which a {@link CompletableFuture} was completed.
+   * @return the given error's cause, if the error is a
+   *         {@link CompletionException} or an {@link ExecutionException} that
+   *         wraps it - or the given error otherwise.
+   */
+  public static Throwable unwrap(Throwable error) {
+    while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+      error = error.getCause();
+    }
+    return error;
+  }
+}
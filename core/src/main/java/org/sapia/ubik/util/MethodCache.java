@@ -0,0 +1,135 @@
+package org.sapia.ubik.util;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sapia.ubik.rmi.server.transport.ClassDescriptor;
+
+/**
+ * An instance of this class caches the {@link Method}s that are invoked on
+ * remote objects, on a per-class basis. Methods are looked up by name and
+ * signature, and are made accessible once, when first cached: this spares the
+ * reflective lookup (and the access check) that would otherwise take place at
+ * each invocation.
+ * <p>
+ * The signature of a method may be given either as {@link ClassDescriptor}s (as
+ * received over the wire) or as {@link Class} instances. In the former case,
+ * the parameter types need not be resolved when the method is already cached:
+ * they may be obtained from the cached {@link Method} itself.
+ *
+ * @author yduchesne
+ *
+ */
+public class MethodCache {
+
+  private ConcurrentHashMap<Class<?>, Map<String, Method>> methodsByClass = new ConcurrentHashMap<Class<?>, Map<String, Method>>();
+
+  /**
+   * Clears this instance's entries.
+   */
+  public void clear() {
+    methodsByClass.clear();
+  }
+
+  /**
+   * Clears the entries whose class has the given {@link ClassLoader} in its
+   * hierarchy.
+   *
+   * @param loader
+   *          a {@link ClassLoader}.
+   */
+  public void clearFor(final ClassLoader loader) {
+    Collects.forEach(methodsByClass.keySet(), new Condition<Class<?>>() {
+      @Override
+      public boolean apply(Class<?> item) {
+        ClassLoader current = item.getClassLoader();
+        while (current != null) {
+          if (current.equals(loader)) {
+            methodsByClass.remove(item);
+            break;
+          }
+          current = current.getParent();
+        }
+        return true;
+      }
+    });
+  }
+
+  /**
+   * @param clazz
+   *          the {@link Class} on which the method is to be invoked.
+   * @param methodName
+   *          the name of the method.
+   * @param signature
+   *          the {@link ClassDescriptor}s corresponding to the method's
+   *          parameter types.
+   * @return the cached {@link Method}, or <code>null</code> if no such method
+   *         is cached.
+   */
+  public Method getCachedMethod(Class<?> clazz, String methodName, ClassDescriptor[] signature) {
+    Map<String, Method> methods = methodsByClass.get(clazz);
+    if (methods == null) {
+      return null;
+    }
+    return methods.get(keyFor(methodName, signature));
+  }
+
+  /**
+   * Returns the public method with the given name and parameter types, caching
+   * it if it was not already.
+   *
+   * @param clazz
+   *          the {@link Class} on which the method is to be invoked.
+   * @param methodName
+   *          the name of the method.
+   * @param paramTypes
+   *          the method's parameter types.
+   * @return the {@link Method} corresponding to the given name and parameter
+   *         types, made accessible.
+   * @throws NoSuchMethodException
+   *           if no such method exists.
+   */
+  public Method getMethod(Class<?> clazz, String methodName, Class<?>[] paramTypes) throws NoSuchMethodException {
+    Map<String, Method> methods = methodsByClass.get(clazz);
+    if (methods == null) {
+      methods = new ConcurrentHashMap<String, Method>();
+      Map<String, Method> existing = methodsByClass.putIfAbsent(clazz, methods);
+      if (existing != null) {
+        methods = existing;
+      }
+    }
+    String key = keyFor(methodName, paramTypes);
+    Method method = methods.get(key);
+    if (method == null) {
+      method = clazz.getMethod(methodName, paramTypes);
+      method.setAccessible(true);
+      methods.put(key, method);
+    }
+    return method;
+  }
+
+  // --------------------------------------------------------------------------
+
+  private static String keyFor(String methodName, ClassDescriptor[] signature) {
+    StringBuilder key = new StringBuilder(methodName).append('(');
+    for (int i = 0; i < signature.length; i++) {
+      if (i > 0) {
+        key.append(',');
+      }
+      key.append(signature[i].getClassName());
+    }
+    return key.append(')').toString();
+  }
+
+  private static String keyFor(String methodName, Class<?>[] paramTypes) {
+    StringBuilder key = new StringBuilder(methodName).append('(');
+    for (int i = 0; paramTypes != null && i < paramTypes.length; i++) {
+      if (i > 0) {
+        key.append(',');
+      }
+      key.append(paramTypes[i].getName());
+    }
+    return key.append(')').toString();
+  }
+}
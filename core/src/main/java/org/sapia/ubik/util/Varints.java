@@ -0,0 +1,96 @@
+package org.sapia.ubik.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+/**
+ * Provides methods for writing and reading variable-length integers: values
+ * are written 7 bits at a time, the high bit of each byte indicating if more
+ * bytes follow. Small positive values thus take a single byte.
+ * <p>
+ * Negative values always take the maximum number of bytes (5 for ints, 10 for
+ * longs): these methods are meant for values that are expected to be positive.
+ *
+ * @author yduchesne
+ *
+ */
+public final class Varints {
+
+  private static final int MAX_INT_BYTES  = 5;
+  private static final int MAX_LONG_BYTES = 10;
+
+  private Varints() {
+  }
+
+  /**
+   * @param out
+   *          the {@link DataOutput} to write to.
+   * @param value
+   *          the int value to write.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  public static void writeVarInt(DataOutput out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /**
+   * @param in
+   *          the {@link DataInput} to read from.
+   * @return the int value that was read.
+   * @throws IOException
+   *           if an I/O error occurs, or if the value is malformed.
+   */
+  public static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for (int i = 0; i < MAX_INT_BYTES; i++) {
+      byte b = in.readByte();
+      value |= (b & 0x7F) << (7 * i);
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Malformed variable-length int");
+  }
+
+  /**
+   * @param out
+   *          the {@link DataOutput} to write to.
+   * @param value
+   *          the long value to write.
+   * @throws IOException
+   *           if an I/O error occurs.
+   */
+  public static void writeVarLong(DataOutput out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * @param in
+   *          the {@link DataInput} to read from.
+   * @return the long value that was read.
+   * @throws IOException
+   *           if an I/O error occurs, or if the value is malformed.
+   */
+  public static long readVarLong(DataInput in) throws IOException {
+    long value = 0;
+    for (int i = 0; i < MAX_LONG_BYTES; i++) {
+      byte b = in.readByte();
+      value |= (long) (b & 0x7F) << (7 * i);
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new StreamCorruptedException("Malformed variable-length long");
+  }
+}
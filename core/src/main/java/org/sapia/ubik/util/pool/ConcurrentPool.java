@@ -0,0 +1,541 @@
+package org.sapia.ubik.util.pool;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free counterpart of the {@link Pool} class, meant for pools that are
+ * accessed concurrently by many threads:
+ * <ul>
+ * <li>Idle objects are kept in a concurrent deque, and are reused in LIFO
+ * order: the most recently released object is handed out first (for pooled
+ * connections, this means that the warmest ones are favored, while the others
+ * are left to expire).
+ * <li>If a maximum size is specified, it is enforced with a {@link Semaphore}:
+ * callers only block if that maximum has been reached.
+ * <li>The number of idle objects may be bounded: objects released while that
+ * bound is reached are disposed of.
+ * <li>Idle objects may be evicted after a given idle time, and validated in the
+ * background; a minimum number of idle objects may also be kept. This is done
+ * by calling {@link #maintain()} periodically.
+ * </ul>
+ * This class also keeps metrics: the number of objects borrowed and created,
+ * and the number of times (and the total time) callers had to wait for an
+ * object to become available.
+ *
+ * @author yduchesne
+ *
+ */
+public abstract class ConcurrentPool<T> {
+
+  public static final long DEFAULT_ACQUIRE_TIME_OUT = -1;
+  public static final int  NO_MAX                   = 0;
+  public static final long NO_IDLE_TIMEOUT          = 0;
+
+  private static final long AVAILABILITY_WAIT_TIMEOUT = 100;
+
+  private Deque<IdleEntry<T>> idle                  = new ConcurrentLinkedDeque<IdleEntry<T>>();
+  private AtomicInteger       idleCount             = new AtomicInteger();
+  private AtomicInteger       createdCount          = new AtomicInteger();
+  private Semaphore           permits;
+  private int                 maxSize;
+  private volatile int        maxIdle               = NO_MAX;
+  private volatile int        minIdle;
+  private volatile long       idleTimeout           = NO_IDLE_TIMEOUT;
+  private volatile long       defaultAcquireTimeOut = DEFAULT_ACQUIRE_TIME_OUT;
+  private volatile long       lastUsageTime         = System.currentTimeMillis();
+
+  private AtomicLong          borrowCount           = new AtomicLong();
+  private AtomicLong          creationCount         = new AtomicLong();
+  private AtomicLong          waitCount             = new AtomicLong();
+  private AtomicLong          waitTimeNanos         = new AtomicLong();
+
+  // signaled when an object is put back into the idle ones, or disposed of,
+  // for the callers that hold a permit but found no object available
+  private Object              availability          = new Object();
+  private AtomicInteger       availabilityWaiters   = new AtomicInteger();
+
+  public ConcurrentPool() {
+    this(NO_MAX);
+  }
+
+  /**
+   * @param maxSize
+   *          the maximum number of objects that this instance may create (if
+   *          less than or equal to 0, will be interpreted as no maximum).
+   */
+  public ConcurrentPool(int maxSize) {
+    this.maxSize = maxSize;
+    if (maxSize > NO_MAX) {
+      permits = new Semaphore(maxSize);
+    }
+  }
+
+  /**
+   * @param timeout
+   *          the timeout (in millis) to use when calling {@link #acquire()}
+   *          (defaults to {@link #DEFAULT_ACQUIRE_TIME_OUT}, which means
+   *          waiting indefinitely).
+   */
+  public void setDefaultAcquireTimeout(long timeout) {
+    this.defaultAcquireTimeOut = timeout;
+  }
+
+  /**
+   * @param maxIdle
+   *          the maximum number of idle objects to keep (if less than or equal
+   *          to 0, will be interpreted as no maximum).
+   */
+  public void setMaxIdle(int maxIdle) {
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * @param minIdle
+   *          the minimum number of idle objects that {@link #maintain()} should
+   *          keep.
+   */
+  public void setMinIdle(int minIdle) {
+    this.minIdle = minIdle;
+  }
+
+  /**
+   * @param idleTimeout
+   *          the time (in millis) after which {@link #maintain()} disposes of
+   *          an idle object (if less than or equal to 0, idle objects are not
+   *          evicted).
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Acquires an object from this pool, waiting for the default acquisition
+   * timeout if the pool's maximum size has been reached.
+   *
+   * @see #acquire(long)
+   * @see #setDefaultAcquireTimeout(long)
+   */
+  public T acquire() throws InterruptedException, NoObjectAvailableException, PooledObjectCreationException {
+    return acquire(defaultAcquireTimeOut);
+  }
+
+  /**
+   * Acquires an object from this pool. If an idle object is available, the one
+   * that was released last is returned; otherwise, a new object is created. If
+   * this pool's maximum size has been reached, this method waits until an
+   * object is released, or until the given timeout has elapsed.
+   *
+   * @param timeout
+   *          the time to wait for (in millis) for an object to become
+   *          available (if less than or equal to 0, waits indefinitely).
+   * @return an object.
+   * @throws NoObjectAvailableException
+   *           if no object could be acquired within the specified amount of
+   *           time.
+   * @throws PooledObjectCreationException
+   *           if a problem occurs creating the object.
+   */
+  public T acquire(long timeout) throws InterruptedException, NoObjectAvailableException, PooledObjectCreationException {
+    lastUsageTime = System.currentTimeMillis();
+    if (permits != null && !permits.tryAcquire()) {
+      long start = System.nanoTime();
+      boolean acquired;
+      try {
+        if (timeout > 0) {
+          acquired = permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+        } else {
+          permits.acquire();
+          acquired = true;
+        }
+      } finally {
+        waitCount.incrementAndGet();
+        waitTimeNanos.addAndGet(System.nanoTime() - start);
+      }
+      if (!acquired) {
+        throw new NoObjectAvailableException();
+      }
+    }
+    return doAcquire();
+  }
+
+  /**
+   * Attempts to acquire an object from this pool, without waiting.
+   *
+   * @return an object, or <code>null</code> if this pool's maximum size has
+   *         been reached and no object is idle.
+   * @throws PooledObjectCreationException
+   *           if a problem occurs creating the object.
+   */
+  public T acquireCreate() throws PooledObjectCreationException {
+    lastUsageTime = System.currentTimeMillis();
+    if (permits != null && !permits.tryAcquire()) {
+      return null;
+    }
+    return doAcquire();
+  }
+
+  /**
+   * Releases the given object to this pool. If the maximum number of idle
+   * objects has been reached, the object is disposed of.
+   *
+   * @param obj
+   *          an object to put back into the pool.
+   */
+  public void release(T obj) {
+    try {
+      onRelease(obj);
+      if (maxIdle > NO_MAX && idleCount.get() >= maxIdle) {
+        doDispose(obj);
+      } else {
+        idle.offerFirst(new IdleEntry<T>(obj));
+        idleCount.incrementAndGet();
+        signalAvailability();
+      }
+    } finally {
+      if (permits != null) {
+        permits.release();
+      }
+    }
+  }
+
+  /**
+   * Disposes of the given object, which was borrowed from this pool.
+   *
+   * @param obj
+   *          an object that was borrowed from this pool, but is returned in
+   *          order to be disposed of.
+   * @see #cleanup(Object)
+   */
+  public void invalidate(T obj) {
+    try {
+      doDispose(obj);
+    } finally {
+      if (permits != null) {
+        permits.release();
+      }
+    }
+  }
+
+  /**
+   * Disposes of idle objects until their number is the given size, or until
+   * there are none left. The least recently used objects are disposed of
+   * first.
+   *
+   * @param size
+   *          the number of idle objects to keep.
+   * @see #cleanup(Object)
+   */
+  public void shrinkTo(int size) {
+    while (idleCount.get() > size) {
+      IdleEntry<T> entry = idle.pollLast();
+      if (entry == null) {
+        break;
+      }
+      idleCount.decrementAndGet();
+      doDispose(entry.pooled);
+    }
+  }
+
+  /**
+   * Disposes of all idle objects.
+   *
+   * @see #shrinkTo(int)
+   */
+  public void clear() {
+    shrinkTo(0);
+  }
+
+  /**
+   * Creates objects, and adds them to the idle ones, until the given number of
+   * idle objects is reached (or until this pool's maximum size is reached).
+   *
+   * @param toSize
+   *          the number of idle objects to reach.
+   * @throws PooledObjectCreationException
+   *           if a problem occurs creating an object.
+   */
+  public void fill(int toSize) throws PooledObjectCreationException {
+    while (idleCount.get() < toSize && doReserve()) {
+      idle.offerFirst(new IdleEntry<T>(doCreate()));
+      idleCount.incrementAndGet();
+      signalAvailability();
+    }
+  }
+
+  /**
+   * Performs maintenance: evicts the objects that have been idle for longer
+   * than the idle timeout, disposes of the idle objects that are no longer
+   * valid, and creates idle objects so that the minimum number of idle objects
+   * is kept. This method is meant to be called periodically, by a background
+   * thread.
+   *
+   * @see #setIdleTimeout(long)
+   * @see #setMinIdle(int)
+   * @see #isValid(Object)
+   */
+  public void maintain() {
+    if (idleTimeout > NO_IDLE_TIMEOUT) {
+      long threshold = System.currentTimeMillis() - idleTimeout;
+      IdleEntry<T> entry;
+      while ((entry = idle.peekLast()) != null && entry.releaseTime < threshold) {
+        if (idle.removeLastOccurrence(entry)) {
+          idleCount.decrementAndGet();
+          doDispose(entry.pooled);
+        }
+      }
+    }
+
+    evictInvalid();
+
+    if (minIdle > 0) {
+      fill(minIdle);
+    }
+  }
+
+  /**
+   * Disposes of the idle objects that are no longer valid. The idle objects
+   * are validated one at a time: each is taken out of the pool while it is
+   * validated (so that it cannot be acquired at the same time), and put back
+   * right away if it is valid - the other idle objects remain available in the
+   * meantime.
+   * <p>
+   * Valid objects are put back at the least recently used end, in the order in
+   * which they were found: once all objects have been checked, their relative
+   * order is thus unchanged (objects released in the meantime come first).
+   *
+   * @return the number of objects that were disposed of.
+   * @see #isValid(Object)
+   */
+  public int evictInvalid() {
+    int evicted = 0;
+    for (IdleEntry<T> entry : new ArrayList<IdleEntry<T>>(idle)) {
+      if (idle.removeFirstOccurrence(entry)) {
+        idleCount.decrementAndGet();
+        if (isValid(entry.pooled)) {
+          idle.offerLast(entry);
+          idleCount.incrementAndGet();
+          signalAvailability();
+        } else {
+          doDispose(entry.pooled);
+          evicted++;
+        }
+      }
+    }
+    return evicted;
+  }
+
+  // --------------------------------------------------------------------------
+  // Metrics
+
+  /**
+   * @return the time an object was last acquired from this pool.
+   */
+  public long getLastUsageTime() {
+    return lastUsageTime;
+  }
+
+  /**
+   * @return the number of objects created by this pool that have not been
+   *         disposed of.
+   */
+  public int getCreatedCount() {
+    return createdCount.get();
+  }
+
+  /**
+   * @return the number of idle objects.
+   */
+  public int getAvailableCount() {
+    return idleCount.get();
+  }
+
+  /**
+   * @return the number of objects that are currently borrowed.
+   */
+  public int getBorrowedCount() {
+    return Math.max(0, createdCount.get() - idleCount.get());
+  }
+
+  /**
+   * @return the total number of times an object was borrowed from this pool.
+   */
+  public long getBorrowCount() {
+    return borrowCount.get();
+  }
+
+  /**
+   * @return the total number of objects that this pool has created.
+   */
+  public long getCreationCount() {
+    return creationCount.get();
+  }
+
+  /**
+   * @return the number of times a caller had to wait for an object to become
+   *         available.
+   */
+  public long getWaitCount() {
+    return waitCount.get();
+  }
+
+  /**
+   * @return the total time (in millis) that callers have waited for objects to
+   *         become available.
+   */
+  public long getWaitTime() {
+    return TimeUnit.NANOSECONDS.toMillis(waitTimeNanos.get());
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted
+
+  /**
+   * This template method should be overridden by inheriting classes to provide
+   * object instances that will be pooled.
+   *
+   * @return an object to pool.
+   * @throws Exception
+   *           if an error occurs while creating the object to be returned.
+   */
+  protected abstract T doNewObject() throws Exception;
+
+  /**
+   * Inheriting classes should override this method to implement proper cleanup
+   * behavior for pooled objects. This method has an empty implementation by
+   * default.
+   */
+  protected void cleanup(T pooled) {
+  }
+
+  /**
+   * Inheriting classes should override this method to check that an idle
+   * object may still be used. This method returns <code>true</code> by default.
+   *
+   * @see #maintain()
+   */
+  protected boolean isValid(T pooled) {
+    return true;
+  }
+
+  protected T onAcquire(T o) throws Exception {
+    return o;
+  }
+
+  protected void onRelease(T o) {
+  }
+
+  // --------------------------------------------------------------------------
+
+  private T doAcquire() throws PooledObjectCreationException {
+    T obj = null;
+    try {
+      // the caller holds a permit: if the maximum number of objects has been
+      // created, one of them is idle, or about to be (see fill() and
+      // evictInvalid()) - or it is disposed of, freeing room for a new one.
+      while (obj == null) {
+        IdleEntry<T> entry = idle.pollFirst();
+        if (entry != null) {
+          idleCount.decrementAndGet();
+          obj = entry.pooled;
+        } else if (doReserve()) {
+          obj = doCreate();
+        } else {
+          awaitAvailability();
+        }
+      }
+      T toReturn = onAcquire(obj);
+      borrowCount.incrementAndGet();
+      return toReturn;
+    } catch (Exception e) {
+      if (obj != null) {
+        doDispose(obj);
+      }
+      if (permits != null) {
+        permits.release();
+      }
+      if (e instanceof PooledObjectCreationException) {
+        throw (PooledObjectCreationException) e;
+      }
+      if (e instanceof InterruptedException) {
+        Thread.currentThread().interrupt();
+      }
+      throw new PooledObjectCreationException(e);
+    }
+  }
+
+  private boolean doReserve() {
+    if (maxSize <= NO_MAX) {
+      createdCount.incrementAndGet();
+      return true;
+    }
+    int current;
+    do {
+      current = createdCount.get();
+      if (current >= maxSize) {
+        return false;
+      }
+    } while (!createdCount.compareAndSet(current, current + 1));
+    return true;
+  }
+
+  // must be called once a creation has been reserved with doReserve()
+  private T doCreate() throws PooledObjectCreationException {
+    try {
+      T obj = doNewObject();
+      creationCount.incrementAndGet();
+      return obj;
+    } catch (Exception e) {
+      createdCount.decrementAndGet();
+      throw new PooledObjectCreationException(e);
+    }
+  }
+
+  private void doDispose(T obj) {
+    if (createdCount.decrementAndGet() < 0) {
+      createdCount.set(0);
+    }
+    signalAvailability();
+    cleanup(obj);
+  }
+
+  private void awaitAvailability() throws InterruptedException {
+    availabilityWaiters.incrementAndGet();
+    try {
+      synchronized (availability) {
+        // checked while holding the lock: an object made available after
+        // this point is signaled once this thread waits.
+        if (idle.isEmpty() && maxSize > NO_MAX && createdCount.get() >= maxSize) {
+          availability.wait(AVAILABILITY_WAIT_TIMEOUT);
+        }
+      }
+    } finally {
+      availabilityWaiters.decrementAndGet();
+    }
+  }
+
+  private void signalAvailability() {
+    if (availabilityWaiters.get() > 0) {
+      synchronized (availability) {
+        availability.notifyAll();
+      }
+    }
+  }
+
+  // ==========================================================================
+
+  private static final class IdleEntry<T> {
+
+    private T    pooled;
+    private long releaseTime = System.currentTimeMillis();
+
+    private IdleEntry(T pooled) {
+      this.pooled = pooled;
+    }
+  }
+}
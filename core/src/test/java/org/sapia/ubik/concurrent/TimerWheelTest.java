@@ -0,0 +1,105 @@
+package org.sapia.ubik.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.concurrent.TimerWheel.Timeout;
+
+public class TimerWheelTest {
+
+  private TimerWheel timer;
+
+  @Before
+  public void setUp() {
+    timer = new TimerWheel("test", 10, 8);
+  }
+
+  @After
+  public void tearDown() {
+    timer.stop();
+  }
+
+  @Test
+  public void testExpire() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    long start = System.currentTimeMillis();
+    Timeout timeout = timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    }, 100);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue("Timeout expired too early", System.currentTimeMillis() - start >= 100);
+    assertTrue(timeout.isExpired());
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  @Test
+  public void testExpireAfterSeveralRounds() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    long start = System.currentTimeMillis();
+    timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    }, 250);
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertTrue("Timeout expired too early", System.currentTimeMillis() - start >= 250);
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    final AtomicInteger count = new AtomicInteger();
+    Timeout timeout = timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+      }
+    }, 50);
+    assertEquals(1, timer.getPendingCount());
+    assertTrue(timeout.cancel());
+    assertFalse(timeout.cancel());
+    assertEquals(0, timer.getPendingCount());
+    Thread.sleep(200);
+    assertEquals(0, count.get());
+    assertTrue(timeout.isCancelled());
+  }
+
+  @Test
+  public void testManyTimeouts() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(5000);
+    for (int i = 0; i < 10000; i++) {
+      Timeout timeout = timer.schedule(new Runnable() {
+        @Override
+        public void run() {
+          latch.countDown();
+        }
+      }, i % 200);
+      if (i % 2 == 0) {
+        timeout.cancel();
+      }
+    }
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(0, timer.getPendingCount());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testScheduleWhenStopped() {
+    timer.stop();
+    timer.schedule(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, 10);
+  }
+}
@@ -0,0 +1,136 @@
+package org.sapia.ubik.mcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.util.Serialization;
+import org.sapia.ubik.util.SysClock;
+import org.sapia.ubik.util.UbikMetrics;
+
+public class EventBatcherTest {
+
+  private List<EventBatch> sent;
+  private CountDownLatch   release;
+  private UbikMetrics      metrics;
+  private EventBatcher     batcher;
+
+  @Before
+  public void setUp() {
+    sent = new CopyOnWriteArrayList<EventBatch>();
+    release = new CountDownLatch(0);
+    metrics = new UbikMetrics();
+  }
+
+  @After
+  public void tearDown() {
+    release = new CountDownLatch(0);
+    if (batcher != null) {
+      batcher.close();
+    }
+  }
+
+  @Test
+  public void testMaxEvents() throws Exception {
+    batcher = create(new EventBatcher.Settings(10000, 3, 10000, 100, 1000));
+    batcher.add("test", new byte[1]);
+    batcher.add("test", new byte[1]);
+    Future<Void> last = batcher.add("test", new byte[1]);
+    last.get(5, TimeUnit.SECONDS);
+    assertEquals(1, sent.size());
+    assertEquals(3, sent.get(0).size());
+    assertEquals(Long.valueOf(3), metrics.makeSnapshot().get("eventChannel.batch.events"));
+  }
+
+  @Test
+  public void testLinger() throws Exception {
+    batcher = create(new EventBatcher.Settings(20, 100, 10000, 100, 1000));
+    batcher.add("test", new byte[1]).get(5, TimeUnit.SECONDS);
+    assertEquals(1, sent.size());
+    assertEquals(1, sent.get(0).size());
+    assertEquals(0, batcher.getPendingCount());
+  }
+
+  @Test
+  public void testMaxBytes() throws Exception {
+    batcher = create(new EventBatcher.Settings(10000, 100, 100, 100, 1000));
+    batcher.add("test", new byte[60]);
+    batcher.add("test", new byte[60]).get(5, TimeUnit.SECONDS);
+    assertEquals(1, sent.size());
+    assertEquals(2, sent.get(0).size());
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    release = new CountDownLatch(1);
+    batcher = create(new EventBatcher.Settings(0, 1, 10000, 2, 50));
+    Future<Void> first = batcher.add("test", new byte[1]);
+    Future<Void> second = batcher.add("test", new byte[1]);
+    Future<Void> rejected = batcher.add("test", new byte[1]);
+    try {
+      rejected.get();
+      fail("Event should have been rejected");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+    assertEquals(Long.valueOf(1), metrics.makeSnapshot().get("eventChannel.batch.rejected"));
+
+    release.countDown();
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testCloseFlushesQueuedEvents() throws Exception {
+    batcher = create(new EventBatcher.Settings(10000, 100, 10000, 100, 1000));
+    Future<Void> future = batcher.add("test", new byte[1]);
+    batcher.close();
+    assertTrue(future.isDone());
+    assertEquals(1, sent.size());
+  }
+
+  @Test
+  public void testUnpack() throws Exception {
+    EventBatch batch = new EventBatch();
+    batch.add("type1", new byte[] { 1 });
+    batch.add("type2", new byte[] { 2, 3 });
+    assertEquals(3, batch.getByteCount());
+
+    EventBatch copy = (EventBatch) Serialization.deserialize(Serialization.serialize(batch));
+    RemoteEvent envelope = new RemoteEvent("domain", EventBatch.EVENT_TYPE, new byte[0]).setNode("node");
+    List<RemoteEvent> events = copy.unpack(envelope);
+    assertEquals(2, events.size());
+    assertEquals("type1", events.get(0).getType());
+    assertEquals("domain", events.get(0).getDomainName());
+    assertEquals("node", events.get(0).getNode());
+    assertTrue(Arrays.equals(new byte[] { 2, 3 }, (byte[]) events.get(1).getData()));
+  }
+
+  private EventBatcher create(EventBatcher.Settings settings) {
+    EventBatcher created = new EventBatcher(settings, new EventBatcher.Sender() {
+      @Override
+      public void send(EventBatch batch) throws IOException {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        sent.add(batch);
+      }
+    }, metrics, SysClock.RealtimeClock.getInstance());
+    created.start();
+    return created;
+  }
+}
@@ -48,6 +48,20 @@ public class NodeInfoTest {
     assertEquals(NodeInfo.State.SUSPECT, node.getState());
   }
 
+  @Test
+  public void testCheckState_failureDetector() {
+    FailureDetector detector = new PhiAccrualFailureDetector(8, 10, 200, new TimeoutFailureDetector(100000));
+    for (int i = 0; i < 10; i++) {
+      clock.increaseCurrentTimeMillis(1000);
+      node.touch(clock);
+    }
+    clock.increaseCurrentTimeMillis(1500);
+    assertEquals(NodeInfo.State.NORMAL, node.checkState(detector, clock));
+    
+    clock.increaseCurrentTimeMillis(1500);
+    assertEquals(NodeInfo.State.SUSPECT, node.checkState(detector, clock));
+  }
+
   @Test
   public void testTouch() {
     clock.increaseCurrentTimeMillis(1000);
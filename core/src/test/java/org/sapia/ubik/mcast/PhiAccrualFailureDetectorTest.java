@@ -0,0 +1,79 @@
+package org.sapia.ubik.mcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PhiAccrualFailureDetectorTest {
+
+  private PhiAccrualFailureDetector detector;
+
+  @Before
+  public void setUp() {
+    detector = new PhiAccrualFailureDetector(8, 10, 100, new TimeoutFailureDetector(5000));
+  }
+
+  @Test
+  public void testFallbackBeforeMinSamples() {
+    ArrivalWindow arrivals = arrivals(9, 1000);
+    assertFalse(detector.isSuspect(4999, arrivals));
+    assertTrue(detector.isSuspect(5000, arrivals));
+    assertFalse(detector.isSuspect(4999, null));
+  }
+
+  @Test
+  public void testRegularHeartbeats() {
+    ArrivalWindow arrivals = arrivals(20, 1000);
+    assertFalse(detector.isSuspect(1000, arrivals));
+    assertTrue(detector.isSuspect(2000, arrivals));
+  }
+
+  @Test
+  public void testIrregularHeartbeats() {
+    ArrivalWindow arrivals = new ArrivalWindow();
+    for (int i = 0; i < 20; i++) {
+      arrivals.add(i % 2 == 0 ? 500 : 3500);
+    }
+    assertFalse(detector.isSuspect(3000, arrivals));
+    assertTrue(detector.isSuspect(3000, arrivals(20, 1000)));
+  }
+
+  @Test
+  public void testPhiIncreasesWithElapsedTime() {
+    ArrivalWindow arrivals = arrivals(20, 1000);
+    double previous = -1;
+    for (long elapsed = 0; elapsed <= 3000; elapsed += 100) {
+      double phi = detector.phi(elapsed, arrivals);
+      assertTrue(phi >= previous);
+      previous = phi;
+    }
+  }
+
+  @Test
+  public void testArrivalWindow() {
+    ArrivalWindow arrivals = new ArrivalWindow(4);
+    arrivals.add(100);
+    arrivals.add(300);
+    assertEquals(2, arrivals.size());
+    assertEquals(200, arrivals.getMean(), 0.001);
+    assertEquals(100, arrivals.getStdDeviation(), 0.001);
+
+    for (int i = 0; i < 4; i++) {
+      arrivals.add(1000);
+    }
+    assertEquals(4, arrivals.size());
+    assertEquals(1000, arrivals.getMean(), 0.001);
+    assertEquals(0, arrivals.getStdDeviation(), 0.001);
+  }
+
+  private ArrivalWindow arrivals(int count, long interval) {
+    ArrivalWindow arrivals = new ArrivalWindow();
+    for (int i = 0; i < count; i++) {
+      arrivals.add(interval);
+    }
+    return arrivals;
+  }
+}
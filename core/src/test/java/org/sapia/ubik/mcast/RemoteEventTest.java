@@ -0,0 +1,60 @@
+package org.sapia.ubik.mcast;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.sapia.ubik.rmi.server.transport.MarshalHelper;
+import org.sapia.ubik.util.Serialization;
+
+public class RemoteEventTest {
+
+  @Test
+  public void testGetDataDecodedOnce() throws Exception {
+    List<String> payload = new ArrayList<String>();
+    payload.add("test");
+    RemoteEvent evt = (RemoteEvent) Serialization.deserialize(Serialization.serialize(new RemoteEvent("domain", "type", payload)));
+    Object data = evt.getData();
+    assertEquals(payload, data);
+    assertSame(data, evt.getData());
+  }
+
+  @Test
+  public void testGetDataNull() throws Exception {
+    RemoteEvent evt = (RemoteEvent) Serialization.deserialize(Serialization.serialize(new RemoteEvent("domain", "type", null)));
+    assertNull(evt.getData());
+    assertNull(evt.getData());
+  }
+
+  @Test
+  public void testGetRawData() throws Exception {
+    byte[] payload = new byte[] { 1, 2, 3 };
+    RemoteEvent evt = new RemoteEvent("domain", "type", payload);
+    assertTrue(evt.isRawData());
+    assertSame(payload, evt.getRawData());
+    assertSame(payload, evt.getData());
+  }
+
+  @Test
+  public void testGetRawDataSerialized() throws Exception {
+    RemoteEvent evt = new RemoteEvent("domain", "type", "test");
+    assertFalse(evt.isRawData());
+    assertEquals("test", MarshalHelper.deserialize(evt.getRawData()));
+  }
+
+  @Test
+  public void testGetCopy() throws Exception {
+    RemoteEvent evt = new RemoteEvent("domain", "type", "test");
+    Object data = evt.getData();
+    RemoteEvent copy = evt.getCopy("other");
+    assertEquals("other", copy.getDomainName());
+    assertSame(evt.getRawData(), copy.getRawData());
+    assertSame(data, copy.getData());
+  }
+}
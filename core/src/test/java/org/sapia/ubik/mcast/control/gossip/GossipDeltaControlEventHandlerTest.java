@@ -0,0 +1,117 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.ControlEvent;
+import org.sapia.ubik.mcast.control.ControllerConfiguration;
+import org.sapia.ubik.mcast.control.ControllerContext;
+import org.sapia.ubik.mcast.control.EventChannelFacade;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.util.Condition;
+import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.IntRange;
+import org.sapia.ubik.util.UbikMetrics;
+import org.sapia.ubik.util.SysClock.MutableClock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GossipDeltaControlEventHandlerTest {
+
+  @Mock
+  private EventChannelFacade facade;
+  
+  private MutableClock clock;
+  
+  private ControllerContext context;
+  
+  private GossipDeltaControlEventHandler handler;
+  
+  private NodeInfo originNode;
+  
+  private NodeInfo localNode;
+  
+  @Before
+  public void setUp() throws Exception {
+    clock = MutableClock.getInstance();
+    context = new ControllerContext(facade, clock, new ControllerConfiguration(), new UbikMetrics());
+    handler = new GossipDeltaControlEventHandler(context);
+    
+    originNode = new NodeInfo(new TCPAddress("test", "host", 0), "origin-node");
+    localNode  = new NodeInfo(new TCPAddress("test", "host", 100), "local-node");
+    
+    when(facade.getNode()).thenReturn(localNode.getNode());
+    when(facade.getAddress()).thenReturn(localNode.getAddr());
+    when(facade.getView(any(Condition.class))).thenReturn(nodes(3, 7));
+  }
+
+  @Test
+  public void testHandle() {
+    GossipDeltaControlEvent delta = new GossipDeltaControlEvent(nodes(1, 2), new long[0]);
+    handler.handle(originNode.getNode(), originNode.getAddr(), delta);
+    
+    for (NodeInfo n : delta.getNodes()) {
+      verify(facade).addNewNode(n.getNode(), n.getAddr());
+    }
+    
+    verify(facade).heartbeat(originNode.getNode(), originNode.getAddr());
+    verify(facade, never()).sendUnicastEvent(any(ServerAddress.class), any(ControlEvent.class));
+  }
+
+  @Test
+  public void testHandle_local_node() {
+    GossipDeltaControlEvent delta = new GossipDeltaControlEvent(nodes(1, 2), new long[0]);
+    delta.getNodes().add(localNode);
+    handler.handle(originNode.getNode(), originNode.getAddr(), delta);
+    
+    for (NodeInfo n : delta.getNodes()) {
+      if (n.getNode().equals(localNode.getNode())) {
+        verify(facade, never()).addNewNode(n.getNode(), n.getAddr());
+      } else {
+        verify(facade).addNewNode(n.getNode(), n.getAddr());
+      }
+    }
+    
+    verify(facade).heartbeat(originNode.getNode(), originNode.getAddr());
+  }
+
+  @Test
+  public void testHandle_wanted() {
+    long[] wanted = new long[] { 
+        GossipDigest.hash("node-6"), GossipDigest.hash(localNode.getNode()), GossipDigest.hash("unknown-node") 
+    };
+    handler.handle(originNode.getNode(), originNode.getAddr(), new GossipDeltaControlEvent(nodes(1, 2), wanted));
+    
+    ArgumentCaptor<GossipDeltaControlEvent> reply = ArgumentCaptor.forClass(GossipDeltaControlEvent.class);
+    verify(facade).sendUnicastEvent(eq(originNode.getAddr()), reply.capture());
+    
+    List<NodeInfo> requested = reply.getValue().getNodes();
+    assertEquals(2, requested.size());
+    assertTrue(requested.contains(new NodeInfo(new TCPAddress("test", "host", 6), "node-6")));
+    assertTrue(requested.contains(localNode));
+    assertEquals(0, reply.getValue().getWanted().length);
+  }
+  
+  private static List<NodeInfo> nodes(int from, int to) {
+    return new IntRange(from, to).transform(new Func<NodeInfo, Integer>() {
+      @Override
+      public NodeInfo call(Integer i) {
+        return new NodeInfo(new TCPAddress("test", "host", i), "node-" + i);
+      }
+    });
+  }
+}
@@ -0,0 +1,111 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.ControlEvent;
+import org.sapia.ubik.mcast.control.ControllerConfiguration;
+import org.sapia.ubik.mcast.control.ControllerContext;
+import org.sapia.ubik.mcast.control.EventChannelFacade;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.util.Condition;
+import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.IntRange;
+import org.sapia.ubik.util.UbikMetrics;
+import org.sapia.ubik.util.SysClock.MutableClock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GossipDigestAckControlEventHandlerTest {
+
+  @Mock
+  private EventChannelFacade facade;
+  
+  private MutableClock clock;
+  
+  private ControllerContext context;
+  
+  private GossipDigestAckControlEventHandler handler;
+  
+  private NodeInfo originNode;
+  
+  private NodeInfo localNode;
+  
+  private List<NodeInfo> view;
+  
+  @Before
+  public void setUp() throws Exception {
+    clock = MutableClock.getInstance();
+    context = new ControllerContext(facade, clock, new ControllerConfiguration(), new UbikMetrics());
+    handler = new GossipDigestAckControlEventHandler(context);
+    
+    originNode = new NodeInfo(new TCPAddress("test", "host", 0), "origin-node");
+    localNode  = new NodeInfo(new TCPAddress("test", "host", 100), "local-node");
+    
+    view = nodes(3, 7);
+    
+    when(facade.getNode()).thenReturn(localNode.getNode());
+    when(facade.getAddress()).thenReturn(localNode.getAddr());
+    when(facade.getView(any(Condition.class))).thenReturn(view);
+  }
+
+  @Test
+  public void testHandle_matching_digest() {
+    handler.handle(originNode.getNode(), originNode.getAddr(), new GossipDigestAckControlEvent(null));
+    
+    verify(facade).heartbeat(originNode.getNode(), originNode.getAddr());
+    verify(facade, never()).sendUnicastEvent(any(ServerAddress.class), any(ControlEvent.class));
+  }
+
+  @Test
+  public void testHandle_mismatching_digest() {
+    // the origin node knows nodes 1 to 5: it misses the local node and nodes 6
+    // and 7, whereas the local node misses the origin node and nodes 1 and 2
+    GossipDigest remote = new GossipDigest(originNode, nodes(1, 5));
+    handler.handle(originNode.getNode(), originNode.getAddr(), new GossipDigestAckControlEvent(remote.getHashes()));
+    
+    verify(facade).heartbeat(originNode.getNode(), originNode.getAddr());
+    
+    ArgumentCaptor<GossipDeltaControlEvent> delta = ArgumentCaptor.forClass(GossipDeltaControlEvent.class);
+    verify(facade).sendUnicastEvent(eq(originNode.getAddr()), delta.capture());
+    
+    List<NodeInfo> missing = delta.getValue().getNodes();
+    assertEquals(3, missing.size());
+    assertTrue(missing.contains(localNode));
+    assertTrue(missing.contains(new NodeInfo(new TCPAddress("test", "host", 6), "node-6")));
+    assertTrue(missing.contains(new NodeInfo(new TCPAddress("test", "host", 7), "node-7")));
+    
+    long[] wanted = delta.getValue().getWanted().clone();
+    Arrays.sort(wanted);
+    long[] expected = new long[] { 
+        GossipDigest.hash(originNode.getNode()), GossipDigest.hash("node-1"), GossipDigest.hash("node-2") 
+    };
+    Arrays.sort(expected);
+    assertArrayEquals(expected, wanted);
+  }
+  
+  private static List<NodeInfo> nodes(int from, int to) {
+    return new IntRange(from, to).transform(new Func<NodeInfo, Integer>() {
+      @Override
+      public NodeInfo call(Integer i) {
+        return new NodeInfo(new TCPAddress("test", "host", i), "node-" + i);
+      }
+    });
+  }
+}
@@ -0,0 +1,93 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.mcast.control.ControllerConfiguration;
+import org.sapia.ubik.mcast.control.ControllerContext;
+import org.sapia.ubik.mcast.control.EventChannelFacade;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.util.Condition;
+import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.IntRange;
+import org.sapia.ubik.util.UbikMetrics;
+import org.sapia.ubik.util.SysClock.MutableClock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GossipDigestNotificationHandlerTest {
+
+  @Mock
+  private EventChannelFacade facade;
+  
+  private MutableClock clock;
+  
+  private ControllerContext context;
+  
+  private GossipDigestNotificationHandler handler;
+  
+  private NodeInfo originNode;
+  
+  private NodeInfo localNode;
+  
+  private List<NodeInfo> view;
+  
+  @Before
+  public void setUp() throws Exception {
+    clock = MutableClock.getInstance();
+    context = new ControllerContext(facade, clock, new ControllerConfiguration(), new UbikMetrics());
+    handler = new GossipDigestNotificationHandler(context);
+    
+    originNode = new NodeInfo(new TCPAddress("test", "host", 0), "origin-node");
+    localNode  = new NodeInfo(new TCPAddress("test", "host", 100), "local-node");
+    
+    view = new IntRange(3, 7).transform(new Func<NodeInfo, Integer>() {
+      @Override
+      public NodeInfo call(Integer i) {
+        return new NodeInfo(new TCPAddress("test", "host", i), "node-" + i);
+      }
+    });
+    
+    when(facade.getNode()).thenReturn(localNode.getNode());
+    when(facade.getAddress()).thenReturn(localNode.getAddr());
+    when(facade.getView(any(Condition.class))).thenReturn(view);
+  }
+
+  @Test
+  public void testHandle_matching_digest() {
+    handler.handle(originNode.getNode(), originNode.getAddr(), new GossipDigestNotification(new GossipDigest(localNode, view)));
+    
+    verify(facade).addNewNode(originNode.getNode(), originNode.getAddr());
+    verify(facade).heartbeat(originNode.getNode(), originNode.getAddr());
+    
+    ArgumentCaptor<GossipDigestAckControlEvent> ack = ArgumentCaptor.forClass(GossipDigestAckControlEvent.class);
+    verify(facade).sendUnicastEvent(eq(originNode.getAddr()), ack.capture());
+    assertTrue(ack.getValue().isMatching());
+  }
+
+  @Test
+  public void testHandle_mismatching_digest() {
+    handler.handle(originNode.getNode(), originNode.getAddr(), new GossipDigestNotification(new GossipDigest(originNode, view)));
+    
+    verify(facade).addNewNode(originNode.getNode(), originNode.getAddr());
+    verify(facade).heartbeat(originNode.getNode(), originNode.getAddr());
+    
+    ArgumentCaptor<GossipDigestAckControlEvent> ack = ArgumentCaptor.forClass(GossipDigestAckControlEvent.class);
+    verify(facade).sendUnicastEvent(eq(originNode.getAddr()), ack.capture());
+    assertFalse(ack.getValue().isMatching());
+    assertArrayEquals(new GossipDigest(localNode, view).getHashes(), ack.getValue().getHashes());
+  }
+}
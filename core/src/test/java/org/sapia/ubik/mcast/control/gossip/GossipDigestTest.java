@@ -0,0 +1,76 @@
+package org.sapia.ubik.mcast.control.gossip;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.mcast.NodeInfo;
+import org.sapia.ubik.net.TCPAddress;
+
+public class GossipDigestTest {
+
+  private List<NodeInfo> nodes;
+
+  @Before
+  public void setUp() {
+    nodes = new ArrayList<NodeInfo>();
+    for (int i = 0; i < 5; i++) {
+      nodes.add(new NodeInfo(new TCPAddress("test", "host", i), "node-" + i));
+    }
+  }
+
+  @Test
+  public void testMatches() {
+    GossipDigest d1 = new GossipDigest(nodes.get(0), nodes.subList(1, 5));
+    GossipDigest d2 = new GossipDigest(nodes.get(3), Arrays.asList(nodes.get(4), nodes.get(2), nodes.get(1), nodes.get(0)));
+    assertEquals(5, d1.getCount());
+    assertTrue(d1.matches(d2.getValue(), d2.getCount()));
+    assertTrue(Arrays.equals(d1.getHashes(), d2.getHashes()));
+  }
+
+  @Test
+  public void testMismatch() {
+    GossipDigest d1 = new GossipDigest(nodes.get(0), nodes.subList(1, 5));
+    GossipDigest d2 = new GossipDigest(nodes.get(0), nodes.subList(1, 4));
+    assertFalse(d1.matches(d2.getValue(), d2.getCount()));
+  }
+
+  @Test
+  public void testDuplicatesIgnored() {
+    GossipDigest d1 = new GossipDigest(nodes.get(0), Arrays.asList(nodes.get(0), nodes.get(1), nodes.get(1)));
+    GossipDigest d2 = new GossipDigest(nodes.get(0), nodes.subList(1, 2));
+    assertEquals(2, d1.getCount());
+    assertTrue(d1.matches(d2.getValue(), d2.getCount()));
+  }
+
+  @Test
+  public void testMissingFrom() {
+    GossipDigest d1 = new GossipDigest(nodes.get(0), nodes.subList(1, 5));
+    GossipDigest d2 = new GossipDigest(nodes.get(0), nodes.subList(1, 3));
+    List<NodeInfo> missing = d1.missingFrom(d2.getHashes());
+    assertEquals(2, missing.size());
+    assertTrue(missing.contains(nodes.get(3)));
+    assertTrue(missing.contains(nodes.get(4)));
+    assertTrue(d2.missingFrom(d1.getHashes()).isEmpty());
+  }
+
+  @Test
+  public void testUnknownAmongAndSelect() {
+    GossipDigest d1 = new GossipDigest(nodes.get(0), nodes.subList(1, 5));
+    GossipDigest d2 = new GossipDigest(nodes.get(0), nodes.subList(1, 3));
+    long[] unknown = d2.unknownAmong(d1.getHashes());
+    assertEquals(2, unknown.length);
+    List<NodeInfo> selected = d1.select(unknown);
+    assertEquals(2, selected.size());
+    assertTrue(selected.contains(nodes.get(3)));
+    assertTrue(selected.contains(nodes.get(4)));
+    assertEquals(0, d1.unknownAmong(d2.getHashes()).length);
+  }
+
+}
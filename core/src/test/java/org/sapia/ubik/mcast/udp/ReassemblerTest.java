@@ -0,0 +1,149 @@
+package org.sapia.ubik.mcast.udp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.util.SysClock.MutableClock;
+
+public class ReassemblerTest {
+
+  private MutableClock clock;
+  private Fragmenter   fragmenter;
+  private Reassembler  reassembler;
+  private byte[]       event;
+
+  @Before
+  public void setUp() {
+    clock = MutableClock.getInstance();
+    fragmenter = new Fragmenter(1, 100, 10);
+    reassembler = new Reassembler(2, 10000, 1000, 100, clock);
+    event = new byte[950];
+    for (int i = 0; i < event.length; i++) {
+      event[i] = (byte) i;
+    }
+  }
+
+  @Test
+  public void testFragment() {
+    List<byte[]> datagrams = fragmenter.fragment(event, 0, event.length);
+    assertEquals(10, datagrams.size());
+    assertTrue(Fragment.isFragmentation(datagrams.get(0), 0, datagrams.get(0).length));
+    Fragment last = Fragment.fromBytes(datagrams.get(9), 0, datagrams.get(9).length);
+    assertEquals(9, last.getIndex());
+    assertEquals(50, last.getDataLength());
+    assertEquals(900, last.getOffset());
+  }
+
+  @Test
+  public void testReassembleOutOfOrder() {
+    List<byte[]> datagrams = new ArrayList<byte[]>(fragmenter.fragment(event, 0, event.length));
+    Collections.reverse(datagrams);
+    byte[] result = null;
+    for (int i = 0; i < datagrams.size(); i++) {
+      assertNull(result);
+      result = reassembler.add(fragment(datagrams.get(i)));
+    }
+    assertTrue(Arrays.equals(event, result));
+    assertEquals(0, reassembler.getPendingCount());
+    assertEquals(0, reassembler.getPendingBytes());
+  }
+
+  @Test
+  public void testDuplicatesIgnored() {
+    List<byte[]> datagrams = fragmenter.fragment(event, 0, event.length);
+    for (int i = 0; i < datagrams.size() - 1; i++) {
+      assertNull(reassembler.add(fragment(datagrams.get(i))));
+      assertNull(reassembler.add(fragment(datagrams.get(i))));
+    }
+    assertNotNull(reassembler.add(fragment(datagrams.get(datagrams.size() - 1))));
+    assertNull(reassembler.add(fragment(datagrams.get(0))));
+    assertEquals(0, reassembler.getPendingCount());
+  }
+
+  @Test
+  public void testOwnFragmentsIgnored() {
+    Reassembler own = new Reassembler(1, 10000, 1000, 100, clock);
+    assertNull(own.add(fragment(fragmenter.fragment(event, 0, event.length).get(0))));
+    assertEquals(0, own.getPendingCount());
+  }
+
+  @Test
+  public void testExpiry() {
+    reassembler.add(fragment(fragmenter.fragment(event, 0, event.length).get(0)));
+    assertEquals(1, reassembler.getPendingCount());
+    clock.increaseCurrentTimeMillis(1000);
+    reassembler.sweep();
+    assertEquals(0, reassembler.getPendingCount());
+    assertEquals(0, reassembler.getPendingBytes());
+  }
+
+  @Test
+  public void testMaxPendingBytes() {
+    Reassembler bounded = new Reassembler(2, 2000, 1000, 100, clock);
+    for (int i = 0; i < 3; i++) {
+      bounded.add(fragment(fragmenter.fragment(event, 0, event.length).get(0)));
+    }
+    assertEquals(2, bounded.getPendingCount());
+    assertEquals(1900, bounded.getPendingBytes());
+
+    assertNull(bounded.add(fragment(fragmenter.fragment(new byte[2001], 0, 2001).get(0))));
+    assertEquals(2, bounded.getPendingCount());
+  }
+
+  @Test
+  public void testNackAndRetransmit() {
+    List<byte[]> datagrams = fragmenter.fragment(event, 0, event.length);
+    for (int i = 0; i < datagrams.size(); i++) {
+      if (i != 3 && i != 7) {
+        reassembler.add(fragment(datagrams.get(i)));
+      }
+    }
+    assertTrue(reassembler.sweep().isEmpty());
+
+    clock.increaseCurrentTimeMillis(100);
+    List<Nack> nacks = reassembler.sweep();
+    assertEquals(1, nacks.size());
+    byte[] nackBytes = nacks.get(0).toBytes();
+    assertTrue(Fragment.isNack(nackBytes, 0, nackBytes.length));
+    Nack nack = Nack.fromBytes(nackBytes, 0, nackBytes.length);
+    assertTrue(Arrays.equals(new int[] { 3, 7 }, nack.getMissing()));
+
+    List<byte[]> resent = fragmenter.retransmit(nack);
+    assertEquals(2, resent.size());
+    assertNull(reassembler.add(fragment(resent.get(0))));
+    assertTrue(Arrays.equals(event, reassembler.add(fragment(resent.get(1)))));
+  }
+
+  @Test
+  public void testMaxNacks() {
+    reassembler = new Reassembler(2, 10000, 10000, 100, clock);
+    reassembler.add(fragment(fragmenter.fragment(event, 0, event.length).get(0)));
+    for (int i = 0; i < Reassembler.MAX_NACKS; i++) {
+      clock.increaseCurrentTimeMillis(100);
+      assertEquals(1, reassembler.sweep().size());
+    }
+    clock.increaseCurrentTimeMillis(100);
+    assertTrue(reassembler.sweep().isEmpty());
+  }
+
+  @Test
+  public void testNacksDisabled() {
+    reassembler = new Reassembler(2, 10000, 1000, 0, clock);
+    reassembler.add(fragment(fragmenter.fragment(event, 0, event.length).get(0)));
+    clock.increaseCurrentTimeMillis(500);
+    assertTrue(reassembler.sweep().isEmpty());
+  }
+
+  private Fragment fragment(byte[] datagram) {
+    return Fragment.fromBytes(datagram, 0, datagram.length);
+  }
+}
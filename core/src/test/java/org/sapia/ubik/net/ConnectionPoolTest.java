@@ -1,13 +1,19 @@
 package org.sapia.ubik.net;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 import java.io.IOException;
+import java.net.ConnectException;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.junit.Test;
+import org.sapia.ubik.util.pool.PooledObjectCreationException;
 
 public class ConnectionPoolTest {
 
@@ -68,6 +74,78 @@ public class ConnectionPoolTest {
     assertEquals("Created count should be 0; should have been decremented", 0, pool.getCreatedCount());
   }
 
+  @Test
+  public void testInvalidateFailedKeepsHealthyConnections() throws Exception {
+    final List<Connection> broken = new ArrayList<Connection>();
+    ConnectionPool pool = new ConnectionPool("localhost", 9999, new TestConnectionFactory(), 3) {
+      @Override
+      protected boolean isValid(Connection connection) {
+        return !broken.contains(connection);
+      }
+    };
+    QueuedExecutor validator = new QueuedExecutor();
+    pool.validator = validator;
+    Connection c1 = pool.acquire();
+    Connection c2 = pool.acquire();
+    Connection failed = pool.acquire();
+    pool.release(c1);
+    pool.release(c2);
+    broken.add(c2);
+    pool.invalidateFailed(failed);
+    assertEquals("Idle connections should not have been checked by the caller", 2, pool.getAvailableCount());
+    assertEquals("Idle connections should be checked asynchronously", 1, validator.tasks.size());
+    validator.runAll();
+    assertEquals("Healthy idle connection should have been kept", 1, pool.getAvailableCount());
+    assertEquals("Created count should be 1", 1, pool.getCreatedCount());
+    assertTrue(c1 == pool.acquire());
+  }
+
+  @Test
+  public void testInvalidateFailedSchedulesSingleValidation() throws Exception {
+    ConnectionPool pool = new ConnectionPool("localhost", 9999, new TestConnectionFactory(), 3);
+    QueuedExecutor validator = new QueuedExecutor();
+    pool.validator = validator;
+    pool.invalidateFailed(pool.acquire());
+    pool.invalidateFailed(pool.acquire());
+    assertEquals("Validation should have been scheduled once", 1, validator.tasks.size());
+    validator.runAll();
+    pool.invalidateFailed(pool.acquire());
+    assertEquals("Validation should have been scheduled anew", 1, validator.tasks.size());
+  }
+
+  @Test
+  public void testConnectFailuresAreCounted() throws Exception {
+    TestConnectionFactory factory = new TestConnectionFactory();
+    ConnectionPool pool = new ConnectionPool.Builder().host("localhost").port(9999).connectionFactory(factory).reconnectBackoff(1).build();
+    factory.fail = true;
+    for (int i = 0; i < 3; i++) {
+      try {
+        pool.acquire();
+        throw new Exception("Connection should not have been created");
+      } catch (PooledObjectCreationException e) {
+        // ok
+      }
+    }
+    assertEquals(3, pool.getConnectFailures());
+    factory.fail = false;
+    pool.acquire();
+    assertEquals(0, pool.getConnectFailures());
+  }
+
+  @Test
+  public void testComputeBackoff() throws Exception {
+    ConnectionPool pool = new ConnectionPool.Builder().host("localhost").port(9999).connectionFactory(new TestConnectionFactory())
+        .reconnectBackoff(100).maxReconnectBackoff(1000).build();
+    for (int i = 0; i < 100; i++) {
+      long first = pool.computeBackoff(1);
+      assertTrue("Got " + first, first >= 50 && first <= 100);
+      long third = pool.computeBackoff(3);
+      assertTrue("Got " + third, third >= 200 && third <= 400);
+      long max = pool.computeBackoff(50);
+      assertTrue("Got " + max, max >= 500 && max <= 1000);
+    }
+  }
+
   static class TestConnection implements Connection {
     TCPAddress address = new TCPAddress(ConnectionPoolTest.TRANSPORT_TYPE, "test", 8888);
 
@@ -92,12 +170,33 @@ public class ConnectionPoolTest {
     }
   }
 
+  static class QueuedExecutor implements Executor {
+    List<Runnable> tasks = new ArrayList<Runnable>();
+
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      List<Runnable> toRun = new ArrayList<Runnable>(tasks);
+      tasks.clear();
+      for (Runnable r : toRun) {
+        r.run();
+      }
+    }
+  }
+
   static class TestConnectionFactory implements ConnectionFactory {
+    volatile boolean fail;
+
     public Connection newConnection(Socket sock) throws IOException, UnsupportedOperationException {
       return new TestConnection();
     }
 
     public Connection newConnection(String host, int port) throws IOException {
+      if (fail) {
+        throw new ConnectException("Connection refused");
+      }
       return new TestConnection();
     }
 
@@ -0,0 +1,95 @@
+package org.sapia.ubik.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SocketConnectionTest {
+
+  private ServerSocket     server;
+  private SocketConnection client;
+  private SocketConnection peer;
+
+  @Before
+  public void setUp() throws Exception {
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    Socket clientSock = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    Socket peerSock = server.accept();
+    client = new SocketConnection("test", clientSock, 512);
+    peer = new SocketConnection("test", peerSock, 512);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    client.close();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  public void testSendReceive() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      client.send("request-" + i);
+      assertEquals("request-" + i, peer.receive());
+      peer.send("response-" + i);
+      assertEquals("response-" + i, client.receive());
+    }
+  }
+
+  @Test
+  public void testSendReceiveWithReset() throws Exception {
+    client.setResetInterval(0);
+    peer.setResetInterval(0);
+    for (int i = 0; i < 10; i++) {
+      client.send("request-" + i);
+      assertEquals("request-" + i, peer.receive());
+      peer.send("response-" + i);
+      assertEquals("response-" + i, client.receive());
+    }
+  }
+
+  @Test
+  public void testIsValid() throws Exception {
+    client.send("request");
+    assertEquals("request", peer.receive());
+    peer.send("response");
+    assertEquals("response", client.receive());
+    assertTrue(client.isValid());
+    client.send("request");
+    assertEquals("request", peer.receive());
+  }
+
+  @Test
+  public void testIsValidWithPeerClosed() throws Exception {
+    peer.close();
+    Thread.sleep(100);
+    assertFalse(client.isValid());
+  }
+
+  @Test
+  public void testIsValidWithUnexpectedData() throws Exception {
+    peer.send("unexpected");
+    Thread.sleep(100);
+    assertFalse(client.isValid());
+  }
+
+  @Test
+  public void testSendReceiveLargeObject() throws Exception {
+    StringBuilder large = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      large.append(i);
+    }
+    client.send(large.toString());
+    assertEquals(large.toString(), peer.receive());
+    client.send("small");
+    assertEquals("small", peer.receive());
+  }
+}
@@ -1,9 +1,18 @@
 package org.sapia.ubik.rmi.server.command;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.sapia.ubik.rmi.server.ShutdownException;
 
 public class CallbackResponseQueueTest {
 
@@ -14,6 +23,11 @@ public class CallbackResponseQueueTest {
     queue = new CallbackResponseQueue();
   }
 
+  @After
+  public void tearDown() {
+    queue.close();
+  }
+
   @Test
   public void testShutdown() {
   }
@@ -33,4 +47,49 @@ public class CallbackResponseQueueTest {
     assertEquals("Response lock not removed from queue", 0, queue.size());
   }
 
+  @Test
+  public void testToFuture() throws Exception {
+    ResponseLock lock = queue.createResponseLock();
+    CompletableFuture<Object> future = lock.toFuture(10000);
+    assertFalse(future.isDone());
+    queue.onResponse(new Response(lock.getId(), "Response"));
+    assertEquals("Response", future.get(1, TimeUnit.SECONDS));
+    assertEquals("Response lock not removed from queue", 0, queue.size());
+  }
+
+  @Test
+  public void testToFutureWithResponseAlreadyReceived() throws Exception {
+    ResponseLock lock = queue.createResponseLock();
+    queue.onResponse(new Response(lock.getId(), "Response"));
+    assertEquals("Response", lock.toFuture(10000).get(1, TimeUnit.SECONDS));
+    assertEquals("Response lock not removed from queue", 0, queue.size());
+  }
+
+  @Test
+  public void testToFutureTimeout() throws Exception {
+    ResponseLock lock = queue.createResponseLock();
+    try {
+      lock.toFuture(100).get(5, TimeUnit.SECONDS);
+      fail("Expected timeout");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ResponseTimeOutException);
+    }
+    assertEquals("Response lock not removed from queue", 0, queue.size());
+  }
+
+  @Test
+  public void testToFutureAfterClose() throws Exception {
+    queue.createResponseLock().toFuture(10000);
+    assertTrue(queue.hasTimer());
+    queue.close();
+    ResponseLock lock = queue.createResponseLock();
+    try {
+      lock.toFuture(10000).get(1, TimeUnit.SECONDS);
+      fail("Expected shutdown error");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ShutdownException);
+    }
+    assertFalse("Timer should not be recreated", queue.hasTimer());
+  }
+
 }
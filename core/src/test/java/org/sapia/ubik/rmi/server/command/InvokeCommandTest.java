@@ -0,0 +1,123 @@
+package org.sapia.ubik.rmi.server.command;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.oid.DefaultOID;
+import org.sapia.ubik.rmi.server.transport.JdkSerializer;
+import org.sapia.ubik.rmi.server.transport.StreamClassDictionary;
+
+public class InvokeCommandTest {
+
+  private JdkSerializer         serializer;
+  private StreamClassDictionary outgoing;
+  private StreamClassDictionary incoming;
+  private InvokeCommand         cmd;
+
+  @Before
+  public void setUp() {
+    System.setProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE, "1024");
+    serializer = new JdkSerializer();
+    outgoing = new StreamClassDictionary();
+    incoming = new StreamClassDictionary();
+    cmd = newCommand();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE);
+  }
+
+  @Test
+  public void testLegacyHeader() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bos);
+    oos.writeObject(cmd);
+    oos.close();
+    InvokeCommand copy = (InvokeCommand) new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())).readObject();
+    assertFalse(copy.isCompactHeader());
+    assertCopy(copy);
+  }
+
+  @Test
+  public void testLegacyHeaderByDefault() throws Exception {
+    System.clearProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE);
+    InvokeCommand copy = (InvokeCommand) read(write(cmd));
+    assertFalse(copy.isCompactHeader());
+    assertCopy(copy);
+  }
+
+  @Test
+  public void testLegacyHeaderWithoutDictionary() throws Exception {
+    System.setProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE, "0");
+    InvokeCommand copy = (InvokeCommand) read(write(cmd));
+    assertFalse(copy.isCompactHeader());
+    assertCopy(copy);
+  }
+
+  @Test
+  public void testCompactHeader() throws Exception {
+    InvokeCommand copy = (InvokeCommand) read(write(cmd));
+    assertTrue(copy.isCompactHeader());
+    assertCopy(copy);
+  }
+
+  @Test
+  public void testCompactHeaderIsSmaller() throws Exception {
+    System.setProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE, "0");
+    int legacySize = write(cmd).length;
+    System.setProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE, "1024");
+    outgoing = new StreamClassDictionary();
+    int compactSize = write(cmd).length;
+    assertTrue("Expected compact size " + compactSize + " < legacy size " + legacySize, compactSize < legacySize);
+  }
+
+  @Test
+  public void testNamesSentOncePerConnection() throws Exception {
+    byte[] first = write(cmd);
+    byte[] second = write(newCommand());
+    assertTrue("Expected " + second.length + " < " + first.length, second.length < first.length);
+
+    assertCopy((InvokeCommand) read(first));
+    assertCopy((InvokeCommand) read(second));
+  }
+
+  private InvokeCommand newCommand() {
+    return new InvokeCommand(new DefaultOID(10), "add", new Object[] { 1, 2 }, new Class<?>[] { int.class, Integer.class }, "test");
+  }
+
+  private void assertCopy(InvokeCommand copy) throws Exception {
+    assertEquals(cmd.getOID(), copy.getOID());
+    assertEquals("add", copy.getMethodName());
+    assertEquals(VmId.getInstance(), copy.getVmId());
+    assertArrayEquals(new Object[] { 1, 2 }, copy.getParams());
+    copy.convertParams(getClass().getClassLoader());
+    assertArrayEquals(new Class<?>[] { int.class, Integer.class }, copy.getParameterTypes());
+  }
+
+  private byte[] write(Object o) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = serializer.createOutputStream(bos, outgoing);
+    oos.writeObject(o);
+    oos.close();
+    return bos.toByteArray();
+  }
+
+  private Object read(byte[] bytes) throws IOException, ClassNotFoundException {
+    ObjectInputStream ois = serializer.createInputStream(new ByteArrayInputStream(bytes), incoming);
+    return ois.readObject();
+  }
+}
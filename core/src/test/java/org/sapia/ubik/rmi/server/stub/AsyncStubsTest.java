@@ -0,0 +1,189 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.rmi.Remote;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.rmi.server.Hub;
+import org.sapia.ubik.rmi.server.TestInMemoryTransportSetup;
+import org.sapia.ubik.util.Func;
+import org.sapia.ubik.util.VoidFunc;
+
+public class AsyncStubsTest {
+
+  private TestInMemoryTransportSetup transport;
+  private TestAsyncService           stub;
+
+  @Before
+  public void setUp() throws Exception {
+    TestAsyncServiceImpl.pendingCreated = new CountDownLatch(1);
+    transport = new TestInMemoryTransportSetup();
+    transport.setUp();
+    stub = (TestAsyncService) transport.exportObject(new TestAsyncServiceImpl());
+  }
+
+  @After
+  public void tearDown() {
+    transport.tearDown();
+  }
+
+  @Test
+  public void testCall() throws Exception {
+    CompletableFuture<String> result = AsyncStubs.call(stub, new Func<String, TestAsyncService>() {
+      @Override
+      public String call(TestAsyncService s) {
+        return s.echo("test");
+      }
+    });
+    assertEquals("test", result.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testCallWithPrimitiveReturnType() throws Exception {
+    CompletableFuture<Integer> result = AsyncStubs.call(stub, new Func<Integer, TestAsyncService>() {
+      @Override
+      public Integer call(TestAsyncService s) {
+        return s.add(1, 2);
+      }
+    });
+    assertEquals(Integer.valueOf(3), result.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testRun() throws Exception {
+    AsyncStubs.run(stub, new VoidFunc<TestAsyncService>() {
+      @Override
+      public void call(TestAsyncService s) {
+        s.echo("test");
+      }
+    }).get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testCallWithError() throws Exception {
+    CompletableFuture<String> result = AsyncStubs.call(stub, new Func<String, TestAsyncService>() {
+      @Override
+      public String call(TestAsyncService s) {
+        return s.fail("test");
+      }
+    });
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      fail("Expected error");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+      assertEquals("test", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void testCallOnLocalObject() throws Exception {
+    CompletableFuture<String> result = AsyncStubs.call(new TestAsyncServiceImpl(), new Func<String, TestAsyncService>() {
+      @Override
+      public String call(TestAsyncService s) {
+        return s.echo("test");
+      }
+    });
+    assertEquals("test", result.get());
+  }
+
+  @Test
+  public void testMethodReturningFuture() throws Exception {
+    assertEquals("test", stub.echoAsync("test").get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testMethodReturningFailedFuture() throws Exception {
+    try {
+      stub.failAsync("test").get(5, TimeUnit.SECONDS);
+      fail("Expected error");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  @Test
+  public void testMethodReturningPendingFuture() throws Exception {
+    CompletableFuture<String> result = stub.pendingAsync();
+    assertTrue(TestAsyncServiceImpl.pendingCreated.await(5, TimeUnit.SECONDS));
+    assertFalse(result.isDone());
+    TestAsyncServiceImpl.pending.complete("test");
+    assertEquals("test", result.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testAsyncExecutorIsBounded() throws Exception {
+    ThreadPoolExecutor executor = (ThreadPoolExecutor) Hub.getModules().getInvocationDispatcher().getAsyncExecutor();
+    assertEquals(Defaults.DEFAULT_CLIENT_ASYNC_MAX_THREADS, executor.getMaximumPoolSize());
+    assertEquals(Defaults.DEFAULT_CLIENT_ASYNC_QUEUE_SIZE, executor.getQueue().remainingCapacity() + executor.getQueue().size());
+  }
+
+  // ==========================================================================
+
+  public interface TestAsyncService extends Remote {
+
+    public String echo(String value);
+
+    public int add(int a, int b);
+
+    public String fail(String msg);
+
+    public CompletableFuture<String> echoAsync(String value);
+
+    public CompletableFuture<String> failAsync(String msg);
+
+    public CompletableFuture<String> pendingAsync();
+  }
+
+  public static class TestAsyncServiceImpl implements TestAsyncService {
+
+    static volatile CompletableFuture<String> pending;
+    static volatile CountDownLatch            pendingCreated = new CountDownLatch(1);
+
+    @Override
+    public String echo(String value) {
+      return value;
+    }
+
+    @Override
+    public int add(int a, int b) {
+      return a + b;
+    }
+
+    @Override
+    public String fail(String msg) {
+      throw new IllegalArgumentException(msg);
+    }
+
+    @Override
+    public CompletableFuture<String> echoAsync(String value) {
+      return CompletableFuture.completedFuture(value);
+    }
+
+    @Override
+    public CompletableFuture<String> failAsync(String msg) {
+      CompletableFuture<String> future = new CompletableFuture<String>();
+      future.completeExceptionally(new IllegalArgumentException(msg));
+      return future;
+    }
+
+    @Override
+    public CompletableFuture<String> pendingAsync() {
+      pending = new CompletableFuture<String>();
+      pendingCreated.countDown();
+      return pending;
+    }
+  }
+}
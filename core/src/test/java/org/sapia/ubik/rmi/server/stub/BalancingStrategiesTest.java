@@ -0,0 +1,120 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.server.oid.DefaultOID;
+
+public class BalancingStrategiesTest {
+
+  @After
+  public void tearDown() {
+    System.clearProperty(Consts.STATELESS_BALANCING);
+    System.clearProperty(Consts.STATELESS_BALANCING + ".test/service");
+  }
+
+  @Test
+  public void testRoundRobin() {
+    List<RemoteRefContext> contexts = contexts("host", 3);
+    BalancingStrategy strategy = new BalancingStrategies.RoundRobin();
+    for (int i = 0; i < 6; i++) {
+      assertEquals(i % 3, port(strategy.select(contexts)));
+    }
+  }
+
+  @Test
+  public void testLeastOutstanding() {
+    List<RemoteRefContext> contexts = contexts("host", 3);
+    contexts.get(0).getStats().begin();
+    contexts.get(1).getStats().begin();
+    contexts.get(1).getStats().begin();
+    BalancingStrategy strategy = new BalancingStrategies.LeastOutstanding();
+    assertEquals(2, port(strategy.select(contexts)));
+  }
+
+  @Test
+  public void testLeastOutstandingRotatesOnTies() {
+    List<RemoteRefContext> contexts = contexts("host", 3);
+    BalancingStrategy strategy = new BalancingStrategies.LeastOutstanding();
+    assertEquals(0, port(strategy.select(contexts)));
+    assertEquals(1, port(strategy.select(contexts)));
+    assertEquals(2, port(strategy.select(contexts)));
+  }
+
+  @Test
+  public void testPowerOfTwoLatency() {
+    List<RemoteRefContext> contexts = contexts("host", 2);
+    contexts.get(0).getStats().record(1000000);
+    contexts.get(1).getStats().record(10);
+    BalancingStrategy strategy = new BalancingStrategies.PowerOfTwoLatency();
+    for (int i = 0; i < 10; i++) {
+      assertEquals(1, port(strategy.select(contexts)));
+    }
+  }
+
+  @Test
+  public void testPowerOfTwoLatencyPrefersUnsampled() {
+    List<RemoteRefContext> contexts = contexts("host", 2);
+    contexts.get(0).getStats().record(10);
+    BalancingStrategy strategy = new BalancingStrategies.PowerOfTwoLatency();
+    assertEquals(1, port(strategy.select(contexts)));
+  }
+
+  @Test
+  public void testLocality() {
+    List<RemoteRefContext> contexts = contexts("192.0.2.1", 2);
+    contexts.addAll(contexts("127.0.0.1", 1));
+    BalancingStrategies.Locality strategy = new BalancingStrategies.Locality();
+    assertEquals(BalancingStrategies.Locality.SAME_HOST, strategy.distanceTo(contexts.get(2).getAddress()));
+    for (int i = 0; i < 3; i++) {
+      assertSame(contexts.get(contexts.size() - 1), strategy.select(contexts));
+    }
+  }
+
+  @Test
+  public void testEndpointStats() {
+    EndpointStats stats = new EndpointStats();
+    long start = stats.begin();
+    assertEquals(1, stats.getInFlight());
+    stats.end(start, true);
+    assertEquals(0, stats.getInFlight());
+    assertTrue(stats.getLatencyNanos() > 0);
+
+    stats.record(100);
+    stats.record(100);
+    double latency = stats.getLatencyNanos();
+    stats.end(stats.begin(), false);
+    assertEquals(latency, stats.getLatencyNanos(), 0);
+  }
+
+  @Test
+  public void testForBinding() {
+    assertTrue(BalancingStrategies.forBinding("test/service") instanceof BalancingStrategies.RoundRobin);
+    System.setProperty(Consts.STATELESS_BALANCING, BalancingStrategies.LATENCY);
+    assertTrue(BalancingStrategies.forBinding("test/service") instanceof BalancingStrategies.PowerOfTwoLatency);
+    System.setProperty(Consts.STATELESS_BALANCING + ".test/service", BalancingStrategies.LEAST_OUTSTANDING);
+    assertTrue(BalancingStrategies.forBinding("test/service") instanceof BalancingStrategies.LeastOutstanding);
+    System.setProperty(Consts.STATELESS_BALANCING + ".test/service", "unknown");
+    assertTrue(BalancingStrategies.forBinding("test/service") instanceof BalancingStrategies.RoundRobin);
+  }
+
+  private static List<RemoteRefContext> contexts(String host, int count) {
+    List<RemoteRefContext> contexts = new ArrayList<RemoteRefContext>();
+    for (int i = 0; i < count; i++) {
+      contexts.add(new RemoteRefContext(new DefaultOID(i), new TCPAddress("test", host, i)));
+    }
+    return contexts;
+  }
+
+  private static int port(RemoteRefContext context) {
+    return ((TCPAddress) context.getAddress()).getPort();
+  }
+}
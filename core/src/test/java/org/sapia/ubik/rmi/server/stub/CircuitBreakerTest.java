@@ -0,0 +1,239 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.sapia.ubik.rmi.server.stub.CircuitBreaker.DENIED;
+import static org.sapia.ubik.rmi.server.stub.CircuitBreaker.PERMITTED;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.rmi.server.oid.DefaultOID;
+import org.sapia.ubik.rmi.server.stub.CircuitBreaker.State;
+import org.sapia.ubik.util.SysClock.MutableClock;
+
+public class CircuitBreakerTest {
+
+  private MutableClock   clock;
+  private CircuitBreaker breaker;
+
+  @Before
+  public void setUp() {
+    clock = MutableClock.getInstance();
+    breaker = new CircuitBreaker(new CircuitBreaker.Settings(true, 10, 4, 0.5, 3, 100, 0.5, 1000), clock);
+  }
+
+  @Test
+  public void testOpenOnFailureRate() {
+    breaker.onSuccess(PERMITTED, 0);
+    breaker.onFailure(PERMITTED);
+    breaker.onSuccess(PERMITTED, 0);
+    assertEquals(State.CLOSED, breaker.getState());
+    breaker.onFailure(PERMITTED);
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.isCallPermitted());
+    assertEquals(1, breaker.getTripCount());
+  }
+
+  @Test
+  public void testOpenOnConsecutiveFailures() {
+    for (int i = 0; i < 3; i++) {
+      assertEquals(State.CLOSED, breaker.getState());
+      breaker.onFailure(PERMITTED);
+    }
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void testOpenOnSlowCallRate() {
+    breaker.onSuccess(PERMITTED, 0);
+    breaker.onSuccess(PERMITTED, 0);
+    breaker.onSuccess(PERMITTED, millis(100));
+    assertEquals(State.CLOSED, breaker.getState());
+    breaker.onSuccess(PERMITTED, millis(200));
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void testSlidingWindow() {
+    for (int i = 0; i < 20; i++) {
+      breaker.onSuccess(PERMITTED, 0);
+      breaker.onSuccess(PERMITTED, 0);
+      breaker.onFailure(PERMITTED);
+    }
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.getFailureRate() < 0.5);
+  }
+
+  @Test
+  public void testHalfOpenProbeSucceeds() {
+    trip();
+    assertEquals(DENIED, breaker.tryAcquirePermission());
+    clock.increaseCurrentTimeMillis(1000);
+    assertTrue(breaker.isCallPermitted());
+    long probe = breaker.tryAcquirePermission();
+    assertTrue(probe > PERMITTED);
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    assertFalse(breaker.isCallPermitted());
+    assertEquals(DENIED, breaker.tryAcquirePermission());
+    breaker.onSuccess(probe, 0);
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.isCallPermitted());
+  }
+
+  @Test
+  public void testHalfOpenProbeFails() {
+    trip();
+    clock.increaseCurrentTimeMillis(1000);
+    breaker.onFailure(breaker.tryAcquirePermission());
+    assertEquals(State.OPEN, breaker.getState());
+    assertFalse(breaker.isCallPermitted());
+    assertEquals(2, breaker.getTripCount());
+  }
+
+  @Test
+  public void testHalfOpenProbeSlow() {
+    trip();
+    clock.increaseCurrentTimeMillis(1000);
+    breaker.onSuccess(breaker.tryAcquirePermission(), millis(100));
+    assertEquals(State.OPEN, breaker.getState());
+  }
+
+  @Test
+  public void testHalfOpenIgnoresOtherInvocations() {
+    trip();
+    clock.increaseCurrentTimeMillis(1000);
+    long probe = breaker.tryAcquirePermission();
+    breaker.onSuccess(PERMITTED, 0);
+    breaker.onSuccess(DENIED, 0);
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    breaker.onFailure(PERMITTED);
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    breaker.onSuccess(probe, 0);
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testHalfOpenIgnoresStaleProbe() {
+    trip();
+    clock.increaseCurrentTimeMillis(1000);
+    long stale = breaker.tryAcquirePermission();
+    breaker.onFailure(stale);
+    clock.increaseCurrentTimeMillis(1000);
+    long probe = breaker.tryAcquirePermission();
+    breaker.onSuccess(stale, 0);
+    assertEquals(State.HALF_OPEN, breaker.getState());
+    breaker.onSuccess(probe, 0);
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testReleaseProbe() {
+    trip();
+    clock.increaseCurrentTimeMillis(1000);
+    long probe = breaker.tryAcquirePermission();
+    breaker.release(probe);
+    assertTrue(breaker.isCallPermitted());
+    probe = breaker.tryAcquirePermission();
+    assertTrue(probe > PERMITTED);
+    breaker.onSuccess(probe, 0);
+    assertEquals(State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  public void testReset() {
+    trip();
+    breaker.reset();
+    assertEquals(State.CLOSED, breaker.getState());
+    assertTrue(breaker.isCallPermitted());
+  }
+
+  @Test
+  public void testDisabled() {
+    breaker = new CircuitBreaker(new CircuitBreaker.Settings(false, 10, 4, 0.5, 3, 100, 0.5, 1000), clock);
+    trip();
+    assertEquals(State.CLOSED, breaker.getState());
+    assertEquals(PERMITTED, breaker.tryAcquirePermission());
+  }
+
+  @Test
+  public void testSelectSkipsOpenCircuits() throws Exception {
+    List<RemoteRefContext> contexts = contexts(3);
+    for (int i = 0; i < 3; i++) {
+      contexts.get(1).getCircuitBreaker().onFailure(PERMITTED);
+    }
+    ThreadSpecificContextList tsl = threadSpecificList(contexts);
+    BalancingStrategy strategy = new BalancingStrategies.RoundRobin();
+    for (int i = 0; i < 4; i++) {
+      assertEquals(i % 2 == 0 ? 0 : 2, port(tsl.select(strategy)));
+      assertEquals(PERMITTED, tsl.getPermit());
+    }
+  }
+
+  @Test
+  public void testSelectWhenAllCircuitsOpen() throws Exception {
+    List<RemoteRefContext> contexts = contexts(2);
+    for (RemoteRefContext context : contexts) {
+      for (int i = 0; i < 3; i++) {
+        context.getCircuitBreaker().onFailure(PERMITTED);
+      }
+    }
+    ThreadSpecificContextList tsl = threadSpecificList(contexts);
+    BalancingStrategy strategy = new BalancingStrategies.RoundRobin();
+    assertEquals(0, port(tsl.select(strategy)));
+    assertEquals(DENIED, tsl.getPermit());
+
+    Set<RemoteRefContext> tried = new HashSet<RemoteRefContext>(contexts.subList(0, 1));
+    assertNull(tsl.select(strategy, tried));
+  }
+
+  @Test(expected = RemoteException.class)
+  public void testSelectWithoutContexts() throws Exception {
+    threadSpecificList(Collections.<RemoteRefContext>emptyList()).select(new BalancingStrategies.RoundRobin());
+  }
+
+  private void trip() {
+    for (int i = 0; i < 3; i++) {
+      breaker.onFailure(PERMITTED);
+    }
+  }
+
+  private static long millis(long millis) {
+    return millis * 1000000;
+  }
+
+  private static List<RemoteRefContext> contexts(int count) {
+    List<RemoteRefContext> contexts = new ArrayList<RemoteRefContext>();
+    for (int i = 0; i < count; i++) {
+      contexts.add(new RemoteRefContext(new DefaultOID(i), new TCPAddress("test", "host", i)));
+    }
+    return contexts;
+  }
+
+  private static ThreadSpecificContextList threadSpecificList(final List<RemoteRefContext> contexts) {
+    return new ThreadSpecificContextList(new ContextList.Callback() {
+      @Override
+      public long getTimestamp() {
+        return 1;
+      }
+
+      @Override
+      public List<RemoteRefContext> getContexts() {
+        return contexts;
+      }
+    });
+  }
+
+  private static int port(RemoteRefContext context) {
+    return ((TCPAddress) context.getAddress()).getPort();
+  }
+}
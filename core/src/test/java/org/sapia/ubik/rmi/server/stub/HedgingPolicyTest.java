@@ -0,0 +1,91 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Hedged;
+
+public class HedgingPolicyTest {
+
+  @After
+  public void tearDown() {
+    System.clearProperty(Consts.STATELESS_HEDGED_METHODS + ".test/service");
+  }
+
+  @Test
+  public void testAnnotatedMethod() throws Exception {
+    HedgingPolicy policy = new HedgingPolicy(Collections.<String>emptySet(), 95, 0);
+    assertNotNull(policy.getTracker(TestService.class.getMethod("read")));
+    assertNull(policy.getTracker(TestService.class.getMethod("write")));
+    assertNotNull(policy.getTracker(TestHedgedService.class.getMethod("write")));
+  }
+
+  @Test
+  public void testTrackerPerMethod() throws Exception {
+    HedgingPolicy policy = new HedgingPolicy(Collections.<String>emptySet(), 95, 0);
+    assertSame(policy.getTracker(TestService.class.getMethod("read")), policy.getTracker(TestService.class.getMethod("read")));
+  }
+
+  @Test
+  public void testForBinding() throws Exception {
+    System.setProperty(Consts.STATELESS_HEDGED_METHODS + ".test/service", "write, other");
+    HedgingPolicy policy = HedgingPolicy.forBinding("test/service");
+    assertNotNull(policy.getTracker(TestService.class.getMethod("write")));
+
+    policy = new HedgingPolicy(new HashSet<String>(Collections.singleton("*")), 95, 0);
+    assertNotNull(policy.getTracker(TestService.class.getMethod("write")));
+  }
+
+  @Test
+  public void testDelayNotComputedBeforeMinSamples() {
+    HedgingPolicy.LatencyTracker tracker = new HedgingPolicy.LatencyTracker(100, 95, 0);
+    for (int i = 0; i < HedgingPolicy.LatencyTracker.MIN_SAMPLES - 1; i++) {
+      tracker.record(i);
+      assertEquals(-1, tracker.getDelayNanos());
+    }
+    tracker.record(100);
+    assertEquals(18, tracker.getDelayNanos());
+  }
+
+  @Test
+  public void testPercentile() {
+    HedgingPolicy.LatencyTracker tracker = new HedgingPolicy.LatencyTracker(100, 95, 0);
+    for (int i = 1; i <= 100; i++) {
+      tracker.record(i);
+    }
+    assertEquals(95, tracker.getDelayNanos());
+  }
+
+  @Test
+  public void testMinDelay() {
+    long minDelay = TimeUnit.MILLISECONDS.toNanos(5);
+    HedgingPolicy.LatencyTracker tracker = new HedgingPolicy.LatencyTracker(100, 95, minDelay);
+    for (int i = 0; i < 100; i++) {
+      tracker.record(1);
+    }
+    assertEquals(minDelay, tracker.getDelayNanos());
+  }
+
+  public interface TestService {
+
+    @Hedged
+    public String read();
+
+    public void write();
+  }
+
+  @Hedged
+  public interface TestHedgedService {
+
+    public void write();
+  }
+}
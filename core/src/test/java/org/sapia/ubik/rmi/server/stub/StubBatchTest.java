@@ -0,0 +1,162 @@
+package org.sapia.ubik.rmi.server.stub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.server.Hub;
+import org.sapia.ubik.rmi.server.TestInMemoryTransportSetup;
+import org.sapia.ubik.rmi.server.command.InvokeCommand;
+import org.sapia.ubik.rmi.server.invocation.ServerPostInvokeEvent;
+import org.sapia.ubik.rmi.server.invocation.ServerPreInvokeEvent;
+import org.sapia.ubik.rmi.server.stub.AsyncStubsTest.TestAsyncService;
+import org.sapia.ubik.rmi.server.stub.AsyncStubsTest.TestAsyncServiceImpl;
+import org.sapia.ubik.util.Func;
+
+public class StubBatchTest {
+
+  private TestInMemoryTransportSetup transport;
+  private TestAsyncService           stub;
+  private InvokeInterceptor          interceptor;
+
+  @Before
+  public void setUp() throws Exception {
+    transport = new TestInMemoryTransportSetup();
+    transport.setUp();
+    stub = (TestAsyncService) transport.exportObject(new TestAsyncServiceImpl());
+    interceptor = new InvokeInterceptor();
+    Hub.getModules().getServerRuntime().addInterceptor(ServerPreInvokeEvent.class, interceptor);
+    Hub.getModules().getServerRuntime().addInterceptor(ServerPostInvokeEvent.class, interceptor);
+  }
+
+  @After
+  public void tearDown() {
+    transport.tearDown();
+  }
+
+  @Test
+  public void testExecute() throws Throwable {
+    StubBatch<TestAsyncService> batch = StubBatch.of(stub);
+    CompletableFuture<String> first = batch.call(echo("first"));
+    CompletableFuture<String> second = batch.call(echo("second"));
+    Object[] results = batch.execute();
+
+    assertEquals(2, results.length);
+    assertEquals("first", results[0]);
+    assertEquals("second", results[1]);
+    assertEquals("first", first.get());
+    assertEquals("second", second.get());
+    assertEquals(0, batch.size());
+  }
+
+  @Test
+  public void testExecuteParallel() throws Throwable {
+    StubBatch<TestAsyncService> batch = StubBatch.of(stub).parallel();
+    for (int i = 0; i < 10; i++) {
+      batch.call(echo("value" + i));
+    }
+    Object[] results = batch.execute();
+    for (int i = 0; i < 10; i++) {
+      assertEquals("value" + i, results[i]);
+    }
+  }
+
+  @Test
+  public void testExecuteDispatchesEventsPerCommand() throws Throwable {
+    doTestExecuteDispatchesEventsPerCommand(StubBatch.of(stub));
+  }
+
+  @Test
+  public void testExecuteParallelDispatchesEventsPerCommand() throws Throwable {
+    doTestExecuteDispatchesEventsPerCommand(StubBatch.of(stub).parallel());
+  }
+
+  @Test
+  public void testExecuteWithError() throws Throwable {
+    StubBatch<TestAsyncService> batch = StubBatch.of(stub);
+    CompletableFuture<String> failed = batch.call(new Func<String, TestAsyncService>() {
+      @Override
+      public String call(TestAsyncService s) {
+        return s.fail("test");
+      }
+    });
+    CompletableFuture<String> succeeded = batch.call(echo("value"));
+    Object[] results = batch.execute();
+
+    assertTrue(results[0] instanceof IllegalArgumentException);
+    assertEquals("value", succeeded.get());
+    try {
+      failed.get();
+      fail("Expected error");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+  }
+
+  @Test
+  public void testExecuteOnLocalObject() throws Throwable {
+    StubBatch<TestAsyncService> batch = StubBatch.of((TestAsyncService) new TestAsyncServiceImpl());
+    CompletableFuture<String> result = batch.call(echo("value"));
+    batch.execute();
+    assertEquals("value", result.get());
+  }
+
+  private void doTestExecuteDispatchesEventsPerCommand(StubBatch<TestAsyncService> batch) throws Throwable {
+    Set<Object> values = new HashSet<Object>();
+    for (int i = 0; i < 10; i++) {
+      batch.call(echo("value" + i));
+      values.add("value" + i);
+    }
+    batch.execute();
+
+    assertEquals(10, interceptor.preInvoked.size());
+    assertEquals(10, interceptor.postInvoked.size());
+    assertEquals(values, paramsOf(interceptor.preInvoked));
+    assertEquals(values, paramsOf(interceptor.postInvoked));
+  }
+
+  private static Set<Object> paramsOf(List<InvokeCommand> commands) {
+    Set<Object> params = new HashSet<Object>();
+    for (InvokeCommand cmd : commands) {
+      assertEquals("echo", cmd.getMethodName());
+      params.add(cmd.getParams()[0]);
+    }
+    return params;
+  }
+
+  private static Func<String, TestAsyncService> echo(final String value) {
+    return new Func<String, TestAsyncService>() {
+      @Override
+      public String call(TestAsyncService s) {
+        return s.echo(value);
+      }
+    };
+  }
+
+  // ==========================================================================
+
+  public static class InvokeInterceptor {
+
+    private List<InvokeCommand> preInvoked  = Collections.synchronizedList(new ArrayList<InvokeCommand>());
+    private List<InvokeCommand> postInvoked = Collections.synchronizedList(new ArrayList<InvokeCommand>());
+
+    public void onServerPreInvokeEvent(ServerPreInvokeEvent evt) {
+      preInvoked.add(evt.getInvokeCommand());
+    }
+
+    public void onServerPostInvokeEvent(ServerPostInvokeEvent evt) {
+      postInvoked.add(evt.getInvokeCommand());
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.net.TCPAddress;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.serialization.BinaryObjectInputStream;
+import org.sapia.ubik.serialization.BinaryObjectOutputStream;
+import org.sapia.ubik.serialization.ClassRegistry;
+
+public class SerializersTest {
+
+  private static final String TRANSPORT = "test-transport";
+
+  @Before
+  public void setUp() {
+    Serializers.clear();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(Consts.SERIALIZATION_PROVIDER + "." + TRANSPORT);
+    Serializers.clear();
+  }
+
+  @Test
+  public void testDetectJdkStream() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bos);
+    oos.writeObject("jdk");
+    oos.flush();
+
+    ObjectInputStream ois = Serializers.createInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    assertTrue(ois instanceof MarshalInputStream);
+    assertEquals("jdk", ois.readObject());
+  }
+
+  @Test
+  public void testDetectBinaryStream() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new BinaryObjectOutputStream(bos, new ClassRegistry());
+    oos.writeObject("binary");
+    oos.flush();
+
+    ObjectInputStream ois = Serializers.createInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    assertTrue(ois instanceof BinaryObjectInputStream);
+    assertEquals("binary", ois.readObject());
+  }
+
+  @Test
+  public void testDetectJBossStream() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new JBossSerializer().createOutputStream(bos);
+    oos.writeObject("jboss");
+    oos.flush();
+
+    ObjectInputStream ois = Serializers.createInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    assertTrue(ois instanceof JBossMarshalInputStream);
+    assertEquals("jboss", ois.readObject());
+  }
+
+  @Test
+  public void testGetSerializerForTransport() {
+    System.setProperty(Consts.SERIALIZATION_PROVIDER + "." + TRANSPORT, Consts.SERIALIZATION_PROVIDER_BINARY);
+    assertEquals(Consts.SERIALIZATION_PROVIDER_BINARY, Serializers.getSerializerFor(TRANSPORT).getName());
+  }
+
+  @Test
+  public void testGetSerializerForAddress() {
+    TCPAddress address = new TCPAddress(TRANSPORT, "localhost", 1000);
+    assertEquals(Serializers.getDefault().getName(), Serializers.getSerializerFor(address).getName());
+    Serializers.register(address, new BinarySerializer());
+    assertEquals(Consts.SERIALIZATION_PROVIDER_BINARY, Serializers.getSerializerFor(address).getName());
+    Serializers.unregister(address);
+    assertEquals(Serializers.getDefault().getName(), Serializers.getSerializerFor(address).getName());
+  }
+
+}
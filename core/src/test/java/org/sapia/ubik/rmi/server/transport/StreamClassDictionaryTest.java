@@ -0,0 +1,142 @@
+package org.sapia.ubik.rmi.server.transport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.serialization.SerializationBuffer;
+import org.sapia.ubik.serialization.SerializationBuffers;
+
+public class StreamClassDictionaryTest {
+
+  private StreamClassDictionary outgoing;
+  private StreamClassDictionary incoming;
+
+  @Before
+  public void setUp() {
+    System.setProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE, "1024");
+    outgoing = new StreamClassDictionary();
+    incoming = new StreamClassDictionary();
+  }
+
+  @After
+  public void tearDown() {
+    System.clearProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE);
+  }
+
+  @Test
+  public void testDescriptorsSentOncePerConnection() throws Exception {
+    byte[] first = write(new Message("first"), outgoing);
+    byte[] second = write(new Message("second"), outgoing);
+    assertTrue("Expected " + second.length + " < " + first.length, second.length < first.length);
+
+    assertEquals("first", ((Message) read(first, incoming)).payload);
+    assertEquals("second", ((Message) read(second, incoming)).payload);
+  }
+
+  @Test
+  public void testObjectIdentityClearedEachStream() throws Exception {
+    Message msg = new Message("value");
+    read(write(msg, outgoing), incoming);
+    msg.payload = "changed";
+    assertEquals("changed", ((Message) read(write(msg, outgoing), incoming)).payload);
+  }
+
+  @Test
+  public void testFullDictionary() throws Exception {
+    outgoing = new StreamClassDictionary(1);
+    incoming = new StreamClassDictionary(1);
+    List<Message> messages = new ArrayList<Message>();
+    messages.add(new Message("value"));
+    for (int i = 0; i < 2; i++) {
+      List<?> read = (List<?>) read(write(messages, outgoing), incoming);
+      assertEquals("value", ((Message) read.get(0)).payload);
+    }
+    assertEquals(1, outgoing.size());
+  }
+
+  @Test
+  public void testOwnDictionaryClearedOnReset() throws Exception {
+    SerializationBuffers buffers = new SerializationBuffers(new SerializationBuffer.StreamFactory() {
+      @Override
+      public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+        return new MarshalOutputStream(os);
+      }
+    });
+    for (int i = 0; i < 2; i++) {
+      SerializationBuffer buf = buffers.acquire();
+      try {
+        buf.writeObject(new Message("value"));
+        assertEquals("value", ((Message) new MarshalInputStream(buf.toInputStream()).readObject()).payload);
+      } finally {
+        buf.release();
+      }
+    }
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+    System.clearProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE);
+    byte[] bytes = write(new Message("plain"), outgoing);
+    assertEquals(0, outgoing.size());
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    assertEquals("plain", ((Message) ois.readObject()).payload);
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    System.setProperty(Consts.MARSHALLING_CLASS_DICTIONARY_MAX_SIZE, "0");
+    byte[] bytes = write(new Message("plain"), outgoing);
+    assertEquals(0, outgoing.size());
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    assertEquals("plain", ((Message) ois.readObject()).payload);
+  }
+
+  @Test
+  public void testReadPlainJdkStream() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bos);
+    oos.writeObject(new Message("plain"));
+    oos.flush();
+    assertEquals("plain", ((Message) read(bos.toByteArray(), incoming)).payload);
+  }
+
+  private static byte[] write(Object toWrite, StreamClassDictionary dictionary) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new MarshalOutputStream(bos, dictionary);
+    oos.writeObject(toWrite);
+    oos.flush();
+    return bos.toByteArray();
+  }
+
+  private static Object read(byte[] bytes, StreamClassDictionary dictionary) throws Exception {
+    ObjectInputStream ois = new MarshalInputStream(new ByteArrayInputStream(bytes), dictionary);
+    return ois.readObject();
+  }
+
+  // ==========================================================================
+
+  static class Message implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String payload;
+
+    Message(String payload) {
+      this.payload = payload;
+    }
+  }
+}
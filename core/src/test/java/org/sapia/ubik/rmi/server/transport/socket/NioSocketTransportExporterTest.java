@@ -0,0 +1,81 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.server.Hub;
+
+public class NioSocketTransportExporterTest {
+
+  @Before
+  public void setUp() {
+    Hub.shutdown();
+    System.setProperty(Consts.COLOCATED_CALLS_ENABLED, "false");
+  }
+
+  @After
+  public void tearDown() {
+    Hub.shutdown();
+    System.clearProperty(Consts.COLOCATED_CALLS_ENABLED);
+  }
+
+  @Test
+  public void testExport() throws Exception {
+    final AtomicInteger counter = new AtomicInteger();
+    TestInterface remoteObject = (TestInterface) new NioExporter().export(new TestInterface() {
+      @Override
+      public int increment() {
+        return counter.incrementAndGet();
+      }
+    });
+
+    assertEquals(1, remoteObject.increment());
+    assertEquals(2, remoteObject.increment());
+  }
+
+  @Test
+  public void testConcurrentCalls() throws Exception {
+    final AtomicInteger counter = new AtomicInteger();
+    final TestInterface remoteObject = (TestInterface) new NioExporter().export(new TestInterface() {
+      @Override
+      public int increment() {
+        return counter.incrementAndGet();
+      }
+    });
+
+    ExecutorService callers = Executors.newFixedThreadPool(10);
+    for (int i = 0; i < 100; i++) {
+      callers.execute(new Runnable() {
+        @Override
+        public void run() {
+          remoteObject.increment();
+        }
+      });
+    }
+    callers.shutdown();
+    callers.awaitTermination(30, TimeUnit.SECONDS);
+    assertEquals(100, counter.get());
+  }
+
+  public interface TestInterface {
+
+    public int increment();
+  }
+
+  static class NioExporter extends SocketServerExporter {
+    @Override
+    protected void addProperties(Properties props) {
+      props.setProperty(SocketTransportProvider.NIO, "true");
+    }
+  }
+
+}
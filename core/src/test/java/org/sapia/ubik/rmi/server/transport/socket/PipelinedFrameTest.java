@@ -0,0 +1,43 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.StreamCorruptedException;
+
+import org.junit.Test;
+
+public class PipelinedFrameTest {
+
+  @Test
+  public void testReadFrom() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    new PipelinedFrame(5, new byte[] { 1, 2, 3 }).writeTo(new DataOutputStream(bos));
+
+    PipelinedFrame frame = PipelinedFrame.readFrom(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())), 3);
+    assertEquals(5, frame.getCorrelationId());
+    assertEquals(3, frame.getPayload().length);
+  }
+
+  @Test(expected = StreamCorruptedException.class)
+  public void testReadFromWithNegativeLength() throws Exception {
+    PipelinedFrame.readFrom(header(1, -1), 1024);
+  }
+
+  @Test(expected = StreamCorruptedException.class)
+  public void testReadFromExceedingMaxFrameSize() throws Exception {
+    PipelinedFrame.readFrom(header(1, 1025), 1024);
+  }
+
+  private static DataInputStream header(int correlationId, int length) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    DataOutputStream dos = new DataOutputStream(bos);
+    dos.writeInt(correlationId);
+    dos.writeInt(length);
+    dos.flush();
+    return new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+  }
+}
@@ -0,0 +1,196 @@
+package org.sapia.ubik.rmi.server.transport.socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.server.Hub;
+
+public class PipelinedSocketTransportProviderTest {
+
+  @Before
+  public void setUp() {
+    Hub.shutdown();
+    System.setProperty(Consts.COLOCATED_CALLS_ENABLED, "false");
+  }
+
+  @After
+  public void tearDown() {
+    Hub.shutdown();
+    System.clearProperty(Consts.COLOCATED_CALLS_ENABLED);
+  }
+
+  @Test
+  public void testExport() throws Exception {
+    final AtomicInteger counter = new AtomicInteger();
+    TestInterface remoteObject = (TestInterface) Hub.exportObject(new TestInterface() {
+      @Override
+      public int increment() {
+        return counter.incrementAndGet();
+      }
+
+      @Override
+      public void await(CountDownLatch latch) {
+      }
+
+      @Override
+      public void accept(Object o) {
+      }
+    }, PipelinedSocketTransportProvider.PIPELINED_TRANSPORT_TYPE);
+
+    assertEquals(1, remoteObject.increment());
+    assertEquals(2, remoteObject.increment());
+  }
+
+  @Test(timeout = 30000)
+  public void testUndeserializableCommand() throws Exception {
+    final AtomicInteger counter = new AtomicInteger();
+    TestInterface remoteObject = (TestInterface) Hub.exportObject(new TestInterface() {
+      @Override
+      public int increment() {
+        return counter.incrementAndGet();
+      }
+
+      @Override
+      public void await(CountDownLatch latch) {
+      }
+
+      @Override
+      public void accept(Object o) {
+      }
+    }, PipelinedSocketTransportProvider.PIPELINED_TRANSPORT_TYPE);
+
+    try {
+      remoteObject.accept(new Undeserializable());
+      fail("Expected error deserializing the command");
+    } catch (Throwable e) {
+      assertRemoteException(e);
+    }
+    assertEquals(0, counter.get());
+    assertEquals(1, remoteObject.increment());
+  }
+
+  @Test
+  public void testConcurrentCalls() throws Exception {
+    final AtomicInteger counter = new AtomicInteger();
+    final TestInterface remoteObject = (TestInterface) Hub.exportObject(new TestInterface() {
+      @Override
+      public int increment() {
+        return counter.incrementAndGet();
+      }
+
+      @Override
+      public void await(CountDownLatch latch) {
+      }
+
+      @Override
+      public void accept(Object o) {
+      }
+    }, PipelinedSocketTransportProvider.PIPELINED_TRANSPORT_TYPE);
+
+    ExecutorService callers = Executors.newFixedThreadPool(10);
+    for (int i = 0; i < 100; i++) {
+      callers.execute(new Runnable() {
+        @Override
+        public void run() {
+          remoteObject.increment();
+        }
+      });
+    }
+    callers.shutdown();
+    callers.awaitTermination(30, TimeUnit.SECONDS);
+    assertEquals(100, counter.get());
+  }
+
+  @Test
+  public void testSlowCallDoesNotBlockOthers() throws Exception {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger counter = new AtomicInteger();
+    final TestInterface remoteObject = (TestInterface) Hub.exportObject(new TestInterface() {
+      @Override
+      public int increment() {
+        return counter.incrementAndGet();
+      }
+
+      @Override
+      public void await(CountDownLatch latch) {
+        entered.countDown();
+        try {
+          release.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      @Override
+      public void accept(Object o) {
+      }
+    }, PipelinedSocketTransportProvider.PIPELINED_TRANSPORT_TYPE);
+
+    System.setProperty(PipelinedSocketTransportProvider.CONNECTIONS, "1");
+    ExecutorService caller = Executors.newSingleThreadExecutor();
+    try {
+      caller.execute(new Runnable() {
+        @Override
+        public void run() {
+          remoteObject.await(null);
+        }
+      });
+      // the slow call is in progress on the server before the others are sent
+      assertTrue(entered.await(30, TimeUnit.SECONDS));
+      assertEquals(1, remoteObject.increment());
+      assertEquals(2, remoteObject.increment());
+      assertEquals(1, release.getCount());
+    } finally {
+      release.countDown();
+      caller.shutdown();
+      System.clearProperty(PipelinedSocketTransportProvider.CONNECTIONS);
+    }
+    assertTrue(caller.awaitTermination(30, TimeUnit.SECONDS));
+  }
+
+  private static void assertRemoteException(Throwable error) {
+    for (Throwable t = error; t != null; t = t.getCause()) {
+      if (t instanceof RemoteException) {
+        return;
+      }
+    }
+    throw new AssertionError("Expected RemoteException, got: " + error);
+  }
+
+  public interface TestInterface {
+
+    public int increment();
+
+    public void await(CountDownLatch latch);
+
+    public void accept(Object o);
+  }
+
+  public static class Undeserializable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private void readObject(ObjectInputStream in) throws IOException {
+      throw new InvalidObjectException("Cannot be deserialized");
+    }
+  }
+
+}
@@ -0,0 +1,286 @@
+package org.sapia.ubik.serialization;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryObjectStreamTest {
+
+  private ClassRegistry         registry;
+  private ByteArrayOutputStream bytes;
+  private BinaryObjectOutputStream out;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new ClassRegistry();
+    bytes    = new ByteArrayOutputStream();
+    out      = new BinaryObjectOutputStream(bytes, registry);
+  }
+
+  @Test
+  public void testPrimitiveWrappers() throws Exception {
+    Object[] values = { 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MIN_VALUE, 5L, (short) 3, (byte) -2, 'x', 1.5f, -2.25d, true, false, "test", "", "\u00e9t\u00e9", null };
+    for (Object v : values) {
+      out.writeObject(v);
+    }
+    ObjectInputStream in = input();
+    for (Object v : values) {
+      assertEquals(v, in.readObject());
+    }
+  }
+
+  @Test
+  public void testPrimitiveData() throws Exception {
+    out.writeInt(-5);
+    out.writeLong(Long.MAX_VALUE);
+    out.writeUTF("utf \u4e2d");
+    out.writeBoolean(true);
+    out.writeDouble(3.5);
+    ObjectInputStream in = input();
+    assertEquals(-5, in.readInt());
+    assertEquals(Long.MAX_VALUE, in.readLong());
+    assertEquals("utf \u4e2d", in.readUTF());
+    assertTrue(in.readBoolean());
+    assertEquals(3.5, in.readDouble(), 0);
+  }
+
+  @Test
+  public void testFieldsObject() throws Exception {
+    TestBean bean = new TestBean("bean", 10);
+    bean.tags.add("a");
+    bean.values = new int[] { 1, 2, 3 };
+    bean.date = new Date(1000);
+    bean.unit = TimeUnit.SECONDS;
+    bean.cache = "cached";
+    out.writeObject(bean);
+
+    TestBean copy = (TestBean) input().readObject();
+    assertEquals("bean", copy.name);
+    assertEquals(10, copy.count);
+    assertEquals(Arrays.asList("a"), copy.tags);
+    assertArrayEquals(new int[] { 1, 2, 3 }, copy.values);
+    assertEquals(new Date(1000), copy.date);
+    assertEquals(TimeUnit.SECONDS, copy.unit);
+    assertNull(copy.cache);
+  }
+
+  @Test
+  public void testSharedReferencesAndCycles() throws Exception {
+    TestBean bean = new TestBean("cycle", 1);
+    bean.next = bean;
+    List<Object> list = new ArrayList<Object>();
+    list.add(bean);
+    list.add(bean);
+    out.writeObject(list);
+
+    @SuppressWarnings("unchecked")
+    List<Object> copy = (List<Object>) input().readObject();
+    TestBean first = (TestBean) copy.get(0);
+    assertSame(first, copy.get(1));
+    assertSame(first, first.next);
+  }
+
+  @Test
+  public void testReferencesNotSharedAcrossObjects() throws Exception {
+    TestBean bean = new TestBean("bean", 1);
+    out.writeObject(bean);
+    out.writeObject(bean);
+    ObjectInputStream in = input();
+    TestBean first = (TestBean) in.readObject();
+    TestBean second = (TestBean) in.readObject();
+    assertTrue(first != second);
+    assertEquals("bean", second.name);
+  }
+
+  @Test
+  public void testCollections() throws Exception {
+    Map<String, Object> map = new HashMap<String, Object>();
+    map.put("set", new LinkedHashSet<String>(Arrays.asList("x", "y")));
+    map.put("array", new String[] { "a", null });
+    map.put("tree", new TreeMap<String, Integer>());
+    out.writeObject(map);
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> copy = (Map<String, Object>) input().readObject();
+    assertEquals(map.get("set"), copy.get("set"));
+    assertArrayEquals((String[]) map.get("array"), (String[]) copy.get("array"));
+    assertEquals(TreeMap.class, copy.get("tree").getClass());
+  }
+
+  @Test
+  public void testExternalizable() throws Exception {
+    out.writeObject(new TestExternalizable("ext"));
+    assertEquals("ext", ((TestExternalizable) input().readObject()).value);
+  }
+
+  @Test
+  public void testJdkFallback() throws Exception {
+    TestCustom custom = new TestCustom();
+    custom.value = "custom";
+    out.writeObject(new Object[] { custom, new BigDecimal("1.25") });
+    Object[] copy = (Object[]) input().readObject();
+    assertEquals("custom-written", ((TestCustom) copy[0]).value);
+    assertEquals(new BigDecimal("1.25"), copy[1]);
+  }
+
+  @Test(expected = NotSerializableException.class)
+  public void testNotSerializable() throws Exception {
+    out.writeObject(new Object());
+  }
+
+  @Test
+  public void testRegisteredClassIsSmaller() throws Exception {
+    out.writeObject(new TestBean("bean", 1));
+    out.flush();
+    int unregistered = bytes.size();
+
+    ClassRegistry other = new ClassRegistry().register(TestBean.class).register(ArrayList.class);
+    ByteArrayOutputStream registeredBytes = new ByteArrayOutputStream();
+    BinaryObjectOutputStream registeredOut = new BinaryObjectOutputStream(registeredBytes, other);
+    registeredOut.writeObject(new TestBean("bean", 1));
+    registeredOut.flush();
+    assertTrue(registeredBytes.size() < unregistered);
+
+    TestBean copy = (TestBean) new BinaryObjectInputStream(new ByteArrayInputStream(registeredBytes.toByteArray()), other).readObject();
+    assertEquals("bean", copy.name);
+  }
+
+  @Test
+  public void testClassHandlesAndReset() throws Exception {
+    out.writeObject(new TestBean("first", 1));
+    out.flush();
+    int afterFirst = bytes.size();
+    out.writeObject(new TestBean("first", 1));
+    out.flush();
+    int secondLen = bytes.size() - afterFirst;
+    assertTrue("class name should not be rewritten", secondLen < afterFirst);
+
+    out.reset();
+    out.writeObject(new TestBean("third", 3));
+    ObjectInputStream in = input();
+    in.readObject();
+    in.readObject();
+    assertEquals("third", ((TestBean) in.readObject()).name);
+  }
+
+  @Test
+  public void testReplaceObject() throws Exception {
+    BinaryObjectOutputStream replacing = new BinaryObjectOutputStream(bytes = new ByteArrayOutputStream(), registry) {
+      @Override
+      protected Object replaceObject(Object obj) throws IOException {
+        if (obj instanceof TestBean) {
+          return "replaced:" + ((TestBean) obj).name;
+        }
+        return obj;
+      }
+    };
+    List<Object> list = new ArrayList<Object>();
+    list.add(new TestBean("bean", 1));
+    replacing.writeObject(list);
+    replacing.flush();
+    assertEquals(Arrays.asList("replaced:bean"), input().readObject());
+  }
+
+  @Test
+  public void testNoReadAhead() throws Exception {
+    out.writeObject("first");
+    out.flush();
+    bytes.write(42);
+    ByteArrayInputStream source = new ByteArrayInputStream(bytes.toByteArray());
+    ObjectInputStream in = new BinaryObjectInputStream(source, registry);
+    assertEquals("first", in.readObject());
+    assertEquals(42, source.read());
+  }
+
+  private ObjectInputStream input() throws IOException {
+    out.flush();
+    return new BinaryObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()), registry);
+  }
+
+  // --------------------------------------------------------------------------
+
+  static class TestBean implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String           name;
+    private int              count;
+    private List<String>     tags = new ArrayList<String>();
+    private int[]            values;
+    private Date             date;
+    private TimeUnit         unit;
+    private TestBean         next;
+    private transient String cache;
+
+    TestBean() {
+    }
+
+    TestBean(String name, int count) {
+      this.name = name;
+      this.count = count;
+    }
+  }
+
+  public static class TestExternalizable implements Externalizable {
+
+    private String value;
+
+    public TestExternalizable() {
+    }
+
+    TestExternalizable(String value) {
+      this.value = value;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      out.writeObject(value);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      value = (String) in.readObject();
+    }
+  }
+
+  static class TestCustom implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String value;
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+      out.writeUTF(value + "-written");
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException {
+      value = in.readUTF();
+    }
+  }
+}
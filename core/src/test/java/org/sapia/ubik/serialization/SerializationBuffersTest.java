@@ -0,0 +1,107 @@
+package org.sapia.ubik.serialization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.util.Conf;
+
+public class SerializationBuffersTest {
+
+  private SerializationBuffers buffers;
+
+  @Before
+  public void setUp() {
+    buffers = new SerializationBuffers(new SerializationBuffer.StreamFactory() {
+      @Override
+      public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+        return new ObjectOutputStream(os);
+      }
+    }, Conf.newInstance().addProperties(Consts.MARSHALLING_BUFSIZE, "16", Consts.MARSHALLING_BUFFER_MAX_RETAINED_SIZE, "1024"));
+  }
+
+  @Test
+  public void testEachUseIsSelfContained() throws Exception {
+    List<String> shared = new ArrayList<String>();
+    shared.add("value");
+    for (int i = 0; i < 3; i++) {
+      SerializationBuffer buf = buffers.acquire();
+      try {
+        buf.writeObject(shared);
+        ObjectInputStream ois = new ObjectInputStream(buf.toInputStream());
+        assertEquals(shared, ois.readObject());
+      } finally {
+        buf.release();
+      }
+    }
+  }
+
+  @Test
+  public void testBufferRecycled() throws Exception {
+    SerializationBuffer buf = buffers.acquire();
+    buf.writeObject("first");
+    byte[] firstBytes = buf.toByteArray();
+    buf.release();
+
+    SerializationBuffer buf2 = buffers.acquire();
+    assertSame(buf, buf2);
+    buf2.writeObject("first");
+    assertEquals(firstBytes.length, buf2.size());
+    assertEquals("first", new ObjectInputStream(new ByteArrayInputStream(buf2.toByteArray())).readObject());
+    buf2.release();
+  }
+
+  @Test
+  public void testNestedAcquireReturnsDistinctBuffer() throws Exception {
+    SerializationBuffer buf = buffers.acquire();
+    SerializationBuffer nested = buffers.acquire();
+    assertNotSame(buf, nested);
+    nested.release();
+    buf.release();
+  }
+
+  @Test
+  public void testLargeBufferNotRetained() throws Exception {
+    SerializationBuffer buf = buffers.acquire();
+    buf.writeObject(new byte[4096]);
+    byte[] large = buf.getBytes();
+    buf.release();
+
+    buf = buffers.acquire();
+    assertNotSame(large, buf.getBytes());
+    buf.writeObject("small");
+    assertEquals("small", new ObjectInputStream(buf.toInputStream()).readObject());
+    buf.release();
+  }
+
+  @Test
+  public void testBinaryStream() throws Exception {
+    final ClassRegistry registry = new ClassRegistry();
+    SerializationBuffers binary = new SerializationBuffers(new SerializationBuffer.StreamFactory() {
+      @Override
+      public ObjectOutputStream createOutputStream(OutputStream os) throws IOException {
+        return new BinaryObjectOutputStream(os, registry);
+      }
+    });
+    for (int i = 0; i < 2; i++) {
+      SerializationBuffer buf = binary.acquire();
+      try {
+        buf.writeObject(new ArrayList<String>());
+        assertEquals(new ArrayList<String>(), new BinaryObjectInputStream(buf.toInputStream(), registry).readObject());
+      } finally {
+        buf.release();
+      }
+    }
+  }
+}
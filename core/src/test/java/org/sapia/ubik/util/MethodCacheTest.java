@@ -0,0 +1,66 @@
+package org.sapia.ubik.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Method;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.server.transport.ClassDescriptor;
+
+public class MethodCacheTest {
+
+  private MethodCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new MethodCache();
+  }
+
+  @Test
+  public void testGetMethod() throws Exception {
+    Method m = cache.getMethod(TestClass.class, "doIt", new Class<?>[] { String.class, int.class });
+    assertEquals(TestClass.class.getMethod("doIt", String.class, int.class), m);
+    assertSame(m, cache.getMethod(TestClass.class, "doIt", new Class<?>[] { String.class, int.class }));
+  }
+
+  @Test
+  public void testGetMethod_overloaded() throws Exception {
+    Method m1 = cache.getMethod(TestClass.class, "doIt", new Class<?>[] { String.class, int.class });
+    Method m2 = cache.getMethod(TestClass.class, "doIt", new Class<?>[] {});
+    assertEquals(0, m2.getParameterTypes().length);
+    assertEquals(2, m1.getParameterTypes().length);
+  }
+
+  @Test(expected = NoSuchMethodException.class)
+  public void testGetMethod_noSuchMethod() throws Exception {
+    cache.getMethod(TestClass.class, "doIt", new Class<?>[] { long.class });
+  }
+
+  @Test
+  public void testGetCachedMethod() throws Exception {
+    ClassDescriptor[] signature = new ClassDescriptor[] { new ClassDescriptor(String.class), new ClassDescriptor(int.class) };
+    assertNull(cache.getCachedMethod(TestClass.class, "doIt", signature));
+    Method m = cache.getMethod(TestClass.class, "doIt", new Class<?>[] { String.class, int.class });
+    assertSame(m, cache.getCachedMethod(TestClass.class, "doIt", signature));
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    ClassDescriptor[] signature = new ClassDescriptor[] {};
+    cache.getMethod(TestClass.class, "doIt", new Class<?>[] {});
+    cache.clear();
+    assertNull(cache.getCachedMethod(TestClass.class, "doIt", signature));
+  }
+
+  public static class TestClass {
+
+    public void doIt() {
+    }
+
+    public void doIt(String s, int i) {
+    }
+  }
+}
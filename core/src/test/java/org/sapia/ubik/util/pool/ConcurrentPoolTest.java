@@ -0,0 +1,315 @@
+package org.sapia.ubik.util.pool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentPoolTest {
+
+  private ExecutorService threads;
+
+  private TestPool pool;
+
+  @Before
+  public void setUp() {
+    threads = Executors.newCachedThreadPool();
+    pool = new TestPool(5);
+  }
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+  }
+
+  @Test
+  public void testAcquireWaitsForRelease() throws Exception {
+    final List<String> borrowed = new ArrayList<String>();
+    for (int i = 0; i < 5; i++) {
+      borrowed.add(pool.acquire());
+    }
+    threads.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(500);
+          pool.release(borrowed.get(0));
+        } catch (InterruptedException e) {
+          // noop
+        }
+      }
+    });
+    long start = System.currentTimeMillis();
+    assertEquals(borrowed.get(0), pool.acquire(5000));
+    assertTrue("Object should not have been leased immediately", System.currentTimeMillis() - start >= 400);
+    assertEquals(1, pool.getWaitCount());
+    assertTrue(pool.getWaitTime() >= 400);
+  }
+
+  @Test(expected = NoObjectAvailableException.class)
+  public void testAcquireWithTimeout() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      pool.acquire();
+    }
+    pool.acquire(10);
+  }
+
+  @Test
+  public void testAcquireIsLifo() throws Exception {
+    String s1 = pool.acquire();
+    String s2 = pool.acquire();
+    pool.release(s1);
+    pool.release(s2);
+    assertEquals(s2, pool.acquire());
+    assertEquals(s1, pool.acquire());
+  }
+
+  @Test
+  public void testConcurrentAcquireRelease() throws Exception {
+    final Set<String> created = java.util.Collections.synchronizedSet(new HashSet<String>());
+    final CountDownLatch done = new CountDownLatch(10);
+    for (int i = 0; i < 10; i++) {
+      threads.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < 1000; j++) {
+              String s = pool.acquire();
+              created.add(s);
+              pool.release(s);
+            }
+          } catch (InterruptedException e) {
+            // noop
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+    }
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    assertTrue("Created " + created.size(), created.size() <= 5);
+    assertEquals(10000, pool.getBorrowCount());
+    assertEquals(0, pool.getBorrowedCount());
+  }
+
+  @Test
+  public void testRelease() throws Exception {
+    String s = pool.acquire();
+    assertEquals(1, pool.getBorrowedCount());
+    pool.release(s);
+    assertEquals(0, pool.getBorrowedCount());
+    assertEquals(1, pool.getAvailableCount());
+    assertEquals(1, pool.onReleaseCount);
+  }
+
+  @Test
+  public void testReleaseBeyondMaxIdle() throws Exception {
+    pool.setMaxIdle(1);
+    String s1 = pool.acquire();
+    String s2 = pool.acquire();
+    pool.release(s1);
+    pool.release(s2);
+    assertEquals(1, pool.getAvailableCount());
+    assertEquals(1, pool.getCreatedCount());
+    assertEquals(1, pool.cleanupCount);
+  }
+
+  @Test
+  public void testInvalidate() throws Exception {
+    String s = pool.acquire();
+    assertEquals(1, pool.getCreatedCount());
+    pool.invalidate(s);
+    assertEquals(0, pool.getCreatedCount());
+    assertEquals(1, pool.cleanupCount);
+  }
+
+  @Test
+  public void testInvalidateReleasesPermit() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      pool.invalidate(pool.acquire());
+    }
+    pool.acquire(10);
+  }
+
+  @Test
+  public void testShrinkTo() throws Exception {
+    pool.fill(5);
+    pool.shrinkTo(2);
+    assertEquals(2, pool.getAvailableCount());
+    assertEquals(2, pool.getCreatedCount());
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    pool.fill(5);
+    pool.clear();
+    assertEquals(0, pool.getAvailableCount());
+    assertEquals(0, pool.getCreatedCount());
+    assertEquals(5, pool.cleanupCount);
+  }
+
+  @Test
+  public void testFillBeyondMaxSize() throws Exception {
+    pool.fill(10);
+    assertEquals(5, pool.getAvailableCount());
+  }
+
+  @Test
+  public void testAcquireCreateWithMaxSizeReached() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      pool.acquire();
+    }
+    assertNull(pool.acquireCreate());
+  }
+
+  @Test
+  public void testMaintainEvictsIdle() throws Exception {
+    pool.setIdleTimeout(100);
+    String s1 = pool.acquire();
+    String s2 = pool.acquire();
+    pool.release(s1);
+    Thread.sleep(300);
+    pool.release(s2);
+    pool.maintain();
+    assertEquals(1, pool.getAvailableCount());
+    assertEquals(s2, pool.acquire());
+  }
+
+  @Test
+  public void testMaintainValidates() throws Exception {
+    pool.fill(3);
+    pool.invalid.add(pool.acquire());
+    pool.release(pool.invalid.iterator().next());
+    pool.maintain();
+    assertEquals(2, pool.getAvailableCount());
+  }
+
+  @Test
+  public void testEvictInvalid() throws Exception {
+    pool.fill(3);
+    String s = pool.acquire();
+    pool.invalid.add(s);
+    pool.release(s);
+    assertEquals(1, pool.evictInvalid());
+    assertEquals(2, pool.getAvailableCount());
+    assertEquals(2, pool.getCreatedCount());
+    assertEquals(0, pool.evictInvalid());
+  }
+
+  @Test
+  public void testEvictInvalidKeepsOtherObjectsAvailable() throws Exception {
+    pool.fill(3);
+    pool.validating = new CountDownLatch(1);
+    pool.proceed = new CountDownLatch(1);
+    threads.execute(new Runnable() {
+      @Override
+      public void run() {
+        pool.evictInvalid();
+      }
+    });
+    assertTrue(pool.validating.await(5, TimeUnit.SECONDS));
+    assertEquals("Only the object being validated should be unavailable", 2, pool.getAvailableCount());
+    String acquired = pool.acquire(1000);
+    pool.proceed.countDown();
+    pool.release(acquired);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (pool.getAvailableCount() < 3 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(3, pool.getAvailableCount());
+    assertEquals(3, pool.getCreationCount());
+  }
+
+  @Test
+  public void testAcquireWaitsForObjectBeingValidated() throws Exception {
+    pool = new TestPool(1);
+    pool.fill(1);
+    pool.validating = new CountDownLatch(1);
+    pool.proceed = new CountDownLatch(1);
+    threads.execute(new Runnable() {
+      @Override
+      public void run() {
+        pool.evictInvalid();
+      }
+    });
+    assertTrue(pool.validating.await(5, TimeUnit.SECONDS));
+    final CountDownLatch acquired = new CountDownLatch(1);
+    threads.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          pool.acquire(5000);
+          acquired.countDown();
+        } catch (Exception e) {
+          // noop
+        }
+      }
+    });
+    assertFalse("Object should not have been acquired while validated", acquired.await(300, TimeUnit.MILLISECONDS));
+    pool.proceed.countDown();
+    assertTrue("Object should have been acquired once validated", acquired.await(5, TimeUnit.SECONDS));
+    assertEquals(1, pool.getCreationCount());
+  }
+
+  @Test
+  public void testMaintainFillsMinIdle() throws Exception {
+    pool.setMinIdle(2);
+    pool.maintain();
+    assertEquals(2, pool.getAvailableCount());
+    assertEquals(2, pool.getCreationCount());
+  }
+
+  public static class TestPool extends ConcurrentPool<String> {
+
+    int         cleanupCount;
+    int         onReleaseCount;
+    Set<String> invalid = new HashSet<String>();
+    volatile CountDownLatch validating;
+    volatile CountDownLatch proceed;
+
+    public TestPool(int maxSize) {
+      super(maxSize);
+    }
+
+    @Override
+    protected String doNewObject() throws Exception {
+      return "pooled-" + getCreationCount();
+    }
+
+    @Override
+    protected void onRelease(String o) {
+      onReleaseCount++;
+    }
+
+    @Override
+    protected synchronized void cleanup(String pooled) {
+      cleanupCount++;
+    }
+
+    @Override
+    protected boolean isValid(String pooled) {
+      if (validating != null) {
+        validating.countDown();
+        try {
+          proceed.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      return !invalid.contains(pooled);
+    }
+  }
+}
@@ -0,0 +1,133 @@
+package org.sapia.ubik.rmi.server.transport.http;
+
+import java.rmi.RemoteException;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.rmi.server.transport.Connections;
+import org.sapia.ubik.rmi.server.transport.RmiConnection;
+import org.sapia.ubik.util.Conf;
+
+/**
+ * This class implements the {@link Connections} interface over Jetty's HTTP/2
+ * {@link HttpClient}, talking h2c (HTTP/2 over cleartext, with prior
+ * knowledge). It does not do pooling: the {@link H2cRmiClientConnection}s that
+ * it creates all share the client's multiplexed connection to the target
+ * server, on which each request is sent as a separate stream (the client only
+ * opens another connection when the server's maximum number of concurrent
+ * streams is reached).
+ *
+ * @see HttpConsts#HTTP_H2C
+ *
+ * @author yduchesne
+ */
+public class H2cClientConnectionPool implements Connections {
+
+  private Category    log = Log.createCategory(getClass());
+  private HttpAddress address;
+  private long        idleTimeout;
+  private long        connectTimeout;
+  private long        readTimeout;
+  private boolean     streaming;
+  private HttpClient  client;
+
+  /**
+   * @param address
+   *          the address of the target server.
+   * @param idleTimeout
+   *          the time (in millis) after which idle connections are closed.
+   * @param streaming
+   *          if <code>true</code>, the connections created by this instance
+   *          stream request bodies (see {@link HttpConsts#HTTP_STREAMING}).
+   */
+  public H2cClientConnectionPool(HttpAddress address, long idleTimeout, boolean streaming) throws RemoteException {
+    Conf conf = Conf.getSystemProperties();
+    this.address = address;
+    this.idleTimeout = idleTimeout;
+    this.streaming = streaming;
+    this.connectTimeout = conf.getLongProperty(Consts.HTTP_CLIENT_CONNECT_TIMEOUT, Defaults.DEFAULT_HTTP_CLIENT_CONNECTION_TIMEOUT);
+    this.readTimeout = conf.getLongProperty(Consts.HTTP_CLIENT_READ_TIMEOUT, Defaults.DEFAULT_HTTP_CLIENT_READ_TIMEOUT);
+    client = createClient();
+  }
+
+  @Override
+  public synchronized H2cRmiClientConnection acquire() throws RemoteException {
+    return new H2cRmiClientConnection(client, address, readTimeout, streaming);
+  }
+
+  @Override
+  public void release(RmiConnection conn) {
+  }
+
+  @Override
+  public void invalidate(RmiConnection conn) {
+    conn.close();
+  }
+
+  /**
+   * Only closes the given connection: the underlying {@link HttpClient}
+   * discards the HTTP/2 connections that fail by itself, whereas clearing this
+   * instance would abort the streams of all pending invocations.
+   */
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+    conn.close();
+  }
+
+  @Override
+  public synchronized void clear() {
+    stopClient();
+    try {
+      client = createClient();
+    } catch (RemoteException e) {
+      log.error("Could not recreate HTTP/2 client for %s", e, address);
+    }
+  }
+
+  @Override
+  public String getTransportType() {
+    return address.getTransportType();
+  }
+
+  /**
+   * Stops the underlying {@link HttpClient}, closing its connections.
+   */
+  public synchronized void shutdown() {
+    stopClient();
+  }
+
+  // --------------------------------------------------------------------------
+  // Visible for testing
+
+  synchronized HttpClient getClient() {
+    return client;
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted
+
+  private HttpClient createClient() throws RemoteException {
+    HttpClient httpClient = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()));
+    httpClient.setConnectTimeout(connectTimeout);
+    httpClient.setIdleTimeout(idleTimeout);
+    try {
+      httpClient.start();
+    } catch (Exception e) {
+      throw new RemoteException("Could not start HTTP/2 client for " + address, e);
+    }
+    return httpClient;
+  }
+
+  private void stopClient() {
+    try {
+      client.stop();
+    } catch (Exception e) {
+      log.warning("Error stopping HTTP/2 client for %s", e, address);
+    }
+  }
+}
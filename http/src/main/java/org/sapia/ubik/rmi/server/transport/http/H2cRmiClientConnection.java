@@ -0,0 +1,175 @@
+package org.sapia.ubik.rmi.server.transport.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.client.util.OutputStreamContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
+import org.sapia.ubik.rmi.server.transport.RmiConnection;
+import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
+import org.sapia.ubik.serialization.SerializationBuffer;
+import org.sapia.ubik.util.Assertions;
+import org.sapia.ubik.util.IoUtils;
+
+/**
+ * Implements the {@link RmiConnection} interface over Jetty's HTTP/2
+ * {@link HttpClient}: each request/response exchange is carried by its own
+ * HTTP/2 stream, over a connection that the client shares between all the
+ * instances of this class that it creates.
+ * <p>
+ * In streaming mode (see {@link HttpConsts#HTTP_STREAMING}), the object to
+ * send is serialized directly into the request body. Responses are always
+ * deserialized directly from the response body.
+ *
+ * @see H2cClientConnectionPool
+ *
+ * @author yduchesne
+ */
+public class H2cRmiClientConnection implements RmiConnection {
+
+  private static final String CONTENT_TYPE = "application/octet-stream";
+
+  private HttpClient                  client;
+  private HttpAddress                 address;
+  private long                        readTimeout;
+  private boolean                     streaming;
+  private Request                     pendingRequest;
+  private InputStreamResponseListener pendingResponse;
+
+  /**
+   * @param client
+   *          the {@link HttpClient} to use.
+   * @param address
+   *          the address of the target server.
+   * @param readTimeout
+   *          the time (in millis) to wait for incoming bytes.
+   * @param streaming
+   *          if <code>true</code>, request bodies are streamed rather than
+   *          buffered.
+   */
+  H2cRmiClientConnection(HttpClient client, HttpAddress address, long readTimeout, boolean streaming) {
+    this.client = client;
+    this.address = address;
+    this.readTimeout = readTimeout;
+    this.streaming = streaming;
+  }
+
+  @Override
+  public void send(Object o, VmId associated, String transportType) throws IOException, RemoteException {
+    releasePending();
+    pendingRequest = client.newRequest(address.toString()).method(HttpMethod.POST).idleTimeout(readTimeout, TimeUnit.MILLISECONDS);
+    pendingResponse = new InputStreamResponseListener();
+    if (streaming) {
+      doSendStreaming(o, associated, transportType);
+      return;
+    }
+
+    SerializationBuffer buf = MarshalStreamFactory.acquireBuffer();
+    try {
+      if ((associated != null) && (transportType != null)) {
+        ((RmiObjectOutput) buf.getObjectOutputStream()).setUp(associated, transportType);
+      }
+      buf.writeObject(o);
+      // the request is sent asynchronously: its content may not refer to the
+      // buffer, which is recycled upon release
+      pendingRequest.content(new BytesContentProvider(CONTENT_TYPE, buf.toByteArray()));
+    } finally {
+      buf.release();
+    }
+    pendingRequest.send(pendingResponse);
+  }
+
+  @Override
+  public void send(Object o) throws IOException, RemoteException {
+    send(o, null, null);
+  }
+
+  @Override
+  public Object receive() throws IOException, ClassNotFoundException, RemoteException {
+    return receive(readTimeout);
+  }
+
+  @Override
+  public Object receive(long timeout) throws IOException, ClassNotFoundException, RemoteException, SocketTimeoutException {
+    Assertions.illegalState(pendingResponse == null, "Cannot receive; data was not posted");
+    InputStream is = null;
+    try {
+      Response response = pendingResponse.get(timeout, TimeUnit.MILLISECONDS);
+      is = pendingResponse.getInputStream();
+      if (response.getStatus() != HttpStatus.OK_200) {
+        throw new RemoteException("HTTP status code " + response.getStatus() + " returned by " + address);
+      }
+      ObjectInputStream ois = MarshalStreamFactory.createInputStream(is);
+      return ois.readObject();
+    } catch (TimeoutException e) {
+      pendingRequest.abort(e);
+      throw new SocketTimeoutException("No response received from " + address + " within " + timeout + " millis");
+    } catch (InterruptedException e) {
+      pendingRequest.abort(e);
+      throw new RemoteException("Thread interrupted while waiting for response from " + address, e);
+    } catch (ExecutionException e) {
+      throw new RemoteException("Network issue trying to send request to " + address, e.getCause());
+    } catch (SocketException | EOFException e) {
+      throw new RemoteException("Network issue trying to receive response from " + address, e);
+    } finally {
+      IoUtils.closeSilently(is);
+      pendingRequest = null;
+      pendingResponse = null;
+    }
+  }
+
+  @Override
+  public void close() {
+    releasePending();
+  }
+
+  @Override
+  public ServerAddress getServerAddress() {
+    return address;
+  }
+
+  private void doSendStreaming(Object o, VmId associated, String transportType) throws IOException, RemoteException {
+    OutputStreamContentProvider content = new OutputStreamContentProvider();
+    pendingRequest.content(content, CONTENT_TYPE);
+    pendingRequest.send(pendingResponse);
+    try (OutputStream os = content.getOutputStream()) {
+      ObjectOutputStream oos = MarshalStreamFactory.createOutputStream(os);
+      if ((associated != null) && (transportType != null)) {
+        ((RmiObjectOutput) oos).setUp(associated, transportType);
+      }
+      oos.writeObject(o);
+      oos.flush();
+    } catch (SocketException | EOFException e) {
+      throw new RemoteException("Network issue trying to send request to " + address, e);
+    }
+  }
+
+  // aborts the stream of a response that was not received, so that the
+  // connection does not keep it open
+  private void releasePending() {
+    if (pendingRequest != null) {
+      pendingRequest.abort(new IOException("Response discarded"));
+      pendingRequest = null;
+      pendingResponse = null;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package org.sapia.ubik.rmi.server.transport.http;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.Uri;
+import org.sapia.ubik.rmi.server.Server;
+import org.sapia.ubik.util.Assertions;
+
+/**
+ * Implements a {@link Server} that receives requests from Ubik RMI clients over
+ * HTTP/2 in cleartext (h2c), using Jetty. Each request is carried by its own
+ * HTTP/2 stream, so that a client's concurrent invocations share a single
+ * connection. HTTP/1.1 requests are accepted as well.
+ * <p>
+ * Requests are dispatched through the given {@link Router}, on the request
+ * path: they are processed by the {@link UbikHttpHandler} mapped to that path,
+ * in the Jetty thread that handles the stream. Requests for paths that have no
+ * such handler get a 404.
+ *
+ * @see HttpConsts#HTTP_H2C
+ *
+ * @author yduchesne
+ */
+class H2cRmiServer implements Server, HttpConsts {
+
+  private Category                       log = Log.createCategory(getClass());
+  private int                            localPort;
+  private Router                         handlers;
+  private HttpAddress                    address;
+  private boolean                        streaming;
+  private org.eclipse.jetty.server.Server server;
+
+  /**
+   * @param router
+   *          the {@link Router} that holds the {@link Handler}s used to process
+   *          incoming requests.
+   * @param serverUrl
+   *          the {@link Uri} of this server.
+   * @param localPort
+   *          the port to listen on.
+   * @param streaming
+   *          if <code>true</code>, responses are streamed rather than buffered
+   *          (see {@link HttpConsts#HTTP_STREAMING}).
+   */
+  H2cRmiServer(Router router, Uri serverUrl, int localPort, boolean streaming) {
+    Assertions.illegalState(serverUrl.getPort() <= 0, "Server does not support dynamic port");
+    this.address = new HttpAddress(serverUrl);
+    this.handlers = router;
+    this.localPort = localPort;
+    this.streaming = streaming;
+  }
+
+  @Override
+  public ServerAddress getServerAddress() {
+    return address;
+  }
+
+  @Override
+  public void start() throws RemoteException {
+    server = new org.eclipse.jetty.server.Server();
+    HttpConfiguration config = new HttpConfiguration();
+    // the HTTP/1.1 connection detects the HTTP/2 connection preface, and
+    // switches to h2c
+    ServerConnector connector = new ServerConnector(server, new HttpConnectionFactory(config), new HTTP2CServerConnectionFactory(config));
+    connector.setPort(localPort);
+    server.addConnector(connector);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException,
+          ServletException {
+        baseRequest.setHandled(true);
+        Handler handler = handlers.getHandler(target);
+        if (handler instanceof UbikHttpHandler) {
+          log.debug("Handling %s request for %s", request.getProtocol(), target);
+          ((UbikHttpHandler) handler).handle(new H2cRmiServerConnection(HttpAddress.newDefaultInstance(request.getRemoteAddr(),
+              request.getRemotePort()), request, response, streaming));
+        } else {
+          response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+      }
+    });
+    try {
+      server.start();
+    } catch (Exception e) {
+      throw new RemoteException("Could not start HTTP/2 server on port " + localPort, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (server != null) {
+      try {
+        server.stop();
+      } catch (Exception e) {
+        log.warning("Error stopping HTTP/2 server", e);
+      }
+    }
+    if (handlers != null) {
+      handlers.shutdown();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package org.sapia.ubik.rmi.server.transport.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.rmi.RemoteException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
+import org.sapia.ubik.rmi.server.transport.RmiConnection;
+import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
+import org.sapia.ubik.serialization.SerializationBuffer;
+
+/**
+ * Implements the {@link RmiConnection} interface over a single HTTP/2 stream
+ * (or HTTP/1.1 exchange) received by a {@link H2cRmiServer}. An instance of
+ * this class is used on the server side.
+ * <p>
+ * In streaming mode (see {@link HttpConsts#HTTP_STREAMING}), responses are
+ * serialized directly into the response body. Otherwise, they are buffered in
+ * memory first, and sent with their content length.
+ *
+ * @see H2cRmiClientConnection
+ *
+ * @author yduchesne
+ */
+class H2cRmiServerConnection implements RmiConnection {
+
+  private HttpServletRequest  req;
+  private HttpServletResponse res;
+  private HttpAddress         address;
+  private boolean             streaming;
+
+  H2cRmiServerConnection(HttpAddress address, HttpServletRequest req, HttpServletResponse res, boolean streaming) {
+    this.address = address;
+    this.req = req;
+    this.res = res;
+    this.streaming = streaming;
+  }
+
+  @Override
+  public void send(Object o, VmId associated, String transportType) throws IOException, RemoteException {
+    try {
+      if (streaming) {
+        writeStreamingResponse(o, associated, transportType);
+        return;
+      }
+      SerializationBuffer buf = MarshalStreamFactory.acquireBuffer();
+      try {
+        if ((associated != null) && (transportType != null)) {
+          ((RmiObjectOutput) buf.getObjectOutputStream()).setUp(associated, transportType);
+        }
+        buf.writeObject(o);
+        writeResponse(buf);
+      } finally {
+        buf.release();
+      }
+    } catch (SocketException | SocketTimeoutException | EOFException e) {
+      throw new RemoteException("Communication with client interrupted; client probably disappeared", e);
+    } catch (Exception e) {
+      throw new RemoteException("System exception occurred; client may have disappeared", e);
+    }
+  }
+
+  @Override
+  public void send(Object o) throws IOException, RemoteException {
+    send(o, null, null);
+  }
+
+  @Override
+  public Object receive() throws IOException, ClassNotFoundException, RemoteException {
+    try {
+      ObjectInputStream is = MarshalStreamFactory.createInputStream(req.getInputStream());
+      return is.readObject();
+    } catch (SocketException | SocketTimeoutException | EOFException e) {
+      throw new RemoteException("Error reading request payload", e);
+    }
+  }
+
+  @Override
+  public Object receive(long timeout) throws IOException, ClassNotFoundException, RemoteException, SocketTimeoutException {
+    return receive();
+  }
+
+  /**
+   * Does nothing: the response is completed by the server once the stream's
+   * handler returns.
+   */
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public ServerAddress getServerAddress() {
+    return address;
+  }
+
+  private void writeResponse(SerializationBuffer buf) throws IOException {
+    res.setStatus(HttpServletResponse.SC_OK);
+    res.setContentLength(buf.size());
+    OutputStream os = res.getOutputStream();
+    buf.writeTo(os);
+    os.flush();
+  }
+
+  private void writeStreamingResponse(Object o, VmId associated, String transportType) throws IOException {
+    res.setStatus(HttpServletResponse.SC_OK);
+    ObjectOutputStream oos = MarshalStreamFactory.createOutputStream(res.getOutputStream());
+    if ((associated != null) && (transportType != null)) {
+      ((RmiObjectOutput) oos).setUp(associated, transportType);
+    }
+    oos.writeObject(o);
+    oos.flush();
+  }
+}
@@ -1,10 +1,15 @@
 package org.sapia.ubik.rmi.server.transport.http;
 
 import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.sapia.ubik.net.Uri;
 import org.sapia.ubik.net.UriSyntaxException;
 import org.sapia.ubik.rmi.server.transport.Connections;
@@ -14,12 +19,21 @@ import org.sapia.ubik.rmi.server.transport.RmiConnection;
  * This class implements the <code>Connections</code> interface over Apache's
  * {@link HttpClient}. It does not do pooling, and leaves connection management
  * to the client.
- * 
+ * <p>
+ * The client's connection manager keeps at most the given number of
+ * connections alive. Connections are kept alive for as long as the server
+ * specifies, or else for the given idle timeout, and connections that have
+ * been idle for longer than that timeout are closed when
+ * {@link #evictIdleConnections()} is called.
+ *
  * @author Yanick Duchesne
  */
 public class HttpClientConnectionPool implements Connections {
 
   private HttpAddress address;
+  private int maxConnections;
+  private long idleTimeout = HttpConsts.DEFAULT_CLIENT_IDLE_TIMEOUT;
+  private boolean streaming;
   private PoolingClientConnectionManager connectionPool;
   private HttpClient client;
 
@@ -31,10 +45,28 @@ public class HttpClientConnectionPool implements Connections {
    *          should pool at once.
    */
   public HttpClientConnectionPool(HttpAddress address, int maxConnections) throws UriSyntaxException {
+    this(address, maxConnections, HttpConsts.DEFAULT_CLIENT_IDLE_TIMEOUT, false);
+  }
+
+  /**
+   * @param address
+   *          the address of the target server.
+   * @param maxConnections
+   *          the maximum number of connections that the {@link HttpClient}
+   *          should pool at once.
+   * @param idleTimeout
+   *          the time (in millis) after which idle connections are closed.
+   * @param streaming
+   *          if <code>true</code>, the connections created by this instance
+   *          stream request and response bodies (see
+   *          {@link HttpConsts#HTTP_STREAMING}).
+   */
+  public HttpClientConnectionPool(HttpAddress address, int maxConnections, long idleTimeout, boolean streaming) throws UriSyntaxException {
     this.address = address;
-    connectionPool = new PoolingClientConnectionManager();
-    connectionPool.setDefaultMaxPerRoute(maxConnections);
-    client = new DefaultHttpClient(connectionPool);
+    this.maxConnections = maxConnections;
+    this.idleTimeout = idleTimeout;
+    this.streaming = streaming;
+    createClient();
   }
 
   /**
@@ -47,7 +79,7 @@ public class HttpClientConnectionPool implements Connections {
 
   @Override
   public synchronized HttpRmiClientConnection acquire() throws RemoteException {
-    return new HttpRmiClientConnection(client, address);
+    return new HttpRmiClientConnection(client, address, streaming);
   }
 
   @Override
@@ -55,9 +87,16 @@ public class HttpClientConnectionPool implements Connections {
     // no other choice but to recreate a new HttpClient.
     // (HttpClient API does not allow clearing pool).
     connectionPool.shutdown();
-    connectionPool = new PoolingClientConnectionManager();
-    connectionPool.setDefaultMaxPerRoute(connectionPool.getDefaultMaxPerRoute());
-    client = new DefaultHttpClient(connectionPool);
+    createClient();
+  }
+
+  /**
+   * Closes the connections that have been idle for longer than this instance's
+   * idle timeout, as well as the ones whose keep-alive duration has expired.
+   */
+  public synchronized void evictIdleConnections() {
+    connectionPool.closeExpiredConnections();
+    connectionPool.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
   }
 
   @Override
@@ -73,4 +112,29 @@ public class HttpClientConnectionPool implements Connections {
   public void invalidate(RmiConnection conn) {
   }
 
+  /**
+   * Clears this instance: the underlying {@link HttpClient} does not allow
+   * checking individual connections.
+   */
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+    clear();
+  }
+
+  private void createClient() {
+    connectionPool = new PoolingClientConnectionManager();
+    // a pool is dedicated to a single server: all connections go to the same route
+    connectionPool.setMaxTotal(maxConnections);
+    connectionPool.setDefaultMaxPerRoute(maxConnections);
+    DefaultHttpClient httpClient = new DefaultHttpClient(connectionPool);
+    httpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : idleTimeout;
+      }
+    });
+    client = httpClient;
+  }
+
 }
@@ -32,7 +32,8 @@ public interface HttpConsts {
   /**
    * Corresponds to the
    * <code>ubik.rmi.transport.http.client.max-connections</code> property, used
-   * to specify the max number of connections that the HTTP client will pool.
+   * to specify the max number of connections that the HTTP client will pool
+   * (per server address).
    */
   public static final String HTTP_CLIENT_MAX_CONNECTIONS_KEY = "ubik.rmi.transport.http.client.max-connections";
   
@@ -43,6 +44,35 @@ public interface HttpConsts {
    */
   public static final String HTTP_CLIENT_JDK = "ubik.rmi.transport.http.client.jdk";
 
+  /**
+   * Corresponds to the <code>ubik.rmi.transport.http.client.idle-timeout</code>
+   * property: specifies the time (in millis) after which idle pooled HTTP
+   * connections are closed, and for how long connections are kept alive when
+   * the server does not specify it. Defaults to 30000.
+   */
+  public static final String HTTP_CLIENT_IDLE_TIMEOUT = "ubik.rmi.transport.http.client.idle-timeout";
+
+  /**
+   * Corresponds to the <code>ubik.rmi.transport.http.streaming</code>
+   * property: if <code>true</code>, objects are serialized directly into
+   * chunked request and response bodies, and deserialized directly from these,
+   * rather than being buffered in memory in their entirety first. Defaults to
+   * <code>false</code>. Applies to the side (client or server) on which it is
+   * set: both sides accept chunked bodies regardless.
+   */
+  public static final String HTTP_STREAMING = "ubik.rmi.transport.http.streaming";
+
+  /**
+   * Corresponds to the <code>ubik.rmi.transport.http.h2c</code> property: if
+   * <code>true</code>, clients talk HTTP/2 over cleartext (h2c, with prior
+   * knowledge) to servers, so that concurrent invocations share a single
+   * connection as separate streams; servers then accept h2c as well as
+   * HTTP/1.1. Defaults to <code>false</code>. Requires Jetty's HTTP/2 server
+   * and client libraries in the classpath - and, on the client side, that the
+   * target servers have the property set.
+   */
+  public static final String HTTP_H2C = "ubik.rmi.transport.http.h2c";
+
   /**
    * This constant specifies the default context path.
    */
@@ -75,4 +105,12 @@ public interface HttpConsts {
    * @see #HTTP_CONNECTION_STATE_CHECK_INTERVAL
    */
   public static final long DEFAULT_CONNECTION_STATE_CHECK_INTERVAL = 3000;
+
+  /**
+   * This constant specifies the default time after which idle pooled HTTP
+   * connections are closed (set to 30000 millis).
+   *
+   * @see #HTTP_CLIENT_IDLE_TIMEOUT
+   */
+  public static final long DEFAULT_CLIENT_IDLE_TIMEOUT = 30000;
 }
@@ -1,10 +1,11 @@
 package org.sapia.ubik.rmi.server.transport.http;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.rmi.RemoteException;
@@ -13,26 +14,31 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentProducer;
+import org.apache.http.entity.EntityTemplate;
 import org.apache.http.util.EntityUtils;
 import org.javasimon.Split;
 import org.javasimon.Stopwatch;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.net.ServerAddress;
-import org.sapia.ubik.rmi.Consts;
-import org.sapia.ubik.rmi.Defaults;
 import org.sapia.ubik.rmi.server.VmId;
 import org.sapia.ubik.rmi.server.stats.Stats;
 import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
 import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.sapia.ubik.util.Assertions;
-import org.sapia.ubik.util.Conf;
 
 /**
  * Implements the {@link RmiConnection} interface over HTTP - more precisely,
  * over a Jakarta HTTP client. Data is sent using the POST method. </p> An
  * instance of this class is used on the client side.
+ * <p>
+ * In streaming mode (see {@link HttpConsts#HTTP_STREAMING}), the object to
+ * send is serialized directly into a chunked request body, and the response
+ * is deserialized directly from the response body, which is only released
+ * once read (in {@link #receive()}). Otherwise, both are buffered in memory.
  * 
  * @see org.sapia.ubik.rmi.server.transport.http.HttpRmiServerConnection
  * 
@@ -52,16 +58,32 @@ public class HttpRmiClientConnection implements RmiConnection {
 
   private HttpAddress address;
   private HttpClient client;
+  private boolean streaming;
   private byte[] responsePayload;
-  private int bufsz = Conf.getSystemProperties().getIntProperty(Consts.MARSHALLING_BUFSIZE, Defaults.DEFAULT_MARSHALLING_BUFSIZE);
+  private HttpPost pendingPost;
+  private HttpResponse pendingResponse;
 
   /**
    * Creates an instance of this class with the given HTTP client and uri to
    * connect to.
    */
   public HttpRmiClientConnection(HttpClient client, HttpAddress address) {
+    this(client, address, false);
+  }
+
+  /**
+   * @param client
+   *          the {@link HttpClient} to use.
+   * @param address
+   *          the {@link HttpAddress} to connect to.
+   * @param streaming
+   *          if <code>true</code>, request and response bodies are streamed
+   *          rather than buffered.
+   */
+  public HttpRmiClientConnection(HttpClient client, HttpAddress address, boolean streaming) {
     this.client = client;
     this.address = address;
+    this.streaming = streaming;
   }
 
   /**
@@ -71,50 +93,50 @@ public class HttpRmiClientConnection implements RmiConnection {
   public void send(Object o, VmId associated, String transportType) throws IOException, RemoteException {
     HttpPost post = new HttpPost(address.toString());
 
-    ByteArrayOutputStream bos = new ByteArrayOutputStream(bufsz);
-
     log.debug("Sending: %s", o);
-    
-    Split split = serializationTime.start();
-    ObjectOutputStream mos = MarshalStreamFactory.createOutputStream(bos);
-    if ((associated != null) && (transportType != null)) {
-      ((RmiObjectOutput) mos).setUp(associated, transportType);
-    }
-    mos.writeObject(o);
-    mos.flush();
-    mos.close();
-    split.stop();
-
-    split = sendTime.start();
-    byte[] data = bos.toByteArray();
 
-    if (data.length > bufsz) {
-      bufsz = data.length;
+    if (streaming) {
+      doSendStreaming(post, o, associated, transportType);
+      return;
     }
-
-    post.setEntity(new ByteArrayEntity(data));
+    
+    Split split = serializationTime.start();
+    SerializationBuffer buf = MarshalStreamFactory.acquireBuffer();
     try {
-      log.debug("Performing HTTP POST");
-      HttpResponse response = client.execute(post);
-      log.debug("Got HTTP response");
-      
-      if (response.getStatusLine().getStatusCode() != STATUS_OK) {
-        throw new IOException("HTTP response error " + response.getStatusLine().getStatusCode() + " caught: "
-            + response.getStatusLine().getReasonPhrase());
+      if ((associated != null) && (transportType != null)) {
+        ((RmiObjectOutput) buf.getObjectOutputStream()).setUp(associated, transportType);
       }
-      responsePayload = EntityUtils.toByteArray(response.getEntity());
-    } catch (SocketException e) {
-      throw new RemoteException("Connection error caught", e);
+      buf.writeObject(o);
+      split.stop();
+
+      split = sendTime.start();
+      post.setEntity(new ByteArrayEntity(buf.getBytes(), 0, buf.size()));
+      try {
+        log.debug("Performing HTTP POST");
+        HttpResponse response = client.execute(post);
+        log.debug("Got HTTP response");
+        
+        if (response.getStatusLine().getStatusCode() != STATUS_OK) {
+          throw new IOException("HTTP response error " + response.getStatusLine().getStatusCode() + " caught: "
+              + response.getStatusLine().getReasonPhrase());
+        }
+        responsePayload = EntityUtils.toByteArray(response.getEntity());
+      } catch (SocketException e) {
+        throw new RemoteException("Connection error caught", e);
+      } finally {
+        post.releaseConnection();
+      }
+      split.stop();
     } finally {
-      post.releaseConnection();
+      buf.release();
     }
-    split.stop();
   }
 
   /**
    * @see org.sapia.ubik.net.Connection#close()
    */
   public void close() {
+    releasePending();
   }
 
   /**
@@ -128,6 +150,9 @@ public class HttpRmiClientConnection implements RmiConnection {
    * @see org.sapia.ubik.net.Connection#receive()
    */
   public Object receive() throws IOException, ClassNotFoundException, RemoteException {
+    if (streaming) {
+      return doReceiveStreaming();
+    }
     Assertions.illegalState(responsePayload == null, "Cannot receive; response payload not set");
 
     byte[] thePayload = responsePayload;
@@ -156,4 +181,81 @@ public class HttpRmiClientConnection implements RmiConnection {
   public void send(Object o) throws IOException, RemoteException {
     send(o, null, null);
   }
+
+  // --------------------------------------------------------------------------
+  // Restricted methods
+
+  private void doSendStreaming(HttpPost post, Object o, VmId associated, String transportType) throws IOException, RemoteException {
+    releasePending();
+    Split split = sendTime.start();
+    EntityTemplate entity = new EntityTemplate(newObjectProducer(o, associated, transportType));
+    entity.setChunked(true);
+    post.setEntity(entity);
+    boolean sent = false;
+    try {
+      log.debug("Performing HTTP POST (streaming)");
+      HttpResponse response = client.execute(post);
+      log.debug("Got HTTP response");
+
+      if (response.getStatusLine().getStatusCode() != STATUS_OK) {
+        throw new IOException("HTTP response error " + response.getStatusLine().getStatusCode() + " caught: "
+            + response.getStatusLine().getReasonPhrase());
+      }
+      // the response is released once read
+      pendingPost = post;
+      pendingResponse = response;
+      sent = true;
+    } catch (SocketException e) {
+      throw new RemoteException("Connection error caught", e);
+    } finally {
+      if (!sent) {
+        post.releaseConnection();
+      }
+      split.stop();
+    }
+  }
+
+  private Object doReceiveStreaming() throws IOException, ClassNotFoundException, RemoteException {
+    Assertions.illegalState(pendingResponse == null, "Cannot receive; response not available");
+    try {
+      InputStream content = pendingResponse.getEntity().getContent();
+      try {
+        return MarshalStreamFactory.createInputStream(content).readObject();
+      } finally {
+        content.close();
+      }
+    } catch (IOException ioe) {
+      Log.error(HttpRmiClientConnection.class, "Could not read response data", ioe);
+      throw ioe;
+    } finally {
+      releasePending();
+    }
+  }
+
+  // the producer of a request entity into which the given object is serialized
+  // as the entity is written out (it may be written out again if the request
+  // is retried).
+  private static ContentProducer newObjectProducer(final Object toSend, final VmId associated, final String transportType) {
+    return new ContentProducer() {
+      @Override
+      public void writeTo(OutputStream os) throws IOException {
+        Split split = serializationTime.start();
+        ObjectOutputStream oos = MarshalStreamFactory.createOutputStream(os);
+        if ((associated != null) && (transportType != null)) {
+          ((RmiObjectOutput) oos).setUp(associated, transportType);
+        }
+        oos.writeObject(toSend);
+        oos.flush();
+        split.stop();
+      }
+    };
+  }
+
+  private void releasePending() {
+    if (pendingPost != null) {
+      pendingPost.releaseConnection();
+      pendingPost = null;
+      pendingResponse = null;
+    }
+  }
 }
@@ -1,6 +1,5 @@
 package org.sapia.ubik.rmi.server.transport.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -11,13 +10,11 @@ import java.net.SocketTimeoutException;
 import java.rmi.RemoteException;
 
 import org.sapia.ubik.net.ServerAddress;
-import org.sapia.ubik.rmi.Consts;
-import org.sapia.ubik.rmi.Defaults;
 import org.sapia.ubik.rmi.server.VmId;
 import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
 import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
-import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.simpleframework.http.Request;
 import org.simpleframework.http.Response;
 
@@ -26,6 +23,10 @@ import org.simpleframework.http.Response;
  * over {@link Request} and {@link Response} instances - from the Simple API -
  * see the <a href="http://www.simpleframework.org/">Simple website</a> for more
  * info. </p> An instance of this class is used on the server side.
+ * <p>
+ * In streaming mode (see {@link HttpConsts#HTTP_STREAMING}), responses are
+ * serialized directly into a chunked response body. Otherwise, they are
+ * buffered in memory first, and sent with their content length.
  * 
  * @see HttpRmiClientConnection
  * 
@@ -33,19 +34,29 @@ import org.simpleframework.http.Response;
  */
 class HttpRmiServerConnection implements RmiConnection {
 
-  private int bufsz = Conf.getSystemProperties().getIntProperty(Consts.MARSHALLING_BUFSIZE, Defaults.DEFAULT_MARSHALLING_BUFSIZE);
   private Request req;
   private Response res;
   private HttpAddress address;
+  private boolean streaming;
 
   /**
    * Creates an instance of this class with the given request and response
    * objects, as well as http server address.
    */
   HttpRmiServerConnection(HttpAddress address, Request req, Response res) {
+    this(address, req, res, false);
+  }
+
+  /**
+   * Creates an instance of this class with the given request and response
+   * objects, as well as http server address, indicating if responses are to
+   * be streamed.
+   */
+  HttpRmiServerConnection(HttpAddress address, Request req, Response res, boolean streaming) {
     this.req = req;
     this.res = res;
     this.address = address;
+    this.streaming = streaming;
   }
 
   /**
@@ -54,24 +65,20 @@ class HttpRmiServerConnection implements RmiConnection {
    */
   public void send(Object o, VmId associated, String transportType) throws IOException, RemoteException {
     try {
-      ByteArrayOutputStream bos = new ByteArrayOutputStream(bufsz);
-      ObjectOutputStream mos = MarshalStreamFactory.createOutputStream(bos);
-
-      if ((associated != null) && (transportType != null)) {
-        ((RmiObjectOutput) mos).setUp(associated, transportType);
+      if (streaming) {
+        writeStreamingResponse(o, associated, transportType);
+        return;
+      }
+      SerializationBuffer buf = MarshalStreamFactory.acquireBuffer();
+      try {
+        if ((associated != null) && (transportType != null)) {
+          ((RmiObjectOutput) buf.getObjectOutputStream()).setUp(associated, transportType);
+        }
+        buf.writeObject(o);
+        writeResponse(buf);
+      } finally {
+        buf.release();
       }
-
-      mos.writeObject(o);
-      mos.flush();
-      mos.close();
-
-      byte[] data = bos.toByteArray();
-
-      res.setContentLength(data.length);
-      res.commit();
-      OutputStream os = res.getOutputStream(data.length);
-      os.write(data);
-      os.flush();
       
     } catch (SocketException | SocketTimeoutException e) {
       throw new RemoteException("Communication with server interrupted; server probably disappeared", e);
@@ -120,19 +127,17 @@ class HttpRmiServerConnection implements RmiConnection {
    */
   public void send(Object o) throws IOException, RemoteException {
     try {
-      ByteArrayOutputStream bos = new ByteArrayOutputStream(bufsz);
-      ObjectOutputStream mos = MarshalStreamFactory.createOutputStream(bos);
-      mos.writeObject(o);
-      mos.flush();
-      mos.close();
-     
-      byte[] data = bos.toByteArray();
-
-      res.setContentLength(data.length);
-      res.commit();
-      OutputStream os = res.getOutputStream(data.length);
-      os.write(data);
-      os.flush();
+      if (streaming) {
+        writeStreamingResponse(o, null, null);
+        return;
+      }
+      SerializationBuffer buf = MarshalStreamFactory.acquireBuffer();
+      try {
+        buf.writeObject(o);
+        writeResponse(buf);
+      } finally {
+        buf.release();
+      }
       
     } catch (SocketException | SocketTimeoutException | EOFException e) {
       throw new RemoteException("Error writing response payload", e);
@@ -143,4 +148,24 @@ class HttpRmiServerConnection implements RmiConnection {
     }
 
   }
+
+  private void writeResponse(SerializationBuffer buf) throws IOException {
+    res.setContentLength(buf.size());
+    res.commit();
+    OutputStream os = res.getOutputStream(buf.size());
+    buf.writeTo(os);
+    os.flush();
+  }
+
+  private void writeStreamingResponse(Object o, VmId associated, String transportType) throws IOException {
+    // no content length: the response is chunked
+    res.commit();
+    OutputStream os = res.getOutputStream();
+    ObjectOutputStream oos = MarshalStreamFactory.createOutputStream(os);
+    if ((associated != null) && (transportType != null)) {
+      ((RmiObjectOutput) oos).setUp(associated, transportType);
+    }
+    oos.writeObject(o);
+    oos.flush();
+  }
 }
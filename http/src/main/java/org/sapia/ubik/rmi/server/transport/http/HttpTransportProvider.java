@@ -25,7 +25,9 @@ import org.sapia.ubik.util.Localhost;
  * into Ubik's HTTP tranport layer.
  * <p>
  * For the properties that an instance of this class takes (and their default
- * values), see the {@link HttpConsts} interface.
+ * values), see the {@link HttpConsts} interface. If the
+ * {@link HttpConsts#HTTP_H2C} property is set, servers and client-side
+ * connections talk HTTP/2 over cleartext instead (using Jetty).
  * 
  * @see org.sapia.ubik.rmi.server.transport.http.HttpConsts
  * @see org.sapia.ubik.rmi.server.transport.http.HttpRmiServer
@@ -88,10 +90,14 @@ public class HttpTransportProvider implements TransportProvider, HttpConsts {
     if ((conns = pools.get(address)) == null) {
       try {
         int maxConnections = conf.getIntProperty(HTTP_CLIENT_MAX_CONNECTIONS_KEY, DEFAULT_MAX_CLIENT_CONNECTIONS);
-        if (usesJakarta) {
-          conns = new HttpClientConnectionPool((HttpAddress) address, maxConnections);
+        long idleTimeout = conf.getLongProperty(HTTP_CLIENT_IDLE_TIMEOUT, DEFAULT_CLIENT_IDLE_TIMEOUT);
+        boolean streaming = conf.getBooleanProperty(HTTP_STREAMING, false);
+        if (conf.getBooleanProperty(HTTP_H2C, false)) {
+          conns = new H2cClientConnectionPool((HttpAddress) address, idleTimeout, streaming);
+        } else if (usesJakarta) {
+          conns = new HttpClientConnectionPool((HttpAddress) address, maxConnections, idleTimeout, streaming);
         } else {
-          conns = new JdkClientConnectionPool((HttpAddress) address, maxConnections);
+          conns = new JdkClientConnectionPool((HttpAddress) address, maxConnections, idleTimeout, streaming);
         }
 
         pools.put(address, conns);
@@ -108,6 +114,9 @@ public class HttpTransportProvider implements TransportProvider, HttpConsts {
                   if (pool instanceof JdkClientConnectionPool) {
                     JdkClientConnectionPool jdkConns = (JdkClientConnectionPool) pool;
                     jdkConns.terminateTimedOutConnections();
+                    jdkConns.evictIdleConnections();
+                  } else if (pool instanceof HttpClientConnectionPool) {
+                    ((HttpClientConnectionPool) pool).evictIdleConnections();
                   }
                 });
               }
@@ -153,8 +162,12 @@ public class HttpTransportProvider implements TransportProvider, HttpConsts {
       throw new RemoteException("Could not acquire local address", e);
     }
 
-    UbikHttpHandler handler = new UbikHttpHandler(serverUrl, Threads.createWorkerPool());
+    boolean streaming = configProps.getBooleanProperty(HTTP_STREAMING, false);
+    UbikHttpHandler handler = new UbikHttpHandler(serverUrl, Threads.createWorkerPool(), streaming);
     handlers.addHandler(CONTEXT_PATH, handler);
+    if (configProps.getBooleanProperty(HTTP_H2C, false)) {
+      return new H2cRmiServer(handlers, serverUrl, port, streaming);
+    }
     HttpRmiServer svr = new HttpRmiServer(handlers, serverUrl, port);
     return svr;
   }
@@ -163,5 +176,10 @@ public class HttpTransportProvider implements TransportProvider, HttpConsts {
    * @see org.sapia.ubik.rmi.server.transport.TransportProvider#shutdown()
    */
   public void shutdown() {
+    for (Connections pool : pools.values()) {
+      if (pool instanceof H2cClientConnectionPool) {
+        ((H2cClientConnectionPool) pool).shutdown();
+      }
+    }
   }
 }
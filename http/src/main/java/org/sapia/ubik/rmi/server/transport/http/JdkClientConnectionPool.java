@@ -23,6 +23,16 @@ import org.sapia.ubik.util.pool.Pool;
  * HTTP support classes ({@link URL}, {@link HttpURLConnection}). It is a
  * sub-optimal implementation used only if the Jakarta HTTP client classes are
  * not in the classpath.
+ * <p>
+ * The underlying HTTP connections are kept alive by the JDK, which caches at
+ * most <code>http.maxConnections</code> idle connections per destination (5
+ * by default). Since that system property applies to the whole JVM, it is not
+ * set by this class: applications that use a pool larger than 5 should set it
+ * to the pool's maximum size (see
+ * {@link HttpConsts#HTTP_CLIENT_MAX_CONNECTIONS_KEY}), so that the connections
+ * of this pool can be reused. The pooled connection objects are discarded
+ * once the pool has been idle for longer than the given idle timeout (see
+ * {@link #evictIdleConnections()}).
  * 
  * @author yduchesne
  */
@@ -33,6 +43,7 @@ public class JdkClientConnectionPool implements Connections {
   private Set<JdkRmiClientConnection>   active = Collections.newSetFromMap(new ConcurrentHashMap<>());
   private InternalPool                  pool;
   private JdkRmiClientConnectionFactory factory;
+  private long                          idleTimeout = HttpConsts.DEFAULT_CLIENT_IDLE_TIMEOUT;
   
   /**
    * @param address the address of the target server.
@@ -59,6 +70,28 @@ public class JdkClientConnectionPool implements Connections {
     }, maxSize);
   }
  
+  /**
+   * @param address
+   *          the address of the target server.
+   * @param maxSize
+   *          the pool's maximum size.
+   * @param idleTimeout
+   *          the time (in millis) after which the pooled connections are
+   *          discarded if the pool is idle.
+   * @param streaming
+   *          if <code>true</code>, the connections created by this instance
+   *          stream request bodies (see {@link HttpConsts#HTTP_STREAMING}).
+   */
+  public JdkClientConnectionPool(HttpAddress address, int maxSize, long idleTimeout, boolean streaming) {
+    this(address, () -> { 
+      JdkRmiClientConnection conn =  new JdkRmiClientConnection();
+      conn.setClock(RealtimeClock.getInstance());
+      conn.setStreaming(streaming);
+      return conn;
+    }, maxSize);
+    this.idleTimeout = idleTimeout;
+  }
+ 
  
   /**
    * @param transportType
@@ -120,6 +153,29 @@ public class JdkClientConnectionPool implements Connections {
     }
   }
   
+  /**
+   * Invalidates the given connection, leaving the idle ones untouched: the
+   * underlying {@link java.net.HttpURLConnection}s are kept alive (or not) by
+   * the JDK, which discards broken ones by itself.
+   */
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+    invalidate(conn);
+  }
+
+  /**
+   * Discards the pooled connections if none is in use, and if this pool has
+   * not been used for longer than its idle timeout.
+   */
+  public void evictIdleConnections() {
+    synchronized (pool) {
+      if (active.isEmpty() && pool.getAvailableCount() > 0 && System.currentTimeMillis() - pool.getLastUsageTime() > idleTimeout) {
+        log.debug("Discarding idle connections to %s", address);
+        pool.shrinkTo(0);
+      }
+    }
+  }
+
   // --------------------------------------------------------------------------
   // Visible for testing
   
@@ -130,6 +186,10 @@ public class JdkClientConnectionPool implements Connections {
   Pool<JdkRmiClientConnection> getInternalPool() {
     return pool;
   }
+
+  void setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
   
   // --------------------------------------------------------------------------
   // Restricted
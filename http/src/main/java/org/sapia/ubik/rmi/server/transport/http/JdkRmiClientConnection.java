@@ -1,6 +1,5 @@
 package org.sapia.ubik.rmi.server.transport.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -23,6 +22,7 @@ import org.sapia.ubik.rmi.server.stats.Stats;
 import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
 import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
+import org.sapia.ubik.serialization.SerializationBuffer;
 import org.sapia.ubik.util.Assertions;
 import org.sapia.ubik.util.Conf;
 import org.sapia.ubik.util.IoUtils;
@@ -32,6 +32,10 @@ import org.sapia.ubik.util.TimeValue;
 
 /**
  * Implements the {@link RmiConnection} over the JDK's {@link URL} class.
+ * <p>
+ * In streaming mode (see {@link HttpConsts#HTTP_STREAMING}), the object to
+ * send is serialized directly into a chunked request body. Responses are
+ * always deserialized directly from the response body.
  * 
  * @author yduchesne
  */
@@ -63,16 +67,13 @@ public class JdkRmiClientConnection implements RmiConnection {
 
   private static final String POST_METHOD = "POST";
   private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+  private static final int    STREAMING_CHUNK_SIZE  = 8192;
 
   private SysClock          clock = RealtimeClock.getInstance();
   private HttpAddress       address;
   private URL               url;
   private volatile boolean  closed;
   private HttpURLConnection conn;
-  private int               bufsz          = Conf.getSystemProperties().getIntProperty(
-                                                 Consts.MARSHALLING_BUFSIZE, 
-                                                 Defaults.DEFAULT_MARSHALLING_BUFSIZE
-                                             );
   private int               connectTimeOut = Conf.getSystemProperties().getIntProperty(
                                                  Consts.HTTP_CLIENT_CONNECT_TIMEOUT, 
                                                  Defaults.DEFAULT_HTTP_CLIENT_CONNECTION_TIMEOUT
@@ -85,6 +86,7 @@ public class JdkRmiClientConnection implements RmiConnection {
   
   private State             state         = State.IDLE;
   private long              lastReadStart;
+  private boolean           streaming;
 
   public JdkRmiClientConnection() {
   }
@@ -178,6 +180,10 @@ public class JdkRmiClientConnection implements RmiConnection {
   void setClock(SysClock clock) {
     this.clock = clock;
   }
+
+  void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
   
   // --------------------------------------------------------------------------
   // Visible for testing
@@ -230,39 +236,52 @@ public class JdkRmiClientConnection implements RmiConnection {
       conn.setConnectTimeout(connectTimeOut);
       conn.setReadTimeout(readTimeout);
       conn.setRequestMethod(POST_METHOD);
-  
-      ByteArrayOutputStream bos = new ByteArrayOutputStream(bufsz);
-      ObjectOutputStream mos = MarshalStreamFactory.createOutputStream(bos);
-  
-      if ((associated != null) && (transportType != null)) {
-        ((RmiObjectOutput) mos).setUp(associated, transportType);
+
+      if (streaming) {
+        doSendStreaming(o, associated, transportType);
+        return;
       }
   
-      Split split = serializationTime.start();
-      mos.writeObject(o);
-      mos.flush();
-      mos.close();
-      split.stop();
-  
-      split = sendTime.start();
-      byte[] data = bos.toByteArray();
+      SerializationBuffer buf = MarshalStreamFactory.acquireBuffer();
+      try {
+        if ((associated != null) && (transportType != null)) {
+          ((RmiObjectOutput) buf.getObjectOutputStream()).setUp(associated, transportType);
+        }
   
-      if (data.length > bufsz) {
-        bufsz = data.length;
-      }
+        Split split = serializationTime.start();
+        buf.writeObject(o);
+        split.stop();
   
-      conn.setRequestProperty(CONTENT_LENGTH_HEADER, Integer.toString(data.length));
+        split = sendTime.start();
+        conn.setRequestProperty(CONTENT_LENGTH_HEADER, Integer.toString(buf.size()));
   
-      OutputStream os = conn.getOutputStream();
-      os.write(data);
-      os.flush();
-      os.close();
-      split.stop();
+        OutputStream os = conn.getOutputStream();
+        buf.writeTo(os);
+        os.flush();
+        os.close();
+        split.stop();
+      } finally {
+        buf.release();
+      }
     } catch (SocketException | SocketTimeoutException | EOFException e) {
       throw new RemoteException("Network issue trying to send request to " + url, e);
     }
   }
   
+  private void doSendStreaming(Object o, VmId associated, String transportType) throws IOException {
+    Split split = sendTime.start();
+    conn.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+    OutputStream os = conn.getOutputStream();
+    ObjectOutputStream oos = MarshalStreamFactory.createOutputStream(os);
+    if ((associated != null) && (transportType != null)) {
+      ((RmiObjectOutput) oos).setUp(associated, transportType);
+    }
+    oos.writeObject(o);
+    oos.flush();
+    os.close();
+    split.stop();
+  }
+
   protected void doClose() {
     if (conn != null) {
       conn.disconnect();
@@ -60,9 +60,19 @@ public class Router implements Handler {
     this.catchAllHandler = catchAllHandler;
   }
 
+  /**
+   * @param path
+   *          a request path.
+   * @return the {@link Handler} mapped to the given path, or <code>null</code>
+   *         if there is none.
+   */
+  public Handler getHandler(String path) {
+    return handlers.get(path);
+  }
+
   @Override
   public void handle(Request req, Response res) {
-    Handler handler = (Handler) handlers.get(req.getPath().getPath());
+    Handler handler = getHandler(req.getPath().getPath());
     if (handler != null) {
       handler.handle(req, res);
     } else {
@@ -9,6 +9,7 @@ import org.sapia.ubik.rmi.server.Config;
 import org.sapia.ubik.rmi.server.Hub;
 import org.sapia.ubik.rmi.server.command.RMICommand;
 import org.sapia.ubik.rmi.server.transport.CommandHandler;
+import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.simpleframework.http.Request;
 import org.simpleframework.http.Response;
 
@@ -23,17 +24,32 @@ class UbikHttpHandler implements Handler {
   private HttpAddress     addr;
   private CommandHandler  handler;
   private ExecutorService threads;
+  private boolean         streaming;
 
   UbikHttpHandler(Uri localHostUri, ExecutorService executor) {
+    this(localHostUri, executor, false);
+  }
+
+  /**
+   * @param localHostUri
+   *          the {@link Uri} of the server.
+   * @param executor
+   *          the {@link ExecutorService} in which requests are handled.
+   * @param streaming
+   *          if <code>true</code>, responses are streamed rather than buffered
+   *          (see {@link HttpConsts#HTTP_STREAMING}).
+   */
+  UbikHttpHandler(Uri localHostUri, ExecutorService executor, boolean streaming) {
     addr    = new HttpAddress(localHostUri);
     handler = new CommandHandler(Hub.getModules().getServerRuntime().getDispatcher(), getClass());
     threads = executor;
+    this.streaming = streaming;
   }
 
   @Override
   public void handle(Request req, Response res) {
     final HttpRmiServerConnection conn = new HttpRmiServerConnection(HttpAddress.newDefaultInstance(req.getClientAddress().getHostString(), req
-        .getClientAddress().getPort()), req, res);
+        .getClientAddress().getPort()), req, res, streaming);
     try {
       threads.submit(new Runnable() {
         @Override
@@ -46,6 +62,18 @@ class UbikHttpHandler implements Handler {
     }
   }
 
+  /**
+   * Handles the request received over the given connection, in the calling
+   * thread (used by the HTTP/2 server, which already dispatches each stream
+   * in its own thread).
+   *
+   * @param conn
+   *          the {@link RmiConnection} over which the request was received.
+   */
+  void handle(RmiConnection conn) {
+    doHandle(new org.sapia.ubik.net.Request(conn, addr));
+  }
+
   private void doHandle(org.sapia.ubik.net.Request req) {
     log.debug("Handling request");
 
@@ -0,0 +1,146 @@
+package org.sapia.ubik.rmi.server.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.rmi.Remote;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.api.ContentResponse;
+import org.eclipse.jetty.client.api.Destination;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.server.Hub;
+import org.sapia.ubik.rmi.server.transport.Connections;
+import org.sapia.ubik.util.Localhost;
+
+public class H2cTransportTest {
+
+  private static final int PORT  = 8003;
+  private static final int CALLS = 5;
+
+  private String          host;
+  private HttpAddress     address;
+  private ExecutorService executor;
+  private JoinService     service;
+
+  @Before
+  public void setUp() throws Exception {
+    Hub.shutdown();
+    System.setProperty(Consts.COLOCATED_CALLS_ENABLED, "false");
+    System.setProperty(HttpConsts.HTTP_H2C, "true");
+
+    Properties props = new Properties();
+    props.setProperty(Consts.TRANSPORT_TYPE, HttpTransportProvider.TRANSPORT_TYPE);
+    props.setProperty(HttpConsts.HTTP_PORT_KEY, Integer.toString(PORT));
+    Hub.exportObject(new JoinServiceImpl(CALLS), props);
+
+    host     = Localhost.getPreferredLocalAddress().getHostAddress();
+    address  = HttpAddress.newDefaultInstance(host, PORT);
+    service  = (JoinService) Hub.connect(address);
+    executor = Executors.newFixedThreadPool(CALLS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    Hub.shutdown();
+    System.clearProperty(Consts.COLOCATED_CALLS_ENABLED);
+    System.clearProperty(HttpConsts.HTTP_H2C);
+  }
+
+  @Test(timeout = 30000)
+  public void testRoundTrip() throws Exception {
+    assertEquals("test", service.echo("test"));
+    assertTrue(connections() instanceof H2cClientConnectionPool);
+  }
+
+  @Test(timeout = 30000)
+  public void testConcurrentCallsShareConnection() throws Exception {
+    List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    for (int i = 0; i < CALLS; i++) {
+      results.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          return service.join();
+        }
+      }));
+    }
+    for (Future<Boolean> r : results) {
+      assertTrue("Calls were not processed concurrently", r.get());
+    }
+
+    HttpClient client = ((H2cClientConnectionPool) connections()).getClient();
+    List<Destination> destinations = client.getDestinations();
+    assertEquals(1, destinations.size());
+    AbstractConnectionPool pool = (AbstractConnectionPool) ((HttpDestination) destinations.get(0)).getConnectionPool();
+    assertEquals(1, pool.getConnectionCount());
+  }
+
+  @Test(timeout = 30000)
+  public void testUnknownPath() throws Exception {
+    HttpClient client = new HttpClient(new HttpClientTransportOverHTTP2(new HTTP2Client()));
+    client.start();
+    try {
+      ContentResponse response = client.newRequest("http://" + host + ":" + PORT + "/unknown").method(HttpMethod.POST).send();
+      assertEquals(HttpStatus.NOT_FOUND_404, response.getStatus());
+    } finally {
+      client.stop();
+    }
+  }
+
+  private Connections connections() throws Exception {
+    return Hub.getModules().getTransportManager().getConnectionsFor(address);
+  }
+
+  // ==========================================================================
+
+  public interface JoinService {
+
+    public Object echo(Object value);
+
+    /**
+     * @return <code>true</code> if all expected callers have joined within
+     *         the allotted time.
+     */
+    public boolean join() throws InterruptedException;
+
+  }
+
+  public static class JoinServiceImpl implements JoinService, Remote {
+
+    private CountDownLatch joined;
+
+    public JoinServiceImpl(int callers) {
+      joined = new CountDownLatch(callers);
+    }
+
+    @Override
+    public Object echo(Object value) {
+      return value;
+    }
+
+    @Override
+    public boolean join() throws InterruptedException {
+      joined.countDown();
+      return joined.await(10, TimeUnit.SECONDS);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package org.sapia.ubik.rmi.server.transport.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.rmi.Remote;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.server.Hub;
+import org.sapia.ubik.util.Localhost;
+
+public class HttpStreamingTest {
+
+  private static final int PORT = 8002;
+
+  private EchoService service;
+
+  @Before
+  public void setUp() throws Exception {
+    Hub.shutdown();
+    System.setProperty(Consts.COLOCATED_CALLS_ENABLED, "false");
+    System.setProperty(HttpConsts.HTTP_STREAMING, "true");
+    // a single connection: a response that is not released blocks the next call
+    System.setProperty(HttpConsts.HTTP_CLIENT_MAX_CONNECTIONS_KEY, "1");
+
+    Properties props = new Properties();
+    props.setProperty(Consts.TRANSPORT_TYPE, HttpTransportProvider.TRANSPORT_TYPE);
+    props.setProperty(HttpConsts.HTTP_PORT_KEY, Integer.toString(PORT));
+    props.setProperty(HttpConsts.HTTP_STREAMING, "true");
+    Hub.exportObject(new EchoServiceImpl(), props);
+
+    service = (EchoService) Hub.connect(HttpAddress.newDefaultInstance(Localhost.getPreferredLocalAddress().getHostAddress(), PORT));
+  }
+
+  @After
+  public void tearDown() {
+    Hub.shutdown();
+    System.clearProperty(Consts.COLOCATED_CALLS_ENABLED);
+    System.clearProperty(HttpConsts.HTTP_STREAMING);
+    System.clearProperty(HttpConsts.HTTP_CLIENT_MAX_CONNECTIONS_KEY);
+  }
+
+  @Test(timeout = 30000)
+  public void testRoundTrip() throws Exception {
+    assertEquals("test", service.echo("test"));
+  }
+
+  @Test(timeout = 30000)
+  public void testRoundTripSpanningSeveralChunks() throws Exception {
+    byte[] payload = new byte[1024 * 1024];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) i;
+    }
+    assertArrayEquals(payload, (byte[]) service.echo(payload));
+  }
+
+  @Test(timeout = 30000)
+  public void testResponsesReleased() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      assertEquals(Integer.valueOf(i), service.echo(i));
+    }
+  }
+
+  @Test(timeout = 30000, expected = IllegalArgumentException.class)
+  public void testResponseReleasedOnError() throws Exception {
+    try {
+      service.echo(null);
+    } finally {
+      assertEquals("test", service.echo("test"));
+    }
+  }
+
+  // ==========================================================================
+
+  public interface EchoService {
+
+    public Object echo(Object value);
+
+  }
+
+  public static class EchoServiceImpl implements EchoService, Remote {
+
+    @Override
+    public Object echo(Object value) {
+      if (value == null) {
+        throw new IllegalArgumentException("Null value");
+      }
+      return value;
+    }
+  }
+}
@@ -120,6 +120,43 @@ public class JdkClientConnectionPoolTest {
     assertThat(pool.getInternalPool().getBorrowedCount()).isEqualTo(0);
   }
 
+  @Test
+  public void testEvictIdleConnections() throws Exception {
+    JdkRmiClientConnection conn = (JdkRmiClientConnection) pool.acquire();
+    pool.release(conn);
+    pool.setIdleTimeout(0);
+    Thread.sleep(5);
+    pool.evictIdleConnections();
+
+    assertThat(conn.isClosed()).isTrue();
+    assertThat(pool.getInternalPool().getAvailableCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testEvictIdleConnections_within_idle_timeout() throws Exception {
+    JdkRmiClientConnection conn = (JdkRmiClientConnection) pool.acquire();
+    pool.release(conn);
+    pool.setIdleTimeout(60000);
+    pool.evictIdleConnections();
+
+    assertThat(conn.isClosed()).isFalse();
+    assertThat(pool.getInternalPool().getAvailableCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testEvictIdleConnections_with_active_connection() throws Exception {
+    JdkRmiClientConnection conn = (JdkRmiClientConnection) pool.acquire();
+    pool.release(pool.acquire());
+    pool.release(conn);
+    RmiConnection active = pool.acquire();
+    pool.setIdleTimeout(0);
+    Thread.sleep(5);
+    pool.evictIdleConnections();
+
+    assertThat(pool.isActive(active)).isTrue();
+    assertThat(pool.getInternalPool().getAvailableCount()).isEqualTo(1);
+  }
+
   @Test
   public void testTerminateTimedOutConnections_with_timed_out_connection() throws Exception {
     JdkRmiClientConnection conn = (JdkRmiClientConnection) pool.acquire();
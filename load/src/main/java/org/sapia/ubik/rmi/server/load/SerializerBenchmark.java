@@ -0,0 +1,143 @@
+package org.sapia.ubik.rmi.server.load;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.server.transport.BinarySerializer;
+import org.sapia.ubik.rmi.server.transport.Serializer;
+import org.sapia.ubik.rmi.server.transport.Serializers;
+import org.sapia.ubik.util.Conf;
+import org.sapia.ubik.util.cli.Cmd;
+
+/**
+ * Compares the throughput and output size of the available {@link Serializer}s,
+ * by serializing and deserializing a typical payload over and over. Type
+ * <code>-help</code> at the command-line for the options.
+ * <p>
+ * You can start a {@link SerializerBenchmark} with the <code>starter.sh</code>
+ * script that comes with Ubik's distribution:
+ *
+ * <pre>
+ * ./starter.sh org.sapia.ubik.rmi.server.load.SerializerBenchmark -i 200000
+ * </pre>
+ *
+ * @author yduchesne
+ *
+ */
+public class SerializerBenchmark {
+
+  private static final int DEFAULT_ITERATIONS = 100000;
+  private static final int DEFAULT_WARMUP     = 20000;
+
+  public static void main(String[] args) throws Exception {
+
+    Cmd cmd = Cmd.fromArgs(args);
+
+    if (cmd.hasSwitch("help")) {
+      System.out.println("-i: The number of measured iterations, per serializer. Defaults to " + DEFAULT_ITERATIONS + ".");
+      System.out.println("-w: The number of warmup iterations, per serializer. Defaults to " + DEFAULT_WARMUP + ".");
+      return;
+    }
+
+    int iterations = cmd.hasSwitch("i") ? cmd.getOptWithValue("i").getIntValue() : DEFAULT_ITERATIONS;
+    int warmup = cmd.hasSwitch("w") ? cmd.getOptWithValue("w").getIntValue() : DEFAULT_WARMUP;
+
+    Payload payload = Payload.create();
+
+    Serializer[] serializers = {
+        Serializers.getSerializer(Consts.SERIALIZATION_PROVIDER_JDK),
+        new BinarySerializer(),
+        new BinarySerializer(Conf.newInstance().addProperties(
+            Consts.SERIALIZATION_BINARY_CLASSES, Payload.class.getName() + "," + ArrayList.class.getName() + "," + HashMap.class.getName()
+        ))
+    };
+    String[] labels = { "jdk", "binary", "binary (registered classes)" };
+
+    System.out.println(String.format("%-28s %12s %12s %8s", "serializer", "write ops/s", "read ops/s", "bytes"));
+    for (int i = 0; i < serializers.length; i++) {
+      run(serializers[i], payload, warmup);
+      Result result = run(serializers[i], payload, iterations);
+      System.out.println(String.format("%-28s %12d %12d %8d", labels[i], result.writeOpsPerSecond(iterations), result.readOpsPerSecond(iterations), result.size));
+    }
+  }
+
+  private static Result run(Serializer serializer, Payload payload, int iterations) throws Exception {
+    Result result = new Result();
+    byte[] bytes = null;
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(512);
+      ObjectOutputStream oos = serializer.createOutputStream(bos);
+      oos.writeObject(payload);
+      oos.flush();
+      bytes = bos.toByteArray();
+      result.writeNanos += System.nanoTime() - start;
+
+      start = System.nanoTime();
+      ObjectInputStream ois = serializer.createInputStream(new ByteArrayInputStream(bytes));
+      if (ois.readObject() == null) {
+        throw new IllegalStateException("Null object read");
+      }
+      result.readNanos += System.nanoTime() - start;
+    }
+    result.size = bytes == null ? 0 : bytes.length;
+    return result;
+  }
+
+  // ==========================================================================
+
+  private static class Result {
+
+    private long writeNanos;
+    private long readNanos;
+    private int  size;
+
+    private long writeOpsPerSecond(int iterations) {
+      return writeNanos == 0 ? 0 : iterations * 1000000000L / writeNanos;
+    }
+
+    private long readOpsPerSecond(int iterations) {
+      return readNanos == 0 ? 0 : iterations * 1000000000L / readNanos;
+    }
+  }
+
+  // --------------------------------------------------------------------------
+
+  public static class Payload implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long                 id;
+    private String               name;
+    private double               amount;
+    private Date                 timestamp;
+    private int[]                values;
+    private List<String>         tags;
+    private Map<String, Integer> counts;
+
+    static Payload create() {
+      Payload p = new Payload();
+      p.id = 123456789L;
+      p.name = "benchmark-payload";
+      p.amount = 1234.56;
+      p.timestamp = new Date();
+      p.values = new int[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+      p.tags = new ArrayList<String>();
+      p.counts = new HashMap<String, Integer>();
+      for (int i = 0; i < 5; i++) {
+        p.tags.add("tag-" + i);
+        p.counts.put("count-" + i, i * 100);
+      }
+      return p;
+    }
+  }
+}
@@ -2,6 +2,7 @@ package org.sapia.ubik.net.netty;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
@@ -43,9 +44,9 @@ public class NettyResponseEncoder extends SimpleChannelHandler {
       outgoing = ChannelBuffers.dynamicBuffer(BUFSIZE);
     }
 
-    private ObjectOutputStream getObjectOutputStream() throws IOException {
+    private ObjectOutputStream getObjectOutputStream(NettyResponseEncoder encoder) throws IOException {
       if (stream == null) {
-        stream = MarshalStreamFactory.createOutputStream(new ChannelBufferOutputStream(outgoing));
+        stream = encoder.createObjectOutputStream(new ChannelBufferOutputStream(outgoing));
       }
       return stream;
     }
@@ -84,7 +85,7 @@ public class NettyResponseEncoder extends SimpleChannelHandler {
     es.outgoing.clear();
     es.outgoing.writeInt(0); // reserve space for prefix
 
-    ObjectOutputStream oos = es.getObjectOutputStream();
+    ObjectOutputStream oos = es.getObjectOutputStream(this);
 
     setUp(oos, resp.getAssociatedVmId(), resp.getTransportType());
 
@@ -103,4 +104,15 @@ public class NettyResponseEncoder extends SimpleChannelHandler {
   protected void setUp(ObjectOutputStream oos, VmId vmId, String transportType) {
   }
 
+  /**
+   * @param os
+   *          the {@link OutputStream} to which responses are written.
+   * @return the {@link ObjectOutputStream} with which to serialize responses.
+   * @throws IOException
+   *           if an I/O error occurs creating the stream.
+   */
+  protected ObjectOutputStream createObjectOutputStream(OutputStream os) throws IOException {
+    return MarshalStreamFactory.createOutputStream(os);
+  }
+
 }
@@ -2,6 +2,7 @@ package org.sapia.ubik.rmi.server.transport.netty;
 
 import java.rmi.RemoteException;
 
+import org.jboss.netty.channel.ChannelFactory;
 import org.sapia.ubik.net.ConnectionPool;
 import org.sapia.ubik.net.ThreadInterruptedException;
 import org.sapia.ubik.rmi.server.transport.Connections;
@@ -24,11 +25,13 @@ public class NettyClientConnectionPool implements Connections {
    *          the host of the server to connect to.
    * @param port
    *          the port of the server.
+   * @param channels
+   *          the {@link ChannelFactory} to use to create client channels.
    * @param bufsize
    *          the size of connection buffers.
    */
-  NettyClientConnectionPool(String host, int port, int bufsize) {
-    pool = new ConnectionPool.Builder().host(host).port(port).connectionFactory(new NettyConnectionFactory(bufsize)).build();
+  NettyClientConnectionPool(String host, int port, ChannelFactory channels, int bufsize) {
+    pool = new ConnectionPool.Builder().host(host).port(port).connectionFactory(new NettyConnectionFactory(channels, bufsize)).build();
   }
 
   /**
@@ -61,6 +64,11 @@ public class NettyClientConnectionPool implements Connections {
     pool.invalidate(conn);
   }
 
+  @Override
+  public void invalidateFailed(RmiConnection conn) {
+    pool.invalidateFailed(conn);
+  }
+
   @Override
   public String getTransportType() {
     return NettyTransportProvider.TRANSPORT_TYPE;
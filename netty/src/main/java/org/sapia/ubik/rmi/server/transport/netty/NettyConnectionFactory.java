@@ -1,31 +1,95 @@
 package org.sapia.ubik.rmi.server.transport.netty;
 
 import java.io.IOException;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.rmi.RemoteException;
 
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
 import org.sapia.ubik.net.Connection;
-import org.sapia.ubik.net.SocketConnectionFactory;
+import org.sapia.ubik.net.ConnectionFactory;
+import org.sapia.ubik.net.netty.NettyAddress;
+import org.sapia.ubik.net.netty.NettyResponse;
+import org.sapia.ubik.rmi.Consts;
+import org.sapia.ubik.rmi.Defaults;
+import org.sapia.ubik.util.Conf;
 
 /**
- * Implements a factory of {@link NettyRmiClientConnection} instances.
+ * Implements a factory of {@link NettyRmiClientConnection} instances. The
+ * connections are created over Netty client channels, which are all serviced
+ * by the I/O threads of the {@link ChannelFactory} that is passed to this
+ * instance.
  */
-public class NettyConnectionFactory extends SocketConnectionFactory {
+public class NettyConnectionFactory implements ConnectionFactory {
 
-  public NettyConnectionFactory(int bufsize) {
-    super(NettyTransportProvider.TRANSPORT_TYPE);
-  }
+  private static final int MAX_FRAME_LENGTH = Integer.MAX_VALUE;
+
+  private Category        log                = Log.createCategory(getClass());
+  private int             bufsize;
+  private int             connectionMaxRetry = Conf.getSystemProperties().getIntProperty(Consts.CLIENT_CONNECTION_MAX_RETRY, Defaults.DEFAULT_CLIENT_CONNECTION_MAX_RETRY);
+  private ClientBootstrap bootstrap;
 
   /**
-   * @see org.sapia.ubik.net.SocketConnectionFactory#newConnection(Socket)
+   * @param channels
+   *          the {@link ChannelFactory} to use to create client channels.
+   * @param bufsize
+   *          the initial size of the buffers into which outgoing objects are
+   *          serialized.
    */
-  public Connection newConnection(Socket sock) throws IOException {
-    return new NettyRmiClientConnection(sock, bufsize);
+  public NettyConnectionFactory(ChannelFactory channels, int bufsize) {
+    this.bufsize = bufsize;
+    this.bootstrap = new ClientBootstrap(channels);
+    bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+      @Override
+      public ChannelPipeline getPipeline() throws Exception {
+        return Channels.pipeline(
+            new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, NettyResponse.PREFIX_LEN, 0, NettyResponse.PREFIX_LEN),
+            new NettyRmiClientHandler()
+        );
+      }
+    });
+    bootstrap.setOption("tcpNoDelay", true);
+    bootstrap.setOption("keepAlive", true);
+    bootstrap.setOption("connectTimeoutMillis",
+        Conf.getSystemProperties().getIntProperty(Consts.CLIENT_CONNECTION_TIMEOUT, Defaults.DEFAULT_CLIENT_CONNECTION_TIMEOUT));
   }
 
   /**
-   * @see org.sapia.ubik.net.SocketConnectionFactory#newConnection(String, int)
+   * @see org.sapia.ubik.net.ConnectionFactory#newConnection(String, int)
    */
   public Connection newConnection(String host, int port) throws IOException {
-    return new NettyRmiClientConnection(newSocket(host, port), bufsize);
+    ChannelFuture connect = null;
+    int retryCount = 0;
+    do {
+      log.debug("Attempting client channel connection to %s:%s (retry attempt: %s)", host, port, retryCount + 1);
+      connect = bootstrap.connect(new InetSocketAddress(host, port)).awaitUninterruptibly();
+      if (!connect.isSuccess()) {
+        log.warning("Error attempting to connect to %s:%s. Retry count currently is: %s. Max retries set to: %s", host, port, retryCount, connectionMaxRetry);
+      }
+      retryCount++;
+    } while (!connect.isSuccess() && retryCount < connectionMaxRetry);
+
+    if (!connect.isSuccess()) {
+      throw new RemoteException(String.format("Could not establish client connection to %s:%s (retried %s times)", host, port, retryCount), connect.getCause());
+    }
+    log.debug("Connection to %s:%s succeeded", host, port);
+    return new NettyRmiClientConnection(
+        connect.getChannel(),
+        connect.getChannel().getPipeline().get(NettyRmiClientHandler.class),
+        new NettyAddress(host, port),
+        bufsize
+    );
+  }
+
+  @Override
+  public String getTransportType() {
+    return NettyTransportProvider.TRANSPORT_TYPE;
   }
 }
@@ -1,5 +1,9 @@
 package org.sapia.ubik.rmi.server.transport.netty;
 
+import java.util.concurrent.TimeUnit;
+
+import org.sapia.ubik.util.TimeValue;
+
 /**
  * Constants specific to the {@link NettyTransportProvider}.
  * 
@@ -40,6 +44,41 @@ public interface NettyConsts {
    */
   public static final String SERVER_IO_KEEP_ALIVE_KEY = "ubik.rmi.transport.nio.netty.server.io.keep-alive";
 
+  /**
+   * Corresponds to the
+   * <code>ubik.rmi.transport.nio.netty.server.executor.core-threads</code>
+   * property, used to specify the number of core threads of the pool that
+   * executes incoming commands, off the Netty IO worker threads (defaults to
+   * 25).
+   */
+  public static final String SERVER_EXECUTOR_CORE_THREADS_KEY = "ubik.rmi.transport.nio.netty.server.executor.core-threads";
+
+  /**
+   * Corresponds to the
+   * <code>ubik.rmi.transport.nio.netty.server.executor.max-threads</code>
+   * property, used to specify the max number of threads of the pool that
+   * executes incoming commands (defaults to 40).
+   */
+  public static final String SERVER_EXECUTOR_MAX_THREADS_KEY = "ubik.rmi.transport.nio.netty.server.executor.max-threads";
+
+  /**
+   * Corresponds to the
+   * <code>ubik.rmi.transport.nio.netty.server.executor.queue-size</code>
+   * property, used to specify the maximum number of commands that may be
+   * pending execution (defaults to 100). Commands that come in while that
+   * queue is full are rejected: the client receives a
+   * {@link java.rmi.RemoteException} indicating that the server is busy.
+   */
+  public static final String SERVER_EXECUTOR_QUEUE_SIZE_KEY = "ubik.rmi.transport.nio.netty.server.executor.queue-size";
+
+  /**
+   * Corresponds to the
+   * <code>ubik.rmi.transport.nio.netty.server.executor.keep-alive</code>
+   * property, used to specify the keep-alive of idle threads of the pool that
+   * executes incoming commands (defaults to 30 seconds).
+   */
+  public static final String SERVER_EXECUTOR_KEEP_ALIVE_KEY = "ubik.rmi.transport.nio.netty.server.executor.keep-alive";
+
   /**
    * This constant corresponds to the
    * <code>ubik.rmi.transport.nio.netty.server.bind-address</code> system
@@ -73,4 +112,24 @@ public interface NettyConsts {
    */
   public static final int DEFAULT_SERVER_IO_KEEP_ALIVE = 30;
 
+  /**
+   * The default for {@link #SERVER_EXECUTOR_CORE_THREADS_KEY}.
+   */
+  public static final int DEFAULT_SERVER_EXECUTOR_CORE_THREADS = 25;
+
+  /**
+   * The default for {@link #SERVER_EXECUTOR_MAX_THREADS_KEY}.
+   */
+  public static final int DEFAULT_SERVER_EXECUTOR_MAX_THREADS = 40;
+
+  /**
+   * The default for {@link #SERVER_EXECUTOR_QUEUE_SIZE_KEY}.
+   */
+  public static final int DEFAULT_SERVER_EXECUTOR_QUEUE_SIZE = 100;
+
+  /**
+   * The default for {@link #SERVER_EXECUTOR_KEEP_ALIVE_KEY}.
+   */
+  public static final TimeValue DEFAULT_SERVER_EXECUTOR_KEEP_ALIVE = new TimeValue(30, TimeUnit.SECONDS);
+
 }
@@ -1,16 +1,9 @@
 package org.sapia.ubik.rmi.server.transport.netty;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.rmi.RemoteException;
 
@@ -19,21 +12,35 @@ import org.javasimon.Stopwatch;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.net.ServerAddress;
+import org.sapia.ubik.net.ThreadInterruptedException;
 import org.sapia.ubik.net.netty.NettyAddress;
+import org.sapia.ubik.net.netty.NettyResponse;
 import org.sapia.ubik.rmi.server.VmId;
 import org.sapia.ubik.rmi.server.stats.Stats;
 import org.sapia.ubik.rmi.server.transport.MarshalOutputStream;
 import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
 import org.sapia.ubik.rmi.server.transport.RmiConnection;
 import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
-import org.sapia.ubik.util.IoUtils;
 
 /**
- * A connection over a Socket the connection uses the
+ * A client connection over a Netty {@link Channel}. The connection uses the
  * {@link MarshalOutputStream} class to serialize outgoing objects.
+ * <p>
+ * Outgoing objects are serialized directly into a direct buffer, after space
+ * reserved for the length prefix: the frame is thus written in a single
+ * operation, without intermediary copy. Writes do not block: responses are
+ * handed off by this instance's {@link NettyRmiClientHandler} as they come in
+ * on the channel, and are deserialized by the thread that waits for them.
+ *
+ * @author yduchesne
+ *
  */
 public class NettyRmiClientConnection implements RmiConnection {
 
@@ -43,19 +50,33 @@ public class NettyRmiClientConnection implements RmiConnection {
   private static Stopwatch sendTime = Stats.createStopwatch(NettyRmiClientConnection.class, "SendDuration",
       "Time required to send an object over the network");
 
-  private Socket sock;
-  private int bufsize;
-  private ServerAddress address;
-  private ChannelBuffer byteBuffer;
-  private ObjectOutputStream oos;
-  private ObjectInputStream ois;
-  private Category log = Log.createCategory(getClass());
-
-  public NettyRmiClientConnection(Socket sock, int bufsize) throws IOException {
-    this.sock = sock;
-    this.address = new NettyAddress(sock.getInetAddress().getHostAddress(), sock.getPort());
-    this.bufsize = bufsize;
-    this.byteBuffer = ChannelBuffers.dynamicBuffer(bufsize);
+  private Category              log = Log.createCategory(getClass());
+  private Channel               channel;
+  private NettyRmiClientHandler handler;
+  private ServerAddress         address;
+  private ChannelBuffer         byteBuffer;
+  private FrameInputStream      incoming = new FrameInputStream();
+  private ObjectOutputStream    oos;
+  private ObjectInputStream     ois;
+  private volatile ChannelFuture lastWrite;
+
+  /**
+   * @param channel
+   *          the connected {@link Channel} to use.
+   * @param handler
+   *          the {@link NettyRmiClientHandler} of the given channel.
+   * @param address
+   *          the {@link NettyAddress} of the server to which the given channel
+   *          is connected.
+   * @param bufsize
+   *          the initial size of the buffer into which outgoing objects are
+   *          serialized.
+   */
+  NettyRmiClientConnection(Channel channel, NettyRmiClientHandler handler, NettyAddress address, int bufsize) {
+    this.channel    = channel;
+    this.handler    = handler;
+    this.address    = address;
+    this.byteBuffer = ChannelBuffers.dynamicBuffer(bufsize, DirectChannelBufferFactory.getInstance());
   }
 
   /**
@@ -70,106 +91,146 @@ public class NettyRmiClientConnection implements RmiConnection {
    *      String)
    */
   public void send(Object o, VmId vmId, String transportType) throws IOException, RemoteException {
-    byteBuffer.clear();
-    if (oos == null) {
-      oos = MarshalStreamFactory.createOutputStream(new ChannelBufferOutputStream(byteBuffer));
-    }
-    ((RmiObjectOutput) oos).setUp(vmId, transportType);
-    Split split = serializationTime.start();
-    oos.writeObject(o);
-    oos.flush();
-    split.stop();
-
-    try {
-      doSend();
-    } catch (SocketTimeoutException e) {
-      throw new RemoteException("Could not send/receive within allocated timeout", e);
-    } catch (SocketException | EOFException e) {
-      throw new RemoteException("Communication with server interrupted; server probably disappeared", e);
-    }
+    ObjectOutputStream out = doPrepare();
+    ((RmiObjectOutput) out).setUp(vmId, transportType);
+    doSend(out, o);
   }
 
   /**
    * @see org.sapia.ubik.net.Connection#send(java.lang.Object)
    */
   public void send(Object o) throws IOException, RemoteException {
-    byteBuffer.clear();
-    if (oos == null) {
-      oos = MarshalStreamFactory.createOutputStream(new ChannelBufferOutputStream(byteBuffer));
-    }
-    Split split = serializationTime.start();
-    oos.writeObject(o);
-    oos.flush();
-    split.stop();
-
-    try {
-      doSend();
-    } catch (SocketTimeoutException e) {
-      throw new RemoteException("Could not send/receive within allocated timeout", e);
-    } catch (SocketException | EOFException e) {
-      throw new RemoteException("Communication with server interrupted; server probably disappeared", e);
-    }
+    doSend(doPrepare(), o);
   }
 
   /**
    * @see org.sapia.ubik.net.Connection#receive()
    */
   public Object receive() throws IOException, ClassNotFoundException, RemoteException {
-    try {
-      sock.setSoTimeout(0);
-      DataInputStream dis = new DataInputStream(sock.getInputStream());
-      log.debug("Receiving response of %s bytes", dis.readInt());
-      if (ois == null) {
-        ois = MarshalStreamFactory.createInputStream(new BufferedInputStream(sock.getInputStream(), bufsize));
-      }
-      return ois.readObject();
-    } catch (SocketTimeoutException e) {
-      throw new RemoteException("Could not send/receive within allocated timeout", e);
-    } catch (EOFException e) {
-      throw new RemoteException("Communication with server interrupted; server probably disappeared", e);
-    } catch (SocketException e) {
-      throw new RemoteException("Connection could not be opened; server is probably down", e);
-    }
+    return doReceive(0);
   }
-  
+
   /**
    * @see org.sapia.ubik.net.Connection#receive(long)
    */
   public Object receive(long timeout) throws IOException,
       ClassNotFoundException, RemoteException, SocketTimeoutException {
-    try {
-      sock.setSoTimeout((int) timeout);
-      DataInputStream dis = new DataInputStream(sock.getInputStream());
-      log.debug("Receiving response of %s bytes", dis.readInt());
-      if (ois == null) {
-        ois = MarshalStreamFactory.createInputStream(new BufferedInputStream(sock.getInputStream(), bufsize));
-      }
-      return ois.readObject();
-    } catch (SocketTimeoutException e) {
-      throw new RemoteException("Could not send/receive within allocated timeout", e);
-    } catch (EOFException e) {
-      throw new RemoteException("Communication with server interrupted; server probably disappeared", e);
-    } catch (SocketException e) {
-      throw new RemoteException("Connection could not be opened; server is probably down", e);
-    }
+    return doReceive(timeout);
   }
 
   /**
    * @see org.sapia.ubik.net.Connection#close()
    */
   public void close() {
-    IoUtils.closeSilently(sock);
+    channel.close();
+  }
+
+  // --------------------------------------------------------------------------
+  // Restricted methods
+
+  private ObjectOutputStream doPrepare() throws IOException {
+    if (!channel.isConnected()) {
+      throw new RemoteException("Communication with server interrupted; server probably disappeared");
+    }
+    // the buffer is reused: making sure the previous frame has been flushed
+    ChannelFuture previous = lastWrite;
+    if (previous != null) {
+      previous.awaitUninterruptibly();
+    }
+    byteBuffer.clear();
+    byteBuffer.writeInt(0); // reserving space for length prefix
+    if (oos == null) {
+      oos = MarshalStreamFactory.createOutputStream(new ChannelBufferOutputStream(byteBuffer), address);
+    }
+    return oos;
   }
 
-  private void doSend() throws IOException {
-    Split split = sendTime.start();
-    OutputStream sos = new BufferedOutputStream(sock.getOutputStream(), bufsize);
-    DataOutputStream dos = new DataOutputStream(sos);
-    byte[] toWrite = new byte[byteBuffer.writerIndex()];
-    dos.writeInt(toWrite.length);
-    byteBuffer.readBytes(toWrite);
-    dos.write(toWrite);
-    dos.flush();
+  private void doSend(ObjectOutputStream out, Object o) throws IOException {
+    Split split = serializationTime.start();
+    out.writeObject(o);
+    out.flush();
+    split.stop();
+
+    byteBuffer.setInt(0, byteBuffer.writerIndex() - NettyResponse.PREFIX_LEN);
+    log.debug("Sending request of %s bytes", byteBuffer.writerIndex() - NettyResponse.PREFIX_LEN);
+
+    split = sendTime.start();
+    lastWrite = channel.write(byteBuffer);
+    lastWrite.addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) throws Exception {
+        if (!future.isSuccess()) {
+          handler.fail(future.getCause());
+        }
+      }
+    });
     split.stop();
   }
+
+  private Object doReceive(long timeout) throws IOException, ClassNotFoundException, RemoteException {
+    Object response;
+    try {
+      response = handler.poll(timeout);
+    } catch (InterruptedException e) {
+      throw new ThreadInterruptedException();
+    }
+
+    if (response == null) {
+      // a late response would otherwise be taken for the next one
+      channel.close();
+      throw new RemoteException("Could not send/receive within allocated timeout", new SocketTimeoutException());
+    } else if (response instanceof Throwable) {
+      throw new RemoteException("Communication with server interrupted; server probably disappeared", (Throwable) response);
+    }
+
+    ChannelBuffer frame = (ChannelBuffer) response;
+    log.debug("Receiving response of %s bytes", frame.readableBytes());
+    incoming.setFrame(frame);
+    if (ois == null) {
+      ois = MarshalStreamFactory.createInputStream(incoming);
+    }
+    return ois.readObject();
+  }
+
+  // ==========================================================================
+
+  /**
+   * Reads from the response frame currently being deserialized: the object
+   * input stream is kept from one response to the next, only its underlying
+   * frame changes.
+   */
+  private static class FrameInputStream extends InputStream {
+
+    private ChannelBuffer frame = ChannelBuffers.EMPTY_BUFFER;
+
+    private void setFrame(ChannelBuffer frame) {
+      this.frame = frame;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return frame.readableBytes();
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!frame.readable()) {
+        return -1;
+      }
+      return frame.readByte() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!frame.readable()) {
+        return -1;
+      }
+      len = Math.min(len, frame.readableBytes());
+      frame.readBytes(bytes, off, len);
+      return len;
+    }
+  }
 }
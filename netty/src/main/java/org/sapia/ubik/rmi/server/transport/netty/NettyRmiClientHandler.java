@@ -0,0 +1,77 @@
+package org.sapia.ubik.rmi.server.transport.netty;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+
+/**
+ * The client-side handler: sits at the end of the pipeline of a client
+ * channel, and hands off the response frames that come in on that channel
+ * (or the error that occurred on it) to the {@link NettyRmiClientConnection}
+ * that waits for them.
+ * <p>
+ * An instance of this class is created per channel.
+ *
+ * @author yduchesne
+ *
+ */
+class NettyRmiClientHandler extends SimpleChannelUpstreamHandler {
+
+  private Category              log       = Log.createCategory(getClass());
+  private BlockingQueue<Object> responses = new LinkedBlockingQueue<Object>();
+
+  /**
+   * Waits for the next response frame to come in on this instance's channel.
+   *
+   * @param timeout
+   *          the max amount of time to wait for (in millis). If 0, waits
+   *          indefinitely.
+   * @return the response frame, as a {@link ChannelBuffer}, or the
+   *         {@link Throwable} corresponding to the error that occurred on this
+   *         instance's channel - or <code>null</code> if the given timeout
+   *         elapsed.
+   * @throws InterruptedException
+   *           if the calling thread is interrupted while waiting.
+   */
+  Object poll(long timeout) throws InterruptedException {
+    if (timeout <= 0) {
+      return responses.take();
+    }
+    return responses.poll(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param err
+   *          an error to hand off to the thread waiting for a response.
+   */
+  void fail(Throwable err) {
+    responses.offer(err);
+  }
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+    responses.offer((ChannelBuffer) event.getMessage());
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent event) throws Exception {
+    log.debug("exceptionCaught()", event.getCause());
+    responses.offer(event.getCause());
+    ctx.getChannel().close();
+  }
+
+  @Override
+  public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+    responses.offer(new ClosedChannelException());
+  }
+}
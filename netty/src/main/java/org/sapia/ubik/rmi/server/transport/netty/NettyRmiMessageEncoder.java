@@ -1,10 +1,13 @@
 package org.sapia.ubik.rmi.server.transport.netty;
 
+import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 
 import org.sapia.ubik.net.netty.NettyResponse;
 import org.sapia.ubik.net.netty.NettyResponseEncoder;
 import org.sapia.ubik.rmi.server.VmId;
+import org.sapia.ubik.rmi.server.transport.MarshalStreamFactory;
 import org.sapia.ubik.rmi.server.transport.RmiObjectOutput;
 
 /**
@@ -28,4 +31,9 @@ public class NettyRmiMessageEncoder extends NettyResponseEncoder {
   protected void setUp(ObjectOutputStream oos, VmId vmId, String transportType) {
     ((RmiObjectOutput) oos).setUp(vmId, transportType);
   }
+
+  @Override
+  protected ObjectOutputStream createObjectOutputStream(OutputStream os) throws IOException {
+    return MarshalStreamFactory.createOutputStream(os, NettyTransportProvider.TRANSPORT_TYPE);
+  }
 }
@@ -3,6 +3,7 @@ package org.sapia.ubik.rmi.server.transport.netty;
 import java.net.InetSocketAddress;
 import java.rmi.RemoteException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.Channel;
@@ -41,21 +42,26 @@ class NettyServer implements Server {
   private ServerBootstrap bootstrap;
   private ChannelGroup    channels = new DefaultChannelGroup();
   private ExecutorService workerThreads;
+  private NettyServerExecutionHandler executionHandler;
 
   /**
    * @param address
    *          the {@link NettyAddress} instance corresponding to the host/port
    *          to which the server should be bound.
    * @param selectorThreads the {@link ExecutorService} providing the inbound I/O threads.
-   * @param workerThreads the {@link ExecutorService} providing the worker threads.
+   * @param workerThreads the {@link ExecutorService} providing the Netty I/O worker threads.
+   * @param commandThreads the {@link ThreadPoolExecutor} in which incoming commands are executed, 
+   *        off the I/O worker threads.
    */
   NettyServer(
       NettyAddress          address, 
       final MultiDispatcher dispatcher, 
       ExecutorService       selectorThreads, 
-      ExecutorService       workerThreads) {
-    this.serverAddress = address;
-    this.workerThreads = workerThreads;
+      ExecutorService       workerThreads,
+      ThreadPoolExecutor    commandThreads) {
+    this.serverAddress    = address;
+    this.workerThreads    = workerThreads;
+    this.executionHandler = new NettyServerExecutionHandler(commandThreads);
 
     log.info("Initializing Netty server %s", serverAddress);
 
@@ -71,7 +77,7 @@ class NettyServer implements Server {
             channels.add(event.getChannel());
           }
         }, new NettyRequestDecoder(NettyServer.class.getName() + ".Decoder"), new NettyRmiMessageEncoder(NettyServer.class.getName() + ".Encoder"),
-        new NettyServerHandler(dispatcher, serverAddress));
+        executionHandler, new NettyServerHandler(dispatcher, serverAddress));
       }
     });
     bootstrap.setOption("child.tcpNoDelay", true);
@@ -98,6 +104,7 @@ class NettyServer implements Server {
       }
     }
     workerThreads.shutdown();
+    executionHandler.shutdown();
     log.debug("Stopped server: " + serverAddress);
   }
 
@@ -112,4 +119,11 @@ class NettyServer implements Server {
   public ServerAddress getServerAddress() {
     return serverAddress;
   }
+
+  // --------------------------------------------------------------------------
+  // Visible for testing
+
+  NettyServerExecutionHandler getExecutionHandler() {
+    return executionHandler;
+  }
 }
@@ -0,0 +1,89 @@
+package org.sapia.ubik.rmi.server.transport.netty;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.javasimon.Counter;
+import org.jboss.netty.channel.ChannelHandler.Sharable;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.sapia.ubik.log.Category;
+import org.sapia.ubik.log.Log;
+import org.sapia.ubik.net.netty.NettyResponse;
+import org.sapia.ubik.rmi.server.stats.Stats;
+
+/**
+ * Hands off incoming messages to a thread pool, so that the handlers that sit
+ * after this one in the pipeline (namely, the {@link NettyServerHandler}) are
+ * not invoked by the Netty IO worker threads: a slow remote method thus does
+ * not stall the other channels that are serviced by the same IO worker.
+ * <p>
+ * The thread pool is expected to have a bounded queue: when a message comes in
+ * while that queue is full, the message is rejected and the client is sent a
+ * {@link RemoteException} indicating that the server is busy.
+ * <p>
+ * Note that no ordering is enforced across messages of the same channel: a
+ * client connection has at most one pending request at any given time.
+ *
+ * @author yduchesne
+ *
+ */
+@Sharable
+class NettyServerExecutionHandler extends SimpleChannelUpstreamHandler {
+
+  private Category           log          = Log.createCategory(getClass());
+  private ThreadPoolExecutor executor;
+  private AtomicLong         rejected     = new AtomicLong();
+  private Counter            rejectedStat = Stats.createCounter(getClass(), "Rejected", "The number of commands rejected because the command queue was full");
+
+  /**
+   * @param executor
+   *          the {@link ThreadPoolExecutor} to which incoming messages are
+   *          handed off.
+   */
+  NettyServerExecutionHandler(ThreadPoolExecutor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * @return the number of commands that are pending execution.
+   */
+  int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * @return the number of commands that have been rejected so far.
+   */
+  long getRejectedCount() {
+    return rejected.get();
+  }
+
+  /**
+   * Shuts down this instance's executor.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+  @Override
+  public void messageReceived(final ChannelHandlerContext ctx, final MessageEvent event) throws Exception {
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          ctx.sendUpstream(event);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      rejected.incrementAndGet();
+      rejectedStat.increase();
+      log.warning("Command executor is saturated (%s commands pending): rejecting request from %s", getQueueDepth(),
+          ctx.getChannel().getRemoteAddress());
+      ctx.getChannel().write(new NettyResponse(new RemoteException("Server is busy: request rejected")));
+    }
+  }
+}
@@ -2,6 +2,7 @@ package org.sapia.ubik.rmi.server.transport.netty;
 
 import java.net.InetSocketAddress;
 import java.nio.channels.ClosedChannelException;
+import java.util.function.BiConsumer;
 
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
@@ -12,6 +13,7 @@ import org.jboss.netty.channel.SimpleChannelHandler;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.net.Request;
+import org.sapia.ubik.net.ServerAddress;
 import org.sapia.ubik.net.netty.NettyAddress;
 import org.sapia.ubik.net.netty.NettyResponse;
 import org.sapia.ubik.rmi.interceptor.MultiDispatcher;
@@ -80,10 +82,22 @@ class NettyServerHandler extends SimpleChannelHandler {
     log.debug("Command received: %s from %s@%s", cmd, req.getConnection().getServerAddress(), cmd.getVmId());
 
     cmd.init(new Config(req.getServerAddress(), req.getConnection()));
-    handler.handleCommand(cmd, req.getConnection());
 
-    log.debug("Command handling completed: %s from %s@%s", cmd.getClass().getName(), req.getConnection().getServerAddress(), cmd.getVmId());
+    // the response is written by the thread that completes the command: the
+    // worker is not held while the result of a method returning a future is
+    // pending
+    final RMICommand handled = cmd;
+    final ServerAddress from = req.getConnection().getServerAddress();
+    handler.handleCommandDeferred(cmd, req.getConnection()).whenComplete(new BiConsumer<Void, Throwable>() {
+      @Override
+      public void accept(Void result, Throwable err) {
+        log.debug("Command handling completed: %s from %s@%s", handled.getClass().getName(), from, handled.getVmId());
+        doWriteResponse(ctx, conn);
+      }
+    });
+  }
 
+  private void doWriteResponse(ChannelHandlerContext ctx, final NettyRmiServerConnection conn) {
     ChannelFuture future = ctx.getChannel().write(conn.getResponse());
     future.addListener(new ChannelFutureListener() {
       @Override
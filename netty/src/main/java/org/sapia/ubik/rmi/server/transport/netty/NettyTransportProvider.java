@@ -8,6 +8,11 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.sapia.ubik.concurrent.ConfigurableExecutor;
+import org.sapia.ubik.concurrent.ConfigurableExecutor.ThreadingConfiguration;
+import org.sapia.ubik.concurrent.NamedThreadFactory;
 import org.sapia.ubik.log.Category;
 import org.sapia.ubik.log.Log;
 import org.sapia.ubik.net.ServerAddress;
@@ -41,6 +46,8 @@ public class NettyTransportProvider implements TransportProvider, NettyConsts {
 
   private Map<ServerAddress, NettyClientConnectionPool> pools = new ConcurrentHashMap<ServerAddress, NettyClientConnectionPool>();
 
+  private ChannelFactory clientChannels;
+
   private int bufsize = Conf.getSystemProperties().getIntProperty(Consts.MARSHALLING_BUFSIZE, Defaults.DEFAULT_MARSHALLING_BUFSIZE);
 
   /**
@@ -52,7 +59,13 @@ public class NettyTransportProvider implements TransportProvider, NettyConsts {
 
     if (pool == null) {
       NettyAddress nettyAddr = (NettyAddress) address;
-      pool = new NettyClientConnectionPool(nettyAddr.getHost(), nettyAddr.getPort(), bufsize);
+      if (clientChannels == null) {
+        clientChannels = new NioClientSocketChannelFactory(
+            Threads.createIoInboundPool("netty.client.Boss"),
+            Threads.createIoInboundPool("netty.client.Worker")
+        );
+      }
+      pool = new NettyClientConnectionPool(nettyAddr.getHost(), nettyAddr.getPort(), clientChannels, bufsize);
       pools.put(address, pool);
     }
 
@@ -101,11 +114,19 @@ public class NettyTransportProvider implements TransportProvider, NettyConsts {
     
     int selectorThreads = config.getIntProperty(Consts.SERVER_INBOUND_THREADS, Defaults.DEFAULT_INBOUND_THREADS);
 
+    ThreadingConfiguration commandThreads = ThreadingConfiguration.newInstance()
+        .setCorePoolSize(config.getIntProperty(SERVER_EXECUTOR_CORE_THREADS_KEY, DEFAULT_SERVER_EXECUTOR_CORE_THREADS))
+        .setMaxPoolSize(config.getIntProperty(SERVER_EXECUTOR_MAX_THREADS_KEY, DEFAULT_SERVER_EXECUTOR_MAX_THREADS))
+        .setQueueSize(config.getIntProperty(SERVER_EXECUTOR_QUEUE_SIZE_KEY, DEFAULT_SERVER_EXECUTOR_QUEUE_SIZE))
+        .setKeepAlive(config.getTimeProperty(SERVER_EXECUTOR_KEEP_ALIVE_KEY, DEFAULT_SERVER_EXECUTOR_KEEP_ALIVE));
+    log.debug("Command executor configuration: %s", commandThreads);
+
     return new NettyServer(
         new NettyAddress(addr.getAddress().getHostAddress(), addr.getPort()), 
         Hub.getModules().getClientRuntime().getDispatcher(),
         Threads.createIoInboundPool("netty", selectorThreads), 
-        Threads.createWorkerPool()
+        Threads.createIoInboundPool("netty.Worker"),
+        new ConfigurableExecutor(commandThreads, NamedThreadFactory.createWith("ubik.netty.Command").setDaemon(true))
      );
   }
 
@@ -117,6 +138,11 @@ public class NettyTransportProvider implements TransportProvider, NettyConsts {
     for (NettyClientConnectionPool pool : pools.values()) {
       pool.internalPool().shrinkTo(0);
     }
+    pools.clear();
+    if (clientChannels != null) {
+      clientChannels.releaseExternalResources();
+      clientChannels = null;
+    }
   }
 
 }
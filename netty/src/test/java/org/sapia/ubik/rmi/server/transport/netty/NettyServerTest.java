@@ -1,6 +1,18 @@
 package org.sapia.ubik.rmi.server.transport.netty;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.rmi.RemoteException;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
@@ -14,14 +26,18 @@ import org.sapia.ubik.util.Localhost;
 
 public class NettyServerTest implements NettyService {
 
+  private ExecutorService executor;
+
   @Before
   public void setUp() {
     Hub.shutdown();
     System.setProperty(Consts.COLOCATED_CALLS_ENABLED, "false");
+    executor = Executors.newCachedThreadPool();
   }
 
   @After
   public void tearDown() {
+    executor.shutdownNow();
     Hub.shutdown();
     System.clearProperty(Consts.COLOCATED_CALLS_ENABLED);
   }
@@ -37,9 +53,128 @@ public class NettyServerTest implements NettyService {
     Hub.shutdown();
   }
 
+  @Test(timeout = 30000)
+  public void testRejectedWhenQueueFull() throws Exception {
+    BlockingServiceImpl impl = new BlockingServiceImpl();
+    final BlockingService service = export(impl, 8001, 1, 1);
+    NettyServerExecutionHandler handler = executionHandler();
+
+    try {
+      // the first call occupies the single command thread...
+      Future<String> first = executor.submit(block(service));
+      assertTrue(impl.entered.await(10, TimeUnit.SECONDS));
+
+      // ...and the second one the single queue slot
+      Future<String> second = executor.submit(block(service));
+      while (handler.getQueueDepth() < 1) {
+        Thread.sleep(10);
+      }
+
+      try {
+        service.getMessage();
+        fail("Expected call to be rejected");
+      } catch (Throwable e) {
+        assertBusy(e);
+      }
+      assertEquals(1, handler.getRejectedCount());
+
+      impl.release.countDown();
+      assertEquals("released", first.get(10, TimeUnit.SECONDS));
+      assertEquals("released", second.get(10, TimeUnit.SECONDS));
+    } finally {
+      impl.release.countDown();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testSlowCallDoesNotBlockOthers() throws Exception {
+    BlockingServiceImpl impl = new BlockingServiceImpl();
+    final BlockingService service = export(impl, 8002, 2, 10);
+
+    try {
+      Future<String> slow = executor.submit(block(service));
+      assertTrue(impl.entered.await(10, TimeUnit.SECONDS));
+
+      Future<String> fast = executor.submit(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return service.getMessage();
+        }
+      });
+      assertEquals("test", fast.get(10, TimeUnit.SECONDS));
+      assertFalse(slow.isDone());
+
+      impl.release.countDown();
+      assertEquals("released", slow.get(10, TimeUnit.SECONDS));
+    } finally {
+      impl.release.countDown();
+    }
+  }
+
   @Override
   public String getMessage() {
     return "test";
   }
 
+  // --------------------------------------------------------------------------
+
+  private BlockingService export(BlockingServiceImpl impl, int port, int threads, int queueSize) throws Exception {
+    Properties props = new Properties();
+    props.setProperty(Consts.TRANSPORT_TYPE, NettyTransportProvider.TRANSPORT_TYPE);
+    props.setProperty(NettyConsts.SERVER_PORT_KEY, Integer.toString(port));
+    props.setProperty(NettyConsts.SERVER_EXECUTOR_CORE_THREADS_KEY, Integer.toString(threads));
+    props.setProperty(NettyConsts.SERVER_EXECUTOR_MAX_THREADS_KEY, Integer.toString(threads));
+    props.setProperty(NettyConsts.SERVER_EXECUTOR_QUEUE_SIZE_KEY, Integer.toString(queueSize));
+    Hub.exportObject(impl, props);
+    return (BlockingService) Hub.connect(new NettyAddress(Localhost.getPreferredLocalAddress().getHostAddress(), port));
+  }
+
+  private static NettyServerExecutionHandler executionHandler() {
+    NettyServer server = (NettyServer) Hub.getModules().getServerTable().getServerFor(NettyTransportProvider.TRANSPORT_TYPE);
+    return server.getExecutionHandler();
+  }
+
+  private static Callable<String> block(final BlockingService service) {
+    return new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return service.block();
+      }
+    };
+  }
+
+  private static void assertBusy(Throwable error) {
+    for (Throwable t = error; t != null; t = t.getCause()) {
+      if (t instanceof RemoteException && t.getMessage() != null && t.getMessage().startsWith("Server is busy")) {
+        return;
+      }
+    }
+    throw new AssertionError("Expected server busy error, got: " + error);
+  }
+
+  // ==========================================================================
+
+  public interface BlockingService extends NettyService {
+
+    public String block() throws InterruptedException;
+
+  }
+
+  public static class BlockingServiceImpl implements BlockingService {
+
+    private CountDownLatch entered = new CountDownLatch(1);
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public String getMessage() {
+      return "test";
+    }
+
+    @Override
+    public String block() throws InterruptedException {
+      entered.countDown();
+      release.await();
+      return "released";
+    }
+  }
 }